@@ -0,0 +1,490 @@
+/*
+ * Copyright 2017 Makoto Consulting Group, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.makotojava.learn.recipe.datetime;
+
+import java.io.IOException;
+import java.time.Duration;
+
+/**
+ * As-of join of two time-ordered sources: each left row (a trade, say) is
+ * matched to the right row (a quote) of the same partition closest in time
+ * in the chosen {@link Direction}, within an optional tolerance. Every left
+ * row is reported, in left order, matched or not.
+ *
+ * Both sources are read once, in a single merge pass, through
+ * {@link Cursor}s of primitive values. Per-partition state is held in
+ * parallel primitive arrays (an open-addressing hash map with linear
+ * probing), and left rows waiting for a later right row in a primitive
+ * ring buffer, so there are no objects per row. A BACKWARD join never
+ * waits. FORWARD and NEAREST joins hold each left row until a right row of
+ * its partition reaches its time, the right source moves past its
+ * tolerance, or the right source ends; memory grows with the number of
+ * such rows, so a tolerance keeps it bounded.
+ *
+ * Among right rows with the same time, BACKWARD matches the last one and
+ * FORWARD the first one. NEAREST prefers the backward match when both are
+ * as close.
+ *
+ * An AsOfJoin is not thread safe, and its listener must not call back into
+ * it.
+ */
+public final class AsOfJoin {
+
+  /** The right row of a left row that has no match */
+  public static final long NO_MATCH = -1;
+
+  /**
+   * Which right rows a left row may match.
+   */
+  public enum Direction {
+    /** The last right row at or before the left row */
+    BACKWARD,
+    /** The first right row at or after the left row */
+    FORWARD,
+    /** The closer of the backward and forward matches */
+    NEAREST
+  }
+
+  /**
+   * A time-ordered source of rows, read one row at a time.
+   */
+  public interface Cursor {
+
+    /**
+     * Moves to the next row.
+     *
+     * @return false if there are no more rows.
+     *
+     * @throws IOException
+     *           If reading fails
+     */
+    boolean next() throws IOException;
+
+    /**
+     * Returns the time of the current row. Rows must come in
+     * non-decreasing time order.
+     *
+     * @return The epoch milliseconds.
+     */
+    long epochMilli();
+
+    /**
+     * Returns the partition (instrument, account...) of the current row.
+     * Only rows of the same partition match.
+     *
+     * @return The partition key.
+     */
+    default long partition() {
+      return 0;
+    }
+
+    /**
+     * Creates a Cursor over arrays.
+     *
+     * @param epochMillis
+     *          The times of the rows. Not null.
+     * @param partitions
+     *          The partitions of the rows, or null if all the rows are in
+     *          one partition
+     *
+     * @return The Cursor object.
+     */
+    static Cursor of(long[] epochMillis, long[] partitions) {
+      if (epochMillis == null) {
+        throw new IllegalArgumentException("Epoch millis argument cannot be null!");
+      }
+      if (partitions != null && partitions.length != epochMillis.length) {
+        throw new IllegalArgumentException("Partitions must have one element per row: " + partitions.length);
+      }
+      return new Cursor() {
+        private int row = -1;
+
+        @Override
+        public boolean next() {
+          return ++row < epochMillis.length;
+        }
+
+        @Override
+        public long epochMilli() {
+          return epochMillis[row];
+        }
+
+        @Override
+        public long partition() {
+          return partitions == null ? 0 : partitions[row];
+        }
+      };
+    }
+  }
+
+  /**
+   * Receives the result of every left row.
+   */
+  public interface MatchListener {
+
+    /**
+     * Called once for every left row, in left order.
+     *
+     * @param leftRow
+     *          The index of the left row (0 = first)
+     * @param rightRow
+     *          The index of the matched right row, or {@link #NO_MATCH}
+     * @param gapMillis
+     *          The right time minus the left time, or 0 if there is no
+     *          match
+     */
+    void onMatch(long leftRow, long rightRow, long gapMillis);
+  }
+
+  private static final int INITIAL_CAPACITY = 1024;
+
+  private static final long NONE = -1;
+
+  /** rightRows value of a left row still waiting for its match */
+  private static final long UNRESOLVED = -2;
+
+  private final Direction direction;
+
+  private final long toleranceMillis;
+
+  private final MatchListener listener;
+
+  // Partitions. Slot i is in use when used[i].
+  private long[] partitionKeys;
+  private long[] lastTimes;
+  private long[] lastRows;
+  /** The first of the right rows at lastTimes */
+  private long[] firstRowsAtLast;
+  /** Sequence numbers of the first and last waiting left rows, or NONE */
+  private long[] waitingHeads;
+  private long[] waitingTails;
+  private boolean[] used;
+  private int partitionMask;
+  private int partitionCount;
+
+  // Ring buffer of left rows, by sequence number: [head, tail) are waiting or
+  // resolved but not yet reported, each in slot sequence & ringMask
+  private long[] leftRows;
+  private long[] leftTimes;
+  private long[] leftPartitions;
+  /** The latest right time at which a forward match is still possible */
+  private long[] deadlines;
+  private long[] backwardRows;
+  private long[] backwardGaps;
+  private long[] rightRows;
+  private long[] gaps;
+  /** Sequence number of the next waiting left row of the same partition */
+  private long[] nextWaiting;
+  private int ringMask;
+  private long head;
+  private long tail;
+
+  private long matched;
+
+  /**
+   * Creates an AsOfJoin.
+   *
+   * @param direction
+   *          Which right rows a left row may match. Not null.
+   * @param tolerance
+   *          The largest time difference of a match (inclusive), or null
+   *          for no limit. Not negative.
+   * @param listener
+   *          Receives the result of every left row. Not null.
+   */
+  public AsOfJoin(Direction direction, Duration tolerance, MatchListener listener) {
+    if (direction == null || listener == null) {
+      throw new IllegalArgumentException("Direction and listener cannot be null!");
+    }
+    if (tolerance != null && tolerance.isNegative()) {
+      throw new IllegalArgumentException("Tolerance cannot be negative: " + tolerance);
+    }
+    this.direction = direction;
+    this.toleranceMillis = tolerance == null ? Long.MAX_VALUE : tolerance.toMillis();
+    this.listener = listener;
+  }
+
+  /**
+   * Joins the left source to the right source, reporting every left row to
+   * the listener. The right source is read no further than needed to
+   * resolve the last left row.
+   *
+   * @param left
+   *          The rows to match. Not null.
+   * @param right
+   *          The rows to match them to. Not null.
+   *
+   * @return The number of left rows that found a match.
+   *
+   * @throws IOException
+   *           If reading a source fails
+   * @throws IllegalArgumentException
+   *           If a source is not in time order
+   */
+  public long join(Cursor left, Cursor right) throws IOException {
+    if (left == null || right == null) {
+      throw new IllegalArgumentException("Cursor arguments cannot be null!");
+    }
+    allocatePartitions(INITIAL_CAPACITY);
+    allocateRing(INITIAL_CAPACITY);
+    head = 0;
+    tail = 0;
+    matched = 0;
+    long leftRow = 0;
+    long leftTime = Long.MIN_VALUE;
+    long rightRow = 0;
+    boolean rightAvailable = right.next();
+    long rightTime = rightAvailable ? right.epochMilli() : Long.MAX_VALUE;
+    while (left.next()) {
+      long time = left.epochMilli();
+      if (time < leftTime) {
+        throw new IllegalArgumentException("Left source is not in time order at row " + leftRow);
+      }
+      leftTime = time;
+      // Right rows at the same time go first, to be matched backward
+      while (rightAvailable && rightTime <= leftTime) {
+        acceptRight(right.partition(), rightTime, rightRow++);
+        rightAvailable = right.next();
+        rightTime = nextTime(right, rightAvailable, rightTime, rightRow);
+      }
+      acceptLeft(left.partition(), leftTime, leftRow++);
+      report(rightAvailable ? rightTime : Long.MAX_VALUE, !rightAvailable);
+    }
+    while (rightAvailable && head != tail) {
+      acceptRight(right.partition(), rightTime, rightRow++);
+      // Later right rows are no earlier than this one
+      report(rightTime, false);
+      if (head == tail) {
+        break;
+      }
+      rightAvailable = right.next();
+      rightTime = nextTime(right, rightAvailable, rightTime, rightRow);
+      report(rightAvailable ? rightTime : Long.MAX_VALUE, !rightAvailable);
+    }
+    report(Long.MAX_VALUE, true);
+    return matched;
+  }
+
+  private static long nextTime(Cursor right, boolean available, long previous, long row) {
+    if (!available) {
+      return Long.MAX_VALUE;
+    }
+    long ret = right.epochMilli();
+    if (ret < previous) {
+      throw new IllegalArgumentException("Right source is not in time order at row " + row);
+    }
+    return ret;
+  }
+
+  private void acceptRight(long partition, long time, long row) {
+    int slot = findPartition(partition);
+    if (lastRows[slot] == NONE || time != lastTimes[slot]) {
+      firstRowsAtLast[slot] = row;
+    }
+    lastTimes[slot] = time;
+    lastRows[slot] = row;
+    // Every waiting left row of the partition is earlier: this is its forward match, if any
+    for (long seq = waitingHeads[slot]; seq != NONE;) {
+      int entry = (int) seq & ringMask;
+      if (rightRows[entry] == UNRESOLVED) {
+        if (time <= deadlines[entry]) {
+          resolve(entry, row, time - leftTimes[entry]);
+        } else {
+          resolve(entry, backwardRows[entry], backwardGaps[entry]);
+        }
+      }
+      seq = nextWaiting[entry];
+    }
+    waitingHeads[slot] = NONE;
+    waitingTails[slot] = NONE;
+  }
+
+  private void acceptLeft(long partition, long time, long row) {
+    int slot = findPartition(partition);
+    long backwardRow = NO_MATCH;
+    long backwardGap = 0;
+    if (lastRows[slot] != NONE && time - lastTimes[slot] <= toleranceMillis) {
+      backwardRow = lastRows[slot];
+      backwardGap = lastTimes[slot] - time;
+    }
+    if (tail - head > ringMask) {
+      growRing();
+    }
+    long seq = tail++;
+    int entry = (int) seq & ringMask;
+    leftRows[entry] = row;
+    leftTimes[entry] = time;
+    leftPartitions[entry] = partition;
+    if (direction == Direction.BACKWARD) {
+      resolve(entry, backwardRow, backwardGap);
+    } else if (backwardRow != NO_MATCH && backwardGap == 0) {
+      // A right row at the same time: the best match either way
+      resolve(entry, direction == Direction.FORWARD ? firstRowsAtLast[slot] : backwardRow, 0);
+    } else {
+      long reach = toleranceMillis;
+      if (direction == Direction.NEAREST) {
+        backwardRows[entry] = backwardRow;
+        backwardGaps[entry] = backwardGap;
+        if (backwardRow != NO_MATCH) {
+          // Only a strictly closer forward match beats the backward one
+          reach = Math.min(reach, -backwardGap - 1);
+        }
+      } else {
+        backwardRows[entry] = NO_MATCH;
+        backwardGaps[entry] = 0;
+      }
+      rightRows[entry] = UNRESOLVED;
+      deadlines[entry] = time + reach < time ? Long.MAX_VALUE : time + reach;
+      nextWaiting[entry] = NONE;
+      if (waitingTails[slot] == NONE) {
+        waitingHeads[slot] = seq;
+      } else {
+        nextWaiting[(int) waitingTails[slot] & ringMask] = seq;
+      }
+      waitingTails[slot] = seq;
+    }
+  }
+
+  private void resolve(int entry, long rightRow, long gap) {
+    rightRows[entry] = rightRow;
+    gaps[entry] = rightRow == NO_MATCH ? 0 : gap;
+  }
+
+  /**
+   * Reports the resolved left rows at the head of the ring, resolving those
+   * no right row can match any more: all of them once the right source has
+   * ended, otherwise those whose deadline is before the next right time.
+   */
+  private void report(long nextRightTime, boolean rightEnded) {
+    while (head != tail) {
+      int entry = (int) head & ringMask;
+      if (rightRows[entry] == UNRESOLVED) {
+        if (!rightEnded && deadlines[entry] >= nextRightTime) {
+          return;
+        }
+        resolve(entry, backwardRows[entry], backwardGaps[entry]);
+        int slot = findPartition(leftPartitions[entry]);
+        if (waitingHeads[slot] == head) {
+          waitingHeads[slot] = nextWaiting[entry];
+          if (waitingHeads[slot] == NONE) {
+            waitingTails[slot] = NONE;
+          }
+        }
+      }
+      if (rightRows[entry] != NO_MATCH) {
+        matched++;
+      }
+      listener.onMatch(leftRows[entry], rightRows[entry], gaps[entry]);
+      head++;
+    }
+  }
+
+  private static int hash(long key) {
+    key ^= key >>> 33;
+    key *= 0xff51afd7ed558ccdL;
+    key ^= key >>> 33;
+    return (int) key;
+  }
+
+  /** Returns the slot of the partition, adding it if it is new */
+  private int findPartition(long partition) {
+    int slot = hash(partition) & partitionMask;
+    while (used[slot]) {
+      if (partitionKeys[slot] == partition) {
+        return slot;
+      }
+      slot = (slot + 1) & partitionMask;
+    }
+    if (++partitionCount > (partitionMask + 1) >>> 1) {
+      resizePartitions();
+      return findPartition(partition);
+    }
+    used[slot] = true;
+    partitionKeys[slot] = partition;
+    lastRows[slot] = NONE;
+    waitingHeads[slot] = NONE;
+    waitingTails[slot] = NONE;
+    return slot;
+  }
+
+  private void allocatePartitions(int capacity) {
+    partitionKeys = new long[capacity];
+    lastTimes = new long[capacity];
+    lastRows = new long[capacity];
+    firstRowsAtLast = new long[capacity];
+    waitingHeads = new long[capacity];
+    waitingTails = new long[capacity];
+    used = new boolean[capacity];
+    partitionMask = capacity - 1;
+    partitionCount = 0;
+  }
+
+  private void resizePartitions() {
+    long[] oldKeys = partitionKeys;
+    long[] oldLastTimes = lastTimes;
+    long[] oldLastRows = lastRows;
+    long[] oldFirstRows = firstRowsAtLast;
+    long[] oldHeads = waitingHeads;
+    long[] oldTails = waitingTails;
+    boolean[] oldUsed = used;
+    allocatePartitions(oldUsed.length * 2);
+    for (int i = 0; i < oldUsed.length; i++) {
+      if (oldUsed[i]) {
+        int slot = findPartition(oldKeys[i]);
+        lastTimes[slot] = oldLastTimes[i];
+        lastRows[slot] = oldLastRows[i];
+        firstRowsAtLast[slot] = oldFirstRows[i];
+        waitingHeads[slot] = oldHeads[i];
+        waitingTails[slot] = oldTails[i];
+      }
+    }
+  }
+
+  private void allocateRing(int capacity) {
+    leftRows = new long[capacity];
+    leftTimes = new long[capacity];
+    leftPartitions = new long[capacity];
+    deadlines = new long[capacity];
+    backwardRows = new long[capacity];
+    backwardGaps = new long[capacity];
+    rightRows = new long[capacity];
+    gaps = new long[capacity];
+    nextWaiting = new long[capacity];
+    ringMask = capacity - 1;
+  }
+
+  /** Doubles the ring, keeping every entry at its sequence number */
+  private void growRing() {
+    long[][] old = { leftRows, leftTimes, leftPartitions, deadlines, backwardRows, backwardGaps, rightRows, gaps,
+        nextWaiting };
+    int oldMask = ringMask;
+    allocateRing((ringMask + 1) * 2);
+    long[][] grown = { leftRows, leftTimes, leftPartitions, deadlines, backwardRows, backwardGaps, rightRows, gaps,
+        nextWaiting };
+    for (long seq = head; seq != tail; seq++) {
+      for (int i = 0; i < old.length; i++) {
+        grown[i][(int) seq & ringMask] = old[i][(int) seq & oldMask];
+      }
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "AsOfJoin[" + direction + (toleranceMillis == Long.MAX_VALUE ? "" : ", tolerance=" + toleranceMillis
+        + "ms") + ", partitions=" + partitionCount + ", waiting=" + (tail - head) + "]";
+  }
+
+}
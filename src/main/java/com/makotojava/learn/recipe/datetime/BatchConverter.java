@@ -0,0 +1,174 @@
+/*
+ * Copyright 2017 Makoto Consulting Group, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.makotojava.learn.recipe.datetime;
+
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+
+/**
+ * A chain of conversions (parse, convert, format...) fused into one
+ * function and applied a batch at a time.
+ *
+ * Fusing the steps means each element goes through the whole chain in one
+ * pass, with no intermediate collections, and batching amortizes the
+ * per-task cost of running the chain on an Executor. On Java 9 and later,
+ * ConversionProcessor runs a BatchConverter as a java.util.concurrent.Flow
+ * pipeline stage.
+ *
+ * Instances are immutable and thread safe if the conversions are.
+ *
+ * @param <T>
+ *          The type of the input elements
+ * @param <R>
+ *          The type of the converted elements
+ */
+public final class BatchConverter<T, R> {
+
+  private final Function<? super T, ? extends R> conversion;
+
+  private BatchConverter(Function<? super T, ? extends R> conversion) {
+    this.conversion = conversion;
+  }
+
+  /**
+   * Creates a BatchConverter for the specified conversion.
+   *
+   * @param conversion
+   *          The conversion. Not null.
+   *
+   * @return The BatchConverter object.
+   */
+  public static <T, R> BatchConverter<T, R> of(Function<? super T, ? extends R> conversion) {
+    if (conversion == null) {
+      throw new IllegalArgumentException("Function argument cannot be null!");
+    }
+    return new BatchConverter<>(conversion);
+  }
+
+  /**
+   * Creates a BatchConverter that parses date/time strings with one
+   * pattern, moves them to the specified time zone, and formats them with
+   * another pattern. Both patterns go through CompiledDateTimePattern.
+   *
+   * @param inputPattern
+   *          The pattern of the input strings, with an offset or a zone ID
+   * @param timeZoneId
+   *          The time zone of the output strings
+   * @param outputPattern
+   *          The pattern of the output strings
+   *
+   * @return The BatchConverter object.
+   */
+  public static BatchConverter<String, String> rezone(String inputPattern, ZoneId timeZoneId, String outputPattern) {
+    if (timeZoneId == null) {
+      throw new IllegalArgumentException("ZoneId argument cannot be null!");
+    }
+    CompiledDateTimePattern parser = CompiledDateTimePattern.of(inputPattern);
+    CompiledDateTimePattern formatter = CompiledDateTimePattern.of(outputPattern);
+    return of(text -> formatter.format(parser.parseZonedDateTime(text).withZoneSameInstant(timeZoneId)));
+  }
+
+  /**
+   * Returns a BatchConverter that applies this conversion, then the
+   * specified one.
+   *
+   * @param next
+   *          The next conversion. Not null.
+   *
+   * @return The BatchConverter object.
+   */
+  public <V> BatchConverter<T, V> andThen(Function<? super R, ? extends V> next) {
+    if (next == null) {
+      throw new IllegalArgumentException("Function argument cannot be null!");
+    }
+    Function<? super T, ? extends R> first = conversion;
+    return new BatchConverter<T, V>(t -> next.apply(first.apply(t)));
+  }
+
+  /**
+   * Converts one element.
+   *
+   * @param element
+   *          The element to convert
+   *
+   * @return The converted element.
+   */
+  public R convert(T element) {
+    return conversion.apply(element);
+  }
+
+  /**
+   * Converts a batch of elements, in order.
+   *
+   * @param batch
+   *          The elements to convert. Not null.
+   *
+   * @return A new List of the converted elements
+   */
+  public List<R> convertAll(List<? extends T> batch) {
+    List<R> ret = new ArrayList<>(batch.size());
+    for (T element : batch) {
+      ret.add(conversion.apply(element));
+    }
+    return ret;
+  }
+
+  /**
+   * Converts the elements in batches of at most batchSize elements, each
+   * batch a separate task on the specified Executor. The future completes
+   * with the converted elements in the original order, or exceptionally
+   * with the first exception a conversion threw.
+   *
+   * @param elements
+   *          The elements to convert. Not null, and not modified until the
+   *          future completes.
+   * @param batchSize
+   *          The maximum number of elements per task. Greater than 0.
+   * @param executor
+   *          The Executor to run the tasks on. Not null.
+   *
+   * @return The CompletableFuture of the converted elements
+   */
+  public CompletableFuture<List<R>> convertAllAsync(List<? extends T> elements, int batchSize, Executor executor) {
+    if (batchSize <= 0) {
+      throw new IllegalArgumentException("Batch size must be greater than 0: " + batchSize);
+    }
+    if (executor == null) {
+      throw new IllegalArgumentException("Executor argument cannot be null!");
+    }
+    if (elements.isEmpty()) {
+      return CompletableFuture.completedFuture(Collections.<R> emptyList());
+    }
+    List<CompletableFuture<List<R>>> batches = new ArrayList<>();
+    for (int from = 0; from < elements.size(); from += batchSize) {
+      List<? extends T> batch = elements.subList(from, Math.min(elements.size(), from + batchSize));
+      batches.add(CompletableFuture.supplyAsync(() -> convertAll(batch), executor));
+    }
+    return CompletableFuture.allOf(batches.toArray(new CompletableFuture<?>[batches.size()])).thenApply(v -> {
+      List<R> ret = new ArrayList<>(elements.size());
+      for (CompletableFuture<List<R>> batch : batches) {
+        ret.addAll(batch.join());
+      }
+      return ret;
+    });
+  }
+
+}
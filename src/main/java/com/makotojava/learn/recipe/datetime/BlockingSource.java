@@ -0,0 +1,96 @@
+/*
+ * Copyright 2017 Makoto Consulting Group, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.makotojava.learn.recipe.datetime;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Iterator;
+
+/**
+ * A source of elements read with blocking calls: lines of a file or a
+ * socket, records of a queue... On Java 9 and later, BlockingSourcePublisher
+ * turns one into a java.util.concurrent.Flow.Publisher that reads only as
+ * many elements as its subscriber requests, on a virtual thread where
+ * available (see {@link VirtualThreads}).
+ *
+ * @param <T>
+ *          The type of the elements
+ */
+public interface BlockingSource<T> extends Closeable {
+
+  /**
+   * Reads the next element, blocking if needed.
+   *
+   * @return The next element, or null at the end of the source.
+   *
+   * @throws IOException
+   *           If reading fails
+   */
+  T read() throws IOException;
+
+  /**
+   * Releases the resources of the source. Called once, after the end of the
+   * source, a read failure or a cancellation. Does nothing by default.
+   */
+  @Override
+  default void close() throws IOException {
+    // Nothing to release
+  }
+
+  /**
+   * Creates a BlockingSource of the lines of a BufferedReader, which is
+   * closed with the source.
+   *
+   * @param reader
+   *          The reader. Not null.
+   *
+   * @return The BlockingSource object.
+   */
+  static BlockingSource<String> lines(BufferedReader reader) {
+    if (reader == null) {
+      throw new IllegalArgumentException("BufferedReader argument cannot be null!");
+    }
+    return new BlockingSource<String>() {
+      @Override
+      public String read() throws IOException {
+        return reader.readLine();
+      }
+
+      @Override
+      public void close() throws IOException {
+        reader.close();
+      }
+    };
+  }
+
+  /**
+   * Creates a BlockingSource of the elements of an Iterator. Null elements
+   * are not supported, as null marks the end of the source.
+   *
+   * @param iterator
+   *          The iterator. Not null.
+   *
+   * @return The BlockingSource object.
+   */
+  static <T> BlockingSource<T> of(Iterator<? extends T> iterator) {
+    if (iterator == null) {
+      throw new IllegalArgumentException("Iterator argument cannot be null!");
+    }
+    return () -> iterator.hasNext() ? iterator.next() : null;
+  }
+
+}
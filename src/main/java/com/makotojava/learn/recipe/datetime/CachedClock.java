@@ -0,0 +1,421 @@
+/*
+ * Copyright 2017 Makoto Consulting Group, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.makotojava.learn.recipe.datetime;
+
+import java.time.DayOfWeek;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A source of "now" with primitive accessors.
+ *
+ * Three flavors are available:
+ * <ul>
+ * <li>{@link #precise()} reads System.currentTimeMillis() on every call.</li>
+ * <li>{@link #coarse()} and {@link #newCoarse(long)} read a volatile field that a
+ * background ticker thread refreshes every tick. Reading is about as cheap as
+ * reading any other field, at the cost of the value lagging by up to one tick.</li>
+ * <li>{@link #manual(long)} only moves when told to, for deterministic tests.</li>
+ * </ul>
+ *
+ * All flavors cache the local date/time fields per ZoneId, so asking for the
+ * current local date or time in a zone only recomputes them when the second
+ * (or the day) has changed since the last call.
+ */
+public abstract class CachedClock {
+
+  private static final long MILLIS_PER_SECOND = 1000L;
+
+  private static final int SECONDS_PER_DAY = 86400;
+
+  /** Default tick for the shared coarse clock */
+  private static final long DEFAULT_TICK_MILLIS = 1L;
+
+  private final ConcurrentMap<ZoneId, LocalFields> localFieldsCache = new ConcurrentHashMap<>();
+
+  /**
+   * Returns the shared clock that reads the system clock on every call.
+   *
+   * @return The CachedClock object.
+   */
+  public static CachedClock precise() {
+    return Precise.INSTANCE;
+  }
+
+  /**
+   * Returns the shared coarse clock, which ticks every millisecond. The
+   * ticker thread is a daemon started on first use and never stopped.
+   *
+   * @return The CachedClock object.
+   */
+  public static CachedClock coarse() {
+    return SharedCoarse.INSTANCE;
+  }
+
+  /**
+   * Creates and starts a new coarse clock with the specified tick. The
+   * caller owns the ticker thread and should close the clock when done.
+   *
+   * @param tickMillis
+   *          The number of milliseconds between refreshes. Must be positive.
+   *
+   * @return The Coarse clock.
+   */
+  public static Coarse newCoarse(long tickMillis) {
+    if (tickMillis <= 0) {
+      throw new IllegalArgumentException("The tick must be positive, but was: " + tickMillis);
+    }
+    return new Coarse(tickMillis);
+  }
+
+  /**
+   * Creates a clock for tests that starts at the specified number of
+   * milliseconds since the epoch and only moves when advanced or set.
+   *
+   * @param epochMilli
+   *          The initial number of milliseconds since the epoch
+   *
+   * @return The Manual clock.
+   */
+  public static Manual manual(long epochMilli) {
+    return new Manual(epochMilli);
+  }
+
+  /**
+   * Returns the current number of milliseconds since the epoch.
+   *
+   * @return The current time in milliseconds.
+   */
+  public abstract long currentTimeMillis();
+
+  /**
+   * Returns a monotonic nanosecond counter, suitable only for measuring
+   * elapsed time (like System.nanoTime()).
+   *
+   * @return The current value of the counter in nanoseconds.
+   */
+  public long nanoTime() {
+    return System.nanoTime();
+  }
+
+  /**
+   * Returns the current number of whole seconds since the epoch.
+   *
+   * @return The current time in seconds.
+   */
+  public long currentEpochSecond() {
+    return Math.floorDiv(currentTimeMillis(), MILLIS_PER_SECOND);
+  }
+
+  /**
+   * Returns the current instant. Unlike the primitive accessors this
+   * allocates an Instant on every call.
+   *
+   * @return The Instant object.
+   */
+  public Instant instant() {
+    return Instant.ofEpochMilli(currentTimeMillis());
+  }
+
+  /**
+   * Returns the current local date/time fields in the specified zone,
+   * truncated to the second. The returned object is shared by every caller
+   * asking for the same zone during the same second.
+   *
+   * @param timeZoneId
+   *          The time zone
+   *
+   * @return The LocalFields object.
+   */
+  public LocalFields localFields(ZoneId timeZoneId) {
+    long epochSecond = currentEpochSecond();
+    LocalFields cached = localFieldsCache.get(timeZoneId);
+    if (cached != null && cached.epochSecond == epochSecond) {
+      return cached;
+    }
+    LocalFields ret = LocalFields.compute(epochSecond, timeZoneId, cached);
+    // Racing threads may each compute the same second; any of the results is correct
+    localFieldsCache.put(timeZoneId, ret);
+    return ret;
+  }
+
+  /**
+   * Returns the current local date in the specified zone.
+   *
+   * @param timeZoneId
+   *          The time zone
+   *
+   * @return The (shared) LocalDate object.
+   */
+  public LocalDate currentLocalDate(ZoneId timeZoneId) {
+    return localFields(timeZoneId).getLocalDate();
+  }
+
+  /**
+   * Returns the current number of days since the epoch in the specified zone.
+   *
+   * @param timeZoneId
+   *          The time zone
+   *
+   * @return The current local epoch-day.
+   */
+  public long currentEpochDay(ZoneId timeZoneId) {
+    return localFields(timeZoneId).getEpochDay();
+  }
+
+  /**
+   * The local date/time fields of one second in one zone.
+   */
+  public static final class LocalFields {
+
+    private final long epochSecond;
+    private final ZoneId zoneId;
+    private final ZoneOffset offset;
+    private final LocalDate localDate;
+    private final int secondOfDay;
+
+    private LocalFields(long epochSecond, ZoneId zoneId, ZoneOffset offset, LocalDate localDate, int secondOfDay) {
+      this.epochSecond = epochSecond;
+      this.zoneId = zoneId;
+      this.offset = offset;
+      this.localDate = localDate;
+      this.secondOfDay = secondOfDay;
+    }
+
+    private static LocalFields compute(long epochSecond, ZoneId zoneId, LocalFields previous) {
+      ZoneOffset offset = zoneId.getRules().getOffset(Instant.ofEpochSecond(epochSecond));
+      long localSecond = epochSecond + offset.getTotalSeconds();
+      long epochDay = Math.floorDiv(localSecond, SECONDS_PER_DAY);
+      int secondOfDay = (int) Math.floorMod(localSecond, SECONDS_PER_DAY);
+      // Only rebuild the date when the day has changed
+      LocalDate localDate = previous != null && previous.localDate.toEpochDay() == epochDay ? previous.localDate
+          : LocalDate.ofEpochDay(epochDay);
+      return new LocalFields(epochSecond, zoneId, offset, localDate, secondOfDay);
+    }
+
+    public long getEpochSecond() {
+      return epochSecond;
+    }
+
+    public ZoneId getZoneId() {
+      return zoneId;
+    }
+
+    public ZoneOffset getOffset() {
+      return offset;
+    }
+
+    public LocalDate getLocalDate() {
+      return localDate;
+    }
+
+    public long getEpochDay() {
+      return localDate.toEpochDay();
+    }
+
+    public int getYear() {
+      return localDate.getYear();
+    }
+
+    public int getMonthValue() {
+      return localDate.getMonthValue();
+    }
+
+    public int getDayOfMonth() {
+      return localDate.getDayOfMonth();
+    }
+
+    public DayOfWeek getDayOfWeek() {
+      return localDate.getDayOfWeek();
+    }
+
+    public int getSecondOfDay() {
+      return secondOfDay;
+    }
+
+    public int getHour() {
+      return secondOfDay / 3600;
+    }
+
+    public int getMinute() {
+      return secondOfDay / 60 % 60;
+    }
+
+    public int getSecond() {
+      return secondOfDay % 60;
+    }
+
+    /**
+     * Creates a LocalDateTime from these fields.
+     *
+     * @return The LocalDateTime object.
+     */
+    public LocalDateTime toLocalDateTime() {
+      return LocalDateTime.of(localDate, LocalTime.ofSecondOfDay(secondOfDay));
+    }
+
+    @Override
+    public String toString() {
+      return toLocalDateTime() + offset.toString() + "[" + zoneId + "]";
+    }
+  }
+
+  /**
+   * Reads the system clock on every call.
+   */
+  private static final class Precise extends CachedClock {
+
+    private static final Precise INSTANCE = new Precise();
+
+    @Override
+    public long currentTimeMillis() {
+      return System.currentTimeMillis();
+    }
+  }
+
+  /**
+   * Publishes the system clock into a volatile field from a background
+   * daemon thread once per tick.
+   */
+  public static class Coarse extends CachedClock implements AutoCloseable {
+
+    private volatile long currentTimeMillis = System.currentTimeMillis();
+
+    private final Thread ticker;
+
+    private Coarse(final long tickMillis) {
+      ticker = new Thread(new Runnable() {
+        @Override
+        public void run() {
+          while (!Thread.currentThread().isInterrupted()) {
+            currentTimeMillis = System.currentTimeMillis();
+            try {
+              TimeUnit.MILLISECONDS.sleep(tickMillis);
+            } catch (InterruptedException e) {
+              Thread.currentThread().interrupt();
+            }
+          }
+        }
+      }, "CachedClock-ticker-" + tickMillis + "ms");
+      ticker.setDaemon(true);
+      ticker.start();
+    }
+
+    @Override
+    public long currentTimeMillis() {
+      return currentTimeMillis;
+    }
+
+    /**
+     * Stops the ticker thread. The clock keeps returning the last published
+     * value afterwards.
+     */
+    @Override
+    public void close() {
+      ticker.interrupt();
+    }
+  }
+
+  /**
+   * The shared coarse clock, created on first use.
+   */
+  private static final class SharedCoarse {
+    private static final Coarse INSTANCE = new Coarse(DEFAULT_TICK_MILLIS);
+  }
+
+  /**
+   * A clock that only moves when it is told to.
+   */
+  public static class Manual extends CachedClock {
+
+    private volatile long currentTimeMillis;
+
+    private volatile long nanoTime;
+
+    private Manual(long epochMilli) {
+      this.currentTimeMillis = epochMilli;
+    }
+
+    @Override
+    public long currentTimeMillis() {
+      return currentTimeMillis;
+    }
+
+    @Override
+    public long nanoTime() {
+      return nanoTime;
+    }
+
+    /**
+     * Sets the clock to the specified number of milliseconds since the epoch.
+     * The clock may be moved backwards, like a wall clock can.
+     *
+     * @param epochMilli
+     *          The new number of milliseconds since the epoch
+     */
+    public synchronized void setMillis(long epochMilli) {
+      currentTimeMillis = epochMilli;
+    }
+
+    /**
+     * Moves the clock (and the nanosecond counter) forward by the
+     * specified amount.
+     *
+     * @param duration
+     *          The amount of time to advance the clock by. Not negative.
+     *
+     * @throws IllegalArgumentException
+     *           If the duration is negative, or would overflow the
+     *           millisecond or nanosecond counter. The clock is left
+     *           unchanged in that case.
+     */
+    public synchronized void advance(Duration duration) {
+      if (duration == null || duration.isNegative()) {
+        throw new IllegalArgumentException("Cannot advance the clock by a negative duration: " + duration);
+      }
+      long millis;
+      long nanos;
+      try {
+        millis = Math.addExact(currentTimeMillis, duration.toMillis());
+        nanos = Math.addExact(nanoTime, duration.toNanos());
+      } catch (ArithmeticException e) {
+        throw new IllegalArgumentException("Cannot advance the clock by " + duration + " without overflow", e);
+      }
+      currentTimeMillis = millis;
+      nanoTime = nanos;
+    }
+
+    /**
+     * Moves the clock (and the nanosecond counter) forward by the
+     * specified number of milliseconds.
+     *
+     * @param millis
+     *          The number of milliseconds. Not negative.
+     */
+    public void advanceMillis(long millis) {
+      advance(Duration.ofMillis(millis));
+    }
+  }
+
+}
@@ -0,0 +1,757 @@
+/*
+ * Copyright 2017 Makoto Consulting Group, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.makotojava.learn.recipe.datetime;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.Month;
+import java.time.Year;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.TemporalAccessor;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A DateTimeFormatter pattern compiled into a flat list of fixed-width
+ * numeric fields and literals.
+ *
+ * DateTimeFormatter walks a chain of printer/parser objects and goes
+ * through the TemporalAccessor interface for every field. A compiled
+ * pattern instead extracts the fields once and runs a tight loop over an
+ * int array of opcodes, writing digits straight into a char array (or
+ * reading them straight out of the text).
+ *
+ * Only the numeric, locale-independent subset of the pattern language is
+ * compiled: yyyy, yy, uuuu, MM, M, dd, d, HH, H, mm, ss, S to SSSSSSSSS,
+ * XXX, xxx, VV and literals. VV region IDs are parsed with the
+ * {@link ZoneTextMatcher#regionIds()} trie. Anything the compiled code cannot handle
+ * exactly as DateTimeFormatter would (other letters, optional sections,
+ * years outside 1-9999, out-of-range or lenient input...) is handed to the
+ * equivalent DateTimeFormatter, so results and exceptions are always the
+ * same as those of DateTimeFormatter.ofPattern(pattern).
+ *
+ * Instances are immutable, thread safe and cached by pattern.
+ */
+public final class CompiledDateTimePattern {
+
+  /** Upper bound on the number of cached patterns; later ones are compiled on every call */
+  private static final int MAX_CACHED_PATTERNS = 1024;
+
+  private static final ConcurrentMap<String, CompiledDateTimePattern> CACHE = new ConcurrentHashMap<>();
+
+  // Opcodes. Each opcode is followed by one argument in the ops array.
+  private static final int LITERAL = 0; // arg = index into literals
+  private static final int YEAR_OF_ERA_4 = 1;
+  private static final int YEAR_OF_ERA_2 = 2;
+  private static final int YEAR_4 = 3;
+  private static final int MONTH_2 = 4;
+  private static final int MONTH_1 = 5;
+  private static final int DAY_2 = 6;
+  private static final int DAY_1 = 7;
+  private static final int HOUR_2 = 8;
+  private static final int HOUR_1 = 9;
+  private static final int MINUTE_2 = 10;
+  private static final int SECOND_2 = 11;
+  private static final int FRACTION = 12; // arg = number of digits
+  private static final int OFFSET_Z = 13; // +HH:MM, or Z for zero
+  private static final int OFFSET = 14; // +HH:MM
+  private static final int ZONE_ID = 15;
+
+  // Bits of the fields mask
+  private static final int HAS_YEAR = 1;
+  private static final int HAS_MONTH = 1 << 1;
+  private static final int HAS_DAY = 1 << 2;
+  private static final int HAS_HOUR = 1 << 3;
+  private static final int HAS_MINUTE = 1 << 4;
+  private static final int HAS_SECOND = 1 << 5;
+  private static final int HAS_FRACTION = 1 << 6;
+  private static final int HAS_OFFSET = 1 << 7;
+  private static final int HAS_ZONE = 1 << 8;
+  private static final int DATE = HAS_YEAR | HAS_MONTH | HAS_DAY;
+  private static final int TIME = HAS_HOUR | HAS_MINUTE | HAS_SECOND | HAS_FRACTION;
+  private static final int DATE_TIME = DATE | HAS_HOUR | HAS_MINUTE;
+
+  // Slots of the parsed fields array
+  private static final int P_YEAR = 0;
+  private static final int P_MONTH = 1;
+  private static final int P_DAY = 2;
+  private static final int P_HOUR = 3;
+  private static final int P_MINUTE = 4;
+  private static final int P_SECOND = 5;
+  private static final int P_NANO = 6;
+  private static final int P_OFFSET = 7;
+  private static final int P_YEAR_OF_ERA = 8;
+  private static final int P_ZONE = 9; // ZoneTextMatcher.regionIds() entry index
+  private static final int P_SIZE = 10;
+
+  /**
+   * True if DateTimeFormatter resolves text with both an offset and a zone
+   * ID to the instant given by the offset (Java 9 and later), false if it
+   * ignores the offset (Java 8).
+   */
+  private static final boolean OFFSET_WINS = ZonedDateTime
+      .parse("2017-11-05T01:30-06:00[America/Chicago]", DateTimeFormatter.ISO_ZONED_DATE_TIME).getOffset()
+      .getTotalSeconds() == -6 * 3600;
+
+  private static final int[] POWERS_OF_TEN = { 1, 10, 100, 1000, 10000, 100000, 1000000, 10000000, 100000000,
+      1000000000 };
+
+  private final String pattern;
+
+  private final DateTimeFormatter formatter;
+
+  private final int[] ops;
+
+  private final String[] literals;
+
+  /** Which fields the pattern contains (HAS_* bits) */
+  private final int fields;
+
+  /** False if the pattern has an element the compiled code cannot format */
+  private final boolean formatCompiled;
+
+  /** False if the pattern has an element the compiled code cannot parse */
+  private final boolean parseCompiled;
+
+  private final int maxLength;
+
+  private CompiledDateTimePattern(String pattern, DateTimeFormatter formatter, int[] ops, String[] literals,
+      int fields, boolean formatCompiled, boolean parseCompiled, int maxLength) {
+    this.pattern = pattern;
+    this.formatter = formatter;
+    this.ops = ops;
+    this.literals = literals;
+    this.fields = fields;
+    this.formatCompiled = formatCompiled;
+    this.parseCompiled = parseCompiled;
+    this.maxLength = maxLength;
+  }
+
+  /**
+   * Returns the compiled form of the specified pattern, compiling it on
+   * first use.
+   *
+   * @param pattern
+   *          The DateTimeFormatter pattern
+   *
+   * @return The CompiledDateTimePattern object.
+   *
+   * @throws IllegalArgumentException
+   *           If the pattern is bad (same as DateTimeFormatter.ofPattern)
+   */
+  public static CompiledDateTimePattern of(String pattern) {
+    CompiledDateTimePattern ret = CACHE.get(pattern);
+    if (ret == null) {
+      ret = compile(pattern);
+      if (CACHE.size() < MAX_CACHED_PATTERNS) {
+        CompiledDateTimePattern raced = CACHE.putIfAbsent(pattern, ret);
+        if (raced != null) {
+          ret = raced;
+        }
+      }
+    }
+    return ret;
+  }
+
+  /**
+   * Returns the pattern this object was compiled from.
+   *
+   * @return The pattern.
+   */
+  public String getPattern() {
+    return pattern;
+  }
+
+  /**
+   * Returns the DateTimeFormatter equivalent to this pattern.
+   *
+   * @return The DateTimeFormatter object.
+   */
+  public DateTimeFormatter getFormatter() {
+    return formatter;
+  }
+
+  /**
+   * Returns true if both formatting and parsing of this pattern run
+   * compiled code (as opposed to delegating to DateTimeFormatter).
+   *
+   * @return true if the pattern is fully compiled.
+   */
+  public boolean isCompiled() {
+    return formatCompiled && parseCompiled;
+  }
+
+  /**
+   * Formats the specified ZonedDateTime.
+   *
+   * @param zonedDateTime
+   *          The ZonedDateTime object
+   *
+   * @return The formatted String.
+   */
+  public String format(ZonedDateTime zonedDateTime) {
+    String ret = null;
+    if (formatCompiled) {
+      ret = format(zonedDateTime.getYear(), zonedDateTime.getMonthValue(), zonedDateTime.getDayOfMonth(),
+          zonedDateTime.getHour(), zonedDateTime.getMinute(), zonedDateTime.getSecond(), zonedDateTime.getNano(),
+          zonedDateTime.getOffset(), zonedDateTime.getZone(), DATE | TIME | HAS_OFFSET | HAS_ZONE);
+    }
+    return ret != null ? ret : formatter.format(zonedDateTime);
+  }
+
+  /**
+   * Formats the specified LocalDateTime.
+   *
+   * @param localDateTime
+   *          The LocalDateTime object
+   *
+   * @return The formatted String.
+   */
+  public String format(LocalDateTime localDateTime) {
+    String ret = null;
+    if (formatCompiled) {
+      ret = format(localDateTime.getYear(), localDateTime.getMonthValue(), localDateTime.getDayOfMonth(),
+          localDateTime.getHour(), localDateTime.getMinute(), localDateTime.getSecond(), localDateTime.getNano(),
+          null, null, DATE | TIME);
+    }
+    return ret != null ? ret : formatter.format(localDateTime);
+  }
+
+  /**
+   * Formats the specified LocalDate.
+   *
+   * @param localDate
+   *          The LocalDate object
+   *
+   * @return The formatted String.
+   */
+  public String format(LocalDate localDate) {
+    String ret = null;
+    if (formatCompiled) {
+      ret = format(localDate.getYear(), localDate.getMonthValue(), localDate.getDayOfMonth(), 0, 0, 0, 0, null, null,
+          DATE);
+    }
+    return ret != null ? ret : formatter.format(localDate);
+  }
+
+  /**
+   * Formats the specified temporal, using the compiled code for the
+   * ZonedDateTime, LocalDateTime and LocalDate types.
+   *
+   * @param temporal
+   *          The TemporalAccessor object
+   *
+   * @return The formatted String.
+   */
+  public String format(TemporalAccessor temporal) {
+    if (temporal instanceof ZonedDateTime) {
+      return format((ZonedDateTime) temporal);
+    }
+    if (temporal instanceof LocalDateTime) {
+      return format((LocalDateTime) temporal);
+    }
+    if (temporal instanceof LocalDate) {
+      return format((LocalDate) temporal);
+    }
+    return formatter.format(temporal);
+  }
+
+  /**
+   * Parses the specified text into a LocalDateTime.
+   *
+   * @param text
+   *          The text to parse
+   *
+   * @return The LocalDateTime object.
+   *
+   * @throws DateTimeParseException
+   *           If the text cannot be parsed.
+   */
+  public LocalDateTime parseLocalDateTime(CharSequence text) {
+    int[] parsed = (fields & DATE_TIME) == DATE_TIME ? parse(text) : null;
+    if (parsed == null) {
+      return LocalDateTime.parse(text, formatter);
+    }
+    return LocalDateTime.of(parsed[P_YEAR], parsed[P_MONTH], parsed[P_DAY], parsed[P_HOUR], parsed[P_MINUTE],
+        parsed[P_SECOND], parsed[P_NANO]);
+  }
+
+  /**
+   * Parses the specified text into a LocalDate.
+   *
+   * @param text
+   *          The text to parse
+   *
+   * @return The LocalDate object.
+   *
+   * @throws DateTimeParseException
+   *           If the text cannot be parsed.
+   */
+  public LocalDate parseLocalDate(CharSequence text) {
+    int[] parsed = (fields & DATE) == DATE ? parse(text) : null;
+    if (parsed == null) {
+      return LocalDate.parse(text, formatter);
+    }
+    return LocalDate.of(parsed[P_YEAR], parsed[P_MONTH], parsed[P_DAY]);
+  }
+
+  /**
+   * Parses the specified text into a ZonedDateTime. The pattern must
+   * contain an offset or a zone ID.
+   *
+   * @param text
+   *          The text to parse
+   *
+   * @return The ZonedDateTime object.
+   *
+   * @throws DateTimeParseException
+   *           If the text cannot be parsed.
+   */
+  public ZonedDateTime parseZonedDateTime(CharSequence text) {
+    int[] parsed = (fields & DATE_TIME) == DATE_TIME && (fields & (HAS_OFFSET | HAS_ZONE)) != 0 ? parse(text) : null;
+    if (parsed == null) {
+      return ZonedDateTime.parse(text, formatter);
+    }
+    LocalDateTime ldt = LocalDateTime.of(parsed[P_YEAR], parsed[P_MONTH], parsed[P_DAY], parsed[P_HOUR],
+        parsed[P_MINUTE], parsed[P_SECOND], parsed[P_NANO]);
+    if ((fields & HAS_ZONE) == 0) {
+      return ZonedDateTime.of(ldt, ZoneOffset.ofTotalSeconds(parsed[P_OFFSET]));
+    }
+    ZoneId zone = ZoneTextMatcher.regionIds().zone(parsed[P_ZONE]);
+    if ((fields & HAS_OFFSET) != 0 && OFFSET_WINS) {
+      return ZonedDateTime.ofInstant(ldt, ZoneOffset.ofTotalSeconds(parsed[P_OFFSET]), zone);
+    }
+    return ZonedDateTime.of(ldt, zone);
+  }
+
+  /**
+   * Runs the compiled ops, or returns null if a value is one the compiled
+   * code does not handle exactly like DateTimeFormatter.
+   */
+  private String format(int year, int month, int day, int hour, int minute, int second, int nano, ZoneOffset offset,
+      ZoneId zone, int available) {
+    if ((fields & ~available) != 0 || year < 1 || year > 9999) {
+      return null;
+    }
+    char[] buf = new char[maxLength];
+    int n = 0;
+    for (int i = 0; i < ops.length; i += 2) {
+      switch (ops[i]) {
+        case LITERAL:
+          String literal = literals[ops[i + 1]];
+          literal.getChars(0, literal.length(), buf, n);
+          n += literal.length();
+          break;
+        case YEAR_OF_ERA_4:
+        case YEAR_4:
+          n = writeDigits(buf, n, year, 4);
+          break;
+        case YEAR_OF_ERA_2:
+          n = writeDigits(buf, n, year % 100, 2);
+          break;
+        case MONTH_2:
+          n = writeDigits(buf, n, month, 2);
+          break;
+        case MONTH_1:
+          n = writeDigits(buf, n, month, month < 10 ? 1 : 2);
+          break;
+        case DAY_2:
+          n = writeDigits(buf, n, day, 2);
+          break;
+        case DAY_1:
+          n = writeDigits(buf, n, day, day < 10 ? 1 : 2);
+          break;
+        case HOUR_2:
+          n = writeDigits(buf, n, hour, 2);
+          break;
+        case HOUR_1:
+          n = writeDigits(buf, n, hour, hour < 10 ? 1 : 2);
+          break;
+        case MINUTE_2:
+          n = writeDigits(buf, n, minute, 2);
+          break;
+        case SECOND_2:
+          n = writeDigits(buf, n, second, 2);
+          break;
+        case FRACTION:
+          int digits = ops[i + 1];
+          n = writeDigits(buf, n, nano / POWERS_OF_TEN[9 - digits], digits);
+          break;
+        case OFFSET_Z:
+        case OFFSET:
+          int totalSeconds = offset.getTotalSeconds();
+          if (totalSeconds % 60 != 0) {
+            return null;
+          }
+          if (totalSeconds == 0 && ops[i] == OFFSET_Z) {
+            buf[n++] = 'Z';
+            break;
+          }
+          int absMinutes = Math.abs(totalSeconds / 60);
+          buf[n++] = totalSeconds < 0 ? '-' : '+';
+          n = writeDigits(buf, n, absMinutes / 60, 2);
+          buf[n++] = ':';
+          n = writeDigits(buf, n, absMinutes % 60, 2);
+          break;
+        case ZONE_ID:
+          String id = zone.getId();
+          if (n + id.length() > buf.length) {
+            char[] bigger = new char[n + id.length() + maxLength];
+            System.arraycopy(buf, 0, bigger, 0, n);
+            buf = bigger;
+          }
+          id.getChars(0, id.length(), buf, n);
+          n += id.length();
+          break;
+        default:
+          throw new IllegalStateException("Unknown opcode: " + ops[i]);
+      }
+    }
+    return new String(buf, 0, n);
+  }
+
+  private static int writeDigits(char[] buf, int n, int value, int width) {
+    for (int i = n + width - 1; i >= n; i--) {
+      buf[i] = (char) ('0' + value % 10);
+      value /= 10;
+    }
+    return n + width;
+  }
+
+  /**
+   * Runs the compiled ops against the text, or returns null if the text is
+   * not in the exact strict form the compiled code handles, in which case
+   * the caller must delegate to DateTimeFormatter.
+   */
+  private int[] parse(CharSequence text) {
+    if (!parseCompiled) {
+      return null;
+    }
+    int[] ret = new int[P_SIZE];
+    int length = text.length();
+    int pos = 0;
+    for (int i = 0; i < ops.length; i += 2) {
+      int op = ops[i];
+      if (op == LITERAL) {
+        String literal = literals[ops[i + 1]];
+        if (pos + literal.length() > length) {
+          return null;
+        }
+        for (int j = 0; j < literal.length(); j++) {
+          if (text.charAt(pos++) != literal.charAt(j)) {
+            return null;
+          }
+        }
+        continue;
+      }
+      if (op == OFFSET_Z || op == OFFSET) {
+        if (op == OFFSET_Z && pos < length && text.charAt(pos) == 'Z') {
+          pos++;
+          continue;
+        }
+        if (pos + 6 > length || text.charAt(pos + 3) != ':') {
+          return null;
+        }
+        char sign = text.charAt(pos);
+        int hours = readDigits(text, pos + 1, 2);
+        int minutes = readDigits(text, pos + 4, 2);
+        if ((sign != '+' && sign != '-') || hours < 0 || hours > 18 || minutes < 0 || minutes > 59
+            || (hours == 18 && minutes != 0)) {
+          return null;
+        }
+        ret[P_OFFSET] = (sign == '-' ? -1 : 1) * (hours * 3600 + minutes * 60);
+        pos += 6;
+        continue;
+      }
+      if (op == ZONE_ID) {
+        pos = parseZoneId(text, pos, ret);
+        if (pos < 0) {
+          return null;
+        }
+        continue;
+      }
+      int width = op == FRACTION ? ops[i + 1] : op == YEAR_OF_ERA_4 || op == YEAR_4 ? 4 : 2;
+      if (pos + width > length) {
+        return null;
+      }
+      int value = readDigits(text, pos, width);
+      if (value < 0) {
+        return null;
+      }
+      pos += width;
+      switch (op) {
+        case YEAR_OF_ERA_4:
+          ret[P_YEAR_OF_ERA] = value;
+          ret[P_YEAR] = value;
+          break;
+        case YEAR_OF_ERA_2:
+          ret[P_YEAR_OF_ERA] = 2000 + value;
+          ret[P_YEAR] = 2000 + value;
+          break;
+        case YEAR_4:
+          ret[P_YEAR] = value;
+          ret[P_YEAR_OF_ERA] = Integer.MAX_VALUE;
+          break;
+        case MONTH_2:
+          ret[P_MONTH] = value;
+          break;
+        case DAY_2:
+          ret[P_DAY] = value;
+          break;
+        case HOUR_2:
+          ret[P_HOUR] = value;
+          break;
+        case MINUTE_2:
+          ret[P_MINUTE] = value;
+          break;
+        case SECOND_2:
+          ret[P_SECOND] = value;
+          break;
+        case FRACTION:
+          ret[P_NANO] = value * POWERS_OF_TEN[9 - width];
+          break;
+        default:
+          return null;
+      }
+    }
+    if (pos != length || !valid(ret)) {
+      return null;
+    }
+    return ret;
+  }
+
+  /**
+   * Matches a region ID at pos and returns the position after it, or -1 for
+   * anything else. Offsets and the Z, UT, UTC and GMT prefixes, which
+   * DateTimeFormatter parses as offset-based zones, are left to it.
+   */
+  private static int parseZoneId(CharSequence text, int pos, int[] parsed) {
+    if (pos + 1 >= text.length()) {
+      return -1;
+    }
+    char c = text.charAt(pos);
+    char next = text.charAt(pos + 1);
+    if (c == '+' || c == '-' || (c == 'U' && next == 'T') || (c == 'G' && next == 'M')) {
+      return -1;
+    }
+    long found = ZoneTextMatcher.regionIds().find(text, pos);
+    if (found < 0) {
+      return -1;
+    }
+    parsed[P_ZONE] = (int) (found >>> 32);
+    return (int) found;
+  }
+
+  /**
+   * Strict range checks. Values DateTimeFormatter would reject or adjust
+   * (Feb 30, 24:00, year-of-era 0...) are left to DateTimeFormatter.
+   */
+  private boolean valid(int[] parsed) {
+    if ((fields & HAS_YEAR) != 0 && parsed[P_YEAR_OF_ERA] == 0) {
+      return false;
+    }
+    if ((fields & HAS_MONTH) != 0 && (parsed[P_MONTH] < 1 || parsed[P_MONTH] > 12)) {
+      return false;
+    }
+    if ((fields & HAS_DAY) != 0) {
+      int maxDay = (fields & HAS_MONTH) == 0 ? 31
+          : Month.of(parsed[P_MONTH]).length((fields & HAS_YEAR) != 0 && Year.isLeap(parsed[P_YEAR]));
+      if (parsed[P_DAY] < 1 || parsed[P_DAY] > maxDay) {
+        return false;
+      }
+    }
+    return parsed[P_HOUR] <= 23 && parsed[P_MINUTE] <= 59 && parsed[P_SECOND] <= 59;
+  }
+
+  /**
+   * Reads width ASCII digits, or returns -1 if any of them is not a digit.
+   */
+  private static int readDigits(CharSequence text, int pos, int width) {
+    int ret = 0;
+    for (int i = pos; i < pos + width; i++) {
+      int digit = text.charAt(i) - '0';
+      if (digit < 0 || digit > 9) {
+        return -1;
+      }
+      ret = ret * 10 + digit;
+    }
+    return ret;
+  }
+
+  private static CompiledDateTimePattern compile(String pattern) {
+    // Validates the pattern, and is the fallback for everything not compiled
+    DateTimeFormatter formatter = DateTimeFormatter.ofPattern(pattern);
+    List<Integer> ops = new ArrayList<>();
+    List<String> literals = new ArrayList<>();
+    int fields = 0;
+    boolean formatCompiled = true;
+    boolean parseCompiled = true;
+    int maxLength = 0;
+    StringBuilder literal = new StringBuilder();
+    for (int pos = 0; pos < pattern.length(); pos++) {
+      char c = pattern.charAt(pos);
+      if ((c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z')) {
+        int count = 1;
+        while (pos + 1 < pattern.length() && pattern.charAt(pos + 1) == c) {
+          count++;
+          pos++;
+        }
+        if (literal.length() > 0) {
+          addLiteral(ops, literals, literal);
+        }
+        int op = opcode(c, count);
+        if (op < 0) {
+          formatCompiled = false;
+          parseCompiled = false;
+          break;
+        }
+        if (op == MONTH_1 || op == DAY_1 || op == HOUR_1) {
+          // Variable width (or free-form) when parsing
+          parseCompiled = false;
+        }
+        fields |= field(op);
+        ops.add(op);
+        ops.add(op == FRACTION ? count : 0);
+        maxLength += op == ZONE_ID ? 32 : op == OFFSET_Z || op == OFFSET ? 6 : op == FRACTION ? count : 4;
+      } else if (c == '\'') {
+        int end = pattern.indexOf('\'', pos + 1);
+        if (end == pos + 1) {
+          // '' is an escaped single quote
+          literal.append('\'');
+          pos = end;
+          continue;
+        }
+        // DateTimeFormatter.ofPattern has already rejected unterminated quotes
+        while (true) {
+          literal.append(pattern, pos + 1, end);
+          if (end + 1 < pattern.length() && pattern.charAt(end + 1) == '\'') {
+            literal.append('\'');
+            pos = end + 1;
+            end = pattern.indexOf('\'', pos + 1);
+          } else {
+            pos = end;
+            break;
+          }
+        }
+      } else if (c == '[' || c == ']' || c == '{' || c == '}' || c == '#') {
+        // Optional sections and reserved characters
+        formatCompiled = false;
+        parseCompiled = false;
+        break;
+      } else {
+        literal.append(c);
+      }
+    }
+    if (literal.length() > 0) {
+      addLiteral(ops, literals, literal);
+    }
+    if ((fields & HAS_FRACTION) != 0 && (fields & HAS_SECOND) == 0) {
+      parseCompiled = false;
+    }
+    int[] opArray = new int[ops.size()];
+    for (int i = 0; i < opArray.length; i++) {
+      opArray[i] = ops.get(i);
+    }
+    for (String s : literals) {
+      maxLength += s.length();
+    }
+    return new CompiledDateTimePattern(pattern, formatter, opArray, literals.toArray(new String[literals.size()]),
+        fields, formatCompiled, parseCompiled, maxLength);
+  }
+
+  private static void addLiteral(List<Integer> ops, List<String> literals, StringBuilder literal) {
+    ops.add(LITERAL);
+    ops.add(literals.size());
+    literals.add(literal.toString());
+    literal.setLength(0);
+  }
+
+  /**
+   * Returns the opcode for a run of count pattern letters c, or -1 if the
+   * run is not compiled.
+   */
+  private static int opcode(char c, int count) {
+    switch (c) {
+      case 'y':
+        return count == 4 ? YEAR_OF_ERA_4 : count == 2 ? YEAR_OF_ERA_2 : -1;
+      case 'u':
+        return count == 4 ? YEAR_4 : -1;
+      case 'M':
+        return count == 2 ? MONTH_2 : count == 1 ? MONTH_1 : -1;
+      case 'd':
+        return count == 2 ? DAY_2 : count == 1 ? DAY_1 : -1;
+      case 'H':
+        return count == 2 ? HOUR_2 : count == 1 ? HOUR_1 : -1;
+      case 'm':
+        return count == 2 ? MINUTE_2 : -1;
+      case 's':
+        return count == 2 ? SECOND_2 : -1;
+      case 'S':
+        return count <= 9 ? FRACTION : -1;
+      case 'X':
+        return count == 3 ? OFFSET_Z : -1;
+      case 'x':
+        return count == 3 ? OFFSET : -1;
+      case 'V':
+        return count == 2 ? ZONE_ID : -1;
+      default:
+        return -1;
+    }
+  }
+
+  private static int field(int op) {
+    switch (op) {
+      case YEAR_OF_ERA_4:
+      case YEAR_OF_ERA_2:
+      case YEAR_4:
+        return HAS_YEAR;
+      case MONTH_2:
+      case MONTH_1:
+        return HAS_MONTH;
+      case DAY_2:
+      case DAY_1:
+        return HAS_DAY;
+      case HOUR_2:
+      case HOUR_1:
+        return HAS_HOUR;
+      case MINUTE_2:
+        return HAS_MINUTE;
+      case SECOND_2:
+        return HAS_SECOND;
+      case FRACTION:
+        return HAS_FRACTION;
+      case OFFSET_Z:
+      case OFFSET:
+        return HAS_OFFSET;
+      case ZONE_ID:
+        return HAS_ZONE;
+      default:
+        return 0;
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "CompiledDateTimePattern[" + pattern + (isCompiled() ? "" : ", partially compiled") + "]";
+  }
+
+}
@@ -0,0 +1,570 @@
+/*
+ * Copyright 2017 Makoto Consulting Group, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.makotojava.learn.recipe.datetime;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.DateTimeException;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Command-line tool that re-zones and re-formats timestamp columns of a
+ * CSV or TSV file.
+ *
+ * The input is read through an NIO channel in fixed-size chunks, each cut
+ * at the last line break that is not inside a quoted field. Chunks are
+ * converted in parallel and written out in their original order, with at
+ * most two chunks per worker in flight, so memory use is bounded by the
+ * chunk size no matter how large the file is.
+ *
+ * Fields that cannot be parsed are left unchanged and counted as errors.
+ *
+ * Usage (see {@link Options#USAGE}):
+ *
+ * <pre>
+ * java -jar DateTimeRecipe.jar --columns 2,created_at --header \
+ *     --from-pattern "yyyy-MM-dd HH:mm:ss" --from-zone UTC \
+ *     --to-pattern "yyyy-MM-dd'T'HH:mm:ssXXX" --to-zone America/Chicago \
+ *     --input events.csv --output events-chicago.csv
+ * </pre>
+ */
+public class CsvRezoneTool {
+
+  private static final byte LF = '\n';
+
+  private static final byte CR = '\r';
+
+  private final Options options;
+
+  private final DateTimeFormatter sourceFormatter;
+
+  private final DateTimeFormatter targetFormatter;
+
+  private final DateTimeUtils dateTimeUtils = new DateTimeUtils();
+
+  /**
+   * Creates a CsvRezoneTool with the specified options.
+   *
+   * @param options
+   *          The options. Not null.
+   *
+   * @throws IllegalArgumentException
+   *           If a pattern or zone is bad.
+   */
+  public CsvRezoneTool(Options options) {
+    this.options = options;
+    DateTimeFormatter source = DateTimeFormatter.ofPattern(options.fromPattern);
+    this.sourceFormatter = options.fromZone == null ? source : source.withZone(options.fromZone);
+    this.targetFormatter = DateTimeFormatter.ofPattern(options.toPattern);
+  }
+
+  /**
+   * Runs the tool from the command line. Statistics are reported on
+   * standard error.
+   *
+   * @param args
+   *          The command line arguments
+   */
+  public static void main(String[] args) {
+    Options options;
+    try {
+      options = Options.parse(args);
+    } catch (IllegalArgumentException e) {
+      System.err.println(e.getMessage());
+      System.err.println(Options.USAGE);
+      System.exit(2);
+      return;
+    }
+    try (ReadableByteChannel in = options.input == null ? Channels.newChannel(System.in)
+        : FileChannel.open(Paths.get(options.input), StandardOpenOption.READ);
+        WritableByteChannel out = options.output == null ? Channels.newChannel(System.out)
+            : FileChannel.open(Paths.get(options.output), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+      Stats stats = new CsvRezoneTool(options).run(in, out);
+      System.err.println(stats);
+      System.exit(stats.getErrors() == 0 ? 0 : 1);
+    } catch (IOException | RuntimeException e) {
+      System.err.println("Failed: " + e);
+      System.exit(3);
+    }
+  }
+
+  /**
+   * Streams the input channel to the output channel, converting the
+   * selected columns. Neither channel is closed.
+   *
+   * @param in
+   *          The channel to read from
+   * @param out
+   *          The channel to write to
+   *
+   * @return The Stats of the run.
+   *
+   * @throws IOException
+   *           If reading or writing fails
+   */
+  public Stats run(ReadableByteChannel in, WritableByteChannel out) throws IOException {
+    long startNanos = System.nanoTime();
+    Stats stats = new Stats();
+    ExecutorService executor = Executors.newFixedThreadPool(options.threads);
+    try {
+      ByteBuffer buffer = ByteBuffer.allocate(options.chunkSize);
+      Deque<Future<Chunk>> inFlight = new ArrayDeque<>();
+      int[] columns = null;
+      boolean eof = false;
+      while (!eof) {
+        eof = fill(in, buffer, stats);
+        int end = buffer.position();
+        int cut = eof ? end : lastLineBreak(buffer.array(), end);
+        if (cut < 0) {
+          // A single record longer than the buffer: grow it and read more
+          buffer = ByteBuffer.allocate(buffer.capacity() * 2).put(buffer.array(), 0, end);
+          continue;
+        }
+        int start = 0;
+        if (columns == null && end > 0) {
+          int headerEnd = options.header ? firstLineEnd(buffer.array(), cut) : 0;
+          columns = resolveColumns(buffer.array(), headerEnd);
+          writeFully(out, ByteBuffer.wrap(buffer.array(), 0, headerEnd));
+          stats.bytesOut += headerEnd;
+          start = headerEnd;
+        }
+        if (cut > start) {
+          final byte[] data = Arrays.copyOfRange(buffer.array(), start, cut);
+          final int[] selected = columns;
+          inFlight.add(executor.submit(new Callable<Chunk>() {
+            @Override
+            public Chunk call() {
+              return convert(data, selected);
+            }
+          }));
+        }
+        // Keep the partial record at the end for the next chunk
+        if (buffer.capacity() > options.chunkSize && end - cut < options.chunkSize) {
+          // Shrink back after an over-long record
+          buffer = ByteBuffer.allocate(options.chunkSize).put(buffer.array(), cut, end - cut);
+        } else {
+          System.arraycopy(buffer.array(), cut, buffer.array(), 0, end - cut);
+          ((Buffer) buffer).position(end - cut);
+        }
+        while (inFlight.size() >= options.threads * 2 || (eof && !inFlight.isEmpty())) {
+          drain(inFlight.poll(), out, stats);
+        }
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+    stats.elapsedNanos = System.nanoTime() - startNanos;
+    return stats;
+  }
+
+  private void drain(Future<Chunk> future, WritableByteChannel out, Stats stats) throws IOException {
+    Chunk chunk;
+    try {
+      chunk = future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while converting", e);
+    } catch (ExecutionException e) {
+      throw new IOException("Conversion failed", e.getCause());
+    }
+    stats.rows += chunk.rows;
+    stats.converted += chunk.converted;
+    stats.errors += chunk.errors;
+    stats.bytesOut += chunk.data.remaining();
+    writeFully(out, chunk.data);
+  }
+
+  /**
+   * Converts the complete records in data.
+   */
+  Chunk convert(byte[] data, int[] columns) {
+    Chunk ret = new Chunk();
+    String text = new String(data, StandardCharsets.UTF_8);
+    StringBuilder sb = new StringBuilder(text.length() + text.length() / 8);
+    FieldBounds fields = new FieldBounds();
+    int lineStart = 0;
+    while (lineStart < text.length()) {
+      int lineEnd = endOfRecord(text, lineStart);
+      int contentEnd = lineEnd;
+      if (contentEnd > lineStart && text.charAt(contentEnd - 1) == LF) {
+        contentEnd--;
+      }
+      if (contentEnd > lineStart && text.charAt(contentEnd - 1) == CR) {
+        contentEnd--;
+      }
+      splitFields(text, lineStart, contentEnd, fields);
+      int copied = lineStart;
+      for (int column : columns) {
+        if (column >= fields.count) {
+          continue;
+        }
+        String converted = convertField(text, fields.starts[column], fields.ends[column], ret);
+        if (converted != null) {
+          sb.append(text, copied, fields.starts[column]).append(converted);
+          copied = fields.ends[column];
+        }
+      }
+      sb.append(text, copied, lineEnd);
+      ret.rows++;
+      lineStart = lineEnd;
+    }
+    ret.data = ByteBuffer.wrap(sb.toString().getBytes(StandardCharsets.UTF_8));
+    return ret;
+  }
+
+  private String convertField(String text, int start, int end, Chunk chunk) {
+    boolean quoted = end - start >= 2 && text.charAt(start) == options.quote && text.charAt(end - 1) == options.quote;
+    String value = quoted ? text.substring(start + 1, end - 1) : text.substring(start, end);
+    if (value.isEmpty()) {
+      return null;
+    }
+    try {
+      ZonedDateTime zdt = dateTimeUtils.toZonedDateTime(value, sourceFormatter);
+      String ret = targetFormatter.format(options.toZone == null ? zdt : zdt.withZoneSameInstant(options.toZone));
+      chunk.converted++;
+      return quoted ? options.quote + ret + options.quote : ret;
+    } catch (DateTimeException e) {
+      chunk.errors++;
+      return null;
+    }
+  }
+
+  /**
+   * Fills fields with the [start, end) bounds of each field of the record.
+   */
+  private void splitFields(String text, int start, int end, FieldBounds fields) {
+    fields.count = 0;
+    boolean inQuotes = false;
+    int fieldStart = start;
+    for (int i = start; i < end; i++) {
+      char c = text.charAt(i);
+      if (c == options.quote) {
+        inQuotes = !inQuotes;
+      } else if (c == options.delimiter && !inQuotes) {
+        fields.add(fieldStart, i);
+        fieldStart = i + 1;
+      }
+    }
+    fields.add(fieldStart, end);
+  }
+
+  private int endOfRecord(String text, int start) {
+    boolean inQuotes = false;
+    for (int i = start; i < text.length(); i++) {
+      char c = text.charAt(i);
+      if (c == options.quote) {
+        inQuotes = !inQuotes;
+      } else if (c == LF && !inQuotes) {
+        return i + 1;
+      }
+    }
+    return text.length();
+  }
+
+  /**
+   * Returns the position just after the last line break outside a quoted
+   * field in data[0, length), or -1 if there is none. The chunk always
+   * starts at a record boundary, so the quote state starts out closed.
+   */
+  private int lastLineBreak(byte[] data, int length) {
+    boolean inQuotes = false;
+    int ret = -1;
+    for (int i = 0; i < length; i++) {
+      byte b = data[i];
+      if (b == options.quote) {
+        inQuotes = !inQuotes;
+      } else if (b == LF && !inQuotes) {
+        ret = i + 1;
+      }
+    }
+    return ret;
+  }
+
+  private int firstLineEnd(byte[] data, int length) {
+    for (int i = 0; i < length; i++) {
+      if (data[i] == LF) {
+        return i + 1;
+      }
+    }
+    return length;
+  }
+
+  private int[] resolveColumns(byte[] data, int headerEnd) {
+    List<String> names = new ArrayList<>();
+    if (options.header) {
+      String header = new String(data, 0, headerEnd, StandardCharsets.UTF_8).trim();
+      FieldBounds fields = new FieldBounds();
+      splitFields(header, 0, header.length(), fields);
+      for (int i = 0; i < fields.count; i++) {
+        String name = header.substring(fields.starts[i], fields.ends[i]);
+        boolean quoted = name.length() >= 2 && name.charAt(0) == options.quote
+            && name.charAt(name.length() - 1) == options.quote;
+        names.add(quoted ? name.substring(1, name.length() - 1) : name);
+      }
+    }
+    int[] ret = new int[options.columns.size()];
+    for (int i = 0; i < ret.length; i++) {
+      String selector = options.columns.get(i);
+      if (selector.matches("\\d+")) {
+        ret[i] = Integer.parseInt(selector) - 1;
+      } else {
+        ret[i] = names.indexOf(selector);
+        if (ret[i] < 0) {
+          throw new IllegalArgumentException("Column " + selector + " is not in the header: " + names);
+        }
+      }
+      if (ret[i] < 0) {
+        throw new IllegalArgumentException("Column numbers start at 1: " + selector);
+      }
+    }
+    // Fields are rewritten left to right, once each
+    return Arrays.stream(ret).distinct().sorted().toArray();
+  }
+
+  /**
+   * Reads until the buffer is full or the channel is exhausted.
+   *
+   * @return true if the end of the channel was reached.
+   */
+  private static boolean fill(ReadableByteChannel in, ByteBuffer buffer, Stats stats) throws IOException {
+    while (buffer.hasRemaining()) {
+      int read = in.read(buffer);
+      if (read < 0) {
+        return true;
+      }
+      stats.bytesIn += read;
+    }
+    return false;
+  }
+
+  private static void writeFully(WritableByteChannel out, ByteBuffer data) throws IOException {
+    while (data.hasRemaining()) {
+      out.write(data);
+    }
+  }
+
+  /**
+   * The [start, end) bounds of the fields of one record, reused across records.
+   */
+  private static final class FieldBounds {
+    private int[] starts = new int[16];
+    private int[] ends = new int[16];
+    private int count;
+
+    void add(int start, int end) {
+      if (count == starts.length) {
+        starts = Arrays.copyOf(starts, count * 2);
+        ends = Arrays.copyOf(ends, count * 2);
+      }
+      starts[count] = start;
+      ends[count] = end;
+      count++;
+    }
+  }
+
+  /**
+   * The converted form of one chunk of records.
+   */
+  static final class Chunk {
+    private ByteBuffer data;
+    private long rows;
+    private long converted;
+    private long errors;
+  }
+
+  /**
+   * Throughput and error counts of a run.
+   */
+  public static final class Stats {
+    private long rows;
+    private long converted;
+    private long errors;
+    private long bytesIn;
+    private long bytesOut;
+    private long elapsedNanos;
+
+    /** Number of records read, not counting the header */
+    public long getRows() {
+      return rows;
+    }
+
+    /** Number of fields converted */
+    public long getConverted() {
+      return converted;
+    }
+
+    /** Number of fields that could not be parsed and were left unchanged */
+    public long getErrors() {
+      return errors;
+    }
+
+    public long getBytesIn() {
+      return bytesIn;
+    }
+
+    public long getBytesOut() {
+      return bytesOut;
+    }
+
+    public long getElapsedNanos() {
+      return elapsedNanos;
+    }
+
+    /**
+     * Returns the input throughput in megabytes (10^6 bytes) per second.
+     *
+     * @return The throughput.
+     */
+    public double getMegabytesPerSecond() {
+      return elapsedNanos == 0 ? 0 : bytesIn * 1000.0 / elapsedNanos;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("rows=%d converted=%d errors=%d bytesIn=%d bytesOut=%d elapsed=%.3fs throughput=%.1fMB/s",
+          rows, converted, errors, bytesIn, bytesOut, elapsedNanos / 1e9, getMegabytesPerSecond());
+    }
+  }
+
+  /**
+   * The settings of a run.
+   */
+  public static final class Options {
+
+    static final String USAGE = "Usage: CsvRezoneTool --columns <n|name>[,...] --from-pattern <pattern>"
+        + " --to-pattern <pattern> [--from-zone <zone>] [--to-zone <zone>] [--header] [--tsv]"
+        + " [--input <file>] [--output <file>] [--threads <n>] [--chunk-size <bytes>]";
+
+    private List<String> columns = new ArrayList<>();
+    private String fromPattern;
+    private String toPattern;
+    private ZoneId fromZone;
+    private ZoneId toZone;
+    private boolean header;
+    private char delimiter = ',';
+    private char quote = '"';
+    private String input;
+    private String output;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private int chunkSize = 4 * 1024 * 1024;
+
+    /**
+     * Parses the command line arguments.
+     *
+     * @param args
+     *          The command line arguments
+     *
+     * @return The Options object.
+     *
+     * @throws IllegalArgumentException
+     *           If the arguments are bad.
+     */
+    public static Options parse(String... args) {
+      Options ret = new Options();
+      for (int i = 0; i < args.length; i++) {
+        String arg = args[i];
+        switch (arg) {
+          case "--header":
+            ret.header = true;
+            break;
+          case "--tsv":
+            ret.delimiter = '\t';
+            // TSV has no quoting
+            ret.quote = '\0';
+            break;
+          default:
+            if (i + 1 >= args.length) {
+              throw new IllegalArgumentException("Missing value for " + arg);
+            }
+            ret.set(arg, args[++i]);
+        }
+      }
+      if (ret.columns.isEmpty() || ret.fromPattern == null || ret.toPattern == null) {
+        throw new IllegalArgumentException("--columns, --from-pattern and --to-pattern are required");
+      }
+      return ret;
+    }
+
+    private void set(String name, String value) {
+      switch (name) {
+        case "--columns":
+          columns.addAll(Arrays.asList(value.split(",")));
+          break;
+        case "--from-pattern":
+          fromPattern = value;
+          break;
+        case "--to-pattern":
+          toPattern = value;
+          break;
+        case "--from-zone":
+          fromZone = ZoneIds.of(value);
+          break;
+        case "--to-zone":
+          toZone = ZoneIds.of(value);
+          break;
+        case "--input":
+          input = "-".equals(value) ? null : value;
+          break;
+        case "--output":
+          output = "-".equals(value) ? null : value;
+          break;
+        case "--threads":
+          threads = positive(name, value);
+          break;
+        case "--chunk-size":
+          chunkSize = positive(name, value);
+          break;
+        default:
+          throw new IllegalArgumentException("Unknown option: " + name);
+      }
+    }
+
+    private static int positive(String name, String value) {
+      int ret;
+      try {
+        ret = Integer.parseInt(value);
+      } catch (NumberFormatException e) {
+        throw new IllegalArgumentException(name + " must be a number: " + value);
+      }
+      if (ret <= 0) {
+        throw new IllegalArgumentException(name + " must be positive: " + value);
+      }
+      return ret;
+    }
+  }
+
+}
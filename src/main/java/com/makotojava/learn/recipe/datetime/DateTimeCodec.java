@@ -0,0 +1,474 @@
+/*
+ * Copyright 2017 Makoto Consulting Group, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.makotojava.learn.recipe.datetime;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A compact binary encoding of Instant, LocalDateTime and ZonedDateTime
+ * values, read and written directly on ByteBuffers.
+ *
+ * A point in time is written as one varint holding the zig-zag encoded
+ * epoch-second shifted left by two bits, the low bits telling the
+ * precision of the fraction that follows: none, milliseconds, microseconds
+ * or nanoseconds, itself written as a varint. A millisecond-precision
+ * timestamp from this century takes 7 bytes, a whole second 5.
+ * LocalDateTimes use the same layout with their epoch-second at UTC.
+ *
+ * A ZonedDateTime is its instant followed by a zone tag varint:
+ * <ul>
+ * <li>0: the zone is a ZoneOffset, and its packed offset follows (the
+ * zig-zag offset in 15 minute units shifted left by one, or in seconds
+ * with the low bit set)</li>
+ * <li>1: a region ID follows, as a varint length and UTF-8 bytes</li>
+ * <li>n &gt;= 2: the zone is entry n - 2 of the codec's zone dictionary</li>
+ * </ul>
+ * The offset of a region zone is not written: it is the one the zone's
+ * rules give for the instant, so values round-trip exactly. Writer and
+ * reader must use the same dictionary.
+ *
+ * The bulk methods write a count followed by zig-zag deltas from the
+ * previous value, so sorted timestamps take 1-3 bytes each.
+ *
+ * A DateTimeCodec is immutable and thread safe. Writing past the end of a
+ * buffer throws BufferOverflowException, and reading past it
+ * BufferUnderflowException, both leaving the buffer position undefined.
+ * Malformed input throws IllegalArgumentException.
+ */
+public final class DateTimeCodec {
+
+  private static final int PRECISION_SECONDS = 0;
+  private static final int PRECISION_MILLIS = 1;
+  private static final int PRECISION_MICROS = 2;
+  private static final int PRECISION_NANOS = 3;
+
+  private static final int TAG_OFFSET = 0;
+  private static final int TAG_INLINE_ID = 1;
+  private static final int TAG_FIRST_DICTIONARY = 2;
+
+  private static final int OFFSET_UNIT_SECONDS = 900;
+
+  private final ZoneId[] dictionary;
+
+  private final Map<ZoneId, Integer> dictionaryTags = new HashMap<>();
+
+  /**
+   * Creates a DateTimeCodec with no zone dictionary: region zones are
+   * written inline.
+   */
+  public DateTimeCodec() {
+    this.dictionary = new ZoneId[0];
+  }
+
+  /**
+   * Creates a DateTimeCodec with the specified zone dictionary. Zones in
+   * the dictionary are written as a one or two byte index.
+   *
+   * @param zoneDictionary
+   *          The zones, in a fixed order that the reader also uses. Not
+   *          null, no duplicates.
+   */
+  public DateTimeCodec(Collection<ZoneId> zoneDictionary) {
+    this.dictionary = zoneDictionary.toArray(new ZoneId[zoneDictionary.size()]);
+    for (int i = 0; i < dictionary.length; i++) {
+      if (dictionaryTags.put(dictionary[i], TAG_FIRST_DICTIONARY + i) != null) {
+        throw new IllegalArgumentException("Duplicate zone in dictionary: " + dictionary[i]);
+      }
+    }
+  }
+
+  /**
+   * Returns the zone dictionary.
+   *
+   * @return A copy of the dictionary
+   */
+  public ZoneId[] getZoneDictionary() {
+    return Arrays.copyOf(dictionary, dictionary.length);
+  }
+
+  /**
+   * Writes an instant given as epoch-second and nano-of-second.
+   *
+   * @param buffer
+   *          The buffer to write to, at its position
+   * @param epochSecond
+   *          The seconds since the epoch
+   * @param nano
+   *          The nano-of-second, 0 to 999,999,999
+   */
+  public void writeInstant(ByteBuffer buffer, long epochSecond, int nano) {
+    int precision;
+    int fraction;
+    if (nano == 0) {
+      precision = PRECISION_SECONDS;
+      fraction = 0;
+    } else if (nano % 1_000_000 == 0) {
+      precision = PRECISION_MILLIS;
+      fraction = nano / 1_000_000;
+    } else if (nano % 1_000 == 0) {
+      precision = PRECISION_MICROS;
+      fraction = nano / 1_000;
+    } else {
+      precision = PRECISION_NANOS;
+      fraction = nano;
+    }
+    writeVarLong(buffer, (zigZag(epochSecond) << 2) | precision);
+    if (precision != PRECISION_SECONDS) {
+      writeVarLong(buffer, fraction);
+    }
+  }
+
+  /**
+   * Writes an Instant.
+   *
+   * @param buffer
+   *          The buffer to write to, at its position
+   * @param instant
+   *          The Instant. Not null.
+   */
+  public void writeInstant(ByteBuffer buffer, Instant instant) {
+    writeInstant(buffer, instant.getEpochSecond(), instant.getNano());
+  }
+
+  /**
+   * Writes an instant given in milliseconds since the epoch.
+   *
+   * @param buffer
+   *          The buffer to write to, at its position
+   * @param epochMilli
+   *          The milliseconds since the epoch
+   */
+  public void writeEpochMilli(ByteBuffer buffer, long epochMilli) {
+    writeInstant(buffer, Math.floorDiv(epochMilli, 1000), (int) Math.floorMod(epochMilli, 1000) * 1_000_000);
+  }
+
+  /**
+   * Reads an Instant.
+   *
+   * @param buffer
+   *          The buffer to read from, at its position
+   *
+   * @return The Instant object
+   */
+  public Instant readInstant(ByteBuffer buffer) {
+    long header = readVarLong(buffer);
+    return instant(unZigZag(header >>> 2), readNano(buffer, (int) header & 3));
+  }
+
+  /**
+   * Reads an instant as milliseconds since the epoch, without creating an
+   * Instant. Any precision finer than milliseconds is truncated, as
+   * Instant.toEpochMilli() does.
+   *
+   * @param buffer
+   *          The buffer to read from, at its position
+   *
+   * @return The milliseconds since the epoch
+   */
+  public long readEpochMilli(ByteBuffer buffer) {
+    long header = readVarLong(buffer);
+    long epochSecond = unZigZag(header >>> 2);
+    int nano = readNano(buffer, (int) header & 3);
+    try {
+      return Math.addExact(Math.multiplyExact(epochSecond, 1000L), nano / 1_000_000);
+    } catch (ArithmeticException e) {
+      throw new IllegalArgumentException("Epoch-second out of the millisecond range: " + epochSecond, e);
+    }
+  }
+
+  /**
+   * Writes a LocalDateTime.
+   *
+   * @param buffer
+   *          The buffer to write to, at its position
+   * @param localDateTime
+   *          The LocalDateTime. Not null.
+   */
+  public void writeLocalDateTime(ByteBuffer buffer, LocalDateTime localDateTime) {
+    writeInstant(buffer, localDateTime.toEpochSecond(ZoneOffset.UTC), localDateTime.getNano());
+  }
+
+  /**
+   * Reads a LocalDateTime.
+   *
+   * @param buffer
+   *          The buffer to read from, at its position
+   *
+   * @return The LocalDateTime object
+   */
+  public LocalDateTime readLocalDateTime(ByteBuffer buffer) {
+    long header = readVarLong(buffer);
+    return localDateTime(unZigZag(header >>> 2), readNano(buffer, (int) header & 3), ZoneOffset.UTC);
+  }
+
+  /**
+   * Writes a ZonedDateTime.
+   *
+   * @param buffer
+   *          The buffer to write to, at its position
+   * @param zonedDateTime
+   *          The ZonedDateTime. Not null.
+   */
+  public void writeZonedDateTime(ByteBuffer buffer, ZonedDateTime zonedDateTime) {
+    writeInstant(buffer, zonedDateTime.toEpochSecond(), zonedDateTime.getNano());
+    writeZone(buffer, zonedDateTime.getZone());
+  }
+
+  /**
+   * Reads a ZonedDateTime. A ZoneOffset zone is applied directly to the
+   * local date-time; a region zone needs an Instant to look up its offset,
+   * since ZoneRules has no epoch-second lookup.
+   *
+   * @param buffer
+   *          The buffer to read from, at its position
+   *
+   * @return The ZonedDateTime object
+   */
+  public ZonedDateTime readZonedDateTime(ByteBuffer buffer) {
+    long header = readVarLong(buffer);
+    long epochSecond = unZigZag(header >>> 2);
+    int nano = readNano(buffer, (int) header & 3);
+    ZoneId zone = readZone(buffer);
+    ZoneOffset offset = zone instanceof ZoneOffset ? (ZoneOffset) zone
+        : zone.getRules().getOffset(instant(epochSecond, nano));
+    return ZonedDateTime.ofInstant(localDateTime(epochSecond, nano, offset), offset, zone);
+  }
+
+  /**
+   * Writes a ZoneId as a zone tag.
+   *
+   * @param buffer
+   *          The buffer to write to, at its position
+   * @param zone
+   *          The ZoneId. Not null.
+   */
+  public void writeZone(ByteBuffer buffer, ZoneId zone) {
+    if (zone instanceof ZoneOffset) {
+      int totalSeconds = ((ZoneOffset) zone).getTotalSeconds();
+      buffer.put((byte) TAG_OFFSET);
+      if (totalSeconds % OFFSET_UNIT_SECONDS == 0) {
+        writeVarLong(buffer, zigZag(totalSeconds / OFFSET_UNIT_SECONDS) << 1);
+      } else {
+        writeVarLong(buffer, (zigZag(totalSeconds) << 1) | 1);
+      }
+      return;
+    }
+    Integer tag = dictionaryTags.get(zone);
+    if (tag != null) {
+      writeVarLong(buffer, tag);
+    } else {
+      byte[] id = zone.getId().getBytes(StandardCharsets.UTF_8);
+      buffer.put((byte) TAG_INLINE_ID);
+      writeVarLong(buffer, id.length);
+      buffer.put(id);
+    }
+  }
+
+  /**
+   * Reads a ZoneId written by {@link #writeZone(ByteBuffer, ZoneId)}.
+   *
+   * @param buffer
+   *          The buffer to read from, at its position
+   *
+   * @return The ZoneId object
+   */
+  public ZoneId readZone(ByteBuffer buffer) {
+    long tag = readVarLong(buffer);
+    if (tag == TAG_OFFSET) {
+      long packed = readVarLong(buffer);
+      long value = unZigZag(packed >>> 1);
+      long totalSeconds = (packed & 1) == 0 ? value * OFFSET_UNIT_SECONDS : value;
+      if (Math.abs(totalSeconds) > 18 * 3600) {
+        throw new IllegalArgumentException("Invalid zone offset: " + totalSeconds + "s");
+      }
+      return ZoneOffset.ofTotalSeconds((int) totalSeconds);
+    } else if (tag == TAG_INLINE_ID) {
+      int length = (int) readVarLong(buffer);
+      if (length < 0 || length > buffer.remaining()) {
+        throw new IllegalArgumentException("Invalid zone ID length: " + length);
+      }
+      byte[] id = new byte[length];
+      buffer.get(id);
+      String zoneId = new String(id, StandardCharsets.UTF_8);
+      try {
+        return ZoneIds.of(zoneId);
+      } catch (DateTimeException e) {
+        throw new IllegalArgumentException("Invalid zone ID: " + zoneId, e);
+      }
+    } else if (tag >= TAG_FIRST_DICTIONARY && tag - TAG_FIRST_DICTIONARY < dictionary.length) {
+      return dictionary[(int) (tag - TAG_FIRST_DICTIONARY)];
+    }
+    throw new IllegalArgumentException("Zone tag " + tag + " is not in the dictionary of " + dictionary.length
+        + " zones");
+  }
+
+  /**
+   * Writes epoch-millisecond values as a count followed by zig-zag deltas
+   * from the previous value (the first from 0).
+   *
+   * @param buffer
+   *          The buffer to write to, at its position
+   * @param epochMillis
+   *          The values
+   * @param offset
+   *          The index of the first value to write
+   * @param length
+   *          The number of values to write
+   */
+  public void writeEpochMillis(ByteBuffer buffer, long[] epochMillis, int offset, int length) {
+    writeVarLong(buffer, length);
+    long previous = 0;
+    for (int i = offset; i < offset + length; i++) {
+      writeVarLong(buffer, zigZag(epochMillis[i] - previous));
+      previous = epochMillis[i];
+    }
+  }
+
+  /**
+   * Reads epoch-millisecond values written by
+   * {@link #writeEpochMillis(ByteBuffer, long[], int, int)}.
+   *
+   * @param buffer
+   *          The buffer to read from, at its position
+   *
+   * @return A new array of the values
+   */
+  public long[] readEpochMillis(ByteBuffer buffer) {
+    long[] ret = new long[readCount(buffer)];
+    long previous = 0;
+    for (int i = 0; i < ret.length; i++) {
+      previous += unZigZag(readVarLong(buffer));
+      ret[i] = previous;
+    }
+    return ret;
+  }
+
+  /**
+   * Writes Instants as a count followed by, for each value, the delta of
+   * its epoch-second from the previous value in the instant layout.
+   *
+   * @param buffer
+   *          The buffer to write to, at its position
+   * @param instants
+   *          The Instants. No nulls.
+   */
+  public void writeInstants(ByteBuffer buffer, Instant[] instants) {
+    writeVarLong(buffer, instants.length);
+    long previous = 0;
+    for (Instant instant : instants) {
+      writeInstant(buffer, instant.getEpochSecond() - previous, instant.getNano());
+      previous = instant.getEpochSecond();
+    }
+  }
+
+  /**
+   * Reads Instants written by {@link #writeInstants(ByteBuffer, Instant[])}.
+   *
+   * @param buffer
+   *          The buffer to read from, at its position
+   *
+   * @return A new array of the Instants
+   */
+  public Instant[] readInstants(ByteBuffer buffer) {
+    Instant[] ret = new Instant[readCount(buffer)];
+    long previous = 0;
+    for (int i = 0; i < ret.length; i++) {
+      long header = readVarLong(buffer);
+      previous += unZigZag(header >>> 2);
+      ret[i] = instant(previous, readNano(buffer, (int) header & 3));
+    }
+    return ret;
+  }
+
+  private static Instant instant(long epochSecond, int nano) {
+    try {
+      return Instant.ofEpochSecond(epochSecond, nano);
+    } catch (DateTimeException e) {
+      throw new IllegalArgumentException("Epoch-second out of the Instant range: " + epochSecond, e);
+    }
+  }
+
+  private static LocalDateTime localDateTime(long epochSecond, int nano, ZoneOffset offset) {
+    try {
+      return LocalDateTime.ofEpochSecond(epochSecond, nano, offset);
+    } catch (DateTimeException e) {
+      throw new IllegalArgumentException("Epoch-second out of the LocalDateTime range: " + epochSecond, e);
+    }
+  }
+
+  private static int readCount(ByteBuffer buffer) {
+    long count = readVarLong(buffer);
+    // Every value takes at least one byte
+    if (count < 0 || count > buffer.remaining()) {
+      throw new IllegalArgumentException("Invalid value count: " + count);
+    }
+    return (int) count;
+  }
+
+  private static int readNano(ByteBuffer buffer, int precision) {
+    if (precision == PRECISION_SECONDS) {
+      return 0;
+    }
+    long fraction = readVarLong(buffer);
+    long nano = fraction < 0 || fraction > 999_999_999 ? -1
+        : precision == PRECISION_MILLIS ? fraction * 1_000_000
+            : precision == PRECISION_MICROS ? fraction * 1_000 : fraction;
+    if (nano < 0 || nano > 999_999_999) {
+      throw new IllegalArgumentException("Invalid fraction of second: " + fraction);
+    }
+    return (int) nano;
+  }
+
+  private static long zigZag(long value) {
+    return (value << 1) ^ (value >> 63);
+  }
+
+  private static long unZigZag(long value) {
+    return (value >>> 1) ^ -(value & 1);
+  }
+
+  private static void writeVarLong(ByteBuffer buffer, long value) {
+    while ((value & ~0x7FL) != 0) {
+      buffer.put((byte) ((value & 0x7F) | 0x80));
+      value >>>= 7;
+    }
+    buffer.put((byte) value);
+  }
+
+  private static long readVarLong(ByteBuffer buffer) {
+    long ret = 0;
+    for (int shift = 0; shift < 64; shift += 7) {
+      byte b = buffer.get();
+      ret |= (long) (b & 0x7F) << shift;
+      if (b >= 0) {
+        return ret;
+      }
+    }
+    throw new IllegalArgumentException("Malformed varint");
+  }
+
+}
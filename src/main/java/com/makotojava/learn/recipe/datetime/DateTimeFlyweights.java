@@ -0,0 +1,241 @@
+/*
+ * Copyright 2017 Makoto Consulting Group, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.makotojava.learn.recipe.datetime;
+
+import java.time.LocalDate;
+import java.time.Month;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.chrono.IsoChronology;
+import java.time.temporal.ChronoField;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Shared instances of LocalDate, ZoneOffset and ZoneId values, so that
+ * code holding millions of dates keeps one object per distinct value.
+ *
+ * Dates in the hot window of years {@value #FIRST_CACHED_YEAR} to
+ * {@value #LAST_CACHED_YEAR} come from an array indexed by epoch-day and
+ * filled lock-free on first use; a hit is an array read, with no
+ * allocation. Dates outside the window are returned as is, unless a
+ * bounded fallback cache has been turned on with
+ * {@link #enableFallback(int)}.
+ *
+ * LocalDate is immutable and value-based, so sharing instances changes
+ * nothing except identity, which callers must not rely on anyway.
+ */
+public final class DateTimeFlyweights {
+
+  public static final int FIRST_CACHED_YEAR = 1900;
+
+  public static final int LAST_CACHED_YEAR = 2099;
+
+  private static final long DAYS_0000_TO_1970 = 719_528L;
+
+  private static final long FIRST_CACHED_EPOCH_DAY = epochDay(FIRST_CACHED_YEAR, 1, 1);
+
+  private static final AtomicReferenceArray<LocalDate> DATES = new AtomicReferenceArray<>(
+      (int) (epochDay(LAST_CACHED_YEAR + 1, 1, 1) - FIRST_CACHED_EPOCH_DAY));
+
+  private static final ConcurrentMap<LocalDate, LocalDate> FALLBACK = new ConcurrentHashMap<>();
+
+  private static volatile int fallbackCapacity;
+
+  private DateTimeFlyweights() {
+    // Static methods only
+  }
+
+  /**
+   * Turns on the fallback cache for dates outside the hot window, holding
+   * at most the specified number of dates. Once it is full, further dates
+   * are returned uncached. 0 turns it off again and empties it.
+   *
+   * @param maxEntries
+   *          The capacity of the fallback cache. Not negative.
+   */
+  public static void enableFallback(int maxEntries) {
+    if (maxEntries < 0) {
+      throw new IllegalArgumentException("Fallback capacity cannot be negative: " + maxEntries);
+    }
+    fallbackCapacity = maxEntries;
+    if (maxEntries == 0) {
+      FALLBACK.clear();
+    }
+  }
+
+  /**
+   * Returns the shared LocalDate for the specified epoch-day. Same value as
+   * LocalDate.ofEpochDay(epochDay).
+   *
+   * @param epochDay
+   *          The number of days since 1970-01-01
+   *
+   * @return The LocalDate object.
+   *
+   * @throws java.time.DateTimeException
+   *           If the epoch-day is outside the LocalDate range
+   */
+  public static LocalDate localDate(long epochDay) {
+    long index = epochDay - FIRST_CACHED_EPOCH_DAY;
+    if (index >= 0 && index < DATES.length()) {
+      LocalDate ret = DATES.get((int) index);
+      if (ret == null) {
+        ret = LocalDate.ofEpochDay(epochDay);
+        if (!DATES.compareAndSet((int) index, null, ret)) {
+          ret = DATES.get((int) index);
+        }
+      }
+      return ret;
+    }
+    // Java 8's ofEpochDay overflows instead of rejecting far out of range values
+    ChronoField.EPOCH_DAY.checkValidValue(epochDay);
+    return internFallback(LocalDate.ofEpochDay(epochDay));
+  }
+
+  /**
+   * Returns the shared LocalDate for the specified year, month and day.
+   * Same value and exceptions as LocalDate.of(year, month, dayOfMonth).
+   *
+   * @param year
+   *          The year
+   * @param month
+   *          The month of the year (1 = January, ..., 12 = December)
+   * @param dayOfMonth
+   *          The day of the month
+   *
+   * @return The LocalDate object.
+   */
+  public static LocalDate localDate(int year, int month, int dayOfMonth) {
+    ChronoField.YEAR.checkValidValue(year);
+    ChronoField.MONTH_OF_YEAR.checkValidValue(month);
+    ChronoField.DAY_OF_MONTH.checkValidValue(dayOfMonth);
+    if (dayOfMonth > 28 && dayOfMonth > lengthOfMonth(year, month)) {
+      // Let LocalDate report the invalid date
+      return LocalDate.of(year, month, dayOfMonth);
+    }
+    return localDate(epochDay(year, month, dayOfMonth));
+  }
+
+  /**
+   * Returns the shared LocalDate equal to the specified one.
+   *
+   * @param date
+   *          The date. Not null.
+   *
+   * @return The shared LocalDate, or date itself if it is not cached
+   */
+  public static LocalDate intern(LocalDate date) {
+    long index = date.toEpochDay() - FIRST_CACHED_EPOCH_DAY;
+    if (index >= 0 && index < DATES.length()) {
+      LocalDate ret = DATES.get((int) index);
+      if (ret == null && !DATES.compareAndSet((int) index, null, date)) {
+        ret = DATES.get((int) index);
+      }
+      return ret == null ? date : ret;
+    }
+    return internFallback(date);
+  }
+
+  /**
+   * Returns the shared ZoneOffset equal to the specified one. ZoneOffset
+   * already caches offsets that are whole quarter hours; other offsets are
+   * returned as is.
+   *
+   * @param offset
+   *          The offset. Not null.
+   *
+   * @return The shared ZoneOffset, or offset itself
+   */
+  public static ZoneOffset intern(ZoneOffset offset) {
+    return ZoneOffset.ofTotalSeconds(offset.getTotalSeconds());
+  }
+
+  /**
+   * Returns the shared ZoneId equal to the specified one: the ZoneIds
+   * cache entry for region IDs, or the shared ZoneOffset.
+   *
+   * @param zone
+   *          The zone. Not null.
+   *
+   * @return The shared ZoneId
+   */
+  public static ZoneId intern(ZoneId zone) {
+    if (zone instanceof ZoneOffset) {
+      return intern((ZoneOffset) zone);
+    }
+    return ZoneIds.of(zone.getId());
+  }
+
+  private static LocalDate internFallback(LocalDate date) {
+    if (fallbackCapacity == 0) {
+      return date;
+    }
+    LocalDate ret = FALLBACK.get(date);
+    if (ret == null) {
+      if (FALLBACK.size() >= fallbackCapacity) {
+        return date;
+      }
+      ret = FALLBACK.putIfAbsent(date, date);
+      if (ret == null) {
+        ret = date;
+      }
+    }
+    return ret;
+  }
+
+  /**
+   * Returns the epoch-day of a valid ISO date, without creating a LocalDate.
+   * Same as LocalDate.of(year, month, dayOfMonth).toEpochDay().
+   */
+  static long epochDay(int year, int month, int dayOfMonth) {
+    long y = year;
+    long m = month;
+    long total = 365 * y;
+    if (y >= 0) {
+      total += (y + 3) / 4 - (y + 99) / 100 + (y + 399) / 400;
+    } else {
+      total -= y / -4 - y / -100 + y / -400;
+    }
+    total += (367 * m - 362) / 12;
+    total += dayOfMonth - 1;
+    if (m > 2) {
+      total--;
+      if (!IsoChronology.INSTANCE.isLeapYear(year)) {
+        total--;
+      }
+    }
+    return total - DAYS_0000_TO_1970;
+  }
+
+  /**
+   * Returns the number of days in the specified month.
+   */
+  static int lengthOfMonth(int year, int month) {
+    return Month.of(month).length(IsoChronology.INSTANCE.isLeapYear(year));
+  }
+
+  /**
+   * Returns the ISO day-of-week (1 = Monday, ..., 7 = Sunday) of an
+   * epoch-day.
+   */
+  static int dayOfWeek(long epochDay) {
+    // 1970-01-01 was a Thursday
+    return (int) Math.floorMod(epochDay + 3, 7) + 1;
+  }
+
+}
@@ -25,8 +25,8 @@ import java.time.ZoneOffset;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoField;
 import java.time.temporal.ChronoUnit;
-import java.time.temporal.TemporalAdjusters;
 import java.util.Date;
 
 /**
@@ -38,6 +38,86 @@ import java.util.Date;
  */
 public class DateTimeUtils {
 
+  private final CachedClock clock;
+
+  /**
+   * Creates a DateTimeUtils that reads "now" from the system clock.
+   */
+  public DateTimeUtils() {
+    this(CachedClock.precise());
+  }
+
+  /**
+   * Creates a DateTimeUtils that reads "now" from the specified clock.
+   *
+   * @param clock
+   *          The clock to use for the current* methods. Not null.
+   */
+  public DateTimeUtils(CachedClock clock) {
+    if (clock == null) {
+      throw new IllegalArgumentException("CachedClock argument cannot be null!");
+    }
+    this.clock = clock;
+  }
+
+  /**
+   * Returns the current number of milliseconds since the Epoch,
+   * according to this object's clock.
+   *
+   * @return The current time in milliseconds.
+   */
+  public long currentTimeMillis() {
+    return clock.currentTimeMillis();
+  }
+
+  /**
+   * Returns the current LocalDate at the specified time zone,
+   * according to this object's clock.
+   *
+   * @param timeZoneId
+   *          The time zone ID
+   * @return The LocalDate object
+   */
+  public LocalDate currentLocalDate(ZoneId timeZoneId) {
+    return clock.currentLocalDate(timeZoneId);
+  }
+
+  /**
+   * Same as {@link #currentLocalDate(ZoneId)},
+   * with the time zone given by its ID and resolved through {@link ZoneIds}.
+   * 
+   * @param timeZoneId
+   *          The time zone ID, e.g. "America/Chicago"
+   * @return The LocalDate object
+   */
+  public LocalDate currentLocalDate(String timeZoneId) {
+    return currentLocalDate(ZoneIds.of(timeZoneId));
+  }
+
+  /**
+   * Returns the current LocalDateTime (truncated to the second) at the
+   * specified time zone, according to this object's clock.
+   *
+   * @param timeZoneId
+   *          The time zone ID
+   * @return The LocalDateTime object
+   */
+  public LocalDateTime currentLocalDateTime(ZoneId timeZoneId) {
+    return clock.localFields(timeZoneId).toLocalDateTime();
+  }
+
+  /**
+   * Same as {@link #currentLocalDateTime(ZoneId)},
+   * with the time zone given by its ID and resolved through {@link ZoneIds}.
+   * 
+   * @param timeZoneId
+   *          The time zone ID, e.g. "America/Chicago"
+   * @return The LocalDateTime object
+   */
+  public LocalDateTime currentLocalDateTime(String timeZoneId) {
+    return currentLocalDateTime(ZoneIds.of(timeZoneId));
+  }
+
   /**
    * Creates a Date object representing the instant corresponding
    * to the specified Instant.
@@ -67,6 +147,21 @@ public class DateTimeUtils {
     return new Date(ZonedDateTime.ofLocal(localDateTime, timeZoneId, null).toInstant().toEpochMilli());
   }
 
+  /**
+   * Same as {@link #toDate(LocalDateTime, ZoneId)},
+   * with the time zone given by its ID and resolved through {@link ZoneIds}.
+   * 
+   * @param localDateTime
+   *          The LocalDateTime from which the Date is
+   *          to be created
+   * @param timeZoneId
+   *          The time zone ID, e.g. "America/Chicago"
+   * @return Date - the JDK Date object.
+   */
+  public Date toDate(LocalDateTime localDateTime, String timeZoneId) {
+    return toDate(localDateTime, ZoneIds.of(timeZoneId));
+  }
+
   /**
    * Creates a Date object representing the instant corresponding
    * to the specified number of milliseconds since the Epoch.
@@ -103,6 +198,29 @@ public class DateTimeUtils {
     return new Date(ldt.toInstant(ZoneOffset.UTC).toEpochMilli());
   }
 
+  /**
+   * Creates a Date object from the specified String representation
+   * (if possible), using the specified format pattern. Assumes UTC
+   * as the time zone. Patterns are compiled once and cached.
+   * 
+   * @param dateTimeString
+   *          The string representation of the date/time
+   * @param formatPattern
+   *          The DateTimeFormatter pattern to use
+   * 
+   * @return - the JDK Date object.
+   * 
+   * @throws IllegalArgumentException
+   *           If pattern is bad
+   * 
+   * @throws DateTimeParseException
+   *           If date/time cannot be parsed.
+   */
+  public Date toDate(String dateTimeString, String formatPattern) {
+    LocalDateTime ldt = CompiledDateTimePattern.of(formatPattern).parseLocalDateTime(dateTimeString);
+    return new Date(ldt.toInstant(ZoneOffset.UTC).toEpochMilli());
+  }
+
   /**
    * Creates a Date object representing the instant corresponding
    * to the specified ZonedDateTime.
@@ -186,6 +304,40 @@ public class DateTimeUtils {
     return Duration.between(fromZonedDateTime, toZonedDateTime);
   }
 
+  /**
+   * Returns the number of nanoseconds in the interval between the
+   * fromInstant and toInstant, without creating a Duration. Same value as
+   * toDuration(fromInstant, toInstant).toNanos().
+   * 
+   * @param fromInstant
+   *          The Instant of the beginning (inclusive) of the interval
+   * @param toInstant
+   *          The Instant of the end (exclusive) of the interval
+   * @return The duration in nanoseconds
+   * 
+   * @see Durations
+   */
+  public long toDurationNanos(Instant fromInstant, Instant toInstant) {
+    return Durations.between(fromInstant, toInstant);
+  }
+
+  /**
+   * Returns the number of nanoseconds in the interval between the
+   * fromMillis and toMillis values, without creating a Duration. Same value
+   * as toDuration(fromMillis, toMillis).toNanos().
+   * 
+   * @param fromMillis
+   *          The instant of the beginning of the interval in ms (inclusive)
+   * @param toMillis
+   *          The instant of the end of the interval in ms (exclusive)
+   * @return The duration in nanoseconds
+   * 
+   * @see Durations
+   */
+  public long toDurationNanos(long fromMillis, long toMillis) {
+    return Durations.betweenMillis(fromMillis, toMillis);
+  }
+
   /**
    * Creates an Instant object representing the instant specified by the
    * dateInstant object.
@@ -212,6 +364,20 @@ public class DateTimeUtils {
     return localDateTime.atZone(timeZoneId).toInstant();
   }
 
+  /**
+   * Same as {@link #toInstant(LocalDateTime, ZoneId)},
+   * with the time zone given by its ID and resolved through {@link ZoneIds}.
+   * 
+   * @param localDateTime
+   *          The LocalDateTime representing the local time of the instant
+   * @param timeZoneId
+   *          The time zone ID, e.g. "America/Chicago"
+   * @return The Instant object
+   */
+  public Instant toInstant(LocalDateTime localDateTime, String timeZoneId) {
+    return toInstant(localDateTime, ZoneIds.of(timeZoneId));
+  }
+
   /**
    * Creates an Instant object representing the instant corresponding
    * to the specified number of milliseconds since the epoch.
@@ -254,6 +420,21 @@ public class DateTimeUtils {
     return Instant.ofEpochMilli(date.getTime()).atZone(timeZoneId).toLocalDateTime();
   }
 
+  /**
+   * Same as {@link #toLocalDateTime(Date, ZoneId)},
+   * with the time zone given by its ID and resolved through {@link ZoneIds}.
+   * 
+   * @param date
+   *          The Date object representing the instant on the
+   *          timeline from which the LocalDateTime to be created is based.
+   * @param timeZoneId
+   *          The time zone ID, e.g. "America/Chicago"
+   * @return The LocalDateTime object
+   */
+  public LocalDateTime toLocalDateTime(Date date, String timeZoneId) {
+    return toLocalDateTime(date, ZoneIds.of(timeZoneId));
+  }
+
   /**
    * Creates an LocalDateTime object representing the instant in time corresponding
    * to the specified Instant object at the specified time zone.
@@ -269,6 +450,20 @@ public class DateTimeUtils {
     return instant.atZone(timeZoneId).toLocalDateTime();
   }
 
+  /**
+   * Same as {@link #toLocalDateTime(Instant, ZoneId)},
+   * with the time zone given by its ID and resolved through {@link ZoneIds}.
+   * 
+   * @param instant
+   *          The Instant on the timeline
+   * @param timeZoneId
+   *          The time zone ID, e.g. "America/Chicago"
+   * @return The LocalDateTime object
+   */
+  public LocalDateTime toLocalDateTime(Instant instant, String timeZoneId) {
+    return toLocalDateTime(instant, ZoneIds.of(timeZoneId));
+  }
+
   /**
    * Creates a LocalDateTime object representing the instant corresponding
    * to the specified number of milliseconds since the epoch (at UTC),
@@ -289,6 +484,24 @@ public class DateTimeUtils {
     return LocalDateTime.ofInstant(Instant.ofEpochMilli(epochMilli), timeZoneId);
   }
 
+  /**
+   * Same as {@link #toLocalDateTime(long, ZoneId)},
+   * with the time zone given by its ID and resolved through {@link ZoneIds}.
+   * 
+   * @param epochMilli
+   *          The number of milliseconds since the epoch
+   * 
+   * @param timeZoneId
+   *          The time zone ID, e.g. "America/Chicago"
+   * 
+   * @return LocalDateTime - the LocalDateTime instance corresponding to
+   *         the specified number of millis since the epoch at UTC, adjusted for
+   *         the local time as specified by the ZoneId.
+   */
+  public LocalDateTime toLocalDateTime(long epochMilli, String timeZoneId) {
+    return toLocalDateTime(epochMilli, ZoneIds.of(timeZoneId));
+  }
+
   /**
    * Creates an LocalDateTime object from the specified String representation
    * (if possible), using the specified format Pattern.
@@ -304,6 +517,22 @@ public class DateTimeUtils {
     return LocalDateTime.parse(dateTimeString, dtf);
   }
 
+  /**
+   * Creates an LocalDateTime object from the specified String representation
+   * (if possible), using the specified format pattern. Patterns are compiled
+   * once and cached.
+   * 
+   * @param dateTimeString
+   *          The string representation of the date/time
+   * @param formatPattern
+   *          The DateTimeFormatter pattern to use
+   * @return The LocalDateTime object
+   * 
+   */
+  public LocalDateTime toLocalDateTime(String dateTimeString, String formatPattern) {
+    return CompiledDateTimePattern.of(formatPattern).parseLocalDateTime(dateTimeString);
+  }
+
   /**
    * Creates a LocalDateTime object representing the instant in time corresponding
    * to the specified ZonedDateTime object, at the time zone of the ZonedDateTime object.
@@ -331,7 +560,23 @@ public class DateTimeUtils {
    * @return The String representation, if possible, or a formatting exception if not
    */
   public String toString(Date date, ZoneId timeZoneId, String formatPattern) {
-    return Instant.ofEpochMilli(date.getTime()).atZone(timeZoneId).format(DateTimeFormatter.ofPattern(formatPattern));
+    return CompiledDateTimePattern.of(formatPattern).format(Instant.ofEpochMilli(date.getTime()).atZone(timeZoneId));
+  }
+
+  /**
+   * Same as {@link #toString(Date, ZoneId, String)},
+   * with the time zone given by its ID and resolved through {@link ZoneIds}.
+   * 
+   * @param date
+   *          The Date object whose string representation is to be returned
+   * @param timeZoneId
+   *          The time zone ID, e.g. "America/Chicago"
+   * @param formatPattern
+   *          The formatPattern to be used. See {@link java.time.format.DateTimeFormatter}
+   * @return The String representation, if possible, or a formatting exception if not
+   */
+  public String toString(Date date, String timeZoneId, String formatPattern) {
+    return toString(date, ZoneIds.of(timeZoneId), formatPattern);
   }
 
   /**
@@ -347,7 +592,23 @@ public class DateTimeUtils {
    * @return The String representation, if possible, or a formatting exception if not
    */
   public String toString(LocalDateTime localDateTime, ZoneId timeZoneId, String formatPattern) {
-    return localDateTime.format(DateTimeFormatter.ofPattern(formatPattern));
+    return CompiledDateTimePattern.of(formatPattern).format(localDateTime);
+  }
+
+  /**
+   * Same as {@link #toString(LocalDateTime, ZoneId, String)},
+   * with the time zone given by its ID and resolved through {@link ZoneIds}.
+   * 
+   * @param localDateTime
+   *          The LocalDateTime object whose string representation is to be returned
+   * @param timeZoneId
+   *          The time zone ID, e.g. "America/Chicago"
+   * @param formatPattern
+   *          The formatPattern to be used. See {@link java.time.format.DateTimeFormatter}
+   * @return The String representation, if possible, or a formatting exception if not
+   */
+  public String toString(LocalDateTime localDateTime, String timeZoneId, String formatPattern) {
+    return toString(localDateTime, ZoneIds.of(timeZoneId), formatPattern);
   }
 
   /**
@@ -362,7 +623,7 @@ public class DateTimeUtils {
    * @return The String representation, if possible, or a formatting exception if not
    */
   public String toString(ZonedDateTime zonedDateTime, String formatPattern) {
-    return zonedDateTime.format(DateTimeFormatter.ofPattern(formatPattern));
+    return CompiledDateTimePattern.of(formatPattern).format(zonedDateTime);
   }
 
   /**
@@ -380,6 +641,21 @@ public class DateTimeUtils {
     return ZonedDateTime.ofInstant(Instant.ofEpochMilli(date.getTime()), timeZoneId);
   }
 
+  /**
+   * Same as {@link #toZonedDateTime(Date, ZoneId)},
+   * with the time zone given by its ID and resolved through {@link ZoneIds}.
+   * 
+   * @param date
+   *          The Date object representing the instant on the
+   *          timeline from which the ZonedDateTime to be created is based.
+   * @param timeZoneId
+   *          The time zone ID, e.g. "America/Chicago"
+   * @return The ZonedDateTime object
+   */
+  public ZonedDateTime toZonedDateTime(Date date, String timeZoneId) {
+    return toZonedDateTime(date, ZoneIds.of(timeZoneId));
+  }
+
   /**
    * Creates a ZonedDateTime object representing the instant in time corresponding
    * to the specified Instant object at the specified time zone.
@@ -395,6 +671,20 @@ public class DateTimeUtils {
     return ZonedDateTime.ofInstant(instant, timeZoneId);
   }
 
+  /**
+   * Same as {@link #toZonedDateTime(Instant, ZoneId)},
+   * with the time zone given by its ID and resolved through {@link ZoneIds}.
+   * 
+   * @param instant
+   *          The Instant on the timeline
+   * @param timeZoneId
+   *          The time zone ID, e.g. "America/Chicago"
+   * @return The ZonedDateTime object
+   */
+  public ZonedDateTime toZonedDateTime(Instant instant, String timeZoneId) {
+    return toZonedDateTime(instant, ZoneIds.of(timeZoneId));
+  }
+
   /**
    * Creates an ZonedDateTime object representing the instant specified by the
    * localDateTime object at the location specified by the timeZoneId.
@@ -409,6 +699,20 @@ public class DateTimeUtils {
     return ZonedDateTime.of(localDateTime, timeZoneId);
   }
 
+  /**
+   * Same as {@link #toZonedDateTime(LocalDateTime, ZoneId)},
+   * with the time zone given by its ID and resolved through {@link ZoneIds}.
+   * 
+   * @param localDateTime
+   *          The LocalDateTime representing the local time of the instant
+   * @param timeZoneId
+   *          The time zone ID, e.g. "America/Chicago"
+   * @return The ZonedDateTime object
+   */
+  public ZonedDateTime toZonedDateTime(LocalDateTime localDateTime, String timeZoneId) {
+    return toZonedDateTime(localDateTime, ZoneIds.of(timeZoneId));
+  }
+
   /**
    * Creates a ZonedDateTime object representing the instant corresponding
    * to the specified number of milliseconds since the epoch (at UTC),
@@ -429,6 +733,24 @@ public class DateTimeUtils {
     return ZonedDateTime.ofInstant(Instant.ofEpochMilli(epochMilli), timeZoneId);
   }
 
+  /**
+   * Same as {@link #toZonedDateTime(long, ZoneId)},
+   * with the time zone given by its ID and resolved through {@link ZoneIds}.
+   * 
+   * @param epochMilli
+   *          The number of milliseconds since the epoch
+   * 
+   * @param timeZoneId
+   *          The time zone ID, e.g. "America/Chicago"
+   * 
+   * @return ZonedDateTime - the ZonedDateTime instance corresponding to
+   *         the specified number of millis since the epoch at UTC, at the
+   *         specified ZoneId.
+   */
+  public ZonedDateTime toZonedDateTime(long epochMilli, String timeZoneId) {
+    return toZonedDateTime(epochMilli, ZoneIds.of(timeZoneId));
+  }
+
   /**
    * Creates an Instant object from the specified String representation
    * (if possible), using the specified format Pattern.
@@ -444,12 +766,29 @@ public class DateTimeUtils {
     return ZonedDateTime.parse(dateTimeString, dtf);
   }
 
+  /**
+   * Creates a ZonedDateTime object from the specified String representation
+   * (if possible), using the specified format pattern, which must contain
+   * an offset or a zone. Patterns are compiled once and cached.
+   * 
+   * @param dateTimeString
+   *          The string representation of the date/time
+   * @param formatPattern
+   *          The DateTimeFormatter pattern to use
+   * @return The ZonedDateTime object
+   * 
+   */
+  public ZonedDateTime toZonedDateTime(String dateTimeString, String formatPattern) {
+    return CompiledDateTimePattern.of(formatPattern).parseZonedDateTime(dateTimeString);
+  }
+
   /**
    * Returns the LocalDate corresponding to the first day of the
    * specified month and year.
    * 
    * The default date is set to the first day of the month/year,
-   * and will be adjusted by a TemporalAdjuster.
+   * and will be adjusted on its epoch-day. The returned LocalDate
+   * is a shared instance (see DateTimeFlyweights).
    * 
    * @param year
    *          The year.
@@ -463,14 +802,15 @@ public class DateTimeUtils {
    * @return The LocalDate object.
    */
   public LocalDate computeFirstDay(int year, int monthOfYear, DayOfWeek dayOfWeek) {
-    LocalDate ret = LocalDate.of(year, monthOfYear, 1);// default to 1st calendar day of the month/year
+    long firstOfMonth = firstOfMonthEpochDay(year, monthOfYear);// default to 1st calendar day of the month/year
 
     if (dayOfWeek == null) {
       throw new IllegalArgumentException("DayOfWeek argument cannot be null!");
     }
 
-    ret = ret.with(TemporalAdjusters.firstInMonth(dayOfWeek));
-    return ret;
+    // Same as TemporalAdjusters.firstInMonth(dayOfWeek), on the epoch-day
+    int daysAhead = Math.floorMod(dayOfWeek.getValue() - DateTimeFlyweights.dayOfWeek(firstOfMonth), 7);
+    return DateTimeFlyweights.localDate(firstOfMonth + daysAhead);
   }
 
   /**
@@ -478,7 +818,8 @@ public class DateTimeUtils {
    * specified month and year.
    * 
    * The default date is set to the first day of the month/year,
-   * and will be adjusted by a TemporalAdjuster.
+   * and will be adjusted on its epoch-day. The returned LocalDate
+   * is a shared instance (see DateTimeFlyweights).
    * 
    * @param year
    *          The year.
@@ -492,19 +833,22 @@ public class DateTimeUtils {
    * @return The LocalDate object.
    */
   public LocalDate computeLastDay(int year, int monthOfYear, DayOfWeek dayOfWeek) {
-    LocalDate ret = LocalDate.of(year, monthOfYear, 1);// default to 1st calendar day of the month/year
+    long firstOfMonth = firstOfMonthEpochDay(year, monthOfYear);// default to 1st calendar day of the month/year
 
     if (dayOfWeek == null) {
       throw new IllegalArgumentException("DayOfWeek argument cannot be null!");
     }
 
-    ret = ret.with(TemporalAdjusters.lastInMonth(dayOfWeek));
-    return ret;
+    // Same as TemporalAdjusters.lastInMonth(dayOfWeek), on the epoch-day
+    long lastOfMonth = firstOfMonth + DateTimeFlyweights.lengthOfMonth(year, monthOfYear) - 1;
+    int daysBack = Math.floorMod(DateTimeFlyweights.dayOfWeek(lastOfMonth) - dayOfWeek.getValue(), 7);
+    return DateTimeFlyweights.localDate(lastOfMonth - daysBack);
   }
 
   /**
    * Returns a LocalDate corresponding to the specified weekOrdinal (Nth)
-   * day-of-the-week in the specified year and month.
+   * day-of-the-week in the specified year and month. The returned LocalDate
+   * is a shared instance (see DateTimeFlyweights).
    * 
    * @param year
    *          The year.
@@ -524,21 +868,29 @@ public class DateTimeUtils {
    * @return The LocalDate object.
    */
   public LocalDate computeNthDayOfWeekIn(int year, int monthOfYear, int weekOrdinal, DayOfWeek dayOfWeek) {
-    LocalDate ret = LocalDate.of(year, monthOfYear, 1);// default to 1st calendar day of the month/year
+    long firstOfMonth = firstOfMonthEpochDay(year, monthOfYear);// default to 1st calendar day of the month/year
 
     if (dayOfWeek == null) {
       throw new IllegalArgumentException("DayOfWeek argument cannot be null!");
     }
 
-    ret = ret.with(TemporalAdjusters.dayOfWeekInMonth(weekOrdinal, dayOfWeek));
-
-    return ret;
+    // Same as TemporalAdjusters.dayOfWeekInMonth(weekOrdinal, dayOfWeek), on the epoch-day
+    long ret;
+    if (weekOrdinal >= 0) {
+      int daysAhead = Math.floorMod(dayOfWeek.getValue() - DateTimeFlyweights.dayOfWeek(firstOfMonth), 7);
+      ret = firstOfMonth + daysAhead + (weekOrdinal - 1L) * 7L;
+    } else {
+      long lastOfMonth = firstOfMonth + DateTimeFlyweights.lengthOfMonth(year, monthOfYear) - 1;
+      int daysBack = Math.floorMod(DateTimeFlyweights.dayOfWeek(lastOfMonth) - dayOfWeek.getValue(), 7);
+      ret = lastOfMonth - daysBack - (-weekOrdinal - 1L) * 7L;
+    }
+    return DateTimeFlyweights.localDate(ret);
   }
 
   /**
    * Returns the LocalDate corresponding to the USA Presidential election day
    * for the specified year. If the year is not an election year, an IllegalArgumentException
-   * is thrown.
+   * is thrown. The returned LocalDate is a shared instance (see DateTimeFlyweights).
    * 
    * @param year
    *          The presidential election year.
@@ -552,14 +904,14 @@ public class DateTimeUtils {
     }
     // Rule for U.S. Presidential Election day:
     /// Must be the first Tuesday after the first Monday in November.
-    return LocalDate.of(year, 11, 1)//
-        .with(TemporalAdjusters.firstInMonth(DayOfWeek.MONDAY))// The first Monday
-        .with(TemporalAdjusters.next(DayOfWeek.TUESDAY));// The first Tuesday after that
+    return DateTimeFlyweights.localDate(computeFirstDay(year, 11, DayOfWeek.MONDAY).toEpochDay()// The first Monday
+        + 1);// The first Tuesday after that
   }
 
   /**
    * Returns a LocalDate that is numberOfDays after the specified
-   * referenceDate.
+   * referenceDate. The returned LocalDate is a shared instance (see
+   * DateTimeFlyweights).
    * 
    * @param referenceDate
    *          The reference date, i.e., the date to which
@@ -568,8 +920,18 @@ public class DateTimeUtils {
    * @return The LocalDate object.
    */
   public LocalDate computeNDaysAfter(long numberOfDays, LocalDate referenceDate) {
-    // That was easy. Thanks, Java 8 Time API!
-    return referenceDate.plusDays(numberOfDays);
+    // Same as referenceDate.plusDays(numberOfDays), but returns the shared instance
+    return DateTimeFlyweights.localDate(Math.addExact(referenceDate.toEpochDay(), numberOfDays));
+  }
+
+  /**
+   * Returns the epoch-day of the first day of the specified month, with
+   * the same validation as LocalDate.of(year, monthOfYear, 1).
+   */
+  private static long firstOfMonthEpochDay(int year, int monthOfYear) {
+    ChronoField.YEAR.checkValidValue(year);
+    ChronoField.MONTH_OF_YEAR.checkValidValue(monthOfYear);
+    return DateTimeFlyweights.epochDay(year, monthOfYear, 1);
   }
 
 }
@@ -0,0 +1,324 @@
+/*
+ * Copyright 2017 Makoto Consulting Group, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.makotojava.learn.recipe.datetime;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.function.ToLongFunction;
+import java.util.stream.Collector;
+
+/**
+ * A fixed-memory, mergeable histogram of non-negative durations in
+ * nanoseconds, for quantiles (p50, p99, p999...), min, max and mean over
+ * any number of recorded values.
+ *
+ * Values are counted in log-linear buckets: every power-of-two range
+ * ("octave") is split into 128 equal sub-buckets, and values below 128ns
+ * are counted exactly. A reported quantile is therefore within 1/256 (about
+ * 0.4%) of the true value. Octaves are allocated on first use, 1KB each,
+ * so a histogram covering microseconds to minutes takes a few dozen KB no
+ * matter how many values it holds. Min, max, count and mean do not depend
+ * on the buckets.
+ *
+ * A DurationHistogram is not thread safe. Record into one histogram per
+ * thread (or use {@link #collector(ToLongFunction)} on a parallel stream)
+ * and {@link #merge(DurationHistogram)} the results: merging is a bucket-wise
+ * addition.
+ */
+public final class DurationHistogram {
+
+  private static final int SUB_BUCKET_BITS = 7;
+
+  private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+  // Octave 0 holds [0, 128) exactly; octave k >= 1 holds [128 << (k - 1), 128 << k)
+  private static final int OCTAVE_COUNT = 64 - SUB_BUCKET_BITS;
+
+  private final long[][] counts = new long[OCTAVE_COUNT][];
+
+  private long count;
+
+  private long minNanos = Long.MAX_VALUE;
+
+  private long maxNanos = Long.MIN_VALUE;
+
+  private double sumNanos;
+
+  /**
+   * Records a duration.
+   *
+   * @param nanos
+   *          The duration in nanoseconds. Not negative.
+   */
+  public void recordNanos(long nanos) {
+    recordNanos(nanos, 1);
+  }
+
+  /**
+   * Records the same duration several times.
+   *
+   * @param nanos
+   *          The duration in nanoseconds. Not negative.
+   * @param times
+   *          The number of times to record it. Not negative.
+   */
+  public void recordNanos(long nanos, long times) {
+    if (nanos < 0) {
+      throw new IllegalArgumentException("Duration cannot be negative: " + nanos + "ns");
+    }
+    if (times < 0) {
+      throw new IllegalArgumentException("Count cannot be negative: " + times);
+    }
+    if (times == 0) {
+      return;
+    }
+    int octave = octaveOf(nanos);
+    long[] buckets = counts[octave];
+    if (buckets == null) {
+      buckets = counts[octave] = new long[SUB_BUCKET_COUNT];
+    }
+    buckets[subBucketOf(nanos, octave)] += times;
+    count += times;
+    sumNanos += (double) nanos * times;
+    if (nanos < minNanos) {
+      minNanos = nanos;
+    }
+    if (nanos > maxNanos) {
+      maxNanos = nanos;
+    }
+  }
+
+  /**
+   * Records the duration between two epoch-millisecond values.
+   *
+   * @param fromMillis
+   *          The instant of the beginning of the interval in ms (inclusive)
+   * @param toMillis
+   *          The instant of the end of the interval in ms (exclusive)
+   */
+  public void recordBetweenMillis(long fromMillis, long toMillis) {
+    recordNanos(Durations.betweenMillis(fromMillis, toMillis));
+  }
+
+  /**
+   * Records the duration between two instants given as epoch-second and
+   * nano-of-second pairs.
+   *
+   * @param fromEpochSecond
+   *          The seconds of the beginning of the interval (inclusive)
+   * @param fromNano
+   *          The nano-of-second of the beginning of the interval
+   * @param toEpochSecond
+   *          The seconds of the end of the interval (exclusive)
+   * @param toNano
+   *          The nano-of-second of the end of the interval
+   */
+  public void recordBetween(long fromEpochSecond, int fromNano, long toEpochSecond, int toNano) {
+    recordNanos(Durations.between(fromEpochSecond, fromNano, toEpochSecond, toNano));
+  }
+
+  /**
+   * Records the duration between two Instants.
+   *
+   * @param fromInstant
+   *          The Instant of the beginning (inclusive) of the interval
+   * @param toInstant
+   *          The Instant of the end (exclusive) of the interval
+   */
+  public void recordBetween(Instant fromInstant, Instant toInstant) {
+    recordNanos(Durations.between(fromInstant, toInstant));
+  }
+
+  /**
+   * Adds every value recorded in the other histogram to this one. The
+   * other histogram is not changed.
+   *
+   * @param other
+   *          The histogram to merge into this one
+   *
+   * @return This histogram
+   */
+  public DurationHistogram merge(DurationHistogram other) {
+    if (other.count == 0) {
+      return this;
+    }
+    for (int octave = 0; octave < OCTAVE_COUNT; octave++) {
+      long[] from = other.counts[octave];
+      if (from != null) {
+        long[] to = counts[octave];
+        if (to == null) {
+          counts[octave] = from.clone();
+        } else {
+          for (int i = 0; i < SUB_BUCKET_COUNT; i++) {
+            to[i] += from[i];
+          }
+        }
+      }
+    }
+    count += other.count;
+    sumNanos += other.sumNanos;
+    minNanos = Math.min(minNanos, other.minNanos);
+    maxNanos = Math.max(maxNanos, other.maxNanos);
+    return this;
+  }
+
+  /**
+   * Creates an independent copy of this histogram.
+   *
+   * @return The new DurationHistogram
+   */
+  public DurationHistogram copy() {
+    return new DurationHistogram().merge(this);
+  }
+
+  /**
+   * Forgets every recorded value. Allocated octaves are kept for reuse.
+   */
+  public void reset() {
+    for (long[] buckets : counts) {
+      if (buckets != null) {
+        Arrays.fill(buckets, 0);
+      }
+    }
+    count = 0;
+    sumNanos = 0;
+    minNanos = Long.MAX_VALUE;
+    maxNanos = Long.MIN_VALUE;
+  }
+
+  /**
+   * Returns the number of recorded values.
+   *
+   * @return The count
+   */
+  public long getCount() {
+    return count;
+  }
+
+  /**
+   * Returns the smallest recorded value.
+   *
+   * @return The minimum in nanoseconds, or 0 if nothing was recorded
+   */
+  public long getMinNanos() {
+    return count == 0 ? 0 : minNanos;
+  }
+
+  /**
+   * Returns the largest recorded value.
+   *
+   * @return The maximum in nanoseconds, or 0 if nothing was recorded
+   */
+  public long getMaxNanos() {
+    return count == 0 ? 0 : maxNanos;
+  }
+
+  /**
+   * Returns the mean of the recorded values.
+   *
+   * @return The mean in nanoseconds, or 0 if nothing was recorded
+   */
+  public double getMeanNanos() {
+    return count == 0 ? 0 : sumNanos / count;
+  }
+
+  /**
+   * Returns the value at the specified quantile: the smallest recorded
+   * value such that at least that fraction of values is less than or equal
+   * to it, to within the bucket resolution. quantileNanos(0) is the minimum
+   * and quantileNanos(1) the maximum.
+   *
+   * @param quantile
+   *          The quantile, between 0 and 1 (0.99 for p99)
+   *
+   * @return The value in nanoseconds, or 0 if nothing was recorded
+   */
+  public long quantileNanos(double quantile) {
+    if (!(quantile >= 0 && quantile <= 1)) {
+      throw new IllegalArgumentException("Quantile must be between 0 and 1: " + quantile);
+    }
+    if (count == 0) {
+      return 0;
+    }
+    long rank = Math.max(1, (long) Math.ceil(quantile * count));
+    if (rank >= count) {
+      return maxNanos;
+    }
+    long seen = 0;
+    for (int octave = 0; octave < OCTAVE_COUNT; octave++) {
+      long[] buckets = counts[octave];
+      if (buckets == null) {
+        continue;
+      }
+      for (int sub = 0; sub < SUB_BUCKET_COUNT; sub++) {
+        seen += buckets[sub];
+        if (seen >= rank) {
+          long width = octave == 0 ? 1 : 1L << (octave - 1);
+          long lower = octave == 0 ? sub : (long) (SUB_BUCKET_COUNT + sub) << (octave - 1);
+          // Middle of the bucket, but never outside what was actually recorded
+          return Math.min(maxNanos, Math.max(minNanos, lower + (width - 1) / 2));
+        }
+      }
+    }
+    return maxNanos;
+  }
+
+  /**
+   * Returns the value at the specified quantile as a Duration.
+   *
+   * @param quantile
+   *          The quantile, between 0 and 1 (0.99 for p99)
+   *
+   * @return The Duration object
+   */
+  public Duration quantile(double quantile) {
+    return Duration.ofNanos(quantileNanos(quantile));
+  }
+
+  /**
+   * Returns a Collector that records the duration extracted from each
+   * element into a DurationHistogram. On a parallel stream each thread
+   * records into its own histogram and the results are merged.
+   *
+   * @param nanosMapper
+   *          Extracts the duration in nanoseconds from an element
+   *
+   * @return The Collector
+   */
+  public static <T> Collector<T, ?, DurationHistogram> collector(ToLongFunction<? super T> nanosMapper) {
+    return Collector.of(DurationHistogram::new, (histogram, t) -> histogram.recordNanos(nanosMapper.applyAsLong(t)),
+        DurationHistogram::merge, Collector.Characteristics.UNORDERED, Collector.Characteristics.IDENTITY_FINISH);
+  }
+
+  @Override
+  public String toString() {
+    return "DurationHistogram [count=" + count + ", min=" + getMinNanos() + "ns, p50=" + quantileNanos(0.5)
+        + "ns, p99=" + quantileNanos(0.99) + "ns, p999=" + quantileNanos(0.999) + "ns, max=" + getMaxNanos()
+        + "ns, mean=" + getMeanNanos() + "ns]";
+  }
+
+  private static int octaveOf(long nanos) {
+    // 0 below 128, otherwise 1 + how far the value must be shifted to fit in 8 bits
+    int highestBit = 63 - Long.numberOfLeadingZeros(nanos | 1);
+    return Math.max(0, highestBit - SUB_BUCKET_BITS + 1);
+  }
+
+  private static int subBucketOf(long nanos, int octave) {
+    return octave == 0 ? (int) nanos : (int) (nanos >>> (octave - 1)) - SUB_BUCKET_COUNT;
+  }
+
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright 2017 Makoto Consulting Group, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.makotojava.learn.recipe.datetime;
+
+import java.time.Instant;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+import java.util.stream.Collector;
+
+/**
+ * Streaming duration statistics per key: one {@link DurationHistogram} for
+ * each key seen, so p50/p99/p999, min, max and mean are available per key
+ * without keeping the individual durations.
+ *
+ * Like DurationHistogram, a DurationStatistics is not thread safe: record
+ * into one instance per thread and merge them, or let
+ * {@link #collector(Function, ToLongFunction)} do that on a parallel
+ * stream.
+ *
+ * @param <K>
+ *          The key type
+ */
+public final class DurationStatistics<K> {
+
+  private final Map<K, DurationHistogram> histograms = new HashMap<>();
+
+  /**
+   * Records a duration for the specified key.
+   *
+   * @param key
+   *          The key
+   * @param nanos
+   *          The duration in nanoseconds. Not negative.
+   */
+  public void recordNanos(K key, long nanos) {
+    histogramFor(key).recordNanos(nanos);
+  }
+
+  /**
+   * Records the duration between two epoch-millisecond values for the
+   * specified key.
+   *
+   * @param key
+   *          The key
+   * @param fromMillis
+   *          The instant of the beginning of the interval in ms (inclusive)
+   * @param toMillis
+   *          The instant of the end of the interval in ms (exclusive)
+   */
+  public void recordBetweenMillis(K key, long fromMillis, long toMillis) {
+    histogramFor(key).recordBetweenMillis(fromMillis, toMillis);
+  }
+
+  /**
+   * Records the duration between two Instants for the specified key.
+   *
+   * @param key
+   *          The key
+   * @param fromInstant
+   *          The Instant of the beginning (inclusive) of the interval
+   * @param toInstant
+   *          The Instant of the end (exclusive) of the interval
+   */
+  public void recordBetween(K key, Instant fromInstant, Instant toInstant) {
+    histogramFor(key).recordBetween(fromInstant, toInstant);
+  }
+
+  /**
+   * Returns the histogram for the specified key.
+   *
+   * @param key
+   *          The key
+   *
+   * @return The DurationHistogram, or null if nothing was recorded for the
+   *         key
+   */
+  public DurationHistogram get(K key) {
+    return histograms.get(key);
+  }
+
+  /**
+   * Returns the keys that have recorded durations.
+   *
+   * @return An unmodifiable view of the keys
+   */
+  public Set<K> keys() {
+    return Collections.unmodifiableSet(histograms.keySet());
+  }
+
+  /**
+   * Adds every duration recorded in the other statistics to this one. The
+   * other statistics are not changed.
+   *
+   * @param other
+   *          The statistics to merge into these
+   *
+   * @return This DurationStatistics
+   */
+  public DurationStatistics<K> merge(DurationStatistics<K> other) {
+    for (Map.Entry<K, DurationHistogram> entry : other.histograms.entrySet()) {
+      DurationHistogram histogram = histograms.get(entry.getKey());
+      if (histogram == null) {
+        histograms.put(entry.getKey(), entry.getValue().copy());
+      } else {
+        histogram.merge(entry.getValue());
+      }
+    }
+    return this;
+  }
+
+  /**
+   * Returns a Collector that records the duration extracted from each
+   * element under the element's key. On a parallel stream each thread
+   * records into its own DurationStatistics and the results are merged.
+   *
+   * @param keyMapper
+   *          Extracts the key from an element
+   * @param nanosMapper
+   *          Extracts the duration in nanoseconds from an element
+   *
+   * @return The Collector
+   */
+  public static <T, K> Collector<T, ?, DurationStatistics<K>> collector(Function<? super T, ? extends K> keyMapper,
+      ToLongFunction<? super T> nanosMapper) {
+    return Collector.of(DurationStatistics::new,
+        (statistics, t) -> statistics.recordNanos(keyMapper.apply(t), nanosMapper.applyAsLong(t)),
+        DurationStatistics::merge, Collector.Characteristics.UNORDERED, Collector.Characteristics.IDENTITY_FINISH);
+  }
+
+  @Override
+  public String toString() {
+    return "DurationStatistics " + histograms;
+  }
+
+  private DurationHistogram histogramFor(K key) {
+    DurationHistogram ret = histograms.get(key);
+    if (ret == null) {
+      ret = new DurationHistogram();
+      histograms.put(key, ret);
+    }
+    return ret;
+  }
+
+}
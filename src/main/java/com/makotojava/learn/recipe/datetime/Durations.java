@@ -0,0 +1,391 @@
+/*
+ * Copyright 2017 Makoto Consulting Group, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.makotojava.learn.recipe.datetime;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+import java.time.temporal.TemporalUnit;
+import java.time.temporal.UnsupportedTemporalTypeException;
+import java.util.Date;
+
+/**
+ * Allocation-free duration arithmetic over a plain long count of
+ * nanoseconds.
+ *
+ * Every method gives the same answer as the equivalent Duration
+ * computation followed by Duration.toNanos() (or the named Duration
+ * accessor), including throwing ArithmeticException where Duration would
+ * overflow. A long of nanoseconds covers about +/-292 years, which is the
+ * range over which Duration.toNanos() itself succeeds.
+ */
+public final class Durations {
+
+  public static final long NANOS_PER_MICRO = 1_000L;
+
+  public static final long NANOS_PER_MILLI = 1_000_000L;
+
+  public static final long NANOS_PER_SECOND = 1_000_000_000L;
+
+  public static final long NANOS_PER_DAY = 86_400L * NANOS_PER_SECOND;
+
+  private static final long SECONDS_PER_DAY = 86_400L;
+
+  private Durations() {
+    // Static methods only
+  }
+
+  /**
+   * Returns the nanoseconds between two epoch-millisecond values. Same as
+   * Duration.between(Instant.ofEpochMilli(fromMillis),
+   * Instant.ofEpochMilli(toMillis)).toNanos().
+   *
+   * @param fromMillis
+   *          The instant of the beginning of the interval in ms (inclusive)
+   * @param toMillis
+   *          The instant of the end of the interval in ms (exclusive)
+   *
+   * @return The duration in nanoseconds
+   *
+   * @throws ArithmeticException
+   *           If the result overflows a long
+   */
+  public static long betweenMillis(long fromMillis, long toMillis) {
+    return Math.multiplyExact(Math.subtractExact(toMillis, fromMillis), NANOS_PER_MILLI);
+  }
+
+  /**
+   * Returns the nanoseconds between two instants given as epoch-second and
+   * nano-of-second pairs.
+   *
+   * @param fromEpochSecond
+   *          The seconds of the beginning of the interval (inclusive)
+   * @param fromNano
+   *          The nano-of-second of the beginning of the interval
+   * @param toEpochSecond
+   *          The seconds of the end of the interval (exclusive)
+   * @param toNano
+   *          The nano-of-second of the end of the interval
+   *
+   * @return The duration in nanoseconds
+   *
+   * @throws ArithmeticException
+   *           If the result overflows a long
+   */
+  public static long between(long fromEpochSecond, int fromNano, long toEpochSecond, int toNano) {
+    long seconds = Math.subtractExact(toEpochSecond, fromEpochSecond);
+    return Math.addExact(Math.multiplyExact(seconds, NANOS_PER_SECOND), (long) toNano - fromNano);
+  }
+
+  /**
+   * Returns the nanoseconds between two Dates. Same as
+   * DateTimeUtils.toDuration(Date, Date).toNanos().
+   *
+   * @param fromDate
+   *          The instant of the beginning (inclusive) of the interval
+   * @param toDate
+   *          The instant of the end (exclusive) of the interval
+   *
+   * @return The duration in nanoseconds
+   */
+  public static long between(Date fromDate, Date toDate) {
+    return betweenMillis(fromDate.getTime(), toDate.getTime());
+  }
+
+  /**
+   * Returns the nanoseconds between two Instants. Same as
+   * Duration.between(fromInstant, toInstant).toNanos().
+   *
+   * @param fromInstant
+   *          The Instant of the beginning (inclusive) of the interval
+   * @param toInstant
+   *          The Instant of the end (exclusive) of the interval
+   *
+   * @return The duration in nanoseconds
+   */
+  public static long between(Instant fromInstant, Instant toInstant) {
+    return between(fromInstant.getEpochSecond(), fromInstant.getNano(), toInstant.getEpochSecond(),
+        toInstant.getNano());
+  }
+
+  /**
+   * Returns the nanoseconds between two LocalDateTimes. Same as
+   * Duration.between(fromLocalDateTime, toLocalDateTime).toNanos().
+   *
+   * @param fromLocalDateTime
+   *          The beginning of the interval (inclusive)
+   * @param toLocalDateTime
+   *          The end of the interval (exclusive)
+   *
+   * @return The duration in nanoseconds
+   */
+  public static long between(LocalDateTime fromLocalDateTime, LocalDateTime toLocalDateTime) {
+    long days = Math.subtractExact(toLocalDateTime.toLocalDate().toEpochDay(),
+        fromLocalDateTime.toLocalDate().toEpochDay());
+    long nanoOfDay = toLocalDateTime.toLocalTime().toNanoOfDay() - fromLocalDateTime.toLocalTime().toNanoOfDay();
+    return Math.addExact(Math.multiplyExact(days, NANOS_PER_DAY), nanoOfDay);
+  }
+
+  /**
+   * Returns the nanoseconds between two ZonedDateTimes. Same as
+   * Duration.between(fromZonedDateTime, toZonedDateTime).toNanos().
+   *
+   * @param fromZonedDateTime
+   *          The instant of the beginning of the interval (inclusive)
+   * @param toZonedDateTime
+   *          The instant of the end of the interval (exclusive)
+   *
+   * @return The duration in nanoseconds
+   */
+  public static long between(ZonedDateTime fromZonedDateTime, ZonedDateTime toZonedDateTime) {
+    return between(fromZonedDateTime.toEpochSecond(), fromZonedDateTime.getNano(), toZonedDateTime.toEpochSecond(),
+        toZonedDateTime.getNano());
+  }
+
+  /**
+   * Returns the nanoseconds in the specified amount of the specified unit.
+   * Same as Duration.of(amount, unit).toNanos(): units up to and including
+   * DAYS are supported, estimated units are not.
+   *
+   * @param amount
+   *          The amount of the unit, may be negative
+   * @param unit
+   *          The unit. Not null.
+   *
+   * @return The duration in nanoseconds
+   *
+   * @throws UnsupportedTemporalTypeException
+   *           If the unit has an estimated duration
+   * @throws ArithmeticException
+   *           If the result overflows a long
+   */
+  public static long of(long amount, TemporalUnit unit) {
+    if (unit == ChronoUnit.NANOS) {
+      return amount;
+    }
+    if (unit.isDurationEstimated() && unit != ChronoUnit.DAYS) {
+      throw new UnsupportedTemporalTypeException("Unit must not have an estimated duration");
+    }
+    return Math.multiplyExact(amount, unit.getDuration().toNanos());
+  }
+
+  /**
+   * Returns the sum of two durations.
+   *
+   * @param nanos
+   *          The first duration in nanoseconds
+   * @param nanosToAdd
+   *          The second duration in nanoseconds
+   *
+   * @return The sum in nanoseconds
+   *
+   * @throws ArithmeticException
+   *           If the result overflows a long
+   */
+  public static long add(long nanos, long nanosToAdd) {
+    return Math.addExact(nanos, nanosToAdd);
+  }
+
+  /**
+   * Returns the difference of two durations.
+   *
+   * @param nanos
+   *          The first duration in nanoseconds
+   * @param nanosToSubtract
+   *          The duration to subtract in nanoseconds
+   *
+   * @return The difference in nanoseconds
+   *
+   * @throws ArithmeticException
+   *           If the result overflows a long
+   */
+  public static long subtract(long nanos, long nanosToSubtract) {
+    return Math.subtractExact(nanos, nanosToSubtract);
+  }
+
+  /**
+   * Compares two durations. Same sign as Duration.compareTo.
+   *
+   * @param nanos
+   *          The first duration in nanoseconds
+   * @param otherNanos
+   *          The second duration in nanoseconds
+   *
+   * @return Negative, zero or positive as the first is less than, equal to
+   *         or greater than the second
+   */
+  public static int compare(long nanos, long otherNanos) {
+    return Long.compare(nanos, otherNanos);
+  }
+
+  /**
+   * Truncates a duration to the specified unit. Same as
+   * Duration.ofNanos(nanos).truncatedTo(unit).toNanos(), which truncates
+   * the time-of-day part of the duration toward zero and keeps whole days.
+   *
+   * @param nanos
+   *          The duration in nanoseconds
+   * @param unit
+   *          The unit to truncate to. Not null.
+   *
+   * @return The truncated duration in nanoseconds
+   *
+   * @throws UnsupportedTemporalTypeException
+   *           If the unit is longer than a day or does not divide a day
+   */
+  public static long truncatedTo(long nanos, TemporalUnit unit) {
+    if (unit == ChronoUnit.SECONDS && nanos >= 0) {
+      return nanos - nanos % NANOS_PER_SECOND;
+    } else if (unit == ChronoUnit.NANOS) {
+      return nanos;
+    }
+    Duration unitDur = unit.getDuration();
+    if (unitDur.getSeconds() > SECONDS_PER_DAY) {
+      throw new UnsupportedTemporalTypeException("Unit is too large to be used for truncation");
+    }
+    long dur = unitDur.toNanos();
+    if ((NANOS_PER_DAY % dur) != 0) {
+      throw new UnsupportedTemporalTypeException("Unit must divide into a standard day without remainder");
+    }
+    // Duration keeps floor seconds plus a positive nano adjustment; truncate the same way it does
+    long nod = (getSeconds(nanos) % SECONDS_PER_DAY) * NANOS_PER_SECOND + getNano(nanos);
+    long result = (nod / dur) * dur;
+    return nanos + (result - nod);
+  }
+
+  /**
+   * Returns the seconds part of a duration. Same as Duration.getSeconds():
+   * rounded toward negative infinity.
+   *
+   * @param nanos
+   *          The duration in nanoseconds
+   *
+   * @return The whole seconds
+   */
+  public static long getSeconds(long nanos) {
+    return Math.floorDiv(nanos, NANOS_PER_SECOND);
+  }
+
+  /**
+   * Returns the nanosecond adjustment to getSeconds(nanos). Same as
+   * Duration.getNano(): always between 0 and 999,999,999.
+   *
+   * @param nanos
+   *          The duration in nanoseconds
+   *
+   * @return The nano-of-second adjustment
+   */
+  public static int getNano(long nanos) {
+    return (int) Math.floorMod(nanos, NANOS_PER_SECOND);
+  }
+
+  /**
+   * Converts a duration to milliseconds, truncated toward zero. Note that
+   * this is not the same as Duration.toMillis() on Java 8, which rounds
+   * negative sub-millisecond remainders toward negative infinity.
+   *
+   * @param nanos
+   *          The duration in nanoseconds
+   *
+   * @return The duration in milliseconds
+   */
+  public static long toMillis(long nanos) {
+    return nanos / NANOS_PER_MILLI;
+  }
+
+  /**
+   * Converts a duration to microseconds, rounded toward zero.
+   *
+   * @param nanos
+   *          The duration in nanoseconds
+   *
+   * @return The duration in microseconds
+   */
+  public static long toMicros(long nanos) {
+    return nanos / NANOS_PER_MICRO;
+  }
+
+  /**
+   * Converts a duration to minutes. Same as Duration.toMinutes(): the whole
+   * seconds (getSeconds) divided by 60.
+   *
+   * @param nanos
+   *          The duration in nanoseconds
+   *
+   * @return The duration in minutes
+   */
+  public static long toMinutes(long nanos) {
+    return getSeconds(nanos) / 60;
+  }
+
+  /**
+   * Converts a duration to hours. Same as Duration.toHours(): the whole
+   * seconds (getSeconds) divided by 3600.
+   *
+   * @param nanos
+   *          The duration in nanoseconds
+   *
+   * @return The duration in hours
+   */
+  public static long toHours(long nanos) {
+    return getSeconds(nanos) / 3600;
+  }
+
+  /**
+   * Converts a duration to days. Same as Duration.toDays(): the whole
+   * seconds (getSeconds) divided by 86400.
+   *
+   * @param nanos
+   *          The duration in nanoseconds
+   *
+   * @return The duration in days
+   */
+  public static long toDays(long nanos) {
+    return getSeconds(nanos) / SECONDS_PER_DAY;
+  }
+
+  /**
+   * Creates a Duration object for the specified nanoseconds, for callers
+   * that need one at the end of a primitive computation.
+   *
+   * @param nanos
+   *          The duration in nanoseconds
+   *
+   * @return The Duration object
+   */
+  public static Duration toDuration(long nanos) {
+    return Duration.ofNanos(nanos);
+  }
+
+  /**
+   * Returns the nanoseconds in the specified Duration. Same as
+   * duration.toNanos().
+   *
+   * @param duration
+   *          The Duration. Not null.
+   *
+   * @return The duration in nanoseconds
+   *
+   * @throws ArithmeticException
+   *           If the duration does not fit in a long of nanoseconds
+   */
+  public static long toNanos(Duration duration) {
+    return duration.toNanos();
+  }
+
+}
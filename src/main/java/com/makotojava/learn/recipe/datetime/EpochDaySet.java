@@ -0,0 +1,861 @@
+/*
+ * Copyright 2017 Makoto Consulting Group, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.makotojava.learn.recipe.datetime;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * A set of dates, stored as a compressed bitmap of epoch-days.
+ *
+ * The layout follows the "roaring" bitmap scheme: the epoch-day is split
+ * into a 16-bit high part, which selects a container, and a 16-bit low
+ * part, which is stored inside the container. Sparse containers are sorted
+ * arrays of the low parts; dense containers (more than 4096 members) are
+ * plain 65536-bit bitmaps. Containers split at multiples of 65536
+ * epoch-days (about 179 years), so a multi-decade calendar takes one or two
+ * containers (two when it crosses a boundary such as 1970-01-01, epoch-day
+ * 0), and set algebra between two calendars is a handful of word-wise
+ * AND/OR operations.
+ *
+ * Only dates whose epoch-day fits in an int are supported, which covers
+ * the years -5877641 to 5881580.
+ *
+ * Instances are mutable and not thread safe. The set algebra methods
+ * (union, intersection, difference) return new sets and leave their
+ * arguments untouched.
+ */
+public class EpochDaySet implements Iterable<LocalDate> {
+
+  /** Maximum number of members an array container holds before becoming a bitmap */
+  private static final int ARRAY_MAX = 4096;
+
+  /** Number of longs in a bitmap container (65536 bits) */
+  private static final int BITMAP_WORDS = 1024;
+
+  private static final int NOT_FOUND = Integer.MIN_VALUE;
+
+  /** Container keys (the high 16 bits, offset so they sort as unsigned), sorted ascending */
+  private char[] keys;
+
+  private Container[] containers;
+
+  private int size;
+
+  /**
+   * Creates an empty EpochDaySet.
+   */
+  public EpochDaySet() {
+    keys = new char[4];
+    containers = new Container[4];
+  }
+
+  /**
+   * Creates an EpochDaySet containing the specified dates.
+   *
+   * @param dates
+   *          The dates to add. Not null.
+   *
+   * @return The EpochDaySet object.
+   */
+  public static EpochDaySet of(Collection<LocalDate> dates) {
+    EpochDaySet ret = new EpochDaySet();
+    for (LocalDate date : dates) {
+      ret.add(date);
+    }
+    return ret;
+  }
+
+  /**
+   * Creates an EpochDaySet containing the specified epoch-days.
+   *
+   * @param epochDays
+   *          The epoch-days to add. Not null.
+   *
+   * @return The EpochDaySet object.
+   */
+  public static EpochDaySet ofEpochDays(long... epochDays) {
+    EpochDaySet ret = new EpochDaySet();
+    for (long epochDay : epochDays) {
+      ret.add(epochDay);
+    }
+    return ret;
+  }
+
+  /**
+   * Creates an EpochDaySet containing every date from fromDate (inclusive)
+   * to toDate (exclusive). This is much cheaper than adding the dates one
+   * at a time.
+   *
+   * @param fromDate
+   *          The first date in the range (inclusive)
+   * @param toDate
+   *          The end of the range (exclusive)
+   *
+   * @return The EpochDaySet object.
+   */
+  public static EpochDaySet range(LocalDate fromDate, LocalDate toDate) {
+    EpochDaySet ret = new EpochDaySet();
+    ret.addRange(fromDate.toEpochDay(), toDate.toEpochDay());
+    return ret;
+  }
+
+  /**
+   * Adds the specified date to this set.
+   *
+   * @param date
+   *          The date to add. Not null.
+   *
+   * @return true if the set did not already contain the date.
+   */
+  public boolean add(LocalDate date) {
+    return add(date.toEpochDay());
+  }
+
+  /**
+   * Adds the specified epoch-day to this set.
+   *
+   * @param epochDay
+   *          The number of days since 1/1/1970
+   *
+   * @return true if the set did not already contain the epoch-day.
+   *
+   * @throws IllegalArgumentException
+   *           If the epoch-day is outside the supported range.
+   */
+  public boolean add(long epochDay) {
+    int value = toUnsigned(epochDay);
+    char key = highBits(value);
+    int i = indexOfKey(key);
+    if (i < 0) {
+      i = -i - 1;
+      insertContainer(i, key, new Container());
+    }
+    Container container = containers[i];
+    boolean added = container.add(lowBits(value));
+    containers[i] = container.optimize();
+    return added;
+  }
+
+  /**
+   * Adds every epoch-day from fromEpochDay (inclusive) to toEpochDay (exclusive).
+   *
+   * @param fromEpochDay
+   *          The first epoch-day in the range (inclusive)
+   * @param toEpochDay
+   *          The end of the range (exclusive)
+   */
+  public void addRange(long fromEpochDay, long toEpochDay) {
+    if (fromEpochDay >= toEpochDay) {
+      return;
+    }
+    int first = toUnsigned(fromEpochDay);
+    int last = toUnsigned(toEpochDay - 1);
+    for (int key = highBits(first); key <= highBits(last); key++) {
+      int lo = key == highBits(first) ? lowBits(first) : 0;
+      int hi = key == highBits(last) ? lowBits(last) : 0xFFFF;
+      int i = indexOfKey((char) key);
+      if (i < 0) {
+        i = -i - 1;
+        insertContainer(i, (char) key, new Container());
+      }
+      containers[i] = containers[i].addRange(lo, hi).optimize();
+    }
+  }
+
+  /**
+   * Removes the specified date from this set.
+   *
+   * @param date
+   *          The date to remove. Not null.
+   *
+   * @return true if the set contained the date.
+   */
+  public boolean remove(LocalDate date) {
+    return remove(date.toEpochDay());
+  }
+
+  /**
+   * Removes the specified epoch-day from this set.
+   *
+   * @param epochDay
+   *          The number of days since 1/1/1970
+   *
+   * @return true if the set contained the epoch-day.
+   */
+  public boolean remove(long epochDay) {
+    if (!inRange(epochDay)) {
+      return false;
+    }
+    int value = toUnsigned(epochDay);
+    int i = indexOfKey(highBits(value));
+    if (i < 0) {
+      return false;
+    }
+    boolean removed = containers[i].remove(lowBits(value));
+    if (containers[i].cardinality == 0) {
+      removeContainer(i);
+    } else {
+      containers[i] = containers[i].optimize();
+    }
+    return removed;
+  }
+
+  /**
+   * Returns true if this set contains the specified date.
+   *
+   * @param date
+   *          The date. Not null.
+   *
+   * @return true if the date is a member of this set.
+   */
+  public boolean contains(LocalDate date) {
+    return contains(date.toEpochDay());
+  }
+
+  /**
+   * Returns true if this set contains the specified epoch-day.
+   *
+   * @param epochDay
+   *          The number of days since 1/1/1970
+   *
+   * @return true if the epoch-day is a member of this set.
+   */
+  public boolean contains(long epochDay) {
+    if (!inRange(epochDay)) {
+      return false;
+    }
+    int value = toUnsigned(epochDay);
+    int i = indexOfKey(highBits(value));
+    return i >= 0 && containers[i].contains(lowBits(value));
+  }
+
+  /**
+   * Returns the number of dates in this set.
+   *
+   * @return The cardinality of the set.
+   */
+  public long cardinality() {
+    long ret = 0;
+    for (int i = 0; i < size; i++) {
+      ret += containers[i].cardinality;
+    }
+    return ret;
+  }
+
+  /**
+   * Returns true if this set has no members.
+   *
+   * @return true if the set is empty.
+   */
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  /**
+   * Returns the first member of this set that is strictly after the
+   * specified date, or null if there is none.
+   *
+   * @param date
+   *          The reference date. Not null.
+   *
+   * @return The LocalDate object, or null.
+   */
+  public LocalDate nextAfter(LocalDate date) {
+    long ret = nextEpochDayAfter(date.toEpochDay());
+    return ret == Long.MIN_VALUE ? null : LocalDate.ofEpochDay(ret);
+  }
+
+  /**
+   * Returns the first member of this set that is strictly after the
+   * specified epoch-day, or Long.MIN_VALUE if there is none.
+   *
+   * @param epochDay
+   *          The reference epoch-day
+   *
+   * @return The next member's epoch-day, or Long.MIN_VALUE.
+   */
+  public long nextEpochDayAfter(long epochDay) {
+    if (epochDay < Integer.MIN_VALUE) {
+      return size == 0 ? Long.MIN_VALUE : first();
+    }
+    if (epochDay >= Integer.MAX_VALUE) {
+      return Long.MIN_VALUE;
+    }
+    int value = toUnsigned(epochDay + 1);
+    char key = highBits(value);
+    int i = indexOfKey(key);
+    if (i >= 0) {
+      int low = containers[i].nextSetBit(lowBits(value));
+      if (low != NOT_FOUND) {
+        return fromUnsigned(key, low);
+      }
+      i++;
+    } else {
+      i = -i - 1;
+    }
+    return i < size ? fromUnsigned(keys[i], containers[i].nextSetBit(0)) : Long.MIN_VALUE;
+  }
+
+  /**
+   * Returns a new set containing the members of either this set or other.
+   *
+   * @param other
+   *          The other set. Not null.
+   *
+   * @return The EpochDaySet object.
+   */
+  public EpochDaySet union(EpochDaySet other) {
+    EpochDaySet ret = new EpochDaySet();
+    int i = 0;
+    int j = 0;
+    while (i < size && j < other.size) {
+      if (keys[i] < other.keys[j]) {
+        ret.appendContainer(keys[i], containers[i].copy());
+        i++;
+      } else if (keys[i] > other.keys[j]) {
+        ret.appendContainer(other.keys[j], other.containers[j].copy());
+        j++;
+      } else {
+        ret.appendContainer(keys[i], containers[i].or(other.containers[j]));
+        i++;
+        j++;
+      }
+    }
+    for (; i < size; i++) {
+      ret.appendContainer(keys[i], containers[i].copy());
+    }
+    for (; j < other.size; j++) {
+      ret.appendContainer(other.keys[j], other.containers[j].copy());
+    }
+    return ret;
+  }
+
+  /**
+   * Returns a new set containing the members of both this set and other.
+   *
+   * @param other
+   *          The other set. Not null.
+   *
+   * @return The EpochDaySet object.
+   */
+  public EpochDaySet intersection(EpochDaySet other) {
+    EpochDaySet ret = new EpochDaySet();
+    int i = 0;
+    int j = 0;
+    while (i < size && j < other.size) {
+      if (keys[i] < other.keys[j]) {
+        i++;
+      } else if (keys[i] > other.keys[j]) {
+        j++;
+      } else {
+        Container container = containers[i].and(other.containers[j]);
+        if (container.cardinality > 0) {
+          ret.appendContainer(keys[i], container);
+        }
+        i++;
+        j++;
+      }
+    }
+    return ret;
+  }
+
+  /**
+   * Returns a new set containing the members of this set that are not
+   * members of other.
+   *
+   * @param other
+   *          The other set. Not null.
+   *
+   * @return The EpochDaySet object.
+   */
+  public EpochDaySet difference(EpochDaySet other) {
+    EpochDaySet ret = new EpochDaySet();
+    int i = 0;
+    int j = 0;
+    while (i < size) {
+      if (j >= other.size || keys[i] < other.keys[j]) {
+        ret.appendContainer(keys[i], containers[i].copy());
+        i++;
+      } else if (keys[i] > other.keys[j]) {
+        j++;
+      } else {
+        Container container = containers[i].andNot(other.containers[j]);
+        if (container.cardinality > 0) {
+          ret.appendContainer(keys[i], container);
+        }
+        i++;
+        j++;
+      }
+    }
+    return ret;
+  }
+
+  /**
+   * Returns the members of this set as a list of LocalDate objects, in
+   * ascending order.
+   *
+   * @return The List of dates.
+   */
+  public List<LocalDate> toLocalDates() {
+    List<LocalDate> ret = new ArrayList<>((int) Math.min(cardinality(), Integer.MAX_VALUE));
+    for (LocalDate date : this) {
+      ret.add(date);
+    }
+    return ret;
+  }
+
+  /**
+   * Returns the members of this set as epoch-days, in ascending order.
+   *
+   * @return The array of epoch-days.
+   */
+  public long[] toEpochDays() {
+    long[] ret = new long[(int) cardinality()];
+    int n = 0;
+    for (int i = 0; i < size; i++) {
+      Container container = containers[i];
+      for (int low = container.nextSetBit(0); low != NOT_FOUND; low = container.nextSetBit(low + 1)) {
+        ret[n++] = fromUnsigned(keys[i], low);
+      }
+    }
+    return ret;
+  }
+
+  /**
+   * Iterates the members of this set in ascending order.
+   */
+  @Override
+  public Iterator<LocalDate> iterator() {
+    return new Iterator<LocalDate>() {
+      private int containerIndex = 0;
+      private int low = size > 0 ? containers[0].nextSetBit(0) : NOT_FOUND;
+
+      @Override
+      public boolean hasNext() {
+        return low != NOT_FOUND;
+      }
+
+      @Override
+      public LocalDate next() {
+        if (low == NOT_FOUND) {
+          throw new NoSuchElementException();
+        }
+        LocalDate ret = LocalDate.ofEpochDay(fromUnsigned(keys[containerIndex], low));
+        low = low == 0xFFFF ? NOT_FOUND : containers[containerIndex].nextSetBit(low + 1);
+        while (low == NOT_FOUND && ++containerIndex < size) {
+          low = containers[containerIndex].nextSetBit(0);
+        }
+        return ret;
+      }
+    };
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (this == obj) {
+      return true;
+    }
+    if (!(obj instanceof EpochDaySet)) {
+      return false;
+    }
+    EpochDaySet other = (EpochDaySet) obj;
+    if (size != other.size) {
+      return false;
+    }
+    for (int i = 0; i < size; i++) {
+      if (keys[i] != other.keys[i] || !containers[i].sameMembers(other.containers[i])) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public int hashCode() {
+    int ret = 1;
+    for (int i = 0; i < size; i++) {
+      Container container = containers[i];
+      for (int low = container.nextSetBit(0); low != NOT_FOUND; low = container.nextSetBit(low + 1)) {
+        ret = 31 * ret + (keys[i] << 16 | low);
+      }
+    }
+    return ret;
+  }
+
+  @Override
+  public String toString() {
+    return toLocalDates().toString();
+  }
+
+  private long first() {
+    return fromUnsigned(keys[0], containers[0].nextSetBit(0));
+  }
+
+  private int indexOfKey(char key) {
+    int lo = 0;
+    int hi = size - 1;
+    while (lo <= hi) {
+      int mid = (lo + hi) >>> 1;
+      if (keys[mid] < key) {
+        lo = mid + 1;
+      } else if (keys[mid] > key) {
+        hi = mid - 1;
+      } else {
+        return mid;
+      }
+    }
+    return -(lo + 1);
+  }
+
+  private void insertContainer(int index, char key, Container container) {
+    if (size == keys.length) {
+      keys = Arrays.copyOf(keys, size * 2);
+      containers = Arrays.copyOf(containers, size * 2);
+    }
+    System.arraycopy(keys, index, keys, index + 1, size - index);
+    System.arraycopy(containers, index, containers, index + 1, size - index);
+    keys[index] = key;
+    containers[index] = container;
+    size++;
+  }
+
+  private void appendContainer(char key, Container container) {
+    insertContainer(size, key, container.optimize());
+  }
+
+  private void removeContainer(int index) {
+    System.arraycopy(keys, index + 1, keys, index, size - index - 1);
+    System.arraycopy(containers, index + 1, containers, index, size - index - 1);
+    containers[--size] = null;
+  }
+
+  private static boolean inRange(long epochDay) {
+    return epochDay >= Integer.MIN_VALUE && epochDay <= Integer.MAX_VALUE;
+  }
+
+  private static int toUnsigned(long epochDay) {
+    if (!inRange(epochDay)) {
+      throw new IllegalArgumentException("The specified epoch-day: " + epochDay + " is outside the supported range");
+    }
+    // Flipping the sign bit makes negative epoch-days sort before positive ones as unsigned ints
+    return (int) epochDay ^ Integer.MIN_VALUE;
+  }
+
+  private static long fromUnsigned(char key, int low) {
+    return (key << 16 | low) ^ Integer.MIN_VALUE;
+  }
+
+  private static char highBits(int value) {
+    return (char) (value >>> 16);
+  }
+
+  private static char lowBits(int value) {
+    return (char) value;
+  }
+
+  /**
+   * Holds the low 16 bits of the members sharing one high 16-bit key,
+   * either as a sorted array (array != null) or as a bitmap (bitmap != null).
+   */
+  private static final class Container {
+
+    private char[] array;
+
+    private long[] bitmap;
+
+    private int cardinality;
+
+    Container() {
+      array = new char[4];
+    }
+
+    private Container(char[] array, long[] bitmap, int cardinality) {
+      this.array = array;
+      this.bitmap = bitmap;
+      this.cardinality = cardinality;
+    }
+
+    boolean add(char low) {
+      if (bitmap != null) {
+        long before = bitmap[low >>> 6];
+        bitmap[low >>> 6] = before | (1L << low);
+        boolean added = before != bitmap[low >>> 6];
+        if (added) {
+          cardinality++;
+        }
+        return added;
+      }
+      int i = Arrays.binarySearch(array, 0, cardinality, low);
+      if (i >= 0) {
+        return false;
+      }
+      i = -i - 1;
+      if (cardinality == array.length) {
+        array = Arrays.copyOf(array, Math.min(cardinality * 2, ARRAY_MAX + 1));
+      }
+      System.arraycopy(array, i, array, i + 1, cardinality - i);
+      array[i] = low;
+      cardinality++;
+      return true;
+    }
+
+    Container addRange(int lo, int hi) {
+      Container ret = toBitmap();
+      int firstWord = lo >>> 6;
+      int lastWord = hi >>> 6;
+      for (int w = firstWord; w <= lastWord; w++) {
+        long mask = -1L;
+        if (w == firstWord) {
+          mask &= -1L << lo;
+        }
+        if (w == lastWord) {
+          mask &= -1L >>> (63 - (hi & 63));
+        }
+        ret.bitmap[w] |= mask;
+      }
+      ret.cardinality = ret.countBits();
+      return ret;
+    }
+
+    boolean remove(char low) {
+      if (bitmap != null) {
+        long before = bitmap[low >>> 6];
+        bitmap[low >>> 6] = before & ~(1L << low);
+        boolean removed = before != bitmap[low >>> 6];
+        if (removed) {
+          cardinality--;
+        }
+        return removed;
+      }
+      int i = Arrays.binarySearch(array, 0, cardinality, low);
+      if (i < 0) {
+        return false;
+      }
+      System.arraycopy(array, i + 1, array, i, cardinality - i - 1);
+      cardinality--;
+      return true;
+    }
+
+    boolean contains(char low) {
+      if (bitmap != null) {
+        return (bitmap[low >>> 6] & (1L << low)) != 0;
+      }
+      return Arrays.binarySearch(array, 0, cardinality, low) >= 0;
+    }
+
+    /**
+     * Returns the smallest member >= from, or NOT_FOUND.
+     */
+    int nextSetBit(int from) {
+      if (from > 0xFFFF) {
+        return NOT_FOUND;
+      }
+      if (bitmap != null) {
+        int w = from >>> 6;
+        long word = bitmap[w] & (-1L << from);
+        while (true) {
+          if (word != 0) {
+            return (w << 6) + Long.numberOfTrailingZeros(word);
+          }
+          if (++w == BITMAP_WORDS) {
+            return NOT_FOUND;
+          }
+          word = bitmap[w];
+        }
+      }
+      int i = Arrays.binarySearch(array, 0, cardinality, (char) from);
+      if (i < 0) {
+        i = -i - 1;
+      }
+      return i < cardinality ? array[i] : NOT_FOUND;
+    }
+
+    Container or(Container other) {
+      if (bitmap == null && other.bitmap == null && cardinality + other.cardinality <= ARRAY_MAX) {
+        char[] merged = new char[cardinality + other.cardinality];
+        int i = 0;
+        int j = 0;
+        int n = 0;
+        while (i < cardinality && j < other.cardinality) {
+          char a = array[i];
+          char b = other.array[j];
+          if (a < b) {
+            merged[n++] = a;
+            i++;
+          } else if (a > b) {
+            merged[n++] = b;
+            j++;
+          } else {
+            merged[n++] = a;
+            i++;
+            j++;
+          }
+        }
+        while (i < cardinality) {
+          merged[n++] = array[i++];
+        }
+        while (j < other.cardinality) {
+          merged[n++] = other.array[j++];
+        }
+        return new Container(merged, null, n);
+      }
+      Container ret = toBitmap();
+      if (other.bitmap != null) {
+        for (int w = 0; w < BITMAP_WORDS; w++) {
+          ret.bitmap[w] |= other.bitmap[w];
+        }
+      } else {
+        for (int j = 0; j < other.cardinality; j++) {
+          char low = other.array[j];
+          ret.bitmap[low >>> 6] |= 1L << low;
+        }
+      }
+      ret.cardinality = ret.countBits();
+      return ret;
+    }
+
+    Container and(Container other) {
+      if (bitmap != null && other.bitmap != null) {
+        long[] words = new long[BITMAP_WORDS];
+        int count = 0;
+        for (int w = 0; w < BITMAP_WORDS; w++) {
+          words[w] = bitmap[w] & other.bitmap[w];
+          count += Long.bitCount(words[w]);
+        }
+        return new Container(null, words, count);
+      }
+      if (bitmap != null) {
+        return other.and(this);
+      }
+      // this is an array container: the result can only be smaller
+      char[] result = new char[cardinality];
+      int n = 0;
+      if (other.bitmap != null) {
+        for (int i = 0; i < cardinality; i++) {
+          if (other.contains(array[i])) {
+            result[n++] = array[i];
+          }
+        }
+      } else {
+        int i = 0;
+        int j = 0;
+        while (i < cardinality && j < other.cardinality) {
+          char a = array[i];
+          char b = other.array[j];
+          if (a < b) {
+            i++;
+          } else if (a > b) {
+            j++;
+          } else {
+            result[n++] = a;
+            i++;
+            j++;
+          }
+        }
+      }
+      return new Container(result, null, n);
+    }
+
+    Container andNot(Container other) {
+      if (bitmap == null) {
+        char[] result = new char[cardinality];
+        int n = 0;
+        for (int i = 0; i < cardinality; i++) {
+          if (!other.contains(array[i])) {
+            result[n++] = array[i];
+          }
+        }
+        return new Container(result, null, n);
+      }
+      Container ret = copy();
+      if (other.bitmap != null) {
+        for (int w = 0; w < BITMAP_WORDS; w++) {
+          ret.bitmap[w] &= ~other.bitmap[w];
+        }
+      } else {
+        for (int j = 0; j < other.cardinality; j++) {
+          char low = other.array[j];
+          ret.bitmap[low >>> 6] &= ~(1L << low);
+        }
+      }
+      ret.cardinality = ret.countBits();
+      return ret;
+    }
+
+    boolean sameMembers(Container other) {
+      if (cardinality != other.cardinality) {
+        return false;
+      }
+      for (int a = nextSetBit(0), b = other.nextSetBit(0); a != NOT_FOUND; a = nextSetBit(a + 1), b =
+          other.nextSetBit(b + 1)) {
+        if (a != b) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    Container copy() {
+      return new Container(array == null ? null : Arrays.copyOf(array, Math.max(cardinality, 1)),
+          bitmap == null ? null : bitmap.clone(), cardinality);
+    }
+
+    /**
+     * Returns a container using the cheaper representation for the current
+     * cardinality (possibly this one).
+     */
+    Container optimize() {
+      if (bitmap == null && cardinality > ARRAY_MAX) {
+        return toBitmap();
+      }
+      if (bitmap != null && cardinality <= ARRAY_MAX) {
+        char[] values = new char[Math.max(cardinality, 1)];
+        int n = 0;
+        for (int low = nextSetBit(0); low != NOT_FOUND; low = nextSetBit(low + 1)) {
+          values[n++] = (char) low;
+        }
+        return new Container(values, null, cardinality);
+      }
+      return this;
+    }
+
+    private Container toBitmap() {
+      if (bitmap != null) {
+        return copy();
+      }
+      long[] words = new long[BITMAP_WORDS];
+      for (int i = 0; i < cardinality; i++) {
+        words[array[i] >>> 6] |= 1L << array[i];
+      }
+      return new Container(null, words, cardinality);
+    }
+
+    private int countBits() {
+      int ret = 0;
+      for (long word : bitmap) {
+        ret += Long.bitCount(word);
+      }
+      return ret;
+    }
+  }
+
+}
@@ -0,0 +1,772 @@
+/*
+ * Copyright 2017 Makoto Consulting Group, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.makotojava.learn.recipe.datetime;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.DateTimeException;
+import java.time.ZoneId;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.ToLongFunction;
+import java.util.stream.Stream;
+
+/**
+ * Sorts the lines of a file larger than memory by a timestamp key, in
+ * bounded memory.
+ *
+ * The input is read through an NIO channel in runs of runSize bytes, each
+ * cut at the last line break. The key of each line is extracted once, as
+ * epoch milliseconds, and the runs are sorted in parallel on their
+ * primitive keys, with int pointers to the lines rather than line objects.
+ * Each sorted run is spilled to a temporary file, and the files are then
+ * merged k ways with a loser tree, through buffered FileChannel reads.
+ * Inputs that fit in one run are sorted in memory, with no temporary file.
+ *
+ * Memory use while sorting is (threads + 1) * runSize bytes of line data,
+ * plus about 28 bytes per line of each of the threads runs in flight: the
+ * key, pointer and offset arrays of the run, and the scratch keys and
+ * pointers of its merge sort. With 40 to 80 byte lines, that roughly
+ * doubles the footprint. A line longer than runSize grows the read buffer
+ * until the run holding it is cut. Merging uses {@link #MAX_FAN_IN} read
+ * buffers of 64 KB; more runs than that are merged in several passes.
+ *
+ * The sort is stable: lines with equal keys keep their input order. Lines
+ * whose key cannot be extracted (the key function throws a
+ * DateTimeException) sort first and are counted as errors. Every line of
+ * the output ends with a line feed, including the last one.
+ */
+public class ExternalTimestampSort {
+
+  public static final int DEFAULT_RUN_SIZE = 64 * 1024 * 1024;
+
+  /** Maximum number of runs merged at once */
+  public static final int MAX_FAN_IN = 64;
+
+  /** Key of the lines whose key cannot be extracted */
+  public static final long ERROR_KEY = Long.MIN_VALUE;
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  /** Size of the key and length that precede each line in run files */
+  private static final int RECORD_HEADER = Long.BYTES + Integer.BYTES;
+
+  /** Below this size, ranges are insertion sorted */
+  private static final int INSERTION_SORT_THRESHOLD = 32;
+
+  private static final byte LF = '\n';
+
+  private static final byte CR = '\r';
+
+  private final ToLongFunction<? super CharSequence> keyFunction;
+
+  private final int runSize;
+
+  private final int threads;
+
+  private final Path tempDirectory;
+
+  /**
+   * Creates an ExternalTimestampSort with the default run size, one thread
+   * per processor and the default temporary directory.
+   *
+   * @param keyFunction
+   *          Returns the epoch milliseconds of a line (without its line
+   *          terminator). Not null.
+   */
+  public ExternalTimestampSort(ToLongFunction<? super CharSequence> keyFunction) {
+    this(keyFunction, DEFAULT_RUN_SIZE, Runtime.getRuntime().availableProcessors(), null);
+  }
+
+  /**
+   * Creates an ExternalTimestampSort.
+   *
+   * @param keyFunction
+   *          Returns the epoch milliseconds of a line (without its line
+   *          terminator). Not null.
+   * @param runSize
+   *          The number of bytes sorted in memory at a time. Greater than 0.
+   * @param threads
+   *          The number of runs sorted in parallel. Greater than 0.
+   * @param tempDirectory
+   *          The directory to spill runs to, or null for the default
+   *          temporary directory
+   */
+  public ExternalTimestampSort(ToLongFunction<? super CharSequence> keyFunction, int runSize, int threads,
+      Path tempDirectory) {
+    if (keyFunction == null) {
+      throw new IllegalArgumentException("Key function argument cannot be null!");
+    }
+    if (runSize <= 0) {
+      throw new IllegalArgumentException("Run size must be greater than 0: " + runSize);
+    }
+    if (threads <= 0) {
+      throw new IllegalArgumentException("Number of threads must be greater than 0: " + threads);
+    }
+    this.keyFunction = keyFunction;
+    this.runSize = runSize;
+    this.threads = threads;
+    this.tempDirectory = tempDirectory;
+  }
+
+  /**
+   * Creates a key function that parses one field of delimited lines, the
+   * way {@link DateTimeUtils#toZonedDateTime(String, java.time.format.DateTimeFormatter)}
+   * would, but through a {@link CompiledDateTimePattern}. Fields may be
+   * quoted with double quotes.
+   *
+   * @param column
+   *          The field to parse (0 = first)
+   * @param delimiter
+   *          The field delimiter
+   * @param pattern
+   *          The DateTimeFormatter pattern of the field
+   * @param zone
+   *          The time zone of the field, if the pattern has no offset or
+   *          zone ID, otherwise null
+   *
+   * @return The key function.
+   *
+   * @throws IllegalArgumentException
+   *           If the pattern is bad
+   */
+  public static ToLongFunction<CharSequence> fieldKey(int column, char delimiter, String pattern, ZoneId zone) {
+    if (column < 0) {
+      throw new IllegalArgumentException("Column must not be negative: " + column);
+    }
+    CompiledDateTimePattern compiled = CompiledDateTimePattern.of(pattern);
+    return line -> {
+      int field = 0;
+      int start = 0;
+      boolean inQuotes = false;
+      int end = line.length();
+      for (int i = 0; i < line.length(); i++) {
+        char c = line.charAt(i);
+        if (c == '"') {
+          inQuotes = !inQuotes;
+        } else if (c == delimiter && !inQuotes) {
+          if (field == column) {
+            end = i;
+            break;
+          }
+          field++;
+          start = i + 1;
+        }
+      }
+      if (field != column) {
+        throw new DateTimeException("Line has no field " + column);
+      }
+      if (end - start >= 2 && line.charAt(start) == '"' && line.charAt(end - 1) == '"') {
+        start++;
+        end--;
+      }
+      CharSequence text = line.subSequence(start, end);
+      return zone == null ? compiled.parseZonedDateTime(text).toInstant().toEpochMilli()
+          : compiled.parseLocalDateTime(text).atZone(zone).toInstant().toEpochMilli();
+    };
+  }
+
+  /**
+   * Sorts the lines of the input channel to the output channel. Neither
+   * channel is closed. Temporary files are deleted before returning.
+   *
+   * @param in
+   *          The channel to read from
+   * @param out
+   *          The channel to write to
+   *
+   * @return The Stats of the run.
+   *
+   * @throws IOException
+   *           If reading, writing or spilling fails
+   */
+  public Stats sort(ReadableByteChannel in, WritableByteChannel out) throws IOException {
+    long startNanos = System.nanoTime();
+    Stats stats = new Stats();
+    RecordWriter writer = new RecordWriter(out, false);
+    Path directory = null;
+    List<Path> runs = new ArrayList<>();
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      ByteBuffer buffer = ByteBuffer.allocate(runSize);
+      Deque<Future<Path>> inFlight = new ArrayDeque<>();
+      boolean eof = false;
+      while (!eof) {
+        eof = fill(in, buffer, stats);
+        int end = buffer.position();
+        int cut = eof ? end : lastLineBreak(buffer.array(), end);
+        if (cut < 0) {
+          // A single line longer than the buffer: grow it and read more
+          buffer = ByteBuffer.allocate(buffer.capacity() * 2).put(buffer.array(), 0, end);
+          continue;
+        }
+        boolean terminated = cut == 0 || buffer.array()[cut - 1] == LF;
+        byte[] data = Arrays.copyOf(buffer.array(), terminated ? cut : cut + 1);
+        if (!terminated) {
+          // The last line of the input
+          data[cut] = LF;
+        }
+        if (eof && stats.runs == 0) {
+          // Everything fits in one run
+          if (cut > 0) {
+            SortedRun run = sortRun(data);
+            stats.records += run.keys.length;
+            stats.errors += run.errors;
+            stats.runs++;
+            run.writeTo(writer);
+          }
+          break;
+        }
+        if (directory == null) {
+          directory = tempDirectory == null ? Files.createTempDirectory("timestamp-sort")
+              : Files.createTempDirectory(tempDirectory, "timestamp-sort");
+        }
+        if (cut > 0) {
+          Path file = directory.resolve("run-" + stats.runs++);
+          inFlight.add(executor.submit(() -> spill(sortRun(data), file, stats)));
+        }
+        if (buffer.capacity() > runSize && end - cut < runSize) {
+          // Shrink back after an over-long line
+          buffer = ByteBuffer.allocate(runSize).put(buffer.array(), cut, end - cut);
+        } else {
+          ((Buffer) buffer).position(end - cut);
+          System.arraycopy(buffer.array(), cut, buffer.array(), 0, end - cut);
+        }
+        while (inFlight.size() >= threads || (eof && !inFlight.isEmpty())) {
+          runs.add(await(inFlight.poll()));
+        }
+      }
+      executor.shutdown();
+      int generation = 0;
+      while (runs.size() > MAX_FAN_IN) {
+        // Merge consecutive runs only, to keep the sort stable
+        List<Path> merged = new ArrayList<>();
+        for (int i = 0; i < runs.size(); i += MAX_FAN_IN) {
+          List<Path> group = runs.subList(i, Math.min(i + MAX_FAN_IN, runs.size()));
+          Path file = directory.resolve("merge-" + generation + "-" + merged.size());
+          try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            merge(group, new RecordWriter(channel, true));
+          }
+          merged.add(file);
+        }
+        stats.mergePasses++;
+        runs = merged;
+        generation++;
+      }
+      if (!runs.isEmpty()) {
+        merge(runs, writer);
+        stats.mergePasses++;
+      }
+    } finally {
+      executor.shutdownNow();
+      if (directory != null) {
+        deleteAll(directory);
+      }
+    }
+    stats.bytesOut = writer.bytes;
+    stats.elapsedNanos = System.nanoTime() - startNanos;
+    return stats;
+  }
+
+  /**
+   * Extracts the keys of the lines of data, which ends with a line feed,
+   * and sorts them.
+   */
+  SortedRun sortRun(byte[] data) {
+    int count = 0;
+    for (byte b : data) {
+      if (b == LF) {
+        count++;
+      }
+    }
+    SortedRun ret = new SortedRun(data, count);
+    AsciiView line = new AsciiView(data);
+    int start = 0;
+    int n = 0;
+    for (int i = 0; i < data.length; i++) {
+      if (data[i] == LF) {
+        int end = i > start && data[i - 1] == CR ? i - 1 : i;
+        line.set(start, end);
+        try {
+          ret.keys[n] = keyFunction.applyAsLong(line);
+        } catch (DateTimeException e) {
+          ret.keys[n] = ERROR_KEY;
+          ret.errors++;
+        }
+        ret.order[n] = n;
+        n++;
+        start = i + 1;
+        ret.offsets[n] = start;
+      }
+    }
+    sortByKey(ret.keys, ret.order);
+    return ret;
+  }
+
+  /**
+   * Sorts keys, and order along with it, keeping the order of equal keys:
+   * insertion sort of small ranges, then bottom-up merges.
+   */
+  static void sortByKey(long[] keys, int[] order) {
+    int n = keys.length;
+    for (int lo = 0; lo < n; lo += INSERTION_SORT_THRESHOLD) {
+      int hi = Math.min(lo + INSERTION_SORT_THRESHOLD, n);
+      for (int i = lo + 1; i < hi; i++) {
+        long key = keys[i];
+        int index = order[i];
+        int j = i - 1;
+        while (j >= lo && keys[j] > key) {
+          keys[j + 1] = keys[j];
+          order[j + 1] = order[j];
+          j--;
+        }
+        keys[j + 1] = key;
+        order[j + 1] = index;
+      }
+    }
+    long[] sourceKeys = keys;
+    int[] sourceOrder = order;
+    long[] targetKeys = new long[n];
+    int[] targetOrder = new int[n];
+    for (long width = INSERTION_SORT_THRESHOLD; width < n; width *= 2) {
+      for (long lo = 0; lo < n; lo += 2 * width) {
+        int mid = (int) Math.min(lo + width, n);
+        int hi = (int) Math.min(lo + 2 * width, n);
+        int i = (int) lo;
+        int j = mid;
+        int k = (int) lo;
+        while (i < mid && j < hi) {
+          if (sourceKeys[j] < sourceKeys[i]) {
+            targetKeys[k] = sourceKeys[j];
+            targetOrder[k++] = sourceOrder[j++];
+          } else {
+            targetKeys[k] = sourceKeys[i];
+            targetOrder[k++] = sourceOrder[i++];
+          }
+        }
+        System.arraycopy(sourceKeys, i, targetKeys, k, mid - i);
+        System.arraycopy(sourceOrder, i, targetOrder, k, mid - i);
+        k += mid - i;
+        System.arraycopy(sourceKeys, j, targetKeys, k, hi - j);
+        System.arraycopy(sourceOrder, j, targetOrder, k, hi - j);
+      }
+      long[] keysSwap = sourceKeys;
+      sourceKeys = targetKeys;
+      targetKeys = keysSwap;
+      int[] orderSwap = sourceOrder;
+      sourceOrder = targetOrder;
+      targetOrder = orderSwap;
+    }
+    if (sourceKeys != keys) {
+      System.arraycopy(sourceKeys, 0, keys, 0, n);
+      System.arraycopy(sourceOrder, 0, order, 0, n);
+    }
+  }
+
+  private static Path spill(SortedRun run, Path file, Stats stats) throws IOException {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+      run.writeTo(new RecordWriter(channel, true));
+    }
+    synchronized (stats) {
+      stats.records += run.keys.length;
+      stats.errors += run.errors;
+    }
+    return file;
+  }
+
+  private static Path await(Future<Path> future) throws IOException {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while sorting", e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      throw new IOException("Sorting a run failed", e.getCause());
+    }
+  }
+
+  /**
+   * Merges the run files into writer with a loser tree: tree[0] holds the
+   * index of the run with the smallest key, and each internal node the
+   * loser of the match played there, so replacing the winner takes one
+   * comparison per level.
+   */
+  private static void merge(List<Path> runs, RecordWriter writer) throws IOException {
+    int k = runs.size();
+    RunReader[] readers = new RunReader[k];
+    try {
+      for (int i = 0; i < k; i++) {
+        readers[i] = new RunReader(runs.get(i));
+        readers[i].advance();
+      }
+      int[] tree = new int[k];
+      tree[0] = build(tree, readers, 1);
+      while (true) {
+        int winner = tree[0];
+        RunReader reader = readers[winner];
+        if (reader.exhausted) {
+          break;
+        }
+        reader.writeTo(writer);
+        reader.advance();
+        for (int node = (winner + k) / 2; node > 0; node /= 2) {
+          if (beats(readers, tree[node], winner)) {
+            int loser = winner;
+            winner = tree[node];
+            tree[node] = loser;
+          }
+        }
+        tree[0] = winner;
+      }
+      writer.flush();
+    } finally {
+      for (RunReader reader : readers) {
+        if (reader != null) {
+          reader.close();
+        }
+      }
+    }
+    for (Path run : runs) {
+      Files.delete(run);
+    }
+  }
+
+  /**
+   * Plays the matches of the subtree rooted at node (leaves are the nodes
+   * k to 2k - 1) and returns its winner.
+   */
+  private static int build(int[] tree, RunReader[] readers, int node) {
+    int k = readers.length;
+    if (node >= k) {
+      return node - k;
+    }
+    int left = build(tree, readers, 2 * node);
+    int right = build(tree, readers, 2 * node + 1);
+    if (beats(readers, left, right)) {
+      tree[node] = right;
+      return left;
+    }
+    tree[node] = left;
+    return right;
+  }
+
+  /**
+   * Returns true if the current line of run a goes before that of run b.
+   * Ties go to the earlier run, which holds the earlier input.
+   */
+  private static boolean beats(RunReader[] readers, int a, int b) {
+    RunReader ra = readers[a];
+    RunReader rb = readers[b];
+    if (ra.exhausted || rb.exhausted) {
+      return !ra.exhausted || (rb.exhausted && a < b);
+    }
+    return ra.key < rb.key || (ra.key == rb.key && a < b);
+  }
+
+  /**
+   * Reads until the buffer is full or the channel is exhausted.
+   *
+   * @return true if the end of the channel was reached.
+   */
+  private static boolean fill(ReadableByteChannel in, ByteBuffer buffer, Stats stats) throws IOException {
+    while (buffer.hasRemaining()) {
+      int read = in.read(buffer);
+      if (read < 0) {
+        return true;
+      }
+      stats.bytesIn += read;
+    }
+    return false;
+  }
+
+  /**
+   * Returns the position just after the last line feed in data[0, length),
+   * or -1 if there is none.
+   */
+  private static int lastLineBreak(byte[] data, int length) {
+    for (int i = length - 1; i >= 0; i--) {
+      if (data[i] == LF) {
+        return i + 1;
+      }
+    }
+    return -1;
+  }
+
+  private static void deleteAll(Path directory) throws IOException {
+    try (Stream<Path> files = Files.list(directory)) {
+      for (Path file : (Iterable<Path>) files::iterator) {
+        Files.deleteIfExists(file);
+      }
+    }
+    Files.deleteIfExists(directory);
+  }
+
+  /**
+   * The lines of one run, in input order, with their keys in sorted order
+   * and, in order, the indexes of the lines the keys belong to.
+   */
+  static final class SortedRun {
+    private final byte[] data;
+    /** Line i is data[offsets[i], offsets[i + 1]) */
+    private final int[] offsets;
+    private final long[] keys;
+    private final int[] order;
+    private long errors;
+
+    SortedRun(byte[] data, int count) {
+      this.data = data;
+      this.offsets = new int[count + 1];
+      this.keys = new long[count];
+      this.order = new int[count];
+    }
+
+    void writeTo(RecordWriter writer) throws IOException {
+      for (int i = 0; i < keys.length; i++) {
+        int line = order[i];
+        writer.write(keys[i], data, offsets[line], offsets[line + 1] - offsets[line]);
+      }
+      writer.flush();
+    }
+  }
+
+  /**
+   * Buffered writer of lines, each preceded by its key and length in run
+   * files.
+   */
+  private static final class RecordWriter {
+    private final WritableByteChannel channel;
+    private final boolean withKeys;
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private long bytes;
+
+    RecordWriter(WritableByteChannel channel, boolean withKeys) {
+      this.channel = channel;
+      this.withKeys = withKeys;
+    }
+
+    void write(long key, byte[] data, int offset, int length) throws IOException {
+      if (withKeys) {
+        if (buffer.remaining() < RECORD_HEADER) {
+          flush();
+        }
+        buffer.putLong(key).putInt(length);
+      }
+      if (buffer.remaining() < length) {
+        flush();
+        if (length > buffer.capacity()) {
+          writeFully(ByteBuffer.wrap(data, offset, length));
+          return;
+        }
+      }
+      buffer.put(data, offset, length);
+    }
+
+    void flush() throws IOException {
+      ((Buffer) buffer).flip();
+      writeFully(buffer);
+      ((Buffer) buffer).clear();
+    }
+
+    private void writeFully(ByteBuffer data) throws IOException {
+      bytes += data.remaining();
+      while (data.hasRemaining()) {
+        channel.write(data);
+      }
+    }
+  }
+
+  /**
+   * Buffered reader of a run file, positioned on one line at a time.
+   */
+  private static final class RunReader implements Closeable {
+    private final FileChannel channel;
+    /** In read mode; the current line starts at its position */
+    private ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private long key;
+    private int length;
+    private boolean exhausted;
+
+    RunReader(Path file) throws IOException {
+      this.channel = FileChannel.open(file, StandardOpenOption.READ);
+      ((Buffer) buffer).flip();
+    }
+
+    /** Moves to the next line, or sets exhausted */
+    void advance() throws IOException {
+      if (!available(RECORD_HEADER)) {
+        if (buffer.hasRemaining()) {
+          throw new IOException("Truncated run file");
+        }
+        exhausted = true;
+        return;
+      }
+      key = buffer.getLong();
+      length = buffer.getInt();
+      if (!available(length)) {
+        throw new IOException("Truncated run file");
+      }
+    }
+
+    void writeTo(RecordWriter writer) throws IOException {
+      writer.write(key, buffer.array(), buffer.arrayOffset() + buffer.position(), length);
+      ((Buffer) buffer).position(buffer.position() + length);
+    }
+
+    /**
+     * Reads until at least n bytes are buffered, growing the buffer for
+     * lines longer than it, and returns false if the file ends first.
+     */
+    private boolean available(int n) throws IOException {
+      if (buffer.remaining() >= n) {
+        return true;
+      }
+      if (n > buffer.capacity()) {
+        buffer = ByteBuffer.allocate(n).put(buffer);
+      } else {
+        buffer.compact();
+      }
+      while (buffer.position() < n && channel.read(buffer) >= 0) {
+        // Keep reading
+      }
+      ((Buffer) buffer).flip();
+      return buffer.remaining() >= n;
+    }
+
+    @Override
+    public void close() throws IOException {
+      channel.close();
+    }
+  }
+
+  /**
+   * A line of bytes seen as chars, one per byte (ISO-8859-1). This is exact
+   * for the ASCII text of timestamps and delimiters, and reused from line
+   * to line.
+   */
+  private static final class AsciiView implements CharSequence {
+    private final byte[] data;
+    private int start;
+    private int end;
+
+    AsciiView(byte[] data) {
+      this.data = data;
+    }
+
+    void set(int start, int end) {
+      this.start = start;
+      this.end = end;
+    }
+
+    @Override
+    public int length() {
+      return end - start;
+    }
+
+    @Override
+    public char charAt(int index) {
+      if (index < 0 || index >= end - start) {
+        throw new IndexOutOfBoundsException("Index: " + index);
+      }
+      return (char) (data[start + index] & 0xff);
+    }
+
+    @Override
+    public CharSequence subSequence(int from, int to) {
+      if (from < 0 || to > end - start || from > to) {
+        throw new IndexOutOfBoundsException("Range: " + from + ", " + to);
+      }
+      AsciiView ret = new AsciiView(data);
+      ret.set(start + from, start + to);
+      return ret;
+    }
+
+    @Override
+    public String toString() {
+      return new String(data, start, end - start, StandardCharsets.ISO_8859_1);
+    }
+  }
+
+  /**
+   * Counts of a run.
+   */
+  public static final class Stats {
+    private long records;
+    private long errors;
+    private long runs;
+    private long mergePasses;
+    private long bytesIn;
+    private long bytesOut;
+    private long elapsedNanos;
+
+    /** Number of lines sorted */
+    public long getRecords() {
+      return records;
+    }
+
+    /** Number of lines whose key could not be extracted, sorted first */
+    public long getErrors() {
+      return errors;
+    }
+
+    /** Number of runs sorted in memory */
+    public long getRuns() {
+      return runs;
+    }
+
+    /** Number of passes over the spilled data, 0 if nothing was spilled */
+    public long getMergePasses() {
+      return mergePasses;
+    }
+
+    public long getBytesIn() {
+      return bytesIn;
+    }
+
+    public long getBytesOut() {
+      return bytesOut;
+    }
+
+    public long getElapsedNanos() {
+      return elapsedNanos;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("records=%d errors=%d runs=%d mergePasses=%d bytesIn=%d bytesOut=%d elapsed=%.3fs",
+          records, errors, runs, mergePasses, bytesIn, bytesOut, elapsedNanos / 1e9);
+    }
+  }
+
+}
@@ -0,0 +1,580 @@
+/*
+ * Copyright 2017 Makoto Consulting Group, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.makotojava.learn.recipe.datetime;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.Month;
+import java.time.MonthDay;
+import java.time.ZoneId;
+
+/**
+ * A retail 52-53 week fiscal calendar: fiscal years of whole weeks, ending
+ * on the same day of the week each year, split into 4 quarters of 3
+ * periods of 4 or 5 weeks (4-4-5, 4-5-4 or 5-4-4). A year is 53 weeks long
+ * when its end rule falls a week later than 52 weeks would; the extra week
+ * goes to the last period.
+ *
+ * The year, period and week boundaries of a range of fiscal years are
+ * computed once, as epoch-day tables. Mapping a date to its fiscal year
+ * is a direct index into the table of year starts (estimated from the
+ * average year length and corrected by a step or two), and the week and
+ * period follow by division and a lookup in a 53-entry table, with no day
+ * loops. The batch tag methods label whole columns of epoch-days or
+ * epoch-millis in one pass.
+ *
+ * Instances are immutable and thread safe.
+ */
+public final class FiscalCalendar {
+
+  public static final int QUARTERS_PER_YEAR = 4;
+
+  public static final int PERIODS_PER_YEAR = 12;
+
+  private static final int DAYS_PER_WEEK = 7;
+
+  /** Days in 400 Gregorian years, the average length of a fiscal year */
+  private static final long DAYS_PER_400_YEARS = 146_097;
+
+  /**
+   * The number of weeks in each period of a quarter.
+   */
+  public enum Pattern {
+    FOUR_FOUR_FIVE(4, 4, 5),
+    FOUR_FIVE_FOUR(4, 5, 4),
+    FIVE_FOUR_FOUR(5, 4, 4);
+
+    private final int[] weeks;
+
+    Pattern(int... weeks) {
+      this.weeks = weeks;
+    }
+
+    /**
+     * Returns the number of weeks of a period in a 52-week year.
+     *
+     * @param period
+     *          The period (1 = first)
+     *
+     * @return The number of weeks.
+     */
+    public int weeksIn(int period) {
+      return weeks[(period - 1) % weeks.length];
+    }
+  }
+
+  /**
+   * The rule that gives the last day of each fiscal year.
+   */
+  public static final class YearEnd {
+
+    private final Month month;
+
+    private final MonthDay nearestTo;
+
+    private final DayOfWeek dayOfWeek;
+
+    /** 1 if fiscal years are named after the calendar year they start in */
+    private final int nameOffset;
+
+    private YearEnd(Month month, MonthDay nearestTo, DayOfWeek dayOfWeek, int nameOffset) {
+      this.month = month;
+      this.nearestTo = nearestTo;
+      this.dayOfWeek = dayOfWeek;
+      this.nameOffset = nameOffset;
+    }
+
+    /**
+     * Creates a YearEnd on the last dayOfWeek of a month (the last Saturday
+     * of September, say). Fiscal years are named after the calendar year
+     * they end in.
+     *
+     * @param month
+     *          The month. Not null.
+     * @param dayOfWeek
+     *          The day of the week. Not null.
+     *
+     * @return The YearEnd object.
+     */
+    public static YearEnd lastInMonth(Month month, DayOfWeek dayOfWeek) {
+      if (month == null || dayOfWeek == null) {
+        throw new IllegalArgumentException("Month and DayOfWeek arguments cannot be null!");
+      }
+      return new YearEnd(month, null, dayOfWeek, 0);
+    }
+
+    /**
+     * Creates a YearEnd on the dayOfWeek nearest a fixed date (the Saturday
+     * nearest January 31, say), up to 3 days before or after it. Fiscal
+     * years are named after the calendar year they end in.
+     *
+     * @param monthDay
+     *          The fixed date. Not null.
+     * @param dayOfWeek
+     *          The day of the week. Not null.
+     *
+     * @return The YearEnd object.
+     */
+    public static YearEnd nearest(MonthDay monthDay, DayOfWeek dayOfWeek) {
+      if (monthDay == null || dayOfWeek == null) {
+        throw new IllegalArgumentException("MonthDay and DayOfWeek arguments cannot be null!");
+      }
+      return new YearEnd(null, monthDay, dayOfWeek, 0);
+    }
+
+    /**
+     * Returns the same rule, with fiscal years named after the calendar
+     * year before the one they end in, as retailers whose years end around
+     * January 31 do.
+     *
+     * @return The YearEnd object.
+     */
+    public YearEnd namedByStartYear() {
+      return new YearEnd(month, nearestTo, dayOfWeek, 1);
+    }
+
+    /**
+     * Returns the last day of the specified fiscal year.
+     */
+    long endEpochDay(int fiscalYear, DateTimeUtils dateTimeUtils) {
+      int year = fiscalYear + nameOffset;
+      if (month != null) {
+        return dateTimeUtils.computeLastDay(year, month.getValue(), dayOfWeek).toEpochDay();
+      }
+      // Feb 29 falls back to Feb 28 in common years
+      int day = Math.min(nearestTo.getDayOfMonth(), DateTimeFlyweights.lengthOfMonth(year, nearestTo.getMonthValue()));
+      long target = DateTimeFlyweights.epochDay(year, nearestTo.getMonthValue(), day);
+      int daysBack = Math.floorMod(DateTimeFlyweights.dayOfWeek(target) - dayOfWeek.getValue(), DAYS_PER_WEEK);
+      return daysBack <= 3 ? target - daysBack : target + DAYS_PER_WEEK - daysBack;
+    }
+
+    @Override
+    public String toString() {
+      return (month != null ? "last " + dayOfWeek + " of " + month : dayOfWeek + " nearest " + nearestTo)
+          + (nameOffset == 0 ? "" : ", named by start year");
+    }
+  }
+
+  /**
+   * The fiscal year, quarter, period and week of a date.
+   */
+  public static final class FiscalDate {
+
+    private final int year;
+
+    private final int period;
+
+    private final int week;
+
+    private FiscalDate(int year, int period, int week) {
+      this.year = year;
+      this.period = period;
+      this.week = week;
+    }
+
+    public int getYear() {
+      return year;
+    }
+
+    /** The quarter, 1 to 4 */
+    public int getQuarter() {
+      return (period - 1) / 3 + 1;
+    }
+
+    /** The period, 1 to 12 */
+    public int getPeriod() {
+      return period;
+    }
+
+    /** The week of the year, 1 to 53 */
+    public int getWeek() {
+      return week;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (!(obj instanceof FiscalDate)) {
+        return false;
+      }
+      FiscalDate other = (FiscalDate) obj;
+      return year == other.year && period == other.period && week == other.week;
+    }
+
+    @Override
+    public int hashCode() {
+      return (year * 16 + period) * 64 + week;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("FY%d-Q%d-P%02d-W%02d", year, getQuarter(), period, week);
+    }
+  }
+
+  private final YearEnd yearEnd;
+
+  private final Pattern pattern;
+
+  private final int firstFiscalYear;
+
+  /** Start of fiscal year firstFiscalYear + i; the last element is the day after the last year */
+  private final long[] yearStarts;
+
+  /** Start of period p (0-based) of fiscal year firstFiscalYear + i, at i * 12 + p */
+  private final long[] periodStarts;
+
+  /** The period (1-based) of each week (0-based) of a 52-week and of a 53-week year */
+  private final byte[][] weekPeriods = new byte[2][53];
+
+  /**
+   * Creates a FiscalCalendar of the specified fiscal years.
+   *
+   * @param yearEnd
+   *          The rule that gives the last day of each fiscal year. Not null.
+   * @param pattern
+   *          The weeks per period. Not null.
+   * @param firstFiscalYear
+   *          The first fiscal year to precompute
+   * @param lastFiscalYear
+   *          The last fiscal year to precompute, at least firstFiscalYear
+   */
+  public FiscalCalendar(YearEnd yearEnd, Pattern pattern, int firstFiscalYear, int lastFiscalYear) {
+    if (yearEnd == null || pattern == null) {
+      throw new IllegalArgumentException("YearEnd and Pattern arguments cannot be null!");
+    }
+    if (lastFiscalYear < firstFiscalYear) {
+      throw new IllegalArgumentException("Last fiscal year " + lastFiscalYear + " is before first fiscal year "
+          + firstFiscalYear);
+    }
+    this.yearEnd = yearEnd;
+    this.pattern = pattern;
+    this.firstFiscalYear = firstFiscalYear;
+    int years = lastFiscalYear - firstFiscalYear + 1;
+    DateTimeUtils dateTimeUtils = new DateTimeUtils();
+    yearStarts = new long[years + 1];
+    yearStarts[0] = yearEnd.endEpochDay(firstFiscalYear - 1, dateTimeUtils) + 1;
+    for (int i = 0; i < years; i++) {
+      yearStarts[i + 1] = yearEnd.endEpochDay(firstFiscalYear + i, dateTimeUtils) + 1;
+    }
+    for (int leap = 0; leap < 2; leap++) {
+      int week = 0;
+      for (int period = 1; period <= PERIODS_PER_YEAR; period++) {
+        int weeks = pattern.weeksIn(period) + (leap == 1 && period == PERIODS_PER_YEAR ? 1 : 0);
+        for (int i = 0; i < weeks; i++) {
+          weekPeriods[leap][week++] = (byte) period;
+        }
+      }
+    }
+    periodStarts = new long[years * PERIODS_PER_YEAR];
+    for (int i = 0; i < years; i++) {
+      long start = yearStarts[i];
+      for (int p = 0; p < PERIODS_PER_YEAR; p++) {
+        periodStarts[i * PERIODS_PER_YEAR + p] = start;
+        start += (long) pattern.weeksIn(p + 1) * DAYS_PER_WEEK;
+      }
+    }
+  }
+
+  /**
+   * Returns the fiscal date of the specified date.
+   *
+   * @param date
+   *          The date. Not null.
+   *
+   * @return The FiscalDate object.
+   *
+   * @throws IllegalArgumentException
+   *           If the date is outside the precomputed fiscal years
+   */
+  public FiscalDate of(LocalDate date) {
+    if (date == null) {
+      throw new IllegalArgumentException("LocalDate argument cannot be null!");
+    }
+    return ofEpochDay(date.toEpochDay());
+  }
+
+  /**
+   * Returns the fiscal date of the specified epoch-day.
+   *
+   * @param epochDay
+   *          The epoch-day
+   *
+   * @return The FiscalDate object.
+   *
+   * @throws IllegalArgumentException
+   *           If the day is outside the precomputed fiscal years
+   */
+  public FiscalDate ofEpochDay(long epochDay) {
+    int index = yearIndex(epochDay, 0);
+    int week = (int) ((epochDay - yearStarts[index]) / DAYS_PER_WEEK);
+    return new FiscalDate(firstFiscalYear + index, weekPeriods[leap(index)][week], week + 1);
+  }
+
+  /**
+   * Returns the fiscal date of the specified instant in a time zone.
+   *
+   * @param epochMilli
+   *          The instant in milliseconds since the epoch
+   * @param timeZoneId
+   *          The time zone of the business day. Not null.
+   *
+   * @return The FiscalDate object.
+   *
+   * @throws IllegalArgumentException
+   *           If the day is outside the precomputed fiscal years
+   */
+  public FiscalDate ofEpochMilli(long epochMilli, ZoneId timeZoneId) {
+    return ofEpochDay(new IncrementalZoneConverter(timeZoneId).localEpochDay(epochMilli));
+  }
+
+  /**
+   * Writes the fiscal year, period and week of each epoch-day into the
+   * corresponding elements of the output arrays. Consecutive days in the
+   * same fiscal year skip the year lookup.
+   *
+   * @param epochDays
+   *          The epoch-days. Not null.
+   * @param years
+   *          Receives the fiscal years, or null
+   * @param periods
+   *          Receives the periods (1 to 12; the quarter is (period + 2) /
+   *          3), or null
+   * @param weeks
+   *          Receives the weeks of the year (1 to 53), or null
+   *
+   * @throws IllegalArgumentException
+   *           If a day is outside the precomputed fiscal years, or an
+   *           output array is too short
+   */
+  public void tagEpochDays(long[] epochDays, int[] years, int[] periods, int[] weeks) {
+    checkOutputs(epochDays.length, years, periods, weeks);
+    int index = 0;
+    for (int i = 0; i < epochDays.length; i++) {
+      index = tag(epochDays[i], index, i, years, periods, weeks);
+    }
+  }
+
+  /**
+   * Writes the fiscal year, period and week of each instant, in the
+   * specified time zone, into the corresponding elements of the output
+   * arrays.
+   *
+   * @param epochMillis
+   *          The instants in milliseconds since the epoch. Not null.
+   * @param timeZoneId
+   *          The time zone of the business day. Not null.
+   * @param years
+   *          Receives the fiscal years, or null
+   * @param periods
+   *          Receives the periods (1 to 12), or null
+   * @param weeks
+   *          Receives the weeks of the year (1 to 53), or null
+   *
+   * @throws IllegalArgumentException
+   *           If a day is outside the precomputed fiscal years, or an
+   *           output array is too short
+   */
+  public void tagEpochMillis(long[] epochMillis, ZoneId timeZoneId, int[] years, int[] periods, int[] weeks) {
+    checkOutputs(epochMillis.length, years, periods, weeks);
+    IncrementalZoneConverter converter = new IncrementalZoneConverter(timeZoneId);
+    int index = 0;
+    for (int i = 0; i < epochMillis.length; i++) {
+      index = tag(converter.localEpochDay(epochMillis[i]), index, i, years, periods, weeks);
+    }
+  }
+
+  /**
+   * Returns the first day of the specified fiscal year.
+   *
+   * @param fiscalYear
+   *          The fiscal year
+   *
+   * @return The LocalDate object.
+   */
+  public LocalDate getYearStart(int fiscalYear) {
+    return DateTimeFlyweights.localDate(yearStarts[checkYear(fiscalYear)]);
+  }
+
+  /**
+   * Returns the last day of the specified fiscal year.
+   *
+   * @param fiscalYear
+   *          The fiscal year
+   *
+   * @return The LocalDate object.
+   */
+  public LocalDate getYearEnd(int fiscalYear) {
+    return DateTimeFlyweights.localDate(yearStarts[checkYear(fiscalYear) + 1] - 1);
+  }
+
+  /**
+   * Returns the number of weeks of the specified fiscal year.
+   *
+   * @param fiscalYear
+   *          The fiscal year
+   *
+   * @return 52 or 53.
+   */
+  public int getWeeksInYear(int fiscalYear) {
+    return 52 + leap(checkYear(fiscalYear));
+  }
+
+  /**
+   * Returns the first day of the specified quarter.
+   *
+   * @param fiscalYear
+   *          The fiscal year
+   * @param quarter
+   *          The quarter, 1 to 4
+   *
+   * @return The LocalDate object.
+   */
+  public LocalDate getQuarterStart(int fiscalYear, int quarter) {
+    if (quarter < 1 || quarter > QUARTERS_PER_YEAR) {
+      throw new IllegalArgumentException("Quarter must be 1 to 4: " + quarter);
+    }
+    return getPeriodStart(fiscalYear, (quarter - 1) * 3 + 1);
+  }
+
+  /**
+   * Returns the first day of the specified period.
+   *
+   * @param fiscalYear
+   *          The fiscal year
+   * @param period
+   *          The period, 1 to 12
+   *
+   * @return The LocalDate object.
+   */
+  public LocalDate getPeriodStart(int fiscalYear, int period) {
+    return DateTimeFlyweights.localDate(periodStarts[periodIndex(fiscalYear, period)]);
+  }
+
+  /**
+   * Returns the last day of the specified period.
+   *
+   * @param fiscalYear
+   *          The fiscal year
+   * @param period
+   *          The period, 1 to 12
+   *
+   * @return The LocalDate object.
+   */
+  public LocalDate getPeriodEnd(int fiscalYear, int period) {
+    int index = periodIndex(fiscalYear, period);
+    long next = period == PERIODS_PER_YEAR ? yearStarts[index / PERIODS_PER_YEAR + 1] : periodStarts[index + 1];
+    return DateTimeFlyweights.localDate(next - 1);
+  }
+
+  /**
+   * Returns the first day of the specified week.
+   *
+   * @param fiscalYear
+   *          The fiscal year
+   * @param week
+   *          The week of the year, 1 to 52 (or 53)
+   *
+   * @return The LocalDate object.
+   */
+  public LocalDate getWeekStart(int fiscalYear, int week) {
+    int index = checkYear(fiscalYear);
+    if (week < 1 || week > 52 + leap(index)) {
+      throw new IllegalArgumentException("Week " + week + " is not in fiscal year " + fiscalYear);
+    }
+    return DateTimeFlyweights.localDate(yearStarts[index] + (week - 1) * DAYS_PER_WEEK);
+  }
+
+  public int getFirstFiscalYear() {
+    return firstFiscalYear;
+  }
+
+  public int getLastFiscalYear() {
+    return firstFiscalYear + yearStarts.length - 2;
+  }
+
+  private int tag(long epochDay, int hint, int i, int[] years, int[] periods, int[] weeks) {
+    int index = yearIndex(epochDay, hint);
+    int week = (int) ((epochDay - yearStarts[index]) / DAYS_PER_WEEK);
+    if (years != null) {
+      years[i] = firstFiscalYear + index;
+    }
+    if (periods != null) {
+      periods[i] = weekPeriods[leap(index)][week];
+    }
+    if (weeks != null) {
+      weeks[i] = week + 1;
+    }
+    return index;
+  }
+
+  /**
+   * Returns the index of the fiscal year of the day: hint if it is right,
+   * otherwise an estimate from the average year length, corrected.
+   */
+  private int yearIndex(long epochDay, int hint) {
+    if (epochDay < yearStarts[0] || epochDay >= yearStarts[yearStarts.length - 1]) {
+      throw new IllegalArgumentException("Day " + DateTimeFlyweights.localDate(epochDay)
+          + " is outside fiscal years " + firstFiscalYear + " to " + getLastFiscalYear());
+    }
+    int index = hint;
+    if (epochDay < yearStarts[index] || epochDay >= yearStarts[index + 1]) {
+      // Year ends follow the calendar, so the estimate is only a few days off
+      index = (int) Math.min((epochDay - yearStarts[0]) * 400 / DAYS_PER_400_YEARS, yearStarts.length - 2);
+      while (epochDay < yearStarts[index]) {
+        index--;
+      }
+      while (epochDay >= yearStarts[index + 1]) {
+        index++;
+      }
+    }
+    return index;
+  }
+
+  /** Returns 1 for a 53-week year, 0 for a 52-week year */
+  private int leap(int index) {
+    return (int) ((yearStarts[index + 1] - yearStarts[index]) / DAYS_PER_WEEK) - 52;
+  }
+
+  private int checkYear(int fiscalYear) {
+    if (fiscalYear < firstFiscalYear || fiscalYear > getLastFiscalYear()) {
+      throw new IllegalArgumentException("Fiscal year " + fiscalYear + " is outside " + firstFiscalYear + " to "
+          + getLastFiscalYear());
+    }
+    return fiscalYear - firstFiscalYear;
+  }
+
+  private int periodIndex(int fiscalYear, int period) {
+    int index = checkYear(fiscalYear);
+    if (period < 1 || period > PERIODS_PER_YEAR) {
+      throw new IllegalArgumentException("Period must be 1 to 12: " + period);
+    }
+    return index * PERIODS_PER_YEAR + period - 1;
+  }
+
+  private static void checkOutputs(int length, int[]... outputs) {
+    for (int[] output : outputs) {
+      if (output != null && output.length < length) {
+        throw new IllegalArgumentException("Output array too short: " + output.length + " < " + length);
+      }
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "FiscalCalendar[" + yearEnd + ", " + pattern + ", " + firstFiscalYear + " to " + getLastFiscalYear() + "]";
+  }
+
+}
@@ -0,0 +1,225 @@
+/*
+ * Copyright 2017 Makoto Consulting Group, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.makotojava.learn.recipe.datetime;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A lock-free hybrid logical clock (HLC).
+ *
+ * Each timestamp is a long whose upper 48 bits hold the physical time in
+ * milliseconds since the epoch and whose lower 16 bits hold a logical
+ * counter. Timestamps handed out by one clock are strictly increasing, even
+ * when many threads ask at once or when the wall clock steps backwards, and
+ * merging a timestamp received from another node with {@link #update(long)}
+ * guarantees that every later local timestamp is greater than it.
+ *
+ * Because the fields are packed, comparing two timestamps is a plain long
+ * comparison, and a logical counter that overflows simply carries into the
+ * next millisecond.
+ *
+ * 48 bits of milliseconds cover the dates up to the year 10889.
+ */
+public class HybridLogicalClock {
+
+  /** Number of low-order bits holding the logical counter */
+  public static final int LOGICAL_BITS = 16;
+
+  private static final long LOGICAL_MASK = (1L << LOGICAL_BITS) - 1;
+
+  private static final long MAX_PHYSICAL_MILLIS = (1L << (Long.SIZE - LOGICAL_BITS)) - 1;
+
+  /** Remote timestamps in the last positive millisecond would leave no room to count past them */
+  private static final long MAX_REMOTE_TIMESTAMP = (Long.MAX_VALUE & ~LOGICAL_MASK) - 1;
+
+  private final AtomicLong last = new AtomicLong();
+
+  private final CachedClock clock;
+
+  private final long maxOffsetMillis;
+
+  private final DateTimeUtils dateTimeUtils = new DateTimeUtils();
+
+  /**
+   * Creates a HybridLogicalClock driven by the shared coarse clock, that
+   * accepts remote timestamps however far ahead they are.
+   */
+  public HybridLogicalClock() {
+    this(CachedClock.coarse(), 0);
+  }
+
+  /**
+   * Creates a HybridLogicalClock driven by the specified clock.
+   *
+   * @param clock
+   *          The source of physical time. Not null.
+   * @param maxOffsetMillis
+   *          The furthest (in ms) a remote timestamp may be ahead of the
+   *          local physical clock before update() rejects it. Zero means
+   *          no limit.
+   */
+  public HybridLogicalClock(CachedClock clock, long maxOffsetMillis) {
+    if (clock == null) {
+      throw new IllegalArgumentException("CachedClock argument cannot be null!");
+    }
+    if (maxOffsetMillis < 0) {
+      throw new IllegalArgumentException("The maximum offset cannot be negative: " + maxOffsetMillis);
+    }
+    this.clock = clock;
+    this.maxOffsetMillis = maxOffsetMillis;
+  }
+
+  /**
+   * Returns a new timestamp for a local or send event. It is greater than
+   * every timestamp previously returned by, or merged into, this clock.
+   *
+   * @return The packed timestamp.
+   */
+  public long now() {
+    long physical = pack(clock.currentTimeMillis(), 0);
+    while (true) {
+      long prev = last.get();
+      long next = physical > prev ? physical : prev + 1;
+      if (last.compareAndSet(prev, next)) {
+        return next;
+      }
+    }
+  }
+
+  /**
+   * Merges a timestamp received from another node and returns a new
+   * timestamp for the receive event, which is greater than both the remote
+   * timestamp and every timestamp previously returned by this clock.
+   *
+   * @param remoteTimestamp
+   *          The packed timestamp received from the other node
+   *
+   * @return The packed timestamp.
+   *
+   * @throws IllegalArgumentException
+   *           If the remote timestamp is negative, or so close to
+   *           Long.MAX_VALUE that later timestamps would overflow
+   * @throws IllegalStateException
+   *           If a maximum offset is configured and the remote timestamp is
+   *           further ahead of the local physical clock than it allows. The
+   *           clock is left unchanged in both cases.
+   */
+  public long update(long remoteTimestamp) {
+    if (remoteTimestamp < 0 || remoteTimestamp > MAX_REMOTE_TIMESTAMP) {
+      throw new IllegalArgumentException("The remote timestamp: " + remoteTimestamp + " is out of range");
+    }
+    long physicalMillis = clock.currentTimeMillis();
+    if (maxOffsetMillis > 0 && physicalMillis(remoteTimestamp) - physicalMillis > maxOffsetMillis) {
+      throw new IllegalStateException("Remote timestamp " + toInstant(remoteTimestamp) + " is more than "
+          + maxOffsetMillis + "ms ahead of the local clock");
+    }
+    long physical = pack(physicalMillis, 0);
+    while (true) {
+      long prev = last.get();
+      long next = Math.max(physical, Math.max(prev, remoteTimestamp) + 1);
+      if (last.compareAndSet(prev, next)) {
+        return next;
+      }
+    }
+  }
+
+  /**
+   * Returns the most recent timestamp handed out by, or merged into, this
+   * clock without advancing it.
+   *
+   * @return The packed timestamp.
+   */
+  public long last() {
+    return last.get();
+  }
+
+  /**
+   * Packs the specified physical time and logical counter into a timestamp.
+   *
+   * @param epochMilli
+   *          The number of milliseconds since the epoch. Must fit in 48 bits.
+   * @param logical
+   *          The logical counter. Must fit in 16 bits.
+   *
+   * @return The packed timestamp.
+   */
+  public static long pack(long epochMilli, int logical) {
+    if (epochMilli < 0 || epochMilli > MAX_PHYSICAL_MILLIS) {
+      throw new IllegalArgumentException("The specified epoch millis: " + epochMilli + " do not fit in "
+          + (Long.SIZE - LOGICAL_BITS) + " bits");
+    }
+    if ((logical & ~LOGICAL_MASK) != 0) {
+      throw new IllegalArgumentException("The specified logical counter: " + logical + " does not fit in "
+          + LOGICAL_BITS + " bits");
+    }
+    return epochMilli << LOGICAL_BITS | logical;
+  }
+
+  /**
+   * Returns the physical part of the specified timestamp.
+   *
+   * @param timestamp
+   *          The packed timestamp
+   *
+   * @return The number of milliseconds since the epoch.
+   */
+  public static long physicalMillis(long timestamp) {
+    return timestamp >>> LOGICAL_BITS;
+  }
+
+  /**
+   * Returns the logical part of the specified timestamp.
+   *
+   * @param timestamp
+   *          The packed timestamp
+   *
+   * @return The logical counter.
+   */
+  public static int logicalCounter(long timestamp) {
+    return (int) (timestamp & LOGICAL_MASK);
+  }
+
+  /**
+   * Creates an Instant from the physical part of the specified timestamp.
+   *
+   * @param timestamp
+   *          The packed timestamp
+   *
+   * @return The Instant object.
+   */
+  public Instant toInstant(long timestamp) {
+    return dateTimeUtils.toInstant(physicalMillis(timestamp));
+  }
+
+  /**
+   * Creates a ZonedDateTime from the physical part of the specified
+   * timestamp, at the specified time zone.
+   *
+   * @param timestamp
+   *          The packed timestamp
+   * @param timeZoneId
+   *          The time zone ID
+   *
+   * @return The ZonedDateTime object.
+   */
+  public ZonedDateTime toZonedDateTime(long timestamp, ZoneId timeZoneId) {
+    return dateTimeUtils.toZonedDateTime(physicalMillis(timestamp), timeZoneId);
+  }
+
+}
@@ -0,0 +1,251 @@
+/*
+ * Copyright 2017 Makoto Consulting Group, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.makotojava.learn.recipe.datetime;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.zone.ZoneOffsetTransition;
+import java.time.zone.ZoneRules;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Converts epoch milliseconds to local date/time values in one zone,
+ * remembering the last offset and the last local day it computed.
+ *
+ * The converter keeps two windows: the range of instants over which the
+ * zone's offset is constant (between two transitions), and the range of
+ * local milliseconds making up the current local day. A timestamp inside
+ * both windows is converted with an addition and a subtraction; only a
+ * timestamp outside them pays for the offset lookup or the epoch-day to
+ * year/month/day decomposition. Time-ordered streams therefore convert at
+ * a few integer operations per value, and unordered input is still
+ * correct, just not faster than LocalDateTime.ofInstant.
+ *
+ * Converters are stateful and NOT thread safe: use one per thread, for
+ * instance through {@link #forCurrentThread(ZoneId)}.
+ */
+public final class IncrementalZoneConverter {
+
+  private static final long MILLIS_PER_DAY = 86_400_000L;
+
+  private static final long NANOS_PER_MILLI = 1_000_000L;
+
+  private static final ThreadLocal<Map<ZoneId, IncrementalZoneConverter>> PER_THREAD =
+      new ThreadLocal<Map<ZoneId, IncrementalZoneConverter>>() {
+        @Override
+        protected Map<ZoneId, IncrementalZoneConverter> initialValue() {
+          return new HashMap<>();
+        }
+      };
+
+  private final ZoneId zone;
+
+  private final ZoneRules rules;
+
+  // Instants in [offsetFromMillis, offsetToMillis) have offsetMillis; empty until the first call
+  private long offsetFromMillis = Long.MAX_VALUE;
+  private long offsetToMillis = Long.MIN_VALUE;
+  private int offsetMillis;
+  private ZoneOffset offset;
+
+  // Local millis in [dayStartLocalMillis, dayStartLocalMillis + MILLIS_PER_DAY) fall on date
+  private long dayStartLocalMillis = Long.MAX_VALUE;
+  private LocalDate date;
+
+  /**
+   * Creates an IncrementalZoneConverter for the specified zone.
+   *
+   * @param timeZoneId
+   *          The time zone ID. Not null.
+   */
+  public IncrementalZoneConverter(ZoneId timeZoneId) {
+    if (timeZoneId == null) {
+      throw new IllegalArgumentException("ZoneId argument cannot be null!");
+    }
+    this.zone = timeZoneId;
+    this.rules = timeZoneId.getRules();
+  }
+
+  /**
+   * Returns the calling thread's converter for the specified zone,
+   * creating it on first use.
+   *
+   * @param timeZoneId
+   *          The time zone ID. Not null.
+   *
+   * @return The IncrementalZoneConverter object.
+   */
+  public static IncrementalZoneConverter forCurrentThread(ZoneId timeZoneId) {
+    Map<ZoneId, IncrementalZoneConverter> converters = PER_THREAD.get();
+    IncrementalZoneConverter ret = converters.get(timeZoneId);
+    if (ret == null) {
+      ret = new IncrementalZoneConverter(timeZoneId);
+      converters.put(timeZoneId, ret);
+    }
+    return ret;
+  }
+
+  /**
+   * Returns the zone this converter converts to.
+   *
+   * @return The ZoneId object.
+   */
+  public ZoneId getZone() {
+    return zone;
+  }
+
+  /**
+   * Returns the zone's offset at the specified instant.
+   *
+   * @param epochMilli
+   *          The number of milliseconds since the epoch
+   *
+   * @return The ZoneOffset object.
+   */
+  public ZoneOffset offset(long epochMilli) {
+    if (epochMilli < offsetFromMillis || epochMilli >= offsetToMillis) {
+      refreshOffset(epochMilli);
+    }
+    return offset;
+  }
+
+  /**
+   * Returns the local wall-clock time at the specified instant, as
+   * milliseconds since 1970-01-01T00:00 local time.
+   *
+   * @param epochMilli
+   *          The number of milliseconds since the epoch
+   *
+   * @return The local milliseconds.
+   */
+  public long localMillis(long epochMilli) {
+    if (epochMilli < offsetFromMillis || epochMilli >= offsetToMillis) {
+      refreshOffset(epochMilli);
+    }
+    return epochMilli + offsetMillis;
+  }
+
+  /**
+   * Returns the local epoch-day at the specified instant.
+   *
+   * @param epochMilli
+   *          The number of milliseconds since the epoch
+   *
+   * @return The number of days since 1970-01-01 in this zone.
+   */
+  public long localEpochDay(long epochMilli) {
+    return Math.floorDiv(localMillis(epochMilli), MILLIS_PER_DAY);
+  }
+
+  /**
+   * Returns the number of milliseconds since local midnight at the
+   * specified instant.
+   *
+   * @param epochMilli
+   *          The number of milliseconds since the epoch
+   *
+   * @return The local millisecond of the day.
+   */
+  public int localMillisOfDay(long epochMilli) {
+    return (int) Math.floorMod(localMillis(epochMilli), MILLIS_PER_DAY);
+  }
+
+  /**
+   * Creates a LocalDate for the specified instant in this zone. The same
+   * LocalDate object is returned for every instant of the same local day
+   * (until the converter moves to another day).
+   *
+   * @param epochMilli
+   *          The number of milliseconds since the epoch
+   *
+   * @return The LocalDate object.
+   */
+  public LocalDate toLocalDate(long epochMilli) {
+    refreshDay(localMillis(epochMilli));
+    return date;
+  }
+
+  /**
+   * Creates a LocalDateTime for the specified instant in this zone.
+   * Same result as DateTimeUtils.toLocalDateTime(long, ZoneId).
+   *
+   * @param epochMilli
+   *          The number of milliseconds since the epoch
+   *
+   * @return The LocalDateTime object.
+   */
+  public LocalDateTime toLocalDateTime(long epochMilli) {
+    long localMillis = localMillis(epochMilli);
+    refreshDay(localMillis);
+    return LocalDateTime.of(date, LocalTime.ofNanoOfDay((localMillis - dayStartLocalMillis) * NANOS_PER_MILLI));
+  }
+
+  /**
+   * Creates a ZonedDateTime for the specified instant in this zone.
+   * Same result as DateTimeUtils.toZonedDateTime(long, ZoneId).
+   *
+   * ZonedDateTime's factories re-validate the offset against the zone
+   * rules, so this saves the date decomposition and offset search but not
+   * the validation.
+   *
+   * @param epochMilli
+   *          The number of milliseconds since the epoch
+   *
+   * @return The ZonedDateTime object.
+   */
+  public ZonedDateTime toZonedDateTime(long epochMilli) {
+    LocalDateTime ldt = toLocalDateTime(epochMilli);
+    return ZonedDateTime.ofStrict(ldt, offset, zone);
+  }
+
+  private void refreshDay(long localMillis) {
+    if (localMillis < dayStartLocalMillis || localMillis - dayStartLocalMillis >= MILLIS_PER_DAY) {
+      long epochDay = Math.floorDiv(localMillis, MILLIS_PER_DAY);
+      dayStartLocalMillis = epochDay * MILLIS_PER_DAY;
+      date = LocalDate.ofEpochDay(epochDay);
+    }
+  }
+
+  private void refreshOffset(long epochMilli) {
+    Instant instant = Instant.ofEpochMilli(epochMilli);
+    offset = rules.getOffset(instant);
+    offsetMillis = offset.getTotalSeconds() * 1000;
+    if (rules.isFixedOffset()) {
+      offsetFromMillis = Long.MIN_VALUE;
+      offsetToMillis = Long.MAX_VALUE;
+      return;
+    }
+    ZoneOffsetTransition previous = rules.previousTransition(instant);
+    ZoneOffsetTransition next = rules.nextTransition(instant);
+    // At exactly a transition instant previousTransition() may return the one before it
+    offsetFromMillis = previous == null ? Long.MIN_VALUE
+        : previous.getOffsetAfter().equals(offset) ? toMillis(previous) : epochMilli;
+    offsetToMillis = next == null ? Long.MAX_VALUE : toMillis(next);
+  }
+
+  private static long toMillis(ZoneOffsetTransition transition) {
+    long epochSecond = transition.toEpochSecond();
+    return epochSecond > Long.MAX_VALUE / 1000 ? Long.MAX_VALUE
+        : epochSecond < Long.MIN_VALUE / 1000 ? Long.MIN_VALUE : epochSecond * 1000;
+  }
+
+}
@@ -0,0 +1,377 @@
+/*
+ * Copyright 2017 Makoto Consulting Group, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.makotojava.learn.recipe.datetime;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.zone.ZoneRules;
+import java.util.Arrays;
+
+/**
+ * Binds columns of date/time values to PreparedStatement batches, and reads
+ * TIMESTAMP columns back into primitive epoch millisecond arrays, without a
+ * java.util.Date or Calendar per row.
+ *
+ * TIMESTAMP (without time zone) columns hold local date/times in the time
+ * zone given to the constructor. Values are bound and read as
+ * LocalDateTime through the JDBC 4.2 setObject/getObject methods, epoch
+ * milliseconds being converted with an {@link IncrementalZoneConverter}.
+ * Drivers that do not support LocalDateTime (and say so with
+ * SQLFeatureNotSupportedException) get java.sql.Timestamp values instead.
+ *
+ * When the zone is the JVM default zone, epoch millisecond columns can
+ * optionally be bound through one reused Timestamp, with no allocation at
+ * all. This is only safe with drivers that copy the value in setTimestamp
+ * (H2, PostgreSQL and most others do), hence off by default.
+ *
+ * A binder is stateful and NOT thread safe: use one per thread.
+ */
+public final class JdbcDateTimeBinder {
+
+  public static final int DEFAULT_BATCH_SIZE = 1000;
+
+  /** Stands for SQL NULL in epoch millisecond arrays */
+  public static final long NULL_MILLIS = Long.MIN_VALUE;
+
+  /**
+   * One column of a batch: binds the value of a row to a parameter.
+   */
+  @FunctionalInterface
+  public interface Column {
+
+    /**
+     * Binds the value of the specified row.
+     *
+     * @param statement
+     *          The statement to bind to
+     * @param parameterIndex
+     *          The parameter index (1 = first)
+     * @param row
+     *          The row (0 = first)
+     *
+     * @throws SQLException
+     *           If binding fails
+     */
+    void bind(PreparedStatement statement, int parameterIndex, int row) throws SQLException;
+
+  }
+
+  private final ZoneId timeZoneId;
+
+  private final ZoneRules rules;
+
+  private final int batchSize;
+
+  private final IncrementalZoneConverter converter;
+
+  /** Reused for epoch millis columns, or null */
+  private final Timestamp timestamp;
+
+  /** Set once the driver has rejected LocalDateTime */
+  private boolean legacyTimestamps;
+
+  /**
+   * Creates a JdbcDateTimeBinder with the default batch size, that does not
+   * reuse Timestamps.
+   *
+   * @param timeZoneId
+   *          The time zone of the TIMESTAMP columns. Not null.
+   */
+  public JdbcDateTimeBinder(ZoneId timeZoneId) {
+    this(timeZoneId, DEFAULT_BATCH_SIZE, false);
+  }
+
+  /**
+   * Creates a JdbcDateTimeBinder.
+   *
+   * @param timeZoneId
+   *          The time zone of the TIMESTAMP columns. Not null.
+   * @param batchSize
+   *          The number of rows per executeBatch() call. Greater than 0.
+   * @param reuseTimestamps
+   *          If true and timeZoneId is the JVM default zone, bind epoch
+   *          millisecond columns through one reused Timestamp
+   */
+  public JdbcDateTimeBinder(ZoneId timeZoneId, int batchSize, boolean reuseTimestamps) {
+    if (timeZoneId == null) {
+      throw new IllegalArgumentException("ZoneId argument cannot be null!");
+    }
+    if (batchSize <= 0) {
+      throw new IllegalArgumentException("Batch size must be greater than 0: " + batchSize);
+    }
+    this.timeZoneId = timeZoneId;
+    this.rules = timeZoneId.getRules();
+    this.batchSize = batchSize;
+    this.converter = new IncrementalZoneConverter(timeZoneId);
+    this.timestamp = reuseTimestamps && timeZoneId.equals(ZoneId.systemDefault()) ? new Timestamp(0) : null;
+  }
+
+  /**
+   * Binds the columns for each row and executes the statement in batches.
+   * Column i binds parameter i + 1.
+   *
+   * @param statement
+   *          The statement. Not null.
+   * @param rows
+   *          The number of rows. Each column must have at least as many
+   *          values.
+   * @param columns
+   *          The columns
+   *
+   * @return The update counts of all the rows, as returned by executeBatch().
+   *
+   * @throws SQLException
+   *           If binding or executing fails
+   */
+  public int[] executeBatch(PreparedStatement statement, int rows, Column... columns) throws SQLException {
+    int[] ret = new int[rows];
+    int done = 0;
+    for (int row = 0; row < rows; row++) {
+      for (int i = 0; i < columns.length; i++) {
+        columns[i].bind(statement, i + 1, row);
+      }
+      statement.addBatch();
+      if (row + 1 - done == batchSize || row + 1 == rows) {
+        int[] counts = statement.executeBatch();
+        System.arraycopy(counts, 0, ret, done, Math.min(counts.length, rows - done));
+        done = row + 1;
+      }
+    }
+    return ret;
+  }
+
+  /**
+   * Creates a TIMESTAMP column of epoch milliseconds. {@link #NULL_MILLIS}
+   * binds SQL NULL.
+   *
+   * @param epochMillis
+   *          The values
+   *
+   * @return The Column object.
+   */
+  public Column epochMillis(long[] epochMillis) {
+    return (statement, parameterIndex, row) -> bindEpochMilli(statement, parameterIndex, epochMillis[row]);
+  }
+
+  /**
+   * Creates a TIMESTAMP column of Instants. Null elements bind SQL NULL.
+   *
+   * @param instants
+   *          The values
+   *
+   * @return The Column object.
+   */
+  public Column instants(Instant[] instants) {
+    return (statement, parameterIndex, row) -> {
+      Instant instant = instants[row];
+      if (instant == null) {
+        statement.setNull(parameterIndex, Types.TIMESTAMP);
+      } else if (timestamp != null) {
+        timestamp.setTime(instant.toEpochMilli());
+        timestamp.setNanos(instant.getNano());
+        statement.setTimestamp(parameterIndex, timestamp);
+      } else {
+        bindLocalDateTime(statement, parameterIndex, LocalDateTime.ofEpochSecond(instant.getEpochSecond(),
+            instant.getNano(), rules.getOffset(instant)));
+      }
+    };
+  }
+
+  /**
+   * Creates a TIMESTAMP column of ZonedDateTimes, converted to this
+   * binder's time zone. Null elements bind SQL NULL.
+   *
+   * @param zonedDateTimes
+   *          The values
+   *
+   * @return The Column object.
+   */
+  public Column zonedDateTimes(ZonedDateTime[] zonedDateTimes) {
+    return (statement, parameterIndex, row) -> {
+      ZonedDateTime zonedDateTime = zonedDateTimes[row];
+      if (zonedDateTime == null) {
+        statement.setNull(parameterIndex, Types.TIMESTAMP);
+      } else if (zonedDateTime.getZone().equals(timeZoneId)) {
+        bindLocalDateTime(statement, parameterIndex, zonedDateTime.toLocalDateTime());
+      } else {
+        ZoneOffset offset = rules.getOffset(zonedDateTime.toInstant());
+        bindLocalDateTime(statement, parameterIndex,
+            LocalDateTime.ofEpochSecond(zonedDateTime.toEpochSecond(), zonedDateTime.getNano(), offset));
+      }
+    };
+  }
+
+  /**
+   * Creates a TIMESTAMP column of LocalDateTimes, bound as they are. Null
+   * elements bind SQL NULL.
+   *
+   * @param localDateTimes
+   *          The values
+   *
+   * @return The Column object.
+   */
+  public Column localDateTimes(LocalDateTime[] localDateTimes) {
+    return (statement, parameterIndex, row) -> {
+      if (localDateTimes[row] == null) {
+        statement.setNull(parameterIndex, Types.TIMESTAMP);
+      } else {
+        bindLocalDateTime(statement, parameterIndex, localDateTimes[row]);
+      }
+    };
+  }
+
+  /**
+   * Creates a BIGINT column.
+   *
+   * @param values
+   *          The values
+   *
+   * @return The Column object.
+   */
+  public static Column longs(long[] values) {
+    return (statement, parameterIndex, row) -> statement.setLong(parameterIndex, values[row]);
+  }
+
+  /**
+   * Creates a column of any other values, bound with setObject.
+   *
+   * @param values
+   *          The values
+   *
+   * @return The Column object.
+   */
+  public static Column objects(Object[] values) {
+    return (statement, parameterIndex, row) -> statement.setObject(parameterIndex, values[row]);
+  }
+
+  /**
+   * Reads TIMESTAMP columns of all the remaining rows of a ResultSet, in one
+   * pass. SQL NULL is read as {@link #NULL_MILLIS}.
+   *
+   * @param resultSet
+   *          The ResultSet, positioned before the first row to read. Not
+   *          null.
+   * @param columnIndexes
+   *          The indexes of the columns to read (1 = first). At least one.
+   *
+   * @return One array of epoch milliseconds per column, each with one value
+   *         per row.
+   *
+   * @throws SQLException
+   *           If reading fails
+   * @throws IllegalArgumentException
+   *           If no column is given
+   */
+  public long[][] readEpochMillis(ResultSet resultSet, int... columnIndexes) throws SQLException {
+    if (columnIndexes.length == 0) {
+      throw new IllegalArgumentException("At least one column index is required!");
+    }
+    long[][] ret = new long[columnIndexes.length][64];
+    int rows = 0;
+    while (resultSet.next()) {
+      if (rows == ret[0].length) {
+        for (int i = 0; i < ret.length; i++) {
+          ret[i] = Arrays.copyOf(ret[i], rows * 2);
+        }
+      }
+      for (int i = 0; i < columnIndexes.length; i++) {
+        ret[i][rows] = readEpochMilli(resultSet, columnIndexes[i]);
+      }
+      rows++;
+    }
+    for (int i = 0; i < ret.length; i++) {
+      ret[i] = Arrays.copyOf(ret[i], rows);
+    }
+    return ret;
+  }
+
+  /**
+   * Reads a TIMESTAMP column of the current row as epoch milliseconds, or
+   * {@link #NULL_MILLIS} for SQL NULL.
+   *
+   * @param resultSet
+   *          The ResultSet, positioned on a row. Not null.
+   * @param columnIndex
+   *          The index of the column (1 = first)
+   *
+   * @return The epoch milliseconds.
+   *
+   * @throws SQLException
+   *           If reading fails
+   */
+  public long readEpochMilli(ResultSet resultSet, int columnIndex) throws SQLException {
+    LocalDateTime localDateTime;
+    if (legacyTimestamps) {
+      Timestamp value = resultSet.getTimestamp(columnIndex);
+      localDateTime = value == null ? null : value.toLocalDateTime();
+    } else {
+      try {
+        localDateTime = resultSet.getObject(columnIndex, LocalDateTime.class);
+      } catch (SQLFeatureNotSupportedException e) {
+        legacyTimestamps = true;
+        return readEpochMilli(resultSet, columnIndex);
+      }
+    }
+    if (localDateTime == null) {
+      return NULL_MILLIS;
+    }
+    // Same offset as atZone(): the earlier one in overlaps, the one before the gap in gaps
+    ZoneOffset offset = rules.getOffset(localDateTime);
+    return Math.addExact(Math.multiplyExact(localDateTime.toEpochSecond(offset), 1000L),
+        localDateTime.getNano() / 1_000_000);
+  }
+
+  private void bindEpochMilli(PreparedStatement statement, int parameterIndex, long epochMilli)
+      throws SQLException {
+    if (epochMilli == NULL_MILLIS) {
+      statement.setNull(parameterIndex, Types.TIMESTAMP);
+    } else if (timestamp != null) {
+      timestamp.setTime(epochMilli);
+      statement.setTimestamp(parameterIndex, timestamp);
+    } else {
+      bindLocalDateTime(statement, parameterIndex, converter.toLocalDateTime(epochMilli));
+    }
+  }
+
+  private void bindLocalDateTime(PreparedStatement statement, int parameterIndex, LocalDateTime localDateTime)
+      throws SQLException {
+    if (!legacyTimestamps) {
+      try {
+        statement.setObject(parameterIndex, localDateTime);
+        return;
+      } catch (SQLFeatureNotSupportedException e) {
+        legacyTimestamps = true;
+      }
+    }
+    statement.setTimestamp(parameterIndex, Timestamp.valueOf(localDateTime));
+  }
+
+  @Override
+  public String toString() {
+    return "JdbcDateTimeBinder[" + timeZoneId + ", batchSize=" + batchSize
+        + (timestamp != null ? ", reusing Timestamps" : "") + "]";
+  }
+
+}
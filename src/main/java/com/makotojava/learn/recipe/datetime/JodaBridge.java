@@ -0,0 +1,376 @@
+/*
+ * Copyright 2017 Makoto Consulting Group, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.makotojava.learn.recipe.datetime;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.joda.time.ReadableInstant;
+import org.joda.time.chrono.ISOChronology;
+
+/**
+ * Converts between Joda-Time and java.time values directly on epoch
+ * milliseconds and fields, without going through strings or Date.
+ *
+ * DateTimeZone and ZoneId are mapped by ID, each mapping computed once and
+ * cached, so converting a zoned value costs one map lookup on top of the
+ * object creation. The batch methods also remember the last zone they
+ * mapped, which makes arrays of values in the same zone cheaper still.
+ *
+ * Joda-Time is an optional dependency: it only has to be on the class path
+ * for callers of this class. Joda-Time values have millisecond precision, so
+ * converting from java.time truncates any finer fraction of a second, as
+ * Instant.toEpochMilli() does. Only ISO chronology values are supported.
+ * Batch methods that return object arrays map null elements to null;
+ * toEpochMillis, whose primitive result cannot hold null, rejects them.
+ */
+public final class JodaBridge {
+
+  private static final ConcurrentMap<DateTimeZone, ZoneId> ZONE_IDS = new ConcurrentHashMap<>();
+
+  private static final ConcurrentMap<ZoneId, DateTimeZone> DATE_TIME_ZONES = new ConcurrentHashMap<>();
+
+  private static final int NANOS_PER_MILLI = 1_000_000;
+
+  private JodaBridge() {
+    // Static methods only
+  }
+
+  /**
+   * Returns the ZoneId for the specified Joda-Time zone. Joda's UTC maps to
+   * ZoneOffset.UTC, fixed-offset zones to ZoneOffsets, and region zones to
+   * the ZoneId with the same ID.
+   *
+   * @param dateTimeZone
+   *          The Joda-Time zone. Not null.
+   *
+   * @return The ZoneId object.
+   */
+  public static ZoneId toZoneId(DateTimeZone dateTimeZone) {
+    if (dateTimeZone == null) {
+      throw new IllegalArgumentException("DateTimeZone argument cannot be null!");
+    }
+    ZoneId ret = ZONE_IDS.get(dateTimeZone);
+    if (ret == null) {
+      ret = dateTimeZone == DateTimeZone.UTC ? ZoneOffset.UTC : ZoneIds.of(dateTimeZone.getID());
+      ZONE_IDS.putIfAbsent(dateTimeZone, ret);
+    }
+    return ret;
+  }
+
+  /**
+   * Returns the Joda-Time zone for the specified ZoneId. ZoneOffsets map to
+   * fixed-offset zones, region IDs to the DateTimeZone with the same ID.
+   *
+   * @param timeZoneId
+   *          The time zone ID. Not null.
+   *
+   * @return The DateTimeZone object.
+   *
+   * @throws IllegalArgumentException
+   *           If Joda-Time does not know the zone
+   */
+  public static DateTimeZone toDateTimeZone(ZoneId timeZoneId) {
+    if (timeZoneId == null) {
+      throw new IllegalArgumentException("ZoneId argument cannot be null!");
+    }
+    DateTimeZone ret = DATE_TIME_ZONES.get(timeZoneId);
+    if (ret == null) {
+      ret = timeZoneId instanceof ZoneOffset
+          ? DateTimeZone.forOffsetMillis(((ZoneOffset) timeZoneId).getTotalSeconds() * 1000)
+          : DateTimeZone.forID(timeZoneId.getId());
+      DATE_TIME_ZONES.putIfAbsent(timeZoneId, ret);
+    }
+    return ret;
+  }
+
+  /**
+   * Creates an Instant from any Joda-Time instant (DateTime, Instant...).
+   *
+   * @param readableInstant
+   *          The Joda-Time instant. Not null.
+   *
+   * @return The Instant object.
+   */
+  public static Instant toInstant(ReadableInstant readableInstant) {
+    return Instant.ofEpochMilli(readableInstant.getMillis());
+  }
+
+  /**
+   * Creates a Joda-Time Instant.
+   *
+   * @param instant
+   *          The Instant. Not null.
+   *
+   * @return The org.joda.time.Instant object.
+   */
+  public static org.joda.time.Instant toJodaInstant(Instant instant) {
+    return new org.joda.time.Instant(instant.toEpochMilli());
+  }
+
+  /**
+   * Creates a ZonedDateTime for the instant and zone of a Joda-Time
+   * DateTime.
+   *
+   * @param dateTime
+   *          The DateTime. Not null.
+   *
+   * @return The ZonedDateTime object.
+   */
+  public static ZonedDateTime toZonedDateTime(DateTime dateTime) {
+    return ZonedDateTime.ofInstant(Instant.ofEpochMilli(dateTime.getMillis()), toZoneId(dateTime.getZone()));
+  }
+
+  /**
+   * Creates a Joda-Time DateTime (ISO chronology) for the instant and zone
+   * of a ZonedDateTime.
+   *
+   * @param zonedDateTime
+   *          The ZonedDateTime. Not null.
+   *
+   * @return The DateTime object.
+   */
+  public static DateTime toDateTime(ZonedDateTime zonedDateTime) {
+    return new DateTime(toEpochMilli(zonedDateTime), toDateTimeZone(zonedDateTime.getZone()));
+  }
+
+  /**
+   * Creates a LocalDateTime from the fields of a Joda-Time LocalDateTime.
+   *
+   * @param localDateTime
+   *          The Joda-Time LocalDateTime. Not null, ISO chronology.
+   *
+   * @return The LocalDateTime object.
+   */
+  public static LocalDateTime toLocalDateTime(org.joda.time.LocalDateTime localDateTime) {
+    checkIso(localDateTime.getChronology());
+    return LocalDateTime.of(
+        DateTimeFlyweights.localDate(localDateTime.getYear(), localDateTime.getMonthOfYear(),
+            localDateTime.getDayOfMonth()),
+        LocalTime.ofNanoOfDay((long) localDateTime.getMillisOfDay() * NANOS_PER_MILLI));
+  }
+
+  /**
+   * Creates a Joda-Time LocalDateTime (ISO chronology) from the fields of a
+   * LocalDateTime.
+   *
+   * @param localDateTime
+   *          The LocalDateTime. Not null.
+   *
+   * @return The org.joda.time.LocalDateTime object.
+   */
+  public static org.joda.time.LocalDateTime toJodaLocalDateTime(LocalDateTime localDateTime) {
+    return new org.joda.time.LocalDateTime(localDateTime.getYear(), localDateTime.getMonthValue(),
+        localDateTime.getDayOfMonth(), localDateTime.getHour(), localDateTime.getMinute(), localDateTime.getSecond(),
+        localDateTime.getNano() / NANOS_PER_MILLI);
+  }
+
+  /**
+   * Creates a LocalDate from the fields of a Joda-Time LocalDate. The
+   * returned LocalDate is a shared instance (see DateTimeFlyweights).
+   *
+   * @param localDate
+   *          The Joda-Time LocalDate. Not null, ISO chronology.
+   *
+   * @return The LocalDate object.
+   */
+  public static LocalDate toLocalDate(org.joda.time.LocalDate localDate) {
+    checkIso(localDate.getChronology());
+    return DateTimeFlyweights.localDate(localDate.getYear(), localDate.getMonthOfYear(), localDate.getDayOfMonth());
+  }
+
+  /**
+   * Creates a Joda-Time LocalDate (ISO chronology) from the fields of a
+   * LocalDate.
+   *
+   * @param localDate
+   *          The LocalDate. Not null.
+   *
+   * @return The org.joda.time.LocalDate object.
+   */
+  public static org.joda.time.LocalDate toJodaLocalDate(LocalDate localDate) {
+    return new org.joda.time.LocalDate(localDate.getYear(), localDate.getMonthValue(), localDate.getDayOfMonth());
+  }
+
+  /**
+   * Creates a Duration from a Joda-Time Duration.
+   *
+   * @param duration
+   *          The Joda-Time Duration. Not null.
+   *
+   * @return The Duration object.
+   */
+  public static Duration toDuration(org.joda.time.Duration duration) {
+    return Duration.ofMillis(duration.getMillis());
+  }
+
+  /**
+   * Creates a Joda-Time Duration.
+   *
+   * @param duration
+   *          The Duration. Not null.
+   *
+   * @return The org.joda.time.Duration object.
+   */
+  public static org.joda.time.Duration toJodaDuration(Duration duration) {
+    return new org.joda.time.Duration(duration.toMillis());
+  }
+
+  /**
+   * Returns the epoch milliseconds of each Joda-Time instant.
+   *
+   * @param readableInstants
+   *          The Joda-Time instants. No nulls.
+   *
+   * @return A new array of epoch milliseconds
+   *
+   * @throws IllegalArgumentException
+   *           If an element is null
+   */
+  public static long[] toEpochMillis(ReadableInstant[] readableInstants) {
+    long[] ret = new long[readableInstants.length];
+    for (int i = 0; i < ret.length; i++) {
+      ReadableInstant readableInstant = readableInstants[i];
+      if (readableInstant == null) {
+        throw new IllegalArgumentException("ReadableInstant element " + i + " cannot be null!");
+      }
+      ret[i] = readableInstant.getMillis();
+    }
+    return ret;
+  }
+
+  /**
+   * Converts each Joda-Time instant to an Instant.
+   *
+   * @param readableInstants
+   *          The Joda-Time instants
+   *
+   * @return A new array of Instants
+   */
+  public static Instant[] toInstants(ReadableInstant[] readableInstants) {
+    Instant[] ret = new Instant[readableInstants.length];
+    for (int i = 0; i < ret.length; i++) {
+      ReadableInstant readableInstant = readableInstants[i];
+      ret[i] = readableInstant == null ? null : Instant.ofEpochMilli(readableInstant.getMillis());
+    }
+    return ret;
+  }
+
+  /**
+   * Converts each DateTime to a ZonedDateTime.
+   *
+   * @param dateTimes
+   *          The DateTimes
+   *
+   * @return A new array of ZonedDateTimes
+   */
+  public static ZonedDateTime[] toZonedDateTimes(DateTime[] dateTimes) {
+    ZonedDateTime[] ret = new ZonedDateTime[dateTimes.length];
+    DateTimeZone lastZone = null;
+    ZoneId lastZoneId = null;
+    for (int i = 0; i < ret.length; i++) {
+      DateTime dateTime = dateTimes[i];
+      if (dateTime != null) {
+        if (dateTime.getZone() != lastZone) {
+          lastZone = dateTime.getZone();
+          lastZoneId = toZoneId(lastZone);
+        }
+        ret[i] = ZonedDateTime.ofInstant(Instant.ofEpochMilli(dateTime.getMillis()), lastZoneId);
+      }
+    }
+    return ret;
+  }
+
+  /**
+   * Converts each ZonedDateTime to a Joda-Time DateTime.
+   *
+   * @param zonedDateTimes
+   *          The ZonedDateTimes
+   *
+   * @return A new array of DateTimes
+   */
+  public static DateTime[] toDateTimes(ZonedDateTime[] zonedDateTimes) {
+    DateTime[] ret = new DateTime[zonedDateTimes.length];
+    ZoneId lastZoneId = null;
+    DateTimeZone lastZone = null;
+    for (int i = 0; i < ret.length; i++) {
+      ZonedDateTime zonedDateTime = zonedDateTimes[i];
+      if (zonedDateTime != null) {
+        if (zonedDateTime.getZone() != lastZoneId) {
+          lastZoneId = zonedDateTime.getZone();
+          lastZone = toDateTimeZone(lastZoneId);
+        }
+        ret[i] = new DateTime(toEpochMilli(zonedDateTime), lastZone);
+      }
+    }
+    return ret;
+  }
+
+  /**
+   * Converts each Joda-Time LocalDateTime to a LocalDateTime.
+   *
+   * @param localDateTimes
+   *          The Joda-Time LocalDateTimes
+   *
+   * @return A new array of LocalDateTimes
+   */
+  public static LocalDateTime[] toLocalDateTimes(org.joda.time.LocalDateTime[] localDateTimes) {
+    LocalDateTime[] ret = new LocalDateTime[localDateTimes.length];
+    for (int i = 0; i < ret.length; i++) {
+      ret[i] = localDateTimes[i] == null ? null : toLocalDateTime(localDateTimes[i]);
+    }
+    return ret;
+  }
+
+  /**
+   * Converts each LocalDateTime to a Joda-Time LocalDateTime.
+   *
+   * @param localDateTimes
+   *          The LocalDateTimes
+   *
+   * @return A new array of Joda-Time LocalDateTimes
+   */
+  public static org.joda.time.LocalDateTime[] toJodaLocalDateTimes(LocalDateTime[] localDateTimes) {
+    org.joda.time.LocalDateTime[] ret = new org.joda.time.LocalDateTime[localDateTimes.length];
+    for (int i = 0; i < ret.length; i++) {
+      ret[i] = localDateTimes[i] == null ? null : toJodaLocalDateTime(localDateTimes[i]);
+    }
+    return ret;
+  }
+
+  private static long toEpochMilli(ZonedDateTime zonedDateTime) {
+    // Same as toInstant().toEpochMilli(), without the Instant
+    return Math.addExact(Math.multiplyExact(zonedDateTime.toEpochSecond(), 1000L),
+        zonedDateTime.getNano() / NANOS_PER_MILLI);
+  }
+
+  private static void checkIso(org.joda.time.Chronology chronology) {
+    if (!(chronology instanceof ISOChronology)) {
+      throw new IllegalArgumentException("Only ISO chronology values are supported, not " + chronology);
+    }
+  }
+
+}
@@ -0,0 +1,405 @@
+/*
+ * Copyright 2017 Makoto Consulting Group, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.makotojava.learn.recipe.datetime;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.function.LongFunction;
+
+/**
+ * Groups a stream of (key, epoch-millis) events into sessions. A session
+ * for a key ends when the key has no event for longer than the gap, or at
+ * local midnight in the key's time zone, whichever comes first.
+ *
+ * Events are expected in roughly increasing time order. The watermark is
+ * the latest event time seen minus the allowed lateness: an event earlier
+ * than the watermark is too late, and is dropped and counted. A session
+ * stays open until the watermark passes its last event plus the gap, or
+ * passes local midnight, so a key may have several open sessions while the
+ * lateness bound covers them. A later out-of-order event joins the open
+ * session of its key that it falls within the gap of (on the same local
+ * day), or bridges two of them into one. A session is emitted to the
+ * {@link SessionListener} once it is complete, or on {@link #flush()}.
+ *
+ * Sessions are held in parallel primitive arrays (an open-addressing hash
+ * map with linear probing and backward-shift deletion, where the sessions
+ * of a key share its probe sequence), about 90 bytes per open session and
+ * no objects per event. Each event emits the completed sessions of its key,
+ * and also checks a few slots of the table for sessions the watermark has
+ * completed, so idle keys are evicted continuously and memory stays
+ * proportional to the number of active sessions.
+ * {@link #advanceWatermark(long)} evicts everything that is complete at
+ * once.
+ *
+ * A Sessionizer is not thread safe, and its listener must not call back
+ * into it.
+ */
+public final class Sessionizer {
+
+  /**
+   * Receives completed sessions.
+   */
+  public interface SessionListener {
+
+    /**
+     * Called once for every completed session.
+     *
+     * @param key
+     *          The key of the events in the session
+     * @param startMillis
+     *          The epoch-millis of the first event of the session
+     * @param endMillis
+     *          The epoch-millis of the last event of the session; the
+     *          session's duration is endMillis - startMillis
+     * @param eventCount
+     *          The number of events in the session
+     */
+    void onSession(long key, long startMillis, long endMillis, int eventCount);
+  }
+
+  private static final int INITIAL_CAPACITY = 1024;
+
+  private static final int SLOTS_SWEPT_PER_EVENT = 4;
+
+  private final long gapMillis;
+
+  private final long latenessMillis;
+
+  private final LongFunction<ZoneId> zoneOfKey;
+
+  private final SessionListener listener;
+
+  // Slot i is in use when counts[i] != 0
+  private long[] keys;
+  private long[] starts;
+  private long[] lasts;
+  private long[] dayStarts;
+  private long[] dayEnds;
+  private int[] counts;
+  private int mask;
+  private int size;
+  private int sweepCursor;
+
+  private long maxEventMillis = Long.MIN_VALUE;
+  private long droppedLateEvents;
+
+  // The last local day computed, reused while sessions keep starting on it
+  private ZoneId dayZone;
+  private long dayStartMillis = Long.MAX_VALUE;
+  private long dayEndMillis = Long.MIN_VALUE;
+
+  /**
+   * Creates a Sessionizer for keys that all use the same time zone.
+   *
+   * @param gap
+   *          The longest inactivity within a session. Positive.
+   * @param lateness
+   *          How far behind the latest event an event may arrive. Not
+   *          negative.
+   * @param timeZoneId
+   *          The time zone whose local midnight ends sessions. Not null.
+   * @param listener
+   *          Receives completed sessions. Not null.
+   */
+  public Sessionizer(Duration gap, Duration lateness, ZoneId timeZoneId, SessionListener listener) {
+    this(gap, lateness, fixedZone(timeZoneId), listener);
+  }
+
+  /**
+   * Creates a Sessionizer for keys in different time zones. The zone of a
+   * key is looked up only when a session starts.
+   *
+   * @param gap
+   *          The longest inactivity within a session. Positive.
+   * @param lateness
+   *          How far behind the latest event an event may arrive. Not
+   *          negative.
+   * @param zoneOfKey
+   *          Returns the time zone of a key. Not null, and must not return
+   *          null.
+   * @param listener
+   *          Receives completed sessions. Not null.
+   */
+  public Sessionizer(Duration gap, Duration lateness, LongFunction<ZoneId> zoneOfKey, SessionListener listener) {
+    if (gap == null || gap.isNegative() || gap.isZero()) {
+      throw new IllegalArgumentException("Gap must be positive: " + gap);
+    }
+    if (lateness == null || lateness.isNegative()) {
+      throw new IllegalArgumentException("Lateness cannot be negative: " + lateness);
+    }
+    if (zoneOfKey == null || listener == null) {
+      throw new IllegalArgumentException("Zone function and listener cannot be null!");
+    }
+    this.gapMillis = gap.toMillis();
+    this.latenessMillis = lateness.toMillis();
+    this.zoneOfKey = zoneOfKey;
+    this.listener = listener;
+    allocate(INITIAL_CAPACITY);
+  }
+
+  private static LongFunction<ZoneId> fixedZone(ZoneId timeZoneId) {
+    if (timeZoneId == null) {
+      throw new IllegalArgumentException("ZoneId argument cannot be null!");
+    }
+    return key -> timeZoneId;
+  }
+
+  /**
+   * Adds an event.
+   *
+   * @param key
+   *          The key (user, device...) of the event
+   * @param epochMilli
+   *          The time of the event in milliseconds since the epoch
+   */
+  public void accept(long key, long epochMilli) {
+    if (epochMilli > maxEventMillis) {
+      maxEventMillis = epochMilli;
+    } else if (epochMilli < getWatermark()) {
+      droppedLateEvents++;
+      return;
+    }
+    long watermark = getWatermark();
+    // The open sessions the event falls within the gap of: at most one before and one after it
+    int first = -1;
+    int second = -1;
+    int slot = hash(key) & mask;
+    while (counts[slot] != 0) {
+      if (keys[slot] == key) {
+        if (isComplete(slot, watermark)) {
+          emit(slot);
+          delete(slot);
+          // Backward-shift may have moved the key's other sessions, so start over
+          first = -1;
+          second = -1;
+          slot = hash(key) & mask;
+          continue;
+        }
+        if (isWithinGap(slot, epochMilli)) {
+          if (first < 0) {
+            first = slot;
+          } else {
+            second = slot;
+          }
+        }
+      }
+      slot = (slot + 1) & mask;
+    }
+    if (first < 0) {
+      insert(slot, key, epochMilli);
+    } else {
+      starts[first] = Math.min(starts[first], epochMilli);
+      lasts[first] = Math.max(lasts[first], epochMilli);
+      counts[first]++;
+      if (second >= 0) {
+        // The event bridges two sessions
+        starts[first] = Math.min(starts[first], starts[second]);
+        lasts[first] = Math.max(lasts[first], lasts[second]);
+        counts[first] += counts[second];
+        delete(second);
+      }
+    }
+    sweep(SLOTS_SWEPT_PER_EVENT);
+  }
+
+  /**
+   * Moves the watermark forward as if an event at the specified time had
+   * been seen, and emits every session that is then complete. Use it to
+   * close sessions when the event stream goes quiet.
+   *
+   * @param epochMilli
+   *          The current stream time in milliseconds since the epoch
+   */
+  public void advanceWatermark(long epochMilli) {
+    if (epochMilli > maxEventMillis) {
+      maxEventMillis = epochMilli;
+    }
+    sweep(mask + 1);
+  }
+
+  /**
+   * Emits every open session and forgets all keys, complete or not.
+   */
+  public void flush() {
+    for (int slot = 0; slot <= mask; slot++) {
+      if (counts[slot] != 0) {
+        emit(slot);
+        counts[slot] = 0;
+      }
+    }
+    size = 0;
+  }
+
+  /**
+   * Returns the time before which events are dropped as too late.
+   *
+   * @return The watermark in milliseconds since the epoch, or
+   *         Long.MIN_VALUE before the first event
+   */
+  public long getWatermark() {
+    return maxEventMillis == Long.MIN_VALUE ? Long.MIN_VALUE : maxEventMillis - latenessMillis;
+  }
+
+  /**
+   * Returns the number of open sessions, over all keys.
+   *
+   * @return The number of open sessions
+   */
+  public int getOpenSessionCount() {
+    return size;
+  }
+
+  /**
+   * Returns the number of events dropped because they arrived too late.
+   *
+   * @return The number of dropped events
+   */
+  public long getDroppedLateEvents() {
+    return droppedLateEvents;
+  }
+
+  private void startSession(int slot, long key, long epochMilli) {
+    ZoneId zone = zoneOfKey.apply(key);
+    if (zone != dayZone || epochMilli < dayStartMillis || epochMilli >= dayEndMillis) {
+      LocalDate date = Instant.ofEpochMilli(epochMilli).atZone(zone).toLocalDate();
+      dayZone = zone;
+      dayStartMillis = date.atStartOfDay(zone).toInstant().toEpochMilli();
+      dayEndMillis = date.plusDays(1).atStartOfDay(zone).toInstant().toEpochMilli();
+    }
+    keys[slot] = key;
+    starts[slot] = epochMilli;
+    lasts[slot] = epochMilli;
+    dayStarts[slot] = dayStartMillis;
+    dayEnds[slot] = dayEndMillis;
+    counts[slot] = 1;
+  }
+
+  private void emit(int slot) {
+    listener.onSession(keys[slot], starts[slot], lasts[slot], counts[slot]);
+  }
+
+  private boolean isWithinGap(int slot, long epochMilli) {
+    return epochMilli - lasts[slot] <= gapMillis && starts[slot] - epochMilli <= gapMillis
+        && epochMilli >= dayStarts[slot] && epochMilli < dayEnds[slot];
+  }
+
+  private boolean isComplete(int slot, long watermark) {
+    return watermark - lasts[slot] > gapMillis || watermark >= dayEnds[slot];
+  }
+
+  private void sweep(int slots) {
+    long watermark = getWatermark();
+    int advanced = 0;
+    while (advanced < slots && size > 0) {
+      int slot = sweepCursor;
+      if (counts[slot] != 0 && isComplete(slot, watermark)) {
+        emit(slot);
+        // Backward-shift may move another entry into this slot, so look at it again
+        delete(slot);
+      } else {
+        sweepCursor = (slot + 1) & mask;
+        advanced++;
+      }
+    }
+  }
+
+  private static int hash(long key) {
+    key ^= key >>> 33;
+    key *= 0xff51afd7ed558ccdL;
+    key ^= key >>> 33;
+    return (int) key;
+  }
+
+  // Returns the first empty slot of the key's probe sequence
+  private int emptySlot(long key) {
+    int slot = hash(key) & mask;
+    while (counts[slot] != 0) {
+      slot = (slot + 1) & mask;
+    }
+    return slot;
+  }
+
+  private void insert(int slot, long key, long epochMilli) {
+    startSession(slot, key, epochMilli);
+    if (++size > (mask + 1) >>> 1) {
+      // Evict completed sessions first and grow only if the table stays over a quarter full
+      sweep(mask + 1);
+      if (size > (mask + 1) >>> 2) {
+        resize();
+      }
+    }
+  }
+
+  private void delete(int slot) {
+    size--;
+    int hole = slot;
+    int next = (hole + 1) & mask;
+    while (counts[next] != 0) {
+      int home = hash(keys[next]) & mask;
+      // Move the entry back if its home slot is not in (hole, next]
+      if (((next - home) & mask) >= ((next - hole) & mask)) {
+        move(next, hole);
+        hole = next;
+      }
+      next = (next + 1) & mask;
+    }
+    counts[hole] = 0;
+  }
+
+  private void move(int from, int to) {
+    keys[to] = keys[from];
+    starts[to] = starts[from];
+    lasts[to] = lasts[from];
+    dayStarts[to] = dayStarts[from];
+    dayEnds[to] = dayEnds[from];
+    counts[to] = counts[from];
+  }
+
+  private void allocate(int capacity) {
+    keys = new long[capacity];
+    starts = new long[capacity];
+    lasts = new long[capacity];
+    dayStarts = new long[capacity];
+    dayEnds = new long[capacity];
+    counts = new int[capacity];
+    mask = capacity - 1;
+    sweepCursor = 0;
+  }
+
+  private void resize() {
+    long[] oldKeys = keys;
+    long[] oldStarts = starts;
+    long[] oldLasts = lasts;
+    long[] oldDayStarts = dayStarts;
+    long[] oldDayEnds = dayEnds;
+    int[] oldCounts = counts;
+    allocate(oldCounts.length * 2);
+    for (int i = 0; i < oldCounts.length; i++) {
+      if (oldCounts[i] != 0) {
+        int slot = emptySlot(oldKeys[i]);
+        keys[slot] = oldKeys[i];
+        starts[slot] = oldStarts[i];
+        lasts[slot] = oldLasts[i];
+        dayStarts[slot] = oldDayStarts[i];
+        dayEnds[slot] = oldDayEnds[i];
+        counts[slot] = oldCounts[i];
+      }
+    }
+  }
+
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2017 Makoto Consulting Group, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.makotojava.learn.recipe.datetime;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executor for blocking work (reading files and sockets) that uses virtual
+ * threads when the JVM has them (Java 21 and later), and a cached pool of
+ * daemon platform threads otherwise.
+ *
+ * The library is compiled for Java 8, so virtual threads are looked up
+ * reflectively, once.
+ */
+public final class VirtualThreads {
+
+  private static final ExecutorService EXECUTOR;
+
+  private static final boolean AVAILABLE;
+
+  static {
+    ExecutorService executor = null;
+    try {
+      Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+      executor = (ExecutorService) factory.invoke(null);
+    } catch (ReflectiveOperationException | RuntimeException e) {
+      // Older JVM, or virtual threads disabled
+    }
+    AVAILABLE = executor != null;
+    if (executor == null) {
+      AtomicInteger count = new AtomicInteger();
+      executor = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "blocking-source-" + count.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+      });
+    }
+    EXECUTOR = executor;
+  }
+
+  private VirtualThreads() {
+    // Static methods only
+  }
+
+  /**
+   * Returns true if the JVM supports virtual threads.
+   *
+   * @return true if executor() runs tasks on virtual threads.
+   */
+  public static boolean isAvailable() {
+    return AVAILABLE;
+  }
+
+  /**
+   * Returns the shared executor for blocking work: one new virtual thread
+   * per task if available, a cached daemon thread pool otherwise.
+   *
+   * @return The Executor object.
+   */
+  public static Executor executor() {
+    return EXECUTOR;
+  }
+
+}
@@ -0,0 +1,207 @@
+/*
+ * Copyright 2017 Makoto Consulting Group, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.makotojava.learn.recipe.datetime;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.zone.ZoneRules;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Resolves zone ID strings to ZoneId objects through a concurrent cache,
+ * and warms up the JDK's zone rules ahead of the first request.
+ *
+ * ZoneId.of(String) parses the ID and looks up its rules on every call,
+ * and the first lookups in a JVM also load and compile the tzdb data. The
+ * {@link #of(String)} method returns the same result and throws the same
+ * exceptions as ZoneId.of, but repeat lookups are a single map read. The
+ * cache is capped at {@value #MAX_CACHED_ZONES} entries so that arbitrary
+ * input cannot grow it without bound; beyond that IDs are still resolved,
+ * just not cached.
+ *
+ * {@link #warmUp(Collection)} resolves a list of zones up front and
+ * exercises their rules, so that the tzdb loading happens at startup. The
+ * list can be kept in a small snapshot file written by
+ * {@link #writeSnapshot(OutputStream)} from a warmed-up instance and read
+ * back with {@link #readSnapshot(InputStream)}.
+ */
+public final class ZoneIds {
+
+  public static final int MAX_CACHED_ZONES = 4096;
+
+  // "TZID"
+  private static final int SNAPSHOT_MAGIC = 0x545A4944;
+
+  private static final int SNAPSHOT_VERSION = 1;
+
+  private static final ConcurrentMap<String, ZoneId> CACHE = new ConcurrentHashMap<>();
+
+  private ZoneIds() {
+    // Static methods only
+  }
+
+  /**
+   * Returns the ZoneId for the specified ID, as ZoneId.of(String) would.
+   *
+   * @param zoneId
+   *          The zone ID, e.g. "America/Chicago", "UTC" or "+05:30". Not
+   *          null.
+   *
+   * @return The ZoneId object.
+   *
+   * @throws java.time.DateTimeException
+   *           If the ID has an invalid format
+   * @throws java.time.zone.ZoneRulesException
+   *           If the ID is a region ID that cannot be found
+   */
+  public static ZoneId of(String zoneId) {
+    ZoneId ret = CACHE.get(zoneId);
+    if (ret == null) {
+      ret = ZoneId.of(zoneId);
+      if (CACHE.size() < MAX_CACHED_ZONES) {
+        CACHE.putIfAbsent(zoneId, ret);
+      }
+    }
+    return ret;
+  }
+
+  /**
+   * Returns the rules for the specified zone ID.
+   *
+   * @param zoneId
+   *          The zone ID. Not null.
+   *
+   * @return The ZoneRules object.
+   */
+  public static ZoneRules rules(String zoneId) {
+    return of(zoneId).getRules();
+  }
+
+  /**
+   * Resolves every specified zone and looks up its current offset and
+   * surrounding transitions, so that the tzdb data for those zones is
+   * loaded and cached before it is needed.
+   *
+   * @param zoneIds
+   *          The zone IDs. Not null.
+   *
+   * @return The number of zones warmed up
+   *
+   * @throws java.time.DateTimeException
+   *           If any ID is invalid, as ZoneId.of would
+   */
+  public static int warmUp(Collection<String> zoneIds) {
+    Instant now = Instant.now();
+    int ret = 0;
+    for (String zoneId : zoneIds) {
+      ZoneRules rules = rules(zoneId);
+      rules.getOffset(now);
+      rules.previousTransition(now);
+      rules.nextTransition(now);
+      ret++;
+    }
+    return ret;
+  }
+
+  /**
+   * Returns the IDs currently in the cache, sorted.
+   *
+   * @return A new List of zone IDs
+   */
+  public static List<String> cachedZoneIds() {
+    return new ArrayList<>(new TreeSet<>(CACHE.keySet()));
+  }
+
+  /**
+   * Writes the IDs currently in the cache as a snapshot, for a later
+   * {@link #warmUp(Collection)} with {@link #readSnapshot(InputStream)}.
+   *
+   * @param out
+   *          The stream to write to. Not closed.
+   *
+   * @throws IOException
+   *           If the stream cannot be written
+   */
+  public static void writeSnapshot(OutputStream out) throws IOException {
+    writeSnapshot(cachedZoneIds(), out);
+  }
+
+  /**
+   * Writes the specified IDs as a snapshot: a magic number, a format
+   * version, the number of IDs and each ID in modified UTF-8.
+   *
+   * @param zoneIds
+   *          The zone IDs. Not null.
+   * @param out
+   *          The stream to write to. Not closed.
+   *
+   * @throws IOException
+   *           If the stream cannot be written
+   */
+  public static void writeSnapshot(Collection<String> zoneIds, OutputStream out) throws IOException {
+    DataOutputStream data = new DataOutputStream(out);
+    data.writeInt(SNAPSHOT_MAGIC);
+    data.writeShort(SNAPSHOT_VERSION);
+    data.writeInt(zoneIds.size());
+    for (String zoneId : zoneIds) {
+      data.writeUTF(zoneId);
+    }
+    data.flush();
+  }
+
+  /**
+   * Reads the zone IDs from a snapshot written by
+   * {@link #writeSnapshot(Collection, OutputStream)}.
+   *
+   * @param in
+   *          The stream to read from. Not closed.
+   *
+   * @return A new List of zone IDs
+   *
+   * @throws IOException
+   *           If the stream cannot be read or does not hold a snapshot
+   */
+  public static List<String> readSnapshot(InputStream in) throws IOException {
+    DataInputStream data = new DataInputStream(in);
+    if (data.readInt() != SNAPSHOT_MAGIC) {
+      throw new IOException("Not a zone ID snapshot");
+    }
+    int version = data.readUnsignedShort();
+    if (version != SNAPSHOT_VERSION) {
+      throw new IOException("Unsupported zone ID snapshot version: " + version);
+    }
+    int count = data.readInt();
+    if (count < 0) {
+      throw new IOException("Corrupt zone ID snapshot: " + count + " entries");
+    }
+    List<String> ret = new ArrayList<>(Math.min(count, MAX_CACHED_ZONES));
+    for (int i = 0; i < count; i++) {
+      ret.add(data.readUTF());
+    }
+    return ret;
+  }
+
+}
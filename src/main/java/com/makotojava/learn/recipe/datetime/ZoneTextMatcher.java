@@ -0,0 +1,293 @@
+/*
+ * Copyright 2017 Makoto Consulting Group, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.makotojava.learn.recipe.datetime;
+
+import java.text.DateFormatSymbols;
+import java.text.ParsePosition;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.TemporalAccessor;
+import java.time.temporal.TemporalQueries;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Matches time zone text (region IDs, abbreviations, display names) at a
+ * position in a CharSequence, and returns the corresponding ZoneId.
+ *
+ * The texts are compiled into a prefix trie flattened into arrays, so a
+ * match walks the text once, one character per trie level, and never
+ * creates a substring. Like DateTimeFormatter, it returns the longest text
+ * that matches. Region ZoneIds are resolved through {@link ZoneIds} on
+ * first match, so repeated matches return the same cached instance.
+ *
+ * Instances are immutable (apart from that lazy resolution) and thread
+ * safe. The shared matchers reflect the zones and names available when
+ * they were first used.
+ */
+public final class ZoneTextMatcher {
+
+  private static volatile ZoneTextMatcher regionIds;
+
+  private static final ConcurrentMap<Locale, ZoneTextMatcher> ZONE_NAMES = new ConcurrentHashMap<>();
+
+  /** The matched texts, by entry index */
+  private final String[] texts;
+
+  /** The ZoneIds of the texts, by entry index, filled in on first match */
+  private final AtomicReferenceArray<ZoneId> zones;
+
+  /** Edges of node n are edgeChars/edgeTargets[edgeStart[n]..edgeStart[n + 1]), sorted by char */
+  private final int[] edgeStart;
+
+  private final char[] edgeChars;
+
+  private final int[] edgeTargets;
+
+  /** Entry index of the text ending at each node, or -1 */
+  private final int[] terminals;
+
+  private ZoneTextMatcher(Map<String, ZoneId> entries) {
+    texts = entries.keySet().toArray(new String[entries.size()]);
+    zones = new AtomicReferenceArray<>(entries.values().toArray(new ZoneId[entries.size()]));
+    // Build a node trie, then flatten it breadth-first
+    Node root = new Node();
+    for (int i = 0; i < texts.length; i++) {
+      Node node = root;
+      for (int j = 0; j < texts[i].length(); j++) {
+        node = node.children.computeIfAbsent(texts[i].charAt(j), c -> new Node());
+      }
+      node.terminal = i;
+    }
+    List<Node> nodes = new ArrayList<>();
+    nodes.add(root);
+    int edges = 0;
+    for (int n = 0; n < nodes.size(); n++) {
+      nodes.addAll(nodes.get(n).children.values());
+      edges += nodes.get(n).children.size();
+    }
+    edgeStart = new int[nodes.size() + 1];
+    edgeChars = new char[edges];
+    edgeTargets = new int[edges];
+    terminals = new int[nodes.size()];
+    int edge = 0;
+    int target = 1;
+    for (int n = 0; n < nodes.size(); n++) {
+      Node node = nodes.get(n);
+      edgeStart[n] = edge;
+      terminals[n] = node.terminal;
+      for (char c : node.children.keySet()) {
+        edgeChars[edge] = c;
+        // Children were appended in the same order, right after their parents' siblings
+        edgeTargets[edge++] = target++;
+      }
+    }
+    edgeStart[nodes.size()] = edge;
+  }
+
+  private static final class Node {
+    private final TreeMap<Character, Node> children = new TreeMap<>();
+    private int terminal = -1;
+  }
+
+  /**
+   * Returns the matcher for the region IDs of ZoneId.getAvailableZoneIds(),
+   * the same IDs DateTimeFormatter matches for the VV pattern letters.
+   *
+   * @return The ZoneTextMatcher object.
+   */
+  public static ZoneTextMatcher regionIds() {
+    ZoneTextMatcher ret = regionIds;
+    if (ret == null) {
+      Map<String, ZoneId> entries = new LinkedHashMap<>();
+      for (String id : ZoneId.getAvailableZoneIds()) {
+        // Resolved on first match
+        entries.put(id, null);
+      }
+      ret = new ZoneTextMatcher(entries);
+      regionIds = ret;
+    }
+    return ret;
+  }
+
+  /**
+   * Returns the matcher for the region IDs and the localized zone names
+   * (full and short, standard, daylight and generic) of the specified
+   * locale. A name several zones share matches the zone that
+   * DateTimeFormatter picks when parsing it with the z pattern letters.
+   * Building the matcher for a locale is slow; it is done once per locale.
+   *
+   * @param locale
+   *          The locale of the names. Not null.
+   *
+   * @return The ZoneTextMatcher object.
+   */
+  public static ZoneTextMatcher zoneNames(Locale locale) {
+    if (locale == null) {
+      throw new IllegalArgumentException("Locale argument cannot be null!");
+    }
+    ZoneTextMatcher ret = ZONE_NAMES.get(locale);
+    if (ret == null) {
+      ret = buildZoneNames(locale);
+      ZoneTextMatcher raced = ZONE_NAMES.putIfAbsent(locale, ret);
+      if (raced != null) {
+        ret = raced;
+      }
+    }
+    return ret;
+  }
+
+  /**
+   * Creates a matcher for the specified texts, for example
+   * application-specific abbreviations.
+   *
+   * @param zonesByText
+   *          The ZoneId of each text. No null or empty keys, no null values.
+   *
+   * @return The ZoneTextMatcher object.
+   */
+  public static ZoneTextMatcher of(Map<String, ? extends ZoneId> zonesByText) {
+    Map<String, ZoneId> entries = new LinkedHashMap<>();
+    for (Map.Entry<String, ? extends ZoneId> entry : zonesByText.entrySet()) {
+      if (entry.getKey() == null || entry.getKey().isEmpty() || entry.getValue() == null) {
+        throw new IllegalArgumentException("Null or empty zone text, or null ZoneId: " + entry);
+      }
+      entries.put(entry.getKey(), DateTimeFlyweights.intern(entry.getValue()));
+    }
+    return new ZoneTextMatcher(entries);
+  }
+
+  /**
+   * Matches the longest known text starting at pos.getIndex(). On success,
+   * sets the index of pos to the end of the match. On failure, sets its
+   * error index to the start position and leaves its index unchanged.
+   *
+   * @param text
+   *          The text to match
+   * @param pos
+   *          The start position, updated as described above
+   *
+   * @return The ZoneId of the matched text, or null if nothing matches.
+   */
+  public ZoneId match(CharSequence text, ParsePosition pos) {
+    long found = find(text, pos.getIndex());
+    if (found < 0) {
+      pos.setErrorIndex(pos.getIndex());
+      return null;
+    }
+    pos.setIndex((int) found);
+    return zone((int) (found >>> 32));
+  }
+
+  /**
+   * Returns the number of texts this matcher knows.
+   *
+   * @return The number of texts.
+   */
+  public int size() {
+    return texts.length;
+  }
+
+  /**
+   * Matches the longest known text starting at start, and returns its entry
+   * index in the high 32 bits and its end position in the low 32 bits, or
+   * -1 if nothing matches.
+   */
+  long find(CharSequence text, int start) {
+    int length = text.length();
+    int node = 0;
+    long ret = -1;
+    for (int i = start; i < length; i++) {
+      node = child(node, text.charAt(i));
+      if (node < 0) {
+        break;
+      }
+      if (terminals[node] >= 0) {
+        ret = (long) terminals[node] << 32 | (i + 1);
+      }
+    }
+    return ret;
+  }
+
+  /**
+   * Returns the ZoneId of the specified entry index.
+   */
+  ZoneId zone(int entry) {
+    ZoneId ret = zones.get(entry);
+    if (ret == null) {
+      ret = ZoneIds.of(texts[entry]);
+      zones.lazySet(entry, ret);
+    }
+    return ret;
+  }
+
+  private int child(int node, char c) {
+    int low = edgeStart[node];
+    int high = edgeStart[node + 1] - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      char midChar = edgeChars[mid];
+      if (midChar < c) {
+        low = mid + 1;
+      } else if (midChar > c) {
+        high = mid - 1;
+      } else {
+        return edgeTargets[mid];
+      }
+    }
+    return -1;
+  }
+
+  private static ZoneTextMatcher buildZoneNames(Locale locale) {
+    Map<String, ZoneId> entries = new LinkedHashMap<>();
+    for (String id : ZoneId.getAvailableZoneIds()) {
+      entries.put(id, null);
+    }
+    // Let DateTimeFormatter decide which zone each name stands for
+    DateTimeFormatter[] formatters = { DateTimeFormatter.ofPattern("zzzz", locale),
+        DateTimeFormatter.ofPattern("z", locale) };
+    for (String[] names : DateFormatSymbols.getInstance(locale).getZoneStrings()) {
+      for (String name : Arrays.asList(names).subList(1, names.length)) {
+        if (name == null || name.isEmpty() || entries.containsKey(name)) {
+          continue;
+        }
+        for (DateTimeFormatter formatter : formatters) {
+          ParsePosition pos = new ParsePosition(0);
+          TemporalAccessor parsed = formatter.parseUnresolved(name, pos);
+          if (parsed != null && pos.getErrorIndex() < 0 && pos.getIndex() == name.length()) {
+            entries.put(name, DateTimeFlyweights.intern(parsed.query(TemporalQueries.zoneId())));
+            break;
+          }
+        }
+      }
+    }
+    return new ZoneTextMatcher(entries);
+  }
+
+  @Override
+  public String toString() {
+    return "ZoneTextMatcher[" + texts.length + " texts]";
+  }
+
+}
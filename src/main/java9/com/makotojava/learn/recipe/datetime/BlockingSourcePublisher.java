@@ -0,0 +1,199 @@
+/*
+ * Copyright 2017 Makoto Consulting Group, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.makotojava.learn.recipe.datetime;
+
+import java.io.IOException;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A java.util.concurrent.Flow.Publisher of the elements of a BlockingSource
+ * (Java 9 and later).
+ *
+ * The source is read only while the subscriber has outstanding demand, by
+ * one task at a time on the Executor: by default {@link VirtualThreads},
+ * so a blocked read ties up a virtual thread rather than a pool thread.
+ * The source is closed once, when it ends, fails, or the subscription is
+ * cancelled. A read already blocked when the subscription is cancelled
+ * completes first.
+ *
+ * A BlockingSourcePublisher can be subscribed to once.
+ *
+ * This class has no Java 8 counterpart: it is only in the
+ * META-INF/versions/9 part of the multi-release JAR, so, unlike the JAR
+ * specification recommends for versioned entries, it adds public API on Java
+ * 9 and later. Code that uses it must itself require Java 9.
+ *
+ * @param <T>
+ *          The type of the elements
+ */
+public final class BlockingSourcePublisher<T> implements Flow.Publisher<T> {
+
+  private final BlockingSource<? extends T> source;
+
+  private final Executor executor;
+
+  private final AtomicBoolean subscribed = new AtomicBoolean();
+
+  /**
+   * Creates a BlockingSourcePublisher that reads on VirtualThreads.executor().
+   *
+   * @param source
+   *          The source. Not null.
+   */
+  public BlockingSourcePublisher(BlockingSource<? extends T> source) {
+    this(source, VirtualThreads.executor());
+  }
+
+  /**
+   * Creates a BlockingSourcePublisher.
+   *
+   * @param source
+   *          The source. Not null.
+   * @param executor
+   *          The Executor to read and emit on. Not null.
+   */
+  public BlockingSourcePublisher(BlockingSource<? extends T> source, Executor executor) {
+    if (source == null) {
+      throw new IllegalArgumentException("BlockingSource argument cannot be null!");
+    }
+    if (executor == null) {
+      throw new IllegalArgumentException("Executor argument cannot be null!");
+    }
+    this.source = source;
+    this.executor = executor;
+  }
+
+  @Override
+  public void subscribe(Flow.Subscriber<? super T> subscriber) {
+    Objects.requireNonNull(subscriber);
+    ReadSubscription subscription = new ReadSubscription(subscriber);
+    if (!subscribed.compareAndSet(false, true)) {
+      subscription.done = true;
+      subscriber.onSubscribe(subscription);
+      subscriber.onError(new IllegalStateException("BlockingSourcePublisher allows only one subscriber"));
+      return;
+    }
+    subscriber.onSubscribe(subscription);
+  }
+
+  private final class ReadSubscription implements Flow.Subscription, Runnable {
+
+    private final Flow.Subscriber<? super T> subscriber;
+
+    private final AtomicLong requested = new AtomicLong();
+
+    private volatile boolean cancelled;
+
+    private volatile IllegalArgumentException badRequest;
+
+    /** Only accessed by run(), except for the rejected second subscriber */
+    private boolean done;
+
+    private ReadSubscription(Flow.Subscriber<? super T> subscriber) {
+      this.subscriber = subscriber;
+    }
+
+    @Override
+    public void request(long n) {
+      if (n <= 0) {
+        badRequest = new IllegalArgumentException("Requested number of elements must be greater than 0: " + n);
+      }
+      // A bad request still wakes up the read loop, to report it
+      long add = n <= 0 ? 1 : n;
+      long r = requested.getAndUpdate(current -> current + add < 0 ? Long.MAX_VALUE : current + add);
+      if (r == 0) {
+        executor.execute(this);
+      }
+    }
+
+    @Override
+    public void cancel() {
+      cancelled = true;
+      // Wakes up the read loop if it is idle, so that it closes the source
+      request(1);
+    }
+
+    @Override
+    public void run() {
+      long emitted = 0;
+      while (true) {
+        long r = requested.get();
+        while (emitted != r) {
+          if (terminated()) {
+            return;
+          }
+          T item;
+          try {
+            item = source.read();
+          } catch (IOException | RuntimeException e) {
+            close();
+            subscriber.onError(e);
+            return;
+          }
+          if (item == null) {
+            close();
+            subscriber.onComplete();
+            return;
+          }
+          subscriber.onNext(item);
+          emitted++;
+        }
+        if (terminated()) {
+          return;
+        }
+        r = requested.addAndGet(-emitted);
+        if (r == 0) {
+          return;
+        }
+        emitted = 0;
+      }
+    }
+
+    /**
+     * Handles cancellation and bad requests. Once done, the request count
+     * stays positive, so run() is never called again.
+     */
+    private boolean terminated() {
+      if (done) {
+        return true;
+      }
+      IllegalArgumentException e = badRequest;
+      if (e != null || cancelled) {
+        close();
+        if (e != null) {
+          subscriber.onError(e);
+        }
+        return true;
+      }
+      return false;
+    }
+
+    private void close() {
+      done = true;
+      try {
+        source.close();
+      } catch (IOException e) {
+        // The elements have all been delivered already
+      }
+    }
+
+  }
+
+}
@@ -0,0 +1,306 @@
+/*
+ * Copyright 2017 Makoto Consulting Group, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.makotojava.learn.recipe.datetime;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A java.util.concurrent.Flow pipeline stage that runs a BatchConverter
+ * (Java 9 and later).
+ *
+ * Elements are buffered as they arrive and converted a batch of up to
+ * batchSize elements at a time on the Executor, so a chain of steps fused
+ * into one BatchConverter costs one task per batch rather than one per
+ * element and step. Demand propagates both ways: the stage asks upstream for
+ * at most 2 * batchSize elements ahead of what it has converted, and only
+ * converts when the subscriber has requested more. An upstream error, or a
+ * conversion that throws, is passed on at once and buffered elements are
+ * dropped.
+ *
+ * A ConversionProcessor accepts one upstream subscription and one
+ * subscriber.
+ *
+ * Like BlockingSourcePublisher, this class is public API that exists only
+ * under META-INF/versions/9, since Flow has no Java 8 equivalent to stub it
+ * with; on Java 8 the JAR offers BatchConverter alone.
+ *
+ * @param <T>
+ *          The type of the input elements
+ * @param <R>
+ *          The type of the converted elements
+ */
+public final class ConversionProcessor<T, R> implements Flow.Processor<T, R> {
+
+  public static final int DEFAULT_BATCH_SIZE = 256;
+
+  private static final Flow.Subscription NO_SUBSCRIPTION = new Flow.Subscription() {
+    @Override
+    public void request(long n) {
+      // Nothing to deliver
+    }
+
+    @Override
+    public void cancel() {
+      // Nothing to cancel
+    }
+  };
+
+  private final BatchConverter<? super T, ? extends R> converter;
+
+  private final int batchSize;
+
+  private final Executor executor;
+
+  private final ConcurrentLinkedQueue<T> input = new ConcurrentLinkedQueue<>();
+
+  /** Number of drain() calls missed while one was running */
+  private final AtomicInteger wip = new AtomicInteger();
+
+  private final AtomicLong requested = new AtomicLong();
+
+  private final AtomicReference<Flow.Subscriber<? super R>> downstream = new AtomicReference<>();
+
+  /** True once the subscriber's onSubscribe has returned */
+  private volatile boolean downstreamReady;
+
+  private volatile Flow.Subscription upstream;
+
+  private volatile boolean upstreamDone;
+
+  private volatile Throwable error;
+
+  private volatile boolean cancelled;
+
+  // Only accessed by drain(), which never runs concurrently with itself
+  private List<? extends R> batch = Collections.emptyList();
+  private int batchIndex;
+  private long emitted;
+  private long consumed;
+  private boolean upstreamRequested;
+  private boolean terminated;
+
+  /**
+   * Creates a ConversionProcessor with the default batch size, converting
+   * on the common ForkJoinPool.
+   *
+   * @param converter
+   *          The conversion to apply. Not null.
+   */
+  public ConversionProcessor(BatchConverter<? super T, ? extends R> converter) {
+    this(converter, DEFAULT_BATCH_SIZE, ForkJoinPool.commonPool());
+  }
+
+  /**
+   * Creates a ConversionProcessor.
+   *
+   * @param converter
+   *          The conversion to apply. Not null.
+   * @param batchSize
+   *          The maximum number of elements converted per task. Greater than
+   *          0.
+   * @param executor
+   *          The Executor to convert and emit on. Not null.
+   */
+  public ConversionProcessor(BatchConverter<? super T, ? extends R> converter, int batchSize, Executor executor) {
+    if (converter == null) {
+      throw new IllegalArgumentException("BatchConverter argument cannot be null!");
+    }
+    if (batchSize <= 0) {
+      throw new IllegalArgumentException("Batch size must be greater than 0: " + batchSize);
+    }
+    if (executor == null) {
+      throw new IllegalArgumentException("Executor argument cannot be null!");
+    }
+    this.converter = converter;
+    this.batchSize = batchSize;
+    this.executor = executor;
+  }
+
+  @Override
+  public void subscribe(Flow.Subscriber<? super R> subscriber) {
+    Objects.requireNonNull(subscriber);
+    if (!downstream.compareAndSet(null, subscriber)) {
+      subscriber.onSubscribe(NO_SUBSCRIPTION);
+      subscriber.onError(new IllegalStateException("ConversionProcessor allows only one subscriber"));
+      return;
+    }
+    subscriber.onSubscribe(new Flow.Subscription() {
+      @Override
+      public void request(long n) {
+        if (n <= 0) {
+          cancelled = true;
+          error = new IllegalArgumentException("Requested number of elements must be greater than 0: " + n);
+        } else {
+          requested.getAndUpdate(r -> r + n < 0 ? Long.MAX_VALUE : r + n);
+        }
+        schedule();
+      }
+
+      @Override
+      public void cancel() {
+        cancelled = true;
+        schedule();
+      }
+    });
+    downstreamReady = true;
+    schedule();
+  }
+
+  @Override
+  public void onSubscribe(Flow.Subscription subscription) {
+    Objects.requireNonNull(subscription);
+    if (upstream != null || cancelled) {
+      subscription.cancel();
+      return;
+    }
+    upstream = subscription;
+    schedule();
+  }
+
+  @Override
+  public void onNext(T item) {
+    input.offer(Objects.requireNonNull(item));
+    schedule();
+  }
+
+  @Override
+  public void onError(Throwable throwable) {
+    error = Objects.requireNonNull(throwable);
+    upstreamDone = true;
+    schedule();
+  }
+
+  @Override
+  public void onComplete() {
+    upstreamDone = true;
+    schedule();
+  }
+
+  private void schedule() {
+    if (wip.getAndIncrement() == 0) {
+      executor.execute(this::drain);
+    }
+  }
+
+  private void drain() {
+    int missed = 1;
+    Throwable failure = null;
+    do {
+      if (!terminated) {
+        try {
+          drainOnce();
+        } catch (Throwable subscriberError) {
+          // Only a subscriber that breaks the Flow contract gets here: stop, but keep the count balanced
+          terminate(upstream);
+          failure = subscriberError;
+        }
+      }
+      missed = wip.addAndGet(-missed);
+    } while (missed != 0);
+    if (failure instanceof Error) {
+      throw (Error) failure;
+    } else if (failure instanceof RuntimeException) {
+      throw (RuntimeException) failure;
+    }
+  }
+
+  private void drainOnce() {
+    Flow.Subscription up = upstream;
+    if (cancelled && error == null) {
+      terminate(up);
+      return;
+    }
+    if (!downstreamReady) {
+      return;
+    }
+    Flow.Subscriber<? super R> subscriber = downstream.get();
+    Throwable e = error;
+    if (e != null) {
+      // Upstream error, or bad request
+      terminate(up);
+      subscriber.onError(e);
+      return;
+    }
+    if (up == null) {
+      return;
+    }
+    if (!upstreamRequested) {
+      upstreamRequested = true;
+      up.request(2L * batchSize);
+    }
+    while (true) {
+      long r = requested.get();
+      while (emitted != r && batchIndex < batch.size()) {
+        subscriber.onNext(batch.get(batchIndex++));
+        emitted++;
+      }
+      if (emitted == r || batchIndex < batch.size() || cancelled) {
+        break;
+      }
+      // Demand left and nothing converted: convert the next batch
+      List<T> next = new ArrayList<>(Math.min(batchSize, input.size()));
+      for (T item; next.size() < batchSize && (item = input.poll()) != null;) {
+        next.add(item);
+      }
+      if (next.isEmpty()) {
+        break;
+      }
+      try {
+        batch = converter.convertAll(next);
+      } catch (Throwable conversionError) {
+        // Errors too: the subscriber must hear of the failure rather than wait forever
+        terminate(up);
+        subscriber.onError(conversionError);
+        return;
+      }
+      batchIndex = 0;
+      consumed += next.size();
+      if (consumed >= batchSize) {
+        up.request(consumed);
+        consumed = 0;
+      }
+    }
+    if (upstreamDone && error == null && batchIndex >= batch.size() && input.isEmpty() && !cancelled) {
+      terminate(up);
+      subscriber.onComplete();
+    }
+  }
+
+  private void terminate(Flow.Subscription up) {
+    terminated = true;
+    input.clear();
+    batch = Collections.emptyList();
+    if (up != null && !upstreamDone) {
+      up.cancel();
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "ConversionProcessor[batchSize=" + batchSize + ", buffered=" + input.size() + "]";
+  }
+
+}
@@ -0,0 +1,218 @@
+/*
+ * Copyright 2017 Makoto Consulting Group, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.makotojava.learn.recipe.datetime;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.platform.runner.JUnitPlatform;
+import org.junit.runner.RunWith;
+
+import com.makotojava.learn.recipe.datetime.AsOfJoin.Cursor;
+import com.makotojava.learn.recipe.datetime.AsOfJoin.Direction;
+
+/**
+ * Unit test for AsOfJoin.
+ */
+@RunWith(JUnitPlatform.class)
+@DisplayName("Testing AsOfJoin")
+public class AsOfJoinTest {
+
+  /**
+   * Sorted random times with many duplicates.
+   */
+  private static long[] times(Random random, int count) {
+    long[] ret = new long[count];
+    for (int i = 0; i < count; i++) {
+      ret[i] = 1_500_000_000_000L + random.nextInt(count * 10);
+    }
+    Arrays.sort(ret);
+    return ret;
+  }
+
+  private static long[] partitions(Random random, int count, int partitions) {
+    long[] ret = new long[count];
+    for (int i = 0; i < count; i++) {
+      ret[i] = random.nextInt(partitions) * 1_000_003L;
+    }
+    return ret;
+  }
+
+  /**
+   * Nested-loop join: returns rightRow and gap pairs, per left row.
+   */
+  private static long[] expected(Direction direction, long tolerance, long[] leftTimes, long[] leftPartitions,
+      long[] rightTimes, long[] rightPartitions) {
+    long[] ret = new long[leftTimes.length * 2];
+    for (int l = 0; l < leftTimes.length; l++) {
+      int backward = -1;
+      int forward = -1;
+      for (int r = 0; r < rightTimes.length; r++) {
+        if (leftPartitions != null && leftPartitions[l] != rightPartitions[r]) {
+          continue;
+        }
+        if (rightTimes[r] <= leftTimes[l] && leftTimes[l] - rightTimes[r] <= tolerance
+            && (backward < 0 || rightTimes[r] >= rightTimes[backward])) {
+          backward = r;
+        }
+        if (rightTimes[r] >= leftTimes[l] && rightTimes[r] - leftTimes[l] <= tolerance
+            && (forward < 0 || rightTimes[r] < rightTimes[forward])) {
+          forward = r;
+        }
+      }
+      int match;
+      switch (direction) {
+        case BACKWARD:
+          match = backward;
+          break;
+        case FORWARD:
+          match = forward;
+          break;
+        default:
+          match = backward >= 0 && (forward < 0
+              || leftTimes[l] - rightTimes[backward] <= rightTimes[forward] - leftTimes[l]) ? backward : forward;
+      }
+      ret[2 * l] = match;
+      ret[2 * l + 1] = match < 0 ? 0 : rightTimes[match] - leftTimes[l];
+    }
+    return ret;
+  }
+
+  private static long[] join(Direction direction, Duration tolerance, Cursor left, Cursor right, int leftCount)
+      throws IOException {
+    long[] ret = new long[leftCount * 2];
+    long[] next = { 0 };
+    new AsOfJoin(direction, tolerance, (leftRow, rightRow, gapMillis) -> {
+      assertEquals(next[0]++, leftRow);
+      ret[(int) (2 * leftRow)] = rightRow;
+      ret[(int) (2 * leftRow + 1)] = gapMillis;
+    }).join(left, right);
+    assertEquals(leftCount, next[0]);
+    return ret;
+  }
+
+  @Nested
+  @DisplayName("Matching")
+  public class Matching {
+
+    @Test
+    @DisplayName("Every direction matches like a nested-loop join, with and without partitions")
+    public void randomized() throws IOException {
+      Random random = new Random(2017);
+      for (int round = 0; round < 40; round++) {
+        int leftCount = 1 + random.nextInt(3000);
+        int rightCount = random.nextInt(3000);
+        long[] leftTimes = times(random, leftCount);
+        long[] rightTimes = times(random, rightCount);
+        int partitionCount = round % 2 == 0 ? 0 : 1 + random.nextInt(50);
+        long[] leftPartitions = partitionCount == 0 ? null : partitions(random, leftCount, partitionCount);
+        long[] rightPartitions = partitionCount == 0 ? null : partitions(random, rightCount, partitionCount);
+        Duration tolerance = round % 4 < 2 ? null : Duration.ofMillis(random.nextInt(100));
+        long toleranceMillis = tolerance == null ? Long.MAX_VALUE : tolerance.toMillis();
+        for (Direction direction : Direction.values()) {
+          assertArrayEquals(
+              expected(direction, toleranceMillis, leftTimes, leftPartitions, rightTimes, rightPartitions),
+              join(direction, tolerance, Cursor.of(leftTimes, leftPartitions), Cursor.of(rightTimes, rightPartitions),
+                  leftCount),
+              direction + " round " + round);
+        }
+      }
+    }
+
+    @Test
+    @DisplayName("Trades join the quotes at, before and after them")
+    public void tradesAndQuotes() throws IOException {
+      long[] quotes = { 1000, 2000, 2000, 5000 };
+      long[] trades = { 500, 2000, 2600, 3600, 9000 };
+      Duration tolerance = Durations.toDuration(Durations.of(2, ChronoUnit.SECONDS));
+      long[] backward = join(Direction.BACKWARD, tolerance, Cursor.of(trades, null), Cursor.of(quotes, null), 5);
+      assertArrayEquals(new long[] { -1, 0, 2, 0, 2, -600, 2, -1600, -1, 0 }, backward);
+      long[] forward = join(Direction.FORWARD, tolerance, Cursor.of(trades, null), Cursor.of(quotes, null), 5);
+      assertArrayEquals(new long[] { 0, 500, 1, 0, -1, 0, 3, 1400, -1, 0 }, forward);
+      long[] nearest = join(Direction.NEAREST, null, Cursor.of(trades, null), Cursor.of(quotes, null), 5);
+      assertArrayEquals(new long[] { 0, 500, 2, 0, 2, -600, 3, 1400, 3, -4000 }, nearest);
+    }
+
+    @Test
+    @DisplayName("The right source is read no further than needed")
+    public void lazyRight() throws IOException {
+      List<Long> read = new ArrayList<>();
+      long[] rightTimes = { 10, 20, 30, 40, 50 };
+      Cursor right = new Cursor() {
+        private int row = -1;
+
+        @Override
+        public boolean next() {
+          if (++row < rightTimes.length) {
+            read.add(rightTimes[row]);
+            return true;
+          }
+          return false;
+        }
+
+        @Override
+        public long epochMilli() {
+          return rightTimes[row];
+        }
+      };
+      join(Direction.FORWARD, null, Cursor.of(new long[] { 15 }, null), right, 1);
+      assertEquals(Arrays.asList(10L, 20L), read);
+      // Left rows wait for a later right row, growing the ring buffer
+      long[] waiting = join(Direction.FORWARD, null, Cursor.of(times(new Random(1), 5000), new long[5000]),
+          Cursor.of(new long[] { 2_000_000_000_000L }, new long[] { 1 }), 5000);
+      for (int i = 0; i < 5000; i++) {
+        assertEquals(AsOfJoin.NO_MATCH, waiting[2 * i]);
+      }
+    }
+
+  }
+
+  @Nested
+  @DisplayName("Arguments")
+  public class Arguments {
+
+    @Test
+    @DisplayName("Unordered sources and bad arguments are rejected")
+    public void badArguments() {
+      AsOfJoin join = new AsOfJoin(Direction.BACKWARD, null, (leftRow, rightRow, gapMillis) -> {
+        // Ignored
+      });
+      assertThrows(IllegalArgumentException.class,
+          () -> join.join(Cursor.of(new long[] { 2, 1 }, null), Cursor.of(new long[0], null)));
+      assertThrows(IllegalArgumentException.class,
+          () -> join.join(Cursor.of(new long[] { 5 }, null), Cursor.of(new long[] { 2, 1 }, null)));
+      assertThrows(IllegalArgumentException.class,
+          () -> new AsOfJoin(Direction.FORWARD, Duration.ofMillis(-1), (leftRow, rightRow, gapMillis) -> {
+            // Ignored
+          }));
+      assertThrows(IllegalArgumentException.class, () -> Cursor.of(new long[2], new long[1]));
+    }
+
+  }
+
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright 2017 Makoto Consulting Group, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.makotojava.learn.recipe.datetime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.platform.runner.JUnitPlatform;
+import org.junit.runner.RunWith;
+
+/**
+ * Unit test for BatchConverter, BlockingSource and VirtualThreads.
+ */
+@RunWith(JUnitPlatform.class)
+@DisplayName("Testing BatchConverter")
+public class BatchConverterTest {
+
+  private static final ZoneId CHICAGO = ZoneId.of("America/Chicago");
+
+  private List<String> timestamps(int count) {
+    List<String> ret = new ArrayList<>();
+    ZonedDateTime zdt = ZonedDateTime.of(2017, 1, 1, 0, 0, 0, 0, ZoneOffset.UTC);
+    for (int i = 0; i < count; i++) {
+      ret.add(DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mmXXX").format(zdt.plusMinutes(97L * i)));
+    }
+    return ret;
+  }
+
+  private String rezoned(String timestamp) {
+    return DateTimeFormatter.ofPattern("MM/dd/yyyy HH:mm VV")
+        .format(ZonedDateTime.parse(timestamp).withZoneSameInstant(CHICAGO));
+  }
+
+  @Nested
+  @DisplayName("Conversions")
+  public class Conversions {
+
+    @Test
+    @DisplayName("Fused steps convert like the separate steps")
+    public void fused() {
+      BatchConverter<String, Instant> parse = BatchConverter.of(text -> ZonedDateTime.parse(text).toInstant());
+      BatchConverter<String, Long> chain = parse.andThen(Instant::toEpochMilli).andThen(millis -> millis / 1000);
+      assertEquals(Long.valueOf(1_500_000_000L), chain.convert("2017-07-14T02:40:00Z"));
+      BatchConverter<String, String> rezone = BatchConverter.rezone("yyyy-MM-dd'T'HH:mmXXX", CHICAGO,
+          "MM/dd/yyyy HH:mm VV");
+      List<String> input = timestamps(1000);
+      List<String> output = rezone.convertAll(input);
+      for (int i = 0; i < input.size(); i++) {
+        assertEquals(rezoned(input.get(i)), output.get(i));
+      }
+      assertThrows(IllegalArgumentException.class, () -> BatchConverter.of(null));
+      assertThrows(IllegalArgumentException.class, () -> parse.andThen(null));
+    }
+
+    @Test
+    @DisplayName("Asynchronous batches keep the original order")
+    public void async() {
+      BatchConverter<String, String> rezone = BatchConverter.rezone("yyyy-MM-dd'T'HH:mmXXX", CHICAGO,
+          "MM/dd/yyyy HH:mm VV");
+      List<String> input = timestamps(10_000);
+      List<String> output = rezone.convertAllAsync(input, 300, ForkJoinPool.commonPool()).join();
+      assertEquals(rezone.convertAll(input), output);
+      assertTrue(rezone.convertAllAsync(new ArrayList<>(), 300, ForkJoinPool.commonPool()).join().isEmpty());
+      // The failing batch fails the whole future
+      List<String> bad = new ArrayList<>(input);
+      bad.set(5000, "Not a timestamp");
+      CompletionException e = assertThrows(CompletionException.class,
+          () -> rezone.convertAllAsync(bad, 300, ForkJoinPool.commonPool()).join());
+      assertTrue(e.getCause() instanceof DateTimeParseException);
+      assertThrows(IllegalArgumentException.class, () -> rezone.convertAllAsync(input, 0, ForkJoinPool.commonPool()));
+    }
+
+  }
+
+  @Nested
+  @DisplayName("Blocking sources")
+  public class BlockingSources {
+
+    @Test
+    @DisplayName("Sources read lines and iterators, and close their readers")
+    public void sources() throws IOException {
+      AtomicReference<Boolean> closed = new AtomicReference<>(false);
+      BufferedReader reader = new BufferedReader(new StringReader("a\nb\n")) {
+        @Override
+        public void close() throws IOException {
+          closed.set(true);
+          super.close();
+        }
+      };
+      try (BlockingSource<String> lines = BlockingSource.lines(reader)) {
+        assertEquals("a", lines.read());
+        assertEquals("b", lines.read());
+        assertNull(lines.read());
+        assertFalse(closed.get());
+      }
+      assertTrue(closed.get());
+      BlockingSource<Integer> numbers = BlockingSource.of(Arrays.asList(1, 2).iterator());
+      assertEquals(Integer.valueOf(1), numbers.read());
+      assertEquals(Integer.valueOf(2), numbers.read());
+      assertNull(numbers.read());
+    }
+
+    @Test
+    @DisplayName("The blocking executor uses virtual threads if the JVM has them")
+    public void virtualThreads() throws Exception {
+      boolean expected;
+      try {
+        Thread.class.getMethod("ofVirtual");
+        expected = true;
+      } catch (NoSuchMethodException e) {
+        expected = false;
+      }
+      assertEquals(expected, VirtualThreads.isAvailable());
+      Thread thread = CompletableFuture.supplyAsync(Thread::currentThread, VirtualThreads.executor()).get();
+      // Virtual threads are always daemon threads
+      assertTrue(thread.isDaemon());
+      assertEquals(!expected, thread.getName().startsWith("blocking-source-"));
+    }
+
+  }
+
+}
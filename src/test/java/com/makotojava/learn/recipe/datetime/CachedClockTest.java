@@ -0,0 +1,168 @@
+/*
+ * Copyright 2017 Makoto Consulting Group, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.makotojava.learn.recipe.datetime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.platform.runner.JUnitPlatform;
+import org.junit.runner.RunWith;
+
+/**
+ * Unit test for CachedClock.
+ */
+@RunWith(JUnitPlatform.class)
+@DisplayName("Testing CachedClock")
+public class CachedClockTest {
+
+  private static final ZoneId ZONE_CHICAGO = ZoneId.of("America/Chicago");
+
+  // 3/12/2017 at 01:59:59 CST, one second before the switch to CDT
+  private static final long MILLIS_20170312_0159CST =
+      LocalDateTime.of(2017, 3, 12, 1, 59, 59).toInstant(ZoneOffset.ofHours(-6)).toEpochMilli();
+
+  private CachedClock.Manual classUnderTest;
+
+  @BeforeEach
+  void setUp() {
+    classUnderTest = CachedClock.manual(MILLIS_20170312_0159CST);
+  }
+
+  @Nested
+  @DisplayName("Manual clock")
+  public class Manual {
+
+    @Test
+    @DisplayName("Only moves when advanced")
+    public void advance() {
+      assertEquals(MILLIS_20170312_0159CST, classUnderTest.currentTimeMillis());
+      classUnderTest.advance(Duration.ofMinutes(1));
+      assertEquals(MILLIS_20170312_0159CST + 60_000, classUnderTest.currentTimeMillis());
+      assertEquals(Duration.ofMinutes(1).toNanos(), classUnderTest.nanoTime());
+    }
+
+    @Test
+    @DisplayName("Cannot be advanced backwards, but can be set backwards")
+    public void backwards() {
+      assertThrows(IllegalArgumentException.class, () -> classUnderTest.advanceMillis(-1));
+      classUnderTest.setMillis(0);
+      assertEquals(0, classUnderTest.currentEpochSecond());
+    }
+
+    @Test
+    @DisplayName("Cannot be advanced past the range of its counters")
+    public void overflow() {
+      // Beyond the about 292 years that fit in a long of nanoseconds
+      assertThrows(IllegalArgumentException.class, () -> classUnderTest.advance(Duration.ofDays(365L * 300)));
+      classUnderTest.advance(Duration.ofDays(365L * 200));
+      assertThrows(IllegalArgumentException.class, () -> classUnderTest.advance(Duration.ofDays(365L * 200)));
+      assertEquals(Duration.ofDays(365L * 200).toNanos(), classUnderTest.nanoTime());
+      assertThrows(IllegalArgumentException.class, () -> classUnderTest.advance(null));
+    }
+
+  }
+
+  @Nested
+  @DisplayName("Local fields")
+  public class LocalFieldsCache {
+
+    @Test
+    @DisplayName("Fields match LocalDateTime.ofInstant across a DST change")
+    public void acrossDstChange() {
+      assertEquals(LocalDateTime.of(2017, 3, 12, 1, 59, 59),
+          classUnderTest.localFields(ZONE_CHICAGO).toLocalDateTime());
+      classUnderTest.advanceMillis(1000);
+      CachedClock.LocalFields fields = classUnderTest.localFields(ZONE_CHICAGO);
+      assertEquals(3, fields.getHour());
+      assertEquals(0, fields.getMinute());
+      assertEquals(ZoneOffset.ofHours(-5), fields.getOffset());
+    }
+
+    @Test
+    @DisplayName("The same object is returned within a second")
+    public void sameSecond() {
+      CachedClock.LocalFields first = classUnderTest.localFields(ZONE_CHICAGO);
+      classUnderTest.advanceMillis(999);
+      assertSame(first, classUnderTest.localFields(ZONE_CHICAGO));
+      classUnderTest.advanceMillis(1);
+      assertNotSame(first, classUnderTest.localFields(ZONE_CHICAGO));
+    }
+
+    @Test
+    @DisplayName("The LocalDate is shared until the day changes")
+    public void sameDay() {
+      LocalDate first = classUnderTest.currentLocalDate(ZONE_CHICAGO);
+      classUnderTest.advance(Duration.ofHours(1));
+      assertSame(first, classUnderTest.currentLocalDate(ZONE_CHICAGO));
+      classUnderTest.advance(Duration.ofDays(1));
+      assertEquals(first.plusDays(1), classUnderTest.currentLocalDate(ZONE_CHICAGO));
+    }
+
+    @Test
+    @DisplayName("DateTimeUtils reads now from its clock")
+    public void dateTimeUtils() {
+      DateTimeUtils dateTimeUtils = new DateTimeUtils(classUnderTest);
+      assertEquals(MILLIS_20170312_0159CST, dateTimeUtils.currentTimeMillis());
+      assertEquals(LocalDate.of(2017, 3, 12), dateTimeUtils.currentLocalDate(ZONE_CHICAGO));
+      assertEquals(LocalDateTime.of(2017, 3, 12, 7, 59, 59), dateTimeUtils.currentLocalDateTime(ZoneOffset.UTC));
+    }
+
+  }
+
+  @Nested
+  @DisplayName("System clocks")
+  public class SystemClocks {
+
+    @Test
+    @DisplayName("The coarse clock tracks the system clock")
+    public void coarse() throws InterruptedException {
+      try (CachedClock.Coarse clock = CachedClock.newCoarse(1)) {
+        long before = System.currentTimeMillis();
+        long now = clock.currentTimeMillis();
+        // The ticker thread may be scheduled late on a busy machine
+        for (long deadline = before + 10_000; now < before && System.currentTimeMillis() < deadline;) {
+          Thread.sleep(5);
+          now = clock.currentTimeMillis();
+        }
+        assertTrue(now >= before, "Coarse clock did not advance");
+        assertTrue(now <= System.currentTimeMillis(), "Coarse clock ran ahead of the system clock");
+      }
+    }
+
+    @Test
+    @DisplayName("The precise clock matches the system clock")
+    public void precise() {
+      long before = System.currentTimeMillis();
+      long now = CachedClock.precise().currentTimeMillis();
+      assertTrue(now >= before && now <= System.currentTimeMillis());
+    }
+
+  }
+
+}
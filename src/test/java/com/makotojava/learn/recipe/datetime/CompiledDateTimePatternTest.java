@@ -0,0 +1,216 @@
+/*
+ * Copyright 2017 Makoto Consulting Group, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.makotojava.learn.recipe.datetime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.UnsupportedTemporalTypeException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.platform.runner.JUnitPlatform;
+import org.junit.runner.RunWith;
+
+/**
+ * Unit test for CompiledDateTimePattern.
+ */
+@RunWith(JUnitPlatform.class)
+@DisplayName("Testing CompiledDateTimePattern")
+public class CompiledDateTimePatternTest {
+
+  private static final String[] PATTERNS = { "yyyy-MM-dd HH:mm:ss", "MM/dd/yyyy HH:mm", "yyyyMMddHHmmssSSS",
+      "uuuu-MM-dd'T'HH:mm:ss.SSSSSSXXX", "d.M.yy H:mm", "yyyy-MM-dd'T'HH:mm:ssxxx'['VV']'", "'Day' dd 'of' MM, ''yy" };
+
+  private static final ZoneId[] ZONES = { ZoneOffset.UTC, ZoneId.of("America/Chicago"), ZoneId.of("Asia/Kolkata"),
+      ZoneOffset.ofHoursMinutes(-3, -30) };
+
+  // Random values between 1970 and 2100
+  private ZonedDateTime randomZonedDateTime(Random random) {
+    long epochSecond = (long) (random.nextDouble() * 4_102_444_800L);
+    return ZonedDateTime.ofInstant(Instant.ofEpochSecond(epochSecond, random.nextInt(1_000_000_000)),
+        ZONES[random.nextInt(ZONES.length)]);
+  }
+
+  @Nested
+  @DisplayName("Formatting")
+  public class Formatting {
+
+    @Test
+    @DisplayName("Compiled patterns format exactly like DateTimeFormatter")
+    public void sameAsFormatter() {
+      Random random = new Random(42);
+      for (String pattern : PATTERNS) {
+        CompiledDateTimePattern classUnderTest = CompiledDateTimePattern.of(pattern);
+        DateTimeFormatter expected = DateTimeFormatter.ofPattern(pattern);
+        for (int i = 0; i < 2000; i++) {
+          ZonedDateTime zdt = randomZonedDateTime(random);
+          assertEquals(expected.format(zdt), classUnderTest.format(zdt), pattern);
+        }
+      }
+    }
+
+    @Test
+    @DisplayName("Years outside 1-9999 are formatted by DateTimeFormatter")
+    public void outOfRangeYears() {
+      CompiledDateTimePattern classUnderTest = CompiledDateTimePattern.of("yyyy-MM-dd");
+      LocalDate bigYear = LocalDate.of(12017, 1, 15);
+      LocalDate bce = LocalDate.of(-5, 1, 15);
+      assertEquals(DateTimeFormatter.ofPattern("yyyy-MM-dd").format(bigYear), classUnderTest.format(bigYear));
+      assertEquals(DateTimeFormatter.ofPattern("yyyy-MM-dd").format(bce), classUnderTest.format(bce));
+    }
+
+    @Test
+    @DisplayName("Formatting a LocalDateTime with an offset pattern fails like DateTimeFormatter")
+    public void missingOffset() {
+      CompiledDateTimePattern classUnderTest = CompiledDateTimePattern.of("yyyy-MM-dd HH:mmXXX");
+      assertThrows(UnsupportedTemporalTypeException.class,
+          () -> classUnderTest.format(LocalDateTime.of(2017, 1, 15, 14, 35)));
+    }
+
+    @Test
+    @DisplayName("Text patterns fall back to DateTimeFormatter")
+    public void textPattern() {
+      CompiledDateTimePattern classUnderTest = CompiledDateTimePattern.of("EEE MMM dd yyyy");
+      assertFalse(classUnderTest.isCompiled());
+      LocalDate date = LocalDate.of(2017, 1, 15);
+      assertEquals(DateTimeFormatter.ofPattern("EEE MMM dd yyyy").format(date), classUnderTest.format(date));
+    }
+
+  }
+
+  @Nested
+  @DisplayName("Parsing")
+  public class Parsing {
+
+    @Test
+    @DisplayName("Compiled patterns parse exactly like DateTimeFormatter")
+    public void sameAsFormatter() {
+      Random random = new Random(7);
+      String pattern = "uuuu-MM-dd'T'HH:mm:ss.SSSSSSXXX";
+      CompiledDateTimePattern classUnderTest = CompiledDateTimePattern.of(pattern);
+      assertTrue(classUnderTest.isCompiled());
+      DateTimeFormatter formatter = DateTimeFormatter.ofPattern(pattern);
+      for (int i = 0; i < 2000; i++) {
+        String text = formatter.format(randomZonedDateTime(random));
+        assertEquals(ZonedDateTime.parse(text, formatter), classUnderTest.parseZonedDateTime(text));
+        assertEquals(LocalDateTime.parse(text, formatter), classUnderTest.parseLocalDateTime(text));
+        assertEquals(LocalDate.parse(text, formatter), classUnderTest.parseLocalDate(text));
+      }
+    }
+
+    @Test
+    @DisplayName("Zone ID patterns parse exactly like DateTimeFormatter")
+    public void zoneIds() {
+      // 01:30 on 2017-11-05 is in the Chicago overlap hour
+      String[][] patterns = { { "yyyy-MM-dd'T'HH:mm:ss.SSS'['VV']'", "2017-11-05T01:30:15.123[%s]" },
+          { "yyyy-MM-dd HH:mm VV", "2017-11-05 01:30 %s" },
+          { "yyyy-MM-dd'T'HH:mmXXX'['VV']'", "2017-11-05T01:30-05:00[%s]" },
+          { "yyyy-MM-dd'T'HH:mmXXX'['VV']'", "2017-11-05T01:30-06:00[%s]" } };
+      List<String> ids = new ArrayList<>(ZoneId.getAvailableZoneIds());
+      // Offset-based zones are left to DateTimeFormatter
+      ids.addAll(Arrays.asList("Z", "UTC", "UT", "GMT", "UTC+01:00", "GMT-05:00", "+03:00", "Zulu"));
+      for (String[] pattern : patterns) {
+        CompiledDateTimePattern classUnderTest = CompiledDateTimePattern.of(pattern[0]);
+        assertTrue(classUnderTest.isCompiled(), pattern[0]);
+        DateTimeFormatter formatter = DateTimeFormatter.ofPattern(pattern[0]);
+        for (String id : ids) {
+          String text = String.format(pattern[1], id);
+          ZonedDateTime expected;
+          try {
+            expected = ZonedDateTime.parse(text, formatter);
+          } catch (DateTimeParseException e) {
+            // Java 8's DateTimeFormatter cannot parse GMT0, and neither can the pattern it is left to
+            assertThrows(DateTimeParseException.class, () -> classUnderTest.parseZonedDateTime(text), text);
+            continue;
+          }
+          assertEquals(expected, classUnderTest.parseZonedDateTime(text), text);
+          assertEquals(LocalDateTime.parse(text, formatter), classUnderTest.parseLocalDateTime(text), text);
+        }
+        String bad = String.format(pattern[1], "Mars/Olympus");
+        assertThrows(DateTimeParseException.class, () -> classUnderTest.parseZonedDateTime(bad));
+      }
+      assertSame(ZoneIds.of("Europe/Paris"), CompiledDateTimePattern.of("yyyy-MM-dd HH:mm VV")
+          .parseZonedDateTime("2017-01-15 14:35 Europe/Paris").getZone());
+    }
+
+    @Test
+    @DisplayName("Input that needs SMART resolution is left to DateTimeFormatter")
+    public void smartResolution() {
+      CompiledDateTimePattern classUnderTest = CompiledDateTimePattern.of("yyyy-MM-dd HH:mm");
+      // SMART resolution clamps February 30 to the end of the month
+      assertEquals(LocalDateTime.of(2017, 2, 28, 10, 0), classUnderTest.parseLocalDateTime("2017-02-30 10:00"));
+      assertEquals(LocalDateTime.of(2000, 1, 15, 14, 35), classUnderTest.parseLocalDateTime("2000-01-15 14:35"));
+    }
+
+    @Test
+    @DisplayName("Bad input throws DateTimeParseException")
+    public void badInput() {
+      CompiledDateTimePattern classUnderTest = CompiledDateTimePattern.of("yyyy-MM-dd HH:mm");
+      assertThrows(DateTimeParseException.class, () -> classUnderTest.parseLocalDateTime("2017-01-15 14:3x"));
+      assertThrows(DateTimeParseException.class, () -> classUnderTest.parseLocalDateTime("2017-13-15 14:35"));
+      assertThrows(DateTimeParseException.class, () -> classUnderTest.parseLocalDateTime("2017-01-15 14:35 "));
+      assertThrows(DateTimeParseException.class, () -> classUnderTest.parseZonedDateTime("2017-01-15 14:35"));
+    }
+
+  }
+
+  @Nested
+  @DisplayName("Compilation")
+  public class Compilation {
+
+    @Test
+    @DisplayName("Compiled patterns are cached")
+    public void cached() {
+      assertSame(CompiledDateTimePattern.of("yyyy-MM-dd"), CompiledDateTimePattern.of("yyyy-MM-dd"));
+    }
+
+    @Test
+    @DisplayName("Bad patterns are rejected like DateTimeFormatter.ofPattern")
+    public void badPattern() {
+      assertThrows(IllegalArgumentException.class, () -> CompiledDateTimePattern.of("yyyy-MM-dd'T"));
+    }
+
+    @Test
+    @DisplayName("DateTimeUtils parses and formats through compiled patterns")
+    public void dateTimeUtils() {
+      DateTimeUtils dateTimeUtils = new DateTimeUtils();
+      ZonedDateTime zdt = dateTimeUtils.toZonedDateTime("2017-06-15T23:00-05:00", "yyyy-MM-dd'T'HH:mmXXX");
+      assertEquals(ZonedDateTime.of(2017, 6, 15, 23, 0, 0, 0, ZoneOffset.ofHours(-5)), zdt);
+      assertEquals("06/15/2017 23:00", dateTimeUtils.toString(zdt, "MM/dd/yyyy HH:mm"));
+      assertEquals(LocalDateTime.of(2017, 1, 15, 14, 35),
+          dateTimeUtils.toLocalDateTime("2017-01-15 14:35", "yyyy-MM-dd HH:mm"));
+    }
+
+  }
+
+}
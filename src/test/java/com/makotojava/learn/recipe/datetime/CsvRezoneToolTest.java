@@ -0,0 +1,134 @@
+/*
+ * Copyright 2017 Makoto Consulting Group, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.makotojava.learn.recipe.datetime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.platform.runner.JUnitPlatform;
+import org.junit.runner.RunWith;
+
+/**
+ * Unit test for CsvRezoneTool.
+ */
+@RunWith(JUnitPlatform.class)
+@DisplayName("Testing CsvRezoneTool")
+public class CsvRezoneToolTest {
+
+  private static final String[] UTC_TO_CHICAGO = { "--from-pattern", "yyyy-MM-dd HH:mm", "--from-zone", "UTC",
+      "--to-pattern", "MM/dd/yyyy HH:mm", "--to-zone", "America/Chicago" };
+
+  private String output;
+
+  private CsvRezoneTool.Stats run(String input, String... args) throws IOException {
+    String[] allArgs = new String[UTC_TO_CHICAGO.length + args.length];
+    System.arraycopy(UTC_TO_CHICAGO, 0, allArgs, 0, UTC_TO_CHICAGO.length);
+    System.arraycopy(args, 0, allArgs, UTC_TO_CHICAGO.length, args.length);
+    CsvRezoneTool classUnderTest = new CsvRezoneTool(CsvRezoneTool.Options.parse(allArgs));
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    CsvRezoneTool.Stats ret = classUnderTest.run(
+        Channels.newChannel(new ByteArrayInputStream(input.getBytes(StandardCharsets.UTF_8))),
+        Channels.newChannel(out));
+    output = new String(out.toByteArray(), StandardCharsets.UTF_8);
+    return ret;
+  }
+
+  @Nested
+  @DisplayName("Column selection")
+  public class Columns {
+
+    @Test
+    @DisplayName("Selected columns are converted by number")
+    public void byNumber() throws IOException {
+      CsvRezoneTool.Stats stats = run("1,2017-05-15 08:00,x\n2,2017-01-15 14:35,y\n", "--columns", "2");
+      assertEquals("1,05/15/2017 03:00,x\n2,01/15/2017 08:35,y\n", output);
+      assertEquals(2, stats.getRows());
+      assertEquals(2, stats.getConverted());
+      assertEquals(0, stats.getErrors());
+    }
+
+    @Test
+    @DisplayName("Selected columns are converted by header name and the header is kept")
+    public void byName() throws IOException {
+      run("id,created,updated\r\n1,2017-05-15 08:00,2017-05-15 09:00\r\n", "--header", "--columns",
+          "updated,created");
+      assertEquals("id,created,updated\r\n1,05/15/2017 03:00,05/15/2017 04:00\r\n", output);
+    }
+
+    @Test
+    @DisplayName("An unknown column name is rejected")
+    public void unknownName() {
+      assertThrows(IllegalArgumentException.class, () -> run("id,created\n1,x\n", "--header", "--columns", "nope"));
+    }
+
+  }
+
+  @Nested
+  @DisplayName("Record handling")
+  public class Records {
+
+    @Test
+    @DisplayName("Quoted fields keep their quotes and may contain delimiters and line breaks")
+    public void quoted() throws IOException {
+      run("\"a,\nb\",\"2017-05-15 08:00\"\n", "--columns", "2");
+      assertEquals("\"a,\nb\",\"05/15/2017 03:00\"\n", output);
+    }
+
+    @Test
+    @DisplayName("TSV input is supported")
+    public void tsv() throws IOException {
+      run("2017-05-15 08:00\tx\n", "--tsv", "--columns", "1");
+      assertEquals("05/15/2017 03:00\tx\n", output);
+    }
+
+    @Test
+    @DisplayName("Unparseable fields are counted and left unchanged")
+    public void errors() throws IOException {
+      CsvRezoneTool.Stats stats = run("1,garbage\n2,\n", "--columns", "2");
+      assertEquals("1,garbage\n2,\n", output);
+      assertEquals(1, stats.getErrors());
+    }
+
+    @Test
+    @DisplayName("Row order is kept across many small chunks and threads")
+    public void order() throws IOException {
+      StringBuilder input = new StringBuilder();
+      StringBuilder expected = new StringBuilder();
+      for (int i = 0; i < 5000; i++) {
+        input.append(i).append(",2017-01-15 14:35\n");
+        expected.append(i).append(",01/15/2017 08:35\n");
+      }
+      // The last record has no line break
+      input.append("last,2017-01-15 14:35");
+      expected.append("last,01/15/2017 08:35");
+      CsvRezoneTool.Stats stats = run(input.toString(), "--columns", "2", "--threads", "4", "--chunk-size", "16");
+      assertEquals(expected.toString(), output);
+      assertEquals(5001, stats.getRows());
+      assertEquals(input.length(), stats.getBytesIn());
+    }
+
+  }
+
+}
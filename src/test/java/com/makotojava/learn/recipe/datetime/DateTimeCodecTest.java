@@ -0,0 +1,201 @@
+/*
+ * Copyright 2017 Makoto Consulting Group, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.makotojava.learn.recipe.datetime;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.platform.runner.JUnitPlatform;
+import org.junit.runner.RunWith;
+
+/**
+ * Unit test for DateTimeCodec.
+ */
+@RunWith(JUnitPlatform.class)
+@DisplayName("Testing DateTimeCodec")
+public class DateTimeCodecTest {
+
+  private static final ZoneId[] ZONES = { ZoneOffset.UTC, ZoneOffset.ofHoursMinutes(-3, -30),
+      ZoneOffset.ofTotalSeconds(3_723), ZoneId.of("America/Chicago"), ZoneId.of("Europe/London"),
+      ZoneId.of("Asia/Kolkata") };
+
+  private DateTimeCodec classUnderTest = new DateTimeCodec(Arrays.asList(ZoneId.of("America/Chicago"),
+      ZoneId.of("Europe/London")));
+
+  private ByteBuffer buffer = ByteBuffer.allocate(1 << 20);
+
+  private Instant randomInstant(Random random) {
+    // Seconds, millis, micros or nanos precision, 1900 to 2100
+    long epochSecond = (long) ((random.nextDouble() * 200 - 70) * 365.25 * 86_400);
+    int[] units = { 1_000_000_000, 1_000_000, 1_000, 1 };
+    int unit = units[random.nextInt(units.length)];
+    return Instant.ofEpochSecond(epochSecond, unit == 1_000_000_000 ? 0 : random.nextInt(1_000_000_000 / unit) * unit);
+  }
+
+  private void flip() {
+    ((Buffer) buffer).flip();
+  }
+
+  @Nested
+  @DisplayName("Single values")
+  public class SingleValues {
+
+    @Test
+    @DisplayName("Instants, LocalDateTimes and ZonedDateTimes round-trip exactly")
+    public void roundTrip() {
+      Random random = new Random(36);
+      Instant[] instants = new Instant[5000];
+      ZonedDateTime[] zonedDateTimes = new ZonedDateTime[instants.length];
+      for (int i = 0; i < instants.length; i++) {
+        instants[i] = randomInstant(random);
+        zonedDateTimes[i] = instants[i].atZone(ZONES[random.nextInt(ZONES.length)]);
+        classUnderTest.writeInstant(buffer, instants[i]);
+        classUnderTest.writeLocalDateTime(buffer, zonedDateTimes[i].toLocalDateTime());
+        classUnderTest.writeZonedDateTime(buffer, zonedDateTimes[i]);
+        classUnderTest.writeEpochMilli(buffer, instants[i].toEpochMilli());
+      }
+      flip();
+      for (int i = 0; i < instants.length; i++) {
+        assertEquals(instants[i], classUnderTest.readInstant(buffer));
+        assertEquals(zonedDateTimes[i].toLocalDateTime(), classUnderTest.readLocalDateTime(buffer));
+        assertEquals(zonedDateTimes[i], classUnderTest.readZonedDateTime(buffer));
+        assertEquals(instants[i].toEpochMilli(), classUnderTest.readEpochMilli(buffer));
+      }
+      assertFalse(buffer.hasRemaining());
+    }
+
+    @Test
+    @DisplayName("Typical values take 4-10 bytes")
+    public void size() {
+      ZonedDateTime zdt = ZonedDateTime.of(2017, 5, 15, 14, 35, 12, 345_000_000, ZoneId.of("America/Chicago"));
+      classUnderTest.writeInstant(buffer, zdt.toInstant());
+      assertEquals(7, buffer.position());
+      ((Buffer) buffer).clear();
+      classUnderTest.writeZonedDateTime(buffer, zdt);
+      assertEquals(8, buffer.position());
+      ((Buffer) buffer).clear();
+      classUnderTest.writeZonedDateTime(buffer, zdt.withZoneSameInstant(ZoneOffset.ofHours(-5)).withNano(0));
+      assertEquals(7, buffer.position());
+      ((Buffer) buffer).clear();
+      new DateTimeCodec().writeZonedDateTime(buffer, zdt);
+      // Tag, length and the ID itself
+      assertEquals(7 + 2 + "America/Chicago".length(), buffer.position());
+    }
+
+    @Test
+    @DisplayName("Malformed input is rejected")
+    public void malformed() {
+      buffer.put(new byte[] { 8, 4 });
+      flip();
+      // Instant 2 seconds then zone tag 4, which is not in a 2-zone dictionary
+      assertThrows(IllegalArgumentException.class, () -> classUnderTest.readZonedDateTime(buffer));
+      ((Buffer) buffer).clear();
+      for (int i = 0; i < 11; i++) {
+        buffer.put((byte) 0xFF);
+      }
+      flip();
+      assertThrows(IllegalArgumentException.class, () -> classUnderTest.readInstant(buffer));
+      assertThrows(IllegalArgumentException.class,
+          () -> new DateTimeCodec(Arrays.asList(ZoneId.of("UTC"), ZoneId.of("UTC"))));
+    }
+
+    @Test
+    @DisplayName("Unknown zone IDs and out of range seconds are rejected as malformed")
+    public void outOfRange() {
+      ((Buffer) buffer).clear();
+      classUnderTest.writeZonedDateTime(buffer, ZonedDateTime.of(2017, 1, 1, 0, 0, 0, 0, ZoneId.of("Europe/Paris")));
+      flip();
+      // Corrupt the inline zone ID into Europe/Xaris
+      buffer.put(buffer.limit() - 5, (byte) 'X');
+      assertThrows(IllegalArgumentException.class, () -> classUnderTest.readZonedDateTime(buffer));
+      ((Buffer) buffer).clear();
+      classUnderTest.writeInstant(buffer, 1L << 59, 0);
+      classUnderTest.writeInstant(buffer, 1L << 59, 0);
+      classUnderTest.writeInstant(buffer, 1L << 59, 0);
+      flip();
+      assertThrows(IllegalArgumentException.class, () -> classUnderTest.readInstant(buffer));
+      assertThrows(IllegalArgumentException.class, () -> classUnderTest.readLocalDateTime(buffer));
+      assertThrows(IllegalArgumentException.class, () -> classUnderTest.readEpochMilli(buffer));
+    }
+
+  }
+
+  @Nested
+  @DisplayName("Bulk values")
+  public class BulkValues {
+
+    @Test
+    @DisplayName("Sorted epoch millis are delta encoded")
+    public void epochMillis() {
+      long[] values = new long[10_000];
+      long time = 1_500_000_000_000L;
+      Random random = new Random(37);
+      for (int i = 0; i < values.length; i++) {
+        time += random.nextInt(5_000) - 100;
+        values[i] = time;
+      }
+      classUnderTest.writeEpochMillis(buffer, values, 0, values.length);
+      int size = buffer.position();
+      flip();
+      assertArrayEquals(values, classUnderTest.readEpochMillis(buffer));
+      // At most two bytes per delta, plus the count and the first value
+      assertTrue(size <= values.length * 2 + 8, "size: " + size);
+    }
+
+    @Test
+    @DisplayName("Instant arrays round-trip")
+    public void instants() {
+      Random random = new Random(38);
+      Instant[] values = new Instant[5000];
+      for (int i = 0; i < values.length; i++) {
+        values[i] = randomInstant(random);
+      }
+      values[0] = Instant.MIN;
+      values[1] = Instant.MAX;
+      classUnderTest.writeInstants(buffer, values);
+      flip();
+      assertArrayEquals(values, classUnderTest.readInstants(buffer));
+    }
+
+    @Test
+    @DisplayName("Extreme LocalDateTimes round-trip")
+    public void extremes() {
+      classUnderTest.writeLocalDateTime(buffer, LocalDateTime.MIN);
+      classUnderTest.writeLocalDateTime(buffer, LocalDateTime.MAX);
+      flip();
+      assertEquals(LocalDateTime.MIN, classUnderTest.readLocalDateTime(buffer));
+      assertEquals(LocalDateTime.MAX, classUnderTest.readLocalDateTime(buffer));
+    }
+
+  }
+
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2017 Makoto Consulting Group, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.makotojava.learn.recipe.datetime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.time.DateTimeException;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.temporal.TemporalAdjusters;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.platform.runner.JUnitPlatform;
+import org.junit.runner.RunWith;
+
+/**
+ * Unit test for DateTimeFlyweights.
+ */
+@RunWith(JUnitPlatform.class)
+@DisplayName("Testing DateTimeFlyweights")
+public class DateTimeFlyweightsTest {
+
+  private DateTimeUtils dateTimeUtils = new DateTimeUtils();
+
+  @Nested
+  @DisplayName("Shared instances")
+  public class SharedInstances {
+
+    @Test
+    @DisplayName("Dates in the hot window are shared")
+    public void hotWindow() {
+      LocalDate date = LocalDate.of(2017, 1, 15);
+      assertSame(DateTimeFlyweights.intern(date), DateTimeFlyweights.intern(LocalDate.of(2017, 1, 15)));
+      assertSame(DateTimeFlyweights.intern(date), DateTimeFlyweights.localDate(date.toEpochDay()));
+      assertSame(DateTimeFlyweights.intern(date), DateTimeFlyweights.localDate(2017, 1, 15));
+      assertSame(dateTimeUtils.computeNDaysAfter(14, LocalDate.of(2017, 1, 1)),
+          dateTimeUtils.computeNDaysAfter(15, LocalDate.of(2016, 12, 31)));
+    }
+
+    @Test
+    @DisplayName("Dates outside the window are shared only with the fallback cache on")
+    public void fallback() {
+      assertNotSame(DateTimeFlyweights.localDate(3000, 1, 1), DateTimeFlyweights.localDate(3000, 1, 1));
+      DateTimeFlyweights.enableFallback(2);
+      try {
+        assertSame(DateTimeFlyweights.localDate(3000, 1, 1), DateTimeFlyweights.localDate(3000, 1, 1));
+        assertSame(DateTimeFlyweights.localDate(1066, 10, 14), DateTimeFlyweights.localDate(1066, 10, 14));
+        // Full
+        assertNotSame(DateTimeFlyweights.localDate(1492, 10, 12), DateTimeFlyweights.localDate(1492, 10, 12));
+      } finally {
+        DateTimeFlyweights.enableFallback(0);
+      }
+    }
+
+    @Test
+    @DisplayName("Values and exceptions are the same as LocalDate's")
+    public void sameAsLocalDate() {
+      for (long epochDay = -800_000; epochDay < 800_000; epochDay += 7) {
+        assertEquals(LocalDate.ofEpochDay(epochDay), DateTimeFlyweights.localDate(epochDay));
+      }
+      assertThrows(DateTimeException.class, () -> DateTimeFlyweights.localDate(2017, 2, 29));
+      assertThrows(DateTimeException.class, () -> DateTimeFlyweights.localDate(2017, 13, 1));
+      assertThrows(DateTimeException.class, () -> DateTimeFlyweights.localDate(Long.MAX_VALUE));
+    }
+
+    @Test
+    @DisplayName("Offsets and zones are shared")
+    public void zones() {
+      assertSame(ZoneOffset.ofHours(-5), DateTimeFlyweights.intern(ZoneOffset.ofHours(-5)));
+      assertSame(DateTimeFlyweights.intern(ZoneId.of("America/Chicago")),
+          DateTimeFlyweights.intern(ZoneId.of("America/Chicago")));
+    }
+
+  }
+
+  @Nested
+  @DisplayName("Calendar methods")
+  public class CalendarMethods {
+
+    @Test
+    @DisplayName("Calendar methods match the TemporalAdjusters results")
+    public void sameAsTemporalAdjusters() {
+      for (int year = 1600; year <= 2400; year += 3) {
+        for (int month = 1; month <= 12; month++) {
+          LocalDate first = LocalDate.of(year, month, 1);
+          for (DayOfWeek dayOfWeek : DayOfWeek.values()) {
+            assertEquals(first.with(TemporalAdjusters.firstInMonth(dayOfWeek)),
+                dateTimeUtils.computeFirstDay(year, month, dayOfWeek));
+            assertEquals(first.with(TemporalAdjusters.lastInMonth(dayOfWeek)),
+                dateTimeUtils.computeLastDay(year, month, dayOfWeek));
+            for (int ordinal = -6; ordinal <= 6; ordinal++) {
+              assertEquals(first.with(TemporalAdjusters.dayOfWeekInMonth(ordinal, dayOfWeek)),
+                  dateTimeUtils.computeNthDayOfWeekIn(year, month, ordinal, dayOfWeek));
+            }
+          }
+        }
+        if (year % 4 == 0) {
+          assertEquals(LocalDate.of(year, 11, 1).with(TemporalAdjusters.firstInMonth(DayOfWeek.MONDAY))
+              .with(TemporalAdjusters.next(DayOfWeek.TUESDAY)), dateTimeUtils.computePresidentialElectionDayUsa(year));
+        }
+      }
+    }
+
+    @Test
+    @DisplayName("Calendar methods fail like before on bad arguments")
+    public void badArguments() {
+      assertThrows(DateTimeException.class, () -> dateTimeUtils.computeFirstDay(2017, 0, DayOfWeek.MONDAY));
+      assertThrows(IllegalArgumentException.class, () -> dateTimeUtils.computeLastDay(2017, 1, null));
+      assertThrows(DateTimeException.class, () -> dateTimeUtils.computeNDaysAfter(Long.MAX_VALUE / 2,
+          LocalDate.of(2017, 1, 1)));
+    }
+
+  }
+
+}
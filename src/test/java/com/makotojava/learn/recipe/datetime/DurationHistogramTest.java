@@ -0,0 +1,155 @@
+/*
+ * Copyright 2017 Makoto Consulting Group, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.makotojava.learn.recipe.datetime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.platform.runner.JUnitPlatform;
+import org.junit.runner.RunWith;
+
+/**
+ * Unit test for DurationHistogram and DurationStatistics.
+ */
+@RunWith(JUnitPlatform.class)
+@DisplayName("Testing DurationHistogram")
+public class DurationHistogramTest {
+
+  private static final double[] QUANTILES = { 0, 0.01, 0.25, 0.5, 0.9, 0.99, 0.999, 1 };
+
+  // Log-normal-ish latencies from tens of nanoseconds to tens of seconds
+  private static long[] randomDurations(long seed, int n) {
+    Random random = new Random(seed);
+    long[] ret = new long[n];
+    for (int i = 0; i < n; i++) {
+      ret[i] = (long) Math.exp(random.nextGaussian() * 3 + 13);
+    }
+    return ret;
+  }
+
+  private static long exactQuantile(long[] sorted, double quantile) {
+    int rank = Math.max(1, (int) Math.ceil(quantile * sorted.length));
+    return sorted[rank - 1];
+  }
+
+  private static void assertClose(long expected, long actual, String message) {
+    assertTrue(Math.abs(expected - actual) <= expected / 256 + 1, message + ": expected " + expected + " but was "
+        + actual);
+  }
+
+  @Nested
+  @DisplayName("Recording")
+  public class Recording {
+
+    @Test
+    @DisplayName("Quantiles are within 1/256 of the exact values, min/max/count/mean are exact")
+    public void accuracy() {
+      long[] values = randomDurations(33, 100_000);
+      DurationHistogram classUnderTest = new DurationHistogram();
+      for (long value : values) {
+        classUnderTest.recordNanos(value);
+      }
+      long[] sorted = values.clone();
+      Arrays.sort(sorted);
+      for (double quantile : QUANTILES) {
+        assertClose(exactQuantile(sorted, quantile), classUnderTest.quantileNanos(quantile), "p" + quantile);
+      }
+      assertEquals(values.length, classUnderTest.getCount());
+      assertEquals(sorted[0], classUnderTest.getMinNanos());
+      assertEquals(sorted[sorted.length - 1], classUnderTest.getMaxNanos());
+      double mean = Arrays.stream(values).average().getAsDouble();
+      assertEquals(mean, classUnderTest.getMeanNanos(), mean * 1e-9);
+    }
+
+    @Test
+    @DisplayName("Small values are exact and the full long range is accepted")
+    public void range() {
+      DurationHistogram classUnderTest = new DurationHistogram();
+      for (long value = 0; value < 128; value++) {
+        classUnderTest.recordNanos(value);
+      }
+      assertEquals(63, classUnderTest.quantileNanos(0.5));
+      classUnderTest.recordNanos(Long.MAX_VALUE);
+      assertEquals(Long.MAX_VALUE, classUnderTest.quantileNanos(1));
+    }
+
+    @Test
+    @DisplayName("Intervals are recorded from epoch values, and negative intervals are rejected")
+    public void intervals() {
+      DurationHistogram classUnderTest = new DurationHistogram();
+      classUnderTest.recordBetweenMillis(1_000, 1_250);
+      classUnderTest.recordBetween(Instant.ofEpochSecond(10, 5), Instant.ofEpochSecond(10, 105));
+      assertEquals(100, classUnderTest.getMinNanos());
+      assertEquals(250_000_000L, classUnderTest.getMaxNanos());
+      assertThrows(IllegalArgumentException.class, () -> classUnderTest.recordBetweenMillis(1_250, 1_000));
+      assertThrows(IllegalArgumentException.class, () -> classUnderTest.quantileNanos(1.5));
+    }
+
+  }
+
+  @Nested
+  @DisplayName("Merging")
+  public class Merging {
+
+    @Test
+    @DisplayName("Merged per-thread histograms equal a single histogram")
+    public void merge() {
+      long[] values = randomDurations(34, 50_000);
+      DurationHistogram single = new DurationHistogram();
+      for (long value : values) {
+        single.recordNanos(value);
+      }
+      DurationHistogram parallel = Arrays.stream(values).boxed().parallel()
+          .collect(DurationHistogram.collector(Long::longValue));
+      for (double quantile : QUANTILES) {
+        assertEquals(single.quantileNanos(quantile), parallel.quantileNanos(quantile));
+      }
+      assertEquals(single.getCount(), parallel.getCount());
+      assertEquals(single.getMinNanos(), parallel.getMinNanos());
+      assertEquals(single.getMaxNanos(), parallel.getMaxNanos());
+    }
+
+    @Test
+    @DisplayName("Statistics are kept per key and merged per key")
+    public void perKey() {
+      DurationStatistics<String> classUnderTest = IntStream.range(0, 10_000).boxed().parallel()
+          .collect(DurationStatistics.collector(i -> i % 2 == 0 ? "even" : "odd", i -> (long) i));
+      assertEquals(5_000, classUnderTest.get("even").getCount());
+      assertEquals(9_999, classUnderTest.get("odd").getMaxNanos());
+      assertNull(classUnderTest.get("none"));
+
+      DurationStatistics<String> other = new DurationStatistics<>();
+      other.recordBetweenMillis("odd", 0, 1);
+      other.recordBetweenMillis("other", 0, 2);
+      classUnderTest.merge(other);
+      assertEquals(5_001, classUnderTest.get("odd").getCount());
+      assertEquals(1_000_000, classUnderTest.get("odd").getMaxNanos());
+      assertEquals(3, classUnderTest.keys().size());
+    }
+
+  }
+
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright 2017 Makoto Consulting Group, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.makotojava.learn.recipe.datetime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+import java.time.temporal.UnsupportedTemporalTypeException;
+import java.util.Date;
+import java.util.Random;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.platform.runner.JUnitPlatform;
+import org.junit.runner.RunWith;
+
+/**
+ * Unit test for Durations.
+ */
+@RunWith(JUnitPlatform.class)
+@DisplayName("Testing Durations")
+public class DurationsTest {
+
+  private static final ChronoUnit[] TRUNCATION_UNITS = { ChronoUnit.NANOS, ChronoUnit.MICROS, ChronoUnit.MILLIS,
+      ChronoUnit.SECONDS, ChronoUnit.MINUTES, ChronoUnit.HOURS, ChronoUnit.HALF_DAYS, ChronoUnit.DAYS };
+
+  private DateTimeUtils dateTimeUtils = new DateTimeUtils();
+
+  /**
+   * Duration.truncatedTo(unit) as Java 9 defines it, on Java 8 API: the
+   * nano-of-day of the floor seconds plus nano adjustment is truncated
+   * toward zero.
+   */
+  private static Duration truncatedTo(Duration duration, ChronoUnit unit) {
+    long unitNanos = unit.getDuration().toNanos();
+    long nanoOfDay = (duration.getSeconds() % 86_400) * 1_000_000_000L + duration.getNano();
+    return duration.plusNanos(nanoOfDay / unitNanos * unitNanos - nanoOfDay);
+  }
+
+  // Random nanos within +/-140 years (so sums still fit), biased toward small values and exact units
+  private long randomNanos(Random random) {
+    switch (random.nextInt(3)) {
+    case 0:
+      return random.nextLong() % (140L * 365 * Durations.NANOS_PER_DAY);
+    case 1:
+      return random.nextInt() * 1_000L;
+    default:
+      return (random.nextInt(2000) - 1000) * Durations.NANOS_PER_SECOND / 2;
+    }
+  }
+
+  @Nested
+  @DisplayName("Intervals")
+  public class Intervals {
+
+    @Test
+    @DisplayName("Intervals match the DateTimeUtils toDuration overloads")
+    public void sameAsToDuration() {
+      Random random = new Random(32);
+      ZoneId zone = ZoneId.of("America/Chicago");
+      for (int i = 0; i < 5000; i++) {
+        Instant from = Instant.ofEpochSecond(random.nextInt(), random.nextInt(1_000_000_000));
+        Instant to = from.plusNanos(randomNanos(random));
+        assertEquals(dateTimeUtils.toDuration(from, to).toNanos(), Durations.between(from, to));
+        LocalDateTime fromLdt = LocalDateTime.ofInstant(from, zone);
+        LocalDateTime toLdt = LocalDateTime.ofInstant(to, zone);
+        assertEquals(dateTimeUtils.toDuration(fromLdt, toLdt).toNanos(), Durations.between(fromLdt, toLdt));
+        ZonedDateTime fromZdt = ZonedDateTime.ofInstant(from, zone);
+        ZonedDateTime toZdt = ZonedDateTime.ofInstant(to, zone);
+        assertEquals(dateTimeUtils.toDuration(fromZdt, toZdt).toNanos(), Durations.between(fromZdt, toZdt));
+        Date fromDate = Date.from(from);
+        Date toDate = Date.from(to);
+        assertEquals(dateTimeUtils.toDuration(fromDate, toDate).toNanos(), Durations.between(fromDate, toDate));
+        assertEquals(dateTimeUtils.toDuration(fromDate.getTime(), toDate.getTime()).toNanos(),
+            dateTimeUtils.toDurationNanos(fromDate.getTime(), toDate.getTime()));
+      }
+    }
+
+    @Test
+    @DisplayName("Intervals too long for a long of nanoseconds throw ArithmeticException")
+    public void overflow() {
+      assertThrows(ArithmeticException.class, () -> Durations.betweenMillis(0, Long.MAX_VALUE / 1000));
+      assertThrows(ArithmeticException.class, () -> Durations.between(Instant.MIN, Instant.MAX));
+      assertThrows(ArithmeticException.class, () -> Durations.add(Long.MAX_VALUE, 1));
+      assertThrows(ArithmeticException.class, () -> Durations.subtract(Long.MIN_VALUE, 1));
+    }
+
+  }
+
+  @Nested
+  @DisplayName("Arithmetic")
+  public class Arithmetic {
+
+    @Test
+    @DisplayName("Add, subtract and compare match Duration")
+    public void sameAsDuration() {
+      Random random = new Random(33);
+      for (int i = 0; i < 5000; i++) {
+        long a = randomNanos(random);
+        long b = randomNanos(random);
+        Duration da = Duration.ofNanos(a);
+        Duration db = Duration.ofNanos(b);
+        assertEquals(da.plus(db).toNanos(), Durations.add(a, b));
+        assertEquals(da.minus(db).toNanos(), Durations.subtract(a, b));
+        assertEquals(Integer.signum(da.compareTo(db)), Integer.signum(Durations.compare(a, b)));
+      }
+    }
+
+    @Test
+    @DisplayName("Truncation and unit conversion match Duration")
+    public void truncationAndConversion() {
+      Random random = new Random(34);
+      for (int i = 0; i < 5000; i++) {
+        long nanos = randomNanos(random);
+        Duration duration = Duration.ofNanos(nanos);
+        for (ChronoUnit unit : TRUNCATION_UNITS) {
+          assertEquals(truncatedTo(duration, unit).toNanos(), Durations.truncatedTo(nanos, unit), nanos + " " + unit);
+        }
+        assertEquals(duration.getSeconds(), Durations.getSeconds(nanos));
+        assertEquals(duration.getNano(), Durations.getNano(nanos));
+        // Truncated toward zero, whatever the runtime's Duration.toMillis() does
+        assertEquals(duration.isNegative() ? -duration.negated().toMillis() : duration.toMillis(),
+            Durations.toMillis(nanos), Long.toString(nanos));
+        assertEquals(duration.toMinutes(), Durations.toMinutes(nanos));
+        assertEquals(duration.toHours(), Durations.toHours(nanos));
+        assertEquals(duration.toDays(), Durations.toDays(nanos));
+        assertEquals(duration, Durations.toDuration(nanos));
+      }
+    }
+
+    @Test
+    @DisplayName("Units match Duration.of, and unsupported units are rejected")
+    public void units() {
+      for (ChronoUnit unit : TRUNCATION_UNITS) {
+        assertEquals(Duration.of(-7, unit).toNanos(), Durations.of(-7, unit));
+      }
+      assertThrows(UnsupportedTemporalTypeException.class, () -> Durations.of(1, ChronoUnit.MONTHS));
+      assertThrows(UnsupportedTemporalTypeException.class, () -> Durations.truncatedTo(1, ChronoUnit.WEEKS));
+    }
+
+  }
+
+}
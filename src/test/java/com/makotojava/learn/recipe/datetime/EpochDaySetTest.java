@@ -0,0 +1,201 @@
+/*
+ * Copyright 2017 Makoto Consulting Group, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.makotojava.learn.recipe.datetime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.platform.runner.JUnitPlatform;
+import org.junit.runner.RunWith;
+
+/**
+ * Unit test for EpochDaySet.
+ */
+@RunWith(JUnitPlatform.class)
+@DisplayName("Testing EpochDaySet")
+public class EpochDaySetTest {
+
+  private static final LocalDate DATE_20000101 = LocalDate.of(2000, 1, 1);
+
+  private static final LocalDate DATE_20300101 = LocalDate.of(2030, 1, 1);
+
+  private DateTimeUtils dateTimeUtils = new DateTimeUtils();
+
+  // Builds the reference Set<LocalDate> the way callers do today
+  private Set<LocalDate> weekdaysBetween(LocalDate from, LocalDate to, DayOfWeek... days) {
+    Set<LocalDate> ret = new TreeSet<>();
+    Set<DayOfWeek> wanted = new HashSet<>(Arrays.asList(days));
+    for (long n = 0; n < to.toEpochDay() - from.toEpochDay(); n++) {
+      LocalDate date = dateTimeUtils.computeNDaysAfter(n, from);
+      if (wanted.contains(date.getDayOfWeek())) {
+        ret.add(date);
+      }
+    }
+    return ret;
+  }
+
+  @Nested
+  @DisplayName("Membership")
+  public class Membership {
+
+    @Test
+    @DisplayName("Added dates are members, others are not")
+    public void addAndContains() {
+      EpochDaySet classUnderTest = new EpochDaySet();
+      assertTrue(classUnderTest.add(DATE_20000101));
+      assertFalse(classUnderTest.add(DATE_20000101));
+      assertTrue(classUnderTest.contains(DATE_20000101));
+      assertFalse(classUnderTest.contains(DATE_20000101.plusDays(1)));
+      assertEquals(1, classUnderTest.cardinality());
+    }
+
+    @Test
+    @DisplayName("Dates before the epoch sort before dates after it")
+    public void negativeEpochDays() {
+      LocalDate before = LocalDate.of(1969, 12, 31);
+      EpochDaySet classUnderTest = EpochDaySet.of(Arrays.asList(DATE_20000101, before));
+      assertEquals(Arrays.asList(before, DATE_20000101), classUnderTest.toLocalDates());
+    }
+
+    @Test
+    @DisplayName("Removing the last member empties the set")
+    public void remove() {
+      EpochDaySet classUnderTest = EpochDaySet.of(Arrays.asList(DATE_20000101));
+      assertTrue(classUnderTest.remove(DATE_20000101));
+      assertFalse(classUnderTest.remove(DATE_20000101));
+      assertTrue(classUnderTest.isEmpty());
+    }
+
+    @Test
+    @DisplayName("Epoch-days outside the int range are rejected")
+    public void outOfRange() {
+      assertThrows(IllegalArgumentException.class, () -> new EpochDaySet().add(LocalDate.MAX));
+      assertFalse(new EpochDaySet().contains(LocalDate.MAX));
+    }
+
+    @Test
+    @DisplayName("A 30 year range converts back to the same dates")
+    public void rangeRoundTrip() {
+      EpochDaySet classUnderTest = EpochDaySet.range(DATE_20000101, DATE_20300101);
+      assertEquals(DATE_20300101.toEpochDay() - DATE_20000101.toEpochDay(), classUnderTest.cardinality());
+      assertEquals(classUnderTest, EpochDaySet.of(classUnderTest.toLocalDates()));
+    }
+
+  }
+
+  @Nested
+  @DisplayName("Set algebra")
+  public class Algebra {
+
+    private Set<LocalDate> mondaysAndFridays = weekdaysBetween(DATE_20000101, DATE_20300101, DayOfWeek.MONDAY,
+        DayOfWeek.FRIDAY);
+    private Set<LocalDate> fridaysAndSaturdays = weekdaysBetween(LocalDate.of(2010, 6, 1), DATE_20300101,
+        DayOfWeek.FRIDAY, DayOfWeek.SATURDAY);
+
+    private EpochDaySet left = EpochDaySet.of(mondaysAndFridays);
+    private EpochDaySet right = EpochDaySet.of(fridaysAndSaturdays);
+
+    @Test
+    @DisplayName("Union matches Set.addAll")
+    public void union() {
+      Set<LocalDate> expected = new TreeSet<>(mondaysAndFridays);
+      expected.addAll(fridaysAndSaturdays);
+      assertEquals(expected.size(), left.union(right).cardinality());
+      assertEquals(EpochDaySet.of(expected), left.union(right));
+    }
+
+    @Test
+    @DisplayName("Intersection matches Set.retainAll")
+    public void intersection() {
+      Set<LocalDate> expected = new TreeSet<>(mondaysAndFridays);
+      expected.retainAll(fridaysAndSaturdays);
+      assertEquals(EpochDaySet.of(expected), left.intersection(right));
+    }
+
+    @Test
+    @DisplayName("Difference matches Set.removeAll")
+    public void difference() {
+      Set<LocalDate> expected = new TreeSet<>(mondaysAndFridays);
+      expected.removeAll(fridaysAndSaturdays);
+      assertEquals(EpochDaySet.of(expected), left.difference(right));
+    }
+
+    @Test
+    @DisplayName("Dense and sparse containers combine correctly")
+    public void denseAndSparse() {
+      EpochDaySet dense = EpochDaySet.range(DATE_20000101, DATE_20300101);
+      assertEquals(left, dense.intersection(left));
+      assertEquals(left, left.intersection(dense));
+      assertEquals(dense.cardinality() - left.cardinality(), dense.difference(left).cardinality());
+      assertTrue(left.difference(dense).isEmpty());
+      assertEquals(dense, dense.union(left));
+    }
+
+    @Test
+    @DisplayName("Operands are left unchanged")
+    public void operandsUnchanged() {
+      long leftCardinality = left.cardinality();
+      long rightCardinality = right.cardinality();
+      left.union(right);
+      left.intersection(right);
+      left.difference(right);
+      assertEquals(leftCardinality, left.cardinality());
+      assertEquals(rightCardinality, right.cardinality());
+    }
+
+  }
+
+  @Nested
+  @DisplayName("Navigation")
+  public class Navigation {
+
+    @Test
+    @DisplayName("The next member after 1/1/2018 in a set of U.S. election days is 11/3/2020")
+    public void nextAfter() {
+      EpochDaySet classUnderTest = new EpochDaySet();
+      for (int year = 2000; year <= 2040; year += 4) {
+        classUnderTest.add(dateTimeUtils.computePresidentialElectionDayUsa(year));
+      }
+      assertEquals(LocalDate.of(2020, 11, 3), classUnderTest.nextAfter(LocalDate.of(2018, 1, 1)));
+      assertEquals(LocalDate.of(2024, 11, 5), classUnderTest.nextAfter(LocalDate.of(2020, 11, 3)));
+      assertNull(classUnderTest.nextAfter(LocalDate.of(2040, 11, 6)));
+    }
+
+    @Test
+    @DisplayName("The next member crosses container boundaries")
+    public void nextAfterAcrossContainers() {
+      LocalDate far = DATE_20000101.plusDays(200_000);
+      EpochDaySet classUnderTest = EpochDaySet.of(Arrays.asList(DATE_20000101, far));
+      assertEquals(far, classUnderTest.nextAfter(DATE_20000101));
+      assertEquals(DATE_20000101, classUnderTest.nextAfter(LocalDate.MIN));
+    }
+
+  }
+
+}
@@ -0,0 +1,213 @@
+/*
+ * Copyright 2017 Makoto Consulting Group, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.makotojava.learn.recipe.datetime;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.DateTimeException;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.function.ToLongFunction;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.platform.runner.JUnitPlatform;
+import org.junit.runner.RunWith;
+
+/**
+ * Unit test for ExternalTimestampSort.
+ */
+@RunWith(JUnitPlatform.class)
+@DisplayName("Testing ExternalTimestampSort")
+public class ExternalTimestampSortTest {
+
+  private static final String PATTERN = "yyyy-MM-dd HH:mm:ss.SSSXXX";
+
+  private static final ToLongFunction<CharSequence> KEY = ExternalTimestampSort.fieldKey(1, ',', PATTERN, null);
+
+  private Path tempDirectory;
+
+  @BeforeEach
+  public void createTempDirectory() throws IOException {
+    tempDirectory = Files.createTempDirectory("external-sort-test");
+  }
+
+  @AfterEach
+  public void deleteTempDirectory() throws IOException {
+    try (Stream<Path> files = Files.list(tempDirectory)) {
+      // Every run file is deleted by the sort itself
+      assertEquals(0, files.count());
+    }
+    Files.delete(tempDirectory);
+  }
+
+  /**
+   * Lines of an id and a timestamp in one of a few offsets, with many
+   * duplicate timestamps.
+   */
+  private static List<String> lines(int count, long seed) {
+    Random random = new Random(seed);
+    DateTimeFormatter formatter = DateTimeFormatter.ofPattern(PATTERN);
+    ZonedDateTime base = ZonedDateTime.of(2017, 1, 1, 0, 0, 0, 0, ZoneOffset.UTC);
+    List<String> ret = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      ZonedDateTime zdt = base.plusSeconds(random.nextInt(100_000))
+          .withZoneSameInstant(ZoneOffset.ofHours(random.nextInt(5) - 2));
+      ret.add("event-" + i + "," + formatter.format(zdt) + ",payload");
+    }
+    return ret;
+  }
+
+  private String sort(ExternalTimestampSort sorter, String input, ExternalTimestampSort.Stats[] stats)
+      throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    stats[0] = sorter.sort(Channels.newChannel(new ByteArrayInputStream(
+        input.getBytes(StandardCharsets.UTF_8))), Channels.newChannel(out));
+    return new String(out.toByteArray(), StandardCharsets.UTF_8);
+  }
+
+  /** The lines sorted in memory, stably */
+  private static String expected(List<String> lines) {
+    return lines.stream().sorted(Comparator.comparingLong(line -> {
+      try {
+        return KEY.applyAsLong(line);
+      } catch (DateTimeException e) {
+        return ExternalTimestampSort.ERROR_KEY;
+      }
+    })).map(line -> line + "\n").collect(Collectors.joining());
+  }
+
+  @Nested
+  @DisplayName("Sorting")
+  public class Sorting {
+
+    @Test
+    @DisplayName("Many spilled runs merge in several passes to the stable in-memory order")
+    public void spilled() throws IOException {
+      List<String> lines = lines(20_000, 42);
+      String input = lines.stream().map(line -> line + "\n").collect(Collectors.joining());
+      ExternalTimestampSort.Stats[] stats = new ExternalTimestampSort.Stats[1];
+      String output = sort(new ExternalTimestampSort(KEY, 4096, 4, tempDirectory), input, stats);
+      assertEquals(expected(lines), output);
+      assertEquals(20_000, stats[0].getRecords());
+      assertEquals(0, stats[0].getErrors());
+      assertTrue(stats[0].getRuns() > ExternalTimestampSort.MAX_FAN_IN, "runs: " + stats[0].getRuns());
+      assertEquals(2, stats[0].getMergePasses());
+      assertEquals(input.length(), stats[0].getBytesIn());
+      assertEquals(input.length(), stats[0].getBytesOut());
+    }
+
+    @Test
+    @DisplayName("An input that fits in one run is sorted without spilling")
+    public void inMemory() throws IOException {
+      List<String> lines = lines(1000, 7);
+      String input = lines.stream().collect(Collectors.joining("\n"));
+      ExternalTimestampSort.Stats[] stats = new ExternalTimestampSort.Stats[1];
+      String output = sort(new ExternalTimestampSort(KEY, 1 << 20, 2, tempDirectory), input, stats);
+      // The last line gets its line feed
+      assertEquals(expected(lines), output);
+      assertEquals(1, stats[0].getRuns());
+      assertEquals(0, stats[0].getMergePasses());
+      assertEquals("", sort(new ExternalTimestampSort(KEY, 16, 2, tempDirectory), "", stats));
+      assertEquals(0, stats[0].getRecords());
+    }
+
+    @Test
+    @DisplayName("Bad lines sort first, and lines longer than a run are kept whole")
+    public void badAndLongLines() throws IOException {
+      List<String> lines = lines(500, 3);
+      lines.add(100, "no timestamp here");
+      lines.add(200, "event,2017-13-45 99:99:99.999Z,payload");
+      StringBuilder longLine = new StringBuilder("event-long,2017-01-01 12:00:00.000Z,");
+      for (int i = 0; i < 10_000; i++) {
+        longLine.append('x');
+      }
+      lines.add(300, longLine.toString());
+      String input = lines.stream().map(line -> line + "\r\n").collect(Collectors.joining());
+      ExternalTimestampSort.Stats[] stats = new ExternalTimestampSort.Stats[1];
+      String output = sort(new ExternalTimestampSort(KEY, 2048, 3, tempDirectory), input, stats);
+      assertEquals(expected(lines).replace("\n", "\r\n"), output);
+      assertTrue(output.startsWith("no timestamp here\r\nevent,2017-13-45"));
+      assertEquals(2, stats[0].getErrors());
+    }
+
+    @Test
+    @DisplayName("Primitive keys sort stably along with their line pointers")
+    public void sortByKey() {
+      Random random = new Random(11);
+      for (int n : new int[] { 0, 1, 31, 32, 33, 1000, 4097 }) {
+        long[] keys = new long[n];
+        int[] order = new int[n];
+        for (int i = 0; i < n; i++) {
+          keys[i] = random.nextInt(50) - 25;
+          order[i] = i;
+        }
+        long[] originalKeys = keys.clone();
+        int[] expected = IntStream.range(0, n).boxed()
+            .sorted(Comparator.comparingLong(i -> originalKeys[i])).mapToInt(Integer::intValue).toArray();
+        ExternalTimestampSort.sortByKey(keys, order);
+        assertArrayEquals(expected, order);
+        for (int i = 0; i < n; i++) {
+          assertEquals(originalKeys[order[i]], keys[i]);
+        }
+      }
+    }
+
+  }
+
+  @Nested
+  @DisplayName("Keys")
+  public class Keys {
+
+    @Test
+    @DisplayName("Field keys parse quoted fields, local patterns in a zone, and reject missing fields")
+    public void fieldKeys() {
+      long expected = ZonedDateTime.of(2017, 7, 4, 12, 30, 0, 0, ZoneId.of("America/Chicago")).toInstant()
+          .toEpochMilli();
+      ToLongFunction<CharSequence> local = ExternalTimestampSort.fieldKey(0, '\t', "yyyy-MM-dd HH:mm",
+          ZoneId.of("America/Chicago"));
+      assertEquals(expected, local.applyAsLong("2017-07-04 12:30\tx"));
+      assertEquals(expected, KEY.applyAsLong("\"a,b\",\"2017-07-04 12:30:00.000-05:00\""));
+      assertThrows(DateTimeException.class, () -> KEY.applyAsLong("only one field"));
+      assertThrows(IllegalArgumentException.class, () -> new ExternalTimestampSort(KEY, 0, 1, null));
+      assertThrows(IllegalArgumentException.class, () -> new ExternalTimestampSort(null));
+    }
+
+  }
+
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright 2017 Makoto Consulting Group, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.makotojava.learn.recipe.datetime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.Month;
+import java.time.MonthDay;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.platform.runner.JUnitPlatform;
+import org.junit.runner.RunWith;
+
+import com.makotojava.learn.recipe.datetime.FiscalCalendar.FiscalDate;
+import com.makotojava.learn.recipe.datetime.FiscalCalendar.Pattern;
+import com.makotojava.learn.recipe.datetime.FiscalCalendar.YearEnd;
+
+/**
+ * Unit test for FiscalCalendar.
+ */
+@RunWith(JUnitPlatform.class)
+@DisplayName("Testing FiscalCalendar")
+public class FiscalCalendarTest {
+
+  /** The National Retail Federation 4-5-4 calendar */
+  private static final FiscalCalendar RETAIL = new FiscalCalendar(
+      YearEnd.nearest(MonthDay.of(Month.JANUARY, 31), DayOfWeek.SATURDAY).namedByStartYear(), Pattern.FOUR_FIVE_FOUR,
+      2000, 2040);
+
+  @Nested
+  @DisplayName("Boundaries")
+  public class Boundaries {
+
+    @Test
+    @DisplayName("The retail calendar has its published 52 and 53 week years")
+    public void retail() {
+      assertEquals(LocalDate.of(2016, 1, 31), RETAIL.getYearStart(2016));
+      assertEquals(LocalDate.of(2017, 1, 28), RETAIL.getYearEnd(2016));
+      assertEquals(52, RETAIL.getWeeksInYear(2016));
+      assertEquals(LocalDate.of(2017, 1, 29), RETAIL.getYearStart(2017));
+      assertEquals(LocalDate.of(2018, 2, 3), RETAIL.getYearEnd(2017));
+      assertEquals(53, RETAIL.getWeeksInYear(2017));
+      assertEquals(LocalDate.of(2017, 2, 26), RETAIL.getPeriodStart(2017, 2));
+      assertEquals(LocalDate.of(2017, 4, 29), RETAIL.getPeriodEnd(2017, 3));
+      assertEquals(LocalDate.of(2017, 4, 30), RETAIL.getQuarterStart(2017, 2));
+      // The 53rd week goes to the last period
+      assertEquals(LocalDate.of(2017, 12, 31), RETAIL.getPeriodStart(2017, 12));
+      assertEquals(LocalDate.of(2018, 2, 3), RETAIL.getPeriodEnd(2017, 12));
+      assertEquals(LocalDate.of(2018, 1, 28), RETAIL.getWeekStart(2017, 53));
+      assertEquals("FY2017-Q4-P12-W49", RETAIL.of(LocalDate.of(2017, 12, 31)).toString());
+      assertEquals("FY2017-Q4-P12-W53", RETAIL.of(LocalDate.of(2018, 2, 3)).toString());
+      assertEquals("FY2018-Q1-P01-W01", RETAIL.of(LocalDate.of(2018, 2, 4)).toString());
+    }
+
+    @Test
+    @DisplayName("Every day maps like a day-by-day walk from computeLastDay year ends")
+    public void dayWalk() {
+      DateTimeUtils dateTimeUtils = new DateTimeUtils();
+      for (Pattern pattern : Pattern.values()) {
+        FiscalCalendar calendar = new FiscalCalendar(YearEnd.lastInMonth(Month.SEPTEMBER, DayOfWeek.SATURDAY),
+            pattern, 1950, 2060);
+        long start = dateTimeUtils.computeLastDay(1949, 9, DayOfWeek.SATURDAY).toEpochDay() + 1;
+        long[] days = new long[(int) (dateTimeUtils.computeLastDay(2060, 9, DayOfWeek.SATURDAY).toEpochDay() + 1
+            - start)];
+        FiscalDate[] expected = new FiscalDate[days.length];
+        int n = 0;
+        for (int year = 1950; year <= 2060; year++) {
+          long end = dateTimeUtils.computeLastDay(year, 9, DayOfWeek.SATURDAY).toEpochDay();
+          int weeksInYear = (int) (end - start + 1) / 7;
+          assertEquals(weeksInYear, calendar.getWeeksInYear(year));
+          int period = 1;
+          int weeksLeftInPeriod = pattern.weeksIn(1);
+          for (int week = 1; week <= weeksInYear; week++) {
+            if (weeksLeftInPeriod == 0 && period < 12) {
+              period++;
+              weeksLeftInPeriod = pattern.weeksIn(period);
+            }
+            weeksLeftInPeriod--;
+            for (int day = 0; day < 7; day++) {
+              days[n] = start + (week - 1) * 7 + day;
+              expected[n] = calendar.ofEpochDay(days[n]);
+              n++;
+              assertEquals(year, expected[n - 1].getYear());
+              assertEquals(period, expected[n - 1].getPeriod());
+              assertEquals(week, expected[n - 1].getWeek());
+            }
+          }
+          start = end + 1;
+        }
+        int[] years = new int[days.length];
+        int[] periods = new int[days.length];
+        int[] weeks = new int[days.length];
+        calendar.tagEpochDays(days, years, periods, weeks);
+        for (int i = 0; i < days.length; i++) {
+          assertEquals(expected[i].getYear(), years[i]);
+          assertEquals(expected[i].getPeriod(), periods[i]);
+          assertEquals(expected[i].getWeek(), weeks[i]);
+        }
+      }
+    }
+
+  }
+
+  @Nested
+  @DisplayName("Tagging")
+  public class Tagging {
+
+    @Test
+    @DisplayName("Epoch millis are tagged on the business day of their time zone")
+    public void epochMillis() {
+      ZoneId chicago = ZoneId.of("America/Chicago");
+      // Saturday evening in Chicago is already Sunday, the new fiscal year, in UTC
+      long lastEvening = LocalDateTime.of(2018, 2, 3, 21, 0).atZone(chicago).toInstant().toEpochMilli();
+      long[] millis = { lastEvening, lastEvening + 6 * 3_600_000L };
+      int[] years = new int[2];
+      int[] periods = new int[2];
+      RETAIL.tagEpochMillis(millis, chicago, years, periods, null);
+      assertEquals(2017, years[0]);
+      assertEquals(12, periods[0]);
+      assertEquals(2018, years[1]);
+      assertEquals(1, periods[1]);
+      assertEquals(2018, RETAIL.ofEpochMilli(lastEvening, ZoneOffset.UTC).getYear());
+      assertEquals(RETAIL.of(LocalDate.of(2018, 2, 3)), RETAIL.ofEpochMilli(lastEvening, chicago));
+    }
+
+    @Test
+    @DisplayName("Days outside the precomputed years and bad arguments are rejected")
+    public void outOfRange() {
+      assertThrows(IllegalArgumentException.class, () -> RETAIL.of(LocalDate.of(1999, 6, 1)));
+      assertThrows(IllegalArgumentException.class, () -> RETAIL.of(LocalDate.of(2042, 6, 1)));
+      assertThrows(IllegalArgumentException.class, () -> RETAIL.getYearStart(2041));
+      assertThrows(IllegalArgumentException.class, () -> RETAIL.getPeriodStart(2017, 13));
+      assertThrows(IllegalArgumentException.class, () -> RETAIL.getWeekStart(2016, 53));
+      assertThrows(IllegalArgumentException.class,
+          () -> RETAIL.tagEpochDays(new long[] { 17_000, 17_001 }, new int[1], null, null));
+      assertThrows(IllegalArgumentException.class, () -> new FiscalCalendar(null, Pattern.FOUR_FOUR_FIVE, 2000, 2001));
+      assertThrows(IllegalArgumentException.class,
+          () -> new FiscalCalendar(YearEnd.lastInMonth(Month.MAY, DayOfWeek.FRIDAY), Pattern.FOUR_FOUR_FIVE, 2001, 2000));
+    }
+
+  }
+
+}
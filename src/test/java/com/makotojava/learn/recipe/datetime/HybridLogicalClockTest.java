@@ -0,0 +1,171 @@
+/*
+ * Copyright 2017 Makoto Consulting Group, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.makotojava.learn.recipe.datetime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.platform.runner.JUnitPlatform;
+import org.junit.runner.RunWith;
+
+/**
+ * Unit test for HybridLogicalClock.
+ */
+@RunWith(JUnitPlatform.class)
+@DisplayName("Testing HybridLogicalClock")
+public class HybridLogicalClockTest {
+
+  private static final long MILLIS_20170115_1435UTC =
+      LocalDateTime.of(2017, 1, 15, 14, 35).toInstant(ZoneOffset.UTC).toEpochMilli();
+
+  private CachedClock.Manual wallClock;
+
+  private HybridLogicalClock classUnderTest;
+
+  @BeforeEach
+  void setUp() {
+    wallClock = CachedClock.manual(MILLIS_20170115_1435UTC);
+    classUnderTest = new HybridLogicalClock(wallClock, 1000);
+  }
+
+  @Nested
+  @DisplayName("Local events")
+  public class LocalEvents {
+
+    @Test
+    @DisplayName("The first timestamp is the wall clock with a zero counter")
+    public void first() {
+      long timestamp = classUnderTest.now();
+      assertEquals(MILLIS_20170115_1435UTC, HybridLogicalClock.physicalMillis(timestamp));
+      assertEquals(0, HybridLogicalClock.logicalCounter(timestamp));
+    }
+
+    @Test
+    @DisplayName("Timestamps within the same millisecond increment the counter")
+    public void sameMillisecond() {
+      classUnderTest.now();
+      long timestamp = classUnderTest.now();
+      assertEquals(MILLIS_20170115_1435UTC, HybridLogicalClock.physicalMillis(timestamp));
+      assertEquals(1, HybridLogicalClock.logicalCounter(timestamp));
+    }
+
+    @Test
+    @DisplayName("Timestamps keep increasing when the wall clock steps backwards")
+    public void wallClockStepsBack() {
+      long before = classUnderTest.now();
+      wallClock.setMillis(MILLIS_20170115_1435UTC - 60_000);
+      long after = classUnderTest.now();
+      assertTrue(after > before);
+      assertEquals(MILLIS_20170115_1435UTC, HybridLogicalClock.physicalMillis(after));
+    }
+
+    @Test
+    @DisplayName("Timestamps are unique across threads")
+    public void uniqueAcrossThreads() throws InterruptedException {
+      final int threads = 4;
+      final int perThread = 100_000;
+      final long[] stamps = new long[threads * perThread];
+      ExecutorService executor = Executors.newFixedThreadPool(threads);
+      for (int t = 0; t < threads; t++) {
+        final int offset = t * perThread;
+        executor.execute(() -> {
+          for (int i = 0; i < perThread; i++) {
+            stamps[offset + i] = classUnderTest.now();
+          }
+        });
+      }
+      executor.shutdown();
+      assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+      Arrays.sort(stamps);
+      for (int i = 1; i < stamps.length; i++) {
+        assertTrue(stamps[i] > stamps[i - 1], "Duplicate timestamp: " + stamps[i]);
+      }
+    }
+
+  }
+
+  @Nested
+  @DisplayName("Remote events")
+  public class RemoteEvents {
+
+    @Test
+    @DisplayName("A remote timestamp ahead of the local clock is overtaken")
+    public void remoteAhead() {
+      long remote = HybridLogicalClock.pack(MILLIS_20170115_1435UTC + 500, 7);
+      long received = classUnderTest.update(remote);
+      assertTrue(received > remote);
+      assertTrue(classUnderTest.now() > received);
+    }
+
+    @Test
+    @DisplayName("A remote timestamp too far ahead is rejected")
+    public void remoteTooFarAhead() {
+      long remote = HybridLogicalClock.pack(MILLIS_20170115_1435UTC + 5000, 0);
+      assertThrows(IllegalStateException.class, () -> classUnderTest.update(remote));
+      assertEquals(0, classUnderTest.last());
+    }
+
+    @Test
+    @DisplayName("Remote timestamps that would overflow, or are negative, are rejected")
+    public void remoteOutOfRange() {
+      HybridLogicalClock unlimited = new HybridLogicalClock(wallClock, 0);
+      assertThrows(IllegalArgumentException.class, () -> unlimited.update(Long.MAX_VALUE));
+      assertThrows(IllegalArgumentException.class, () -> unlimited.update(Long.MAX_VALUE - 1000));
+      assertThrows(IllegalArgumentException.class, () -> unlimited.update(-1));
+      assertEquals(0, unlimited.last());
+      long farAhead = unlimited.update((Long.MAX_VALUE & ~0xFFFFL) - 1);
+      assertTrue(unlimited.now() > farAhead);
+    }
+
+  }
+
+  @Nested
+  @DisplayName("Conversions")
+  public class Conversions {
+
+    @Test
+    @DisplayName("The physical part converts through DateTimeUtils")
+    public void toInstant() {
+      long timestamp = HybridLogicalClock.pack(MILLIS_20170115_1435UTC, 42);
+      assertEquals(Instant.ofEpochMilli(MILLIS_20170115_1435UTC), classUnderTest.toInstant(timestamp));
+      assertEquals(LocalDateTime.of(2017, 1, 15, 8, 35),
+          classUnderTest.toZonedDateTime(timestamp, ZoneId.of("America/Chicago")).toLocalDateTime());
+    }
+
+    @Test
+    @DisplayName("Out of range fields cannot be packed")
+    public void packOutOfRange() {
+      assertThrows(IllegalArgumentException.class, () -> HybridLogicalClock.pack(-1, 0));
+      assertThrows(IllegalArgumentException.class, () -> HybridLogicalClock.pack(0, 1 << 16));
+    }
+
+  }
+
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright 2017 Makoto Consulting Group, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.makotojava.learn.recipe.datetime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.platform.runner.JUnitPlatform;
+import org.junit.runner.RunWith;
+
+/**
+ * Unit test for IncrementalZoneConverter.
+ */
+@RunWith(JUnitPlatform.class)
+@DisplayName("Testing IncrementalZoneConverter")
+public class IncrementalZoneConverterTest {
+
+  private static final ZoneId[] ZONES = { ZoneOffset.UTC, ZoneId.of("America/Chicago"), ZoneId.of("Europe/London"),
+      ZoneId.of("Australia/Lord_Howe"), ZoneOffset.ofHoursMinutes(5, 30) };
+
+  private DateTimeUtils dateTimeUtils = new DateTimeUtils();
+
+  private void assertSameAsDateTimeUtils(IncrementalZoneConverter classUnderTest, long epochMilli) {
+    ZoneId zone = classUnderTest.getZone();
+    LocalDateTime expected = dateTimeUtils.toLocalDateTime(epochMilli, zone);
+    String message = zone + " @ " + epochMilli;
+    assertEquals(expected, classUnderTest.toLocalDateTime(epochMilli), message);
+    assertEquals(dateTimeUtils.toZonedDateTime(epochMilli, zone), classUnderTest.toZonedDateTime(epochMilli), message);
+    assertEquals(expected.toLocalDate().toEpochDay(), classUnderTest.localEpochDay(epochMilli), message);
+    assertEquals(expected.toLocalTime().toNanoOfDay() / 1_000_000L, classUnderTest.localMillisOfDay(epochMilli),
+        message);
+  }
+
+  @Nested
+  @DisplayName("Conversion")
+  public class Conversion {
+
+    @Test
+    @DisplayName("Sorted streams convert like DateTimeUtils across DST transitions")
+    public void sorted() {
+      long start = ZonedDateTime.of(2016, 12, 31, 0, 0, 0, 0, ZoneOffset.UTC).toInstant().toEpochMilli();
+      for (ZoneId zone : ZONES) {
+        IncrementalZoneConverter classUnderTest = new IncrementalZoneConverter(zone);
+        // Every 7 minutes and 13.5 seconds for a bit over a year
+        for (long epochMilli = start; epochMilli < start + 370 * 86_400_000L; epochMilli += 433_500L) {
+          assertSameAsDateTimeUtils(classUnderTest, epochMilli);
+        }
+      }
+    }
+
+    @Test
+    @DisplayName("Instants exactly at and around transitions convert correctly")
+    public void transitions() {
+      ZoneId zone = ZoneId.of("America/Chicago");
+      IncrementalZoneConverter classUnderTest = new IncrementalZoneConverter(zone);
+      long springForward = ZonedDateTime.of(2017, 3, 12, 3, 0, 0, 0, zone).toInstant().toEpochMilli();
+      long fallBack = ZonedDateTime.of(2017, 11, 5, 1, 0, 0, 0, zone).withLaterOffsetAtOverlap().toInstant()
+          .toEpochMilli();
+      for (long transition : new long[] { springForward, fallBack }) {
+        assertSameAsDateTimeUtils(classUnderTest, transition);
+        assertSameAsDateTimeUtils(classUnderTest, transition - 1);
+        assertSameAsDateTimeUtils(classUnderTest, transition);
+        assertSameAsDateTimeUtils(classUnderTest, transition + 1);
+        assertSameAsDateTimeUtils(classUnderTest, transition - 1);
+      }
+    }
+
+    @Test
+    @DisplayName("Unordered and pre-1970 timestamps convert like DateTimeUtils")
+    public void unordered() {
+      Random random = new Random(31);
+      for (ZoneId zone : ZONES) {
+        IncrementalZoneConverter classUnderTest = new IncrementalZoneConverter(zone);
+        for (int i = 0; i < 5000; i++) {
+          // Between 1900 and 2100
+          long epochMilli = (long) ((random.nextDouble() * 200 - 70) * 365.25 * 86_400_000L);
+          assertSameAsDateTimeUtils(classUnderTest, epochMilli);
+        }
+      }
+    }
+
+    @Test
+    @DisplayName("The LocalDate is reused within a local day")
+    public void dateReused() {
+      IncrementalZoneConverter classUnderTest = new IncrementalZoneConverter(ZoneId.of("America/Chicago"));
+      long morning = ZonedDateTime.of(2017, 1, 15, 8, 0, 0, 0, classUnderTest.getZone()).toInstant().toEpochMilli();
+      assertSame(classUnderTest.toLocalDate(morning), classUnderTest.toLocalDate(morning + 3_600_000L));
+    }
+
+  }
+
+  @Nested
+  @DisplayName("Per-thread converters")
+  public class PerThread {
+
+    @Test
+    @DisplayName("A thread gets the same converter for a zone, other threads get their own")
+    public void perThread() throws InterruptedException {
+      ZoneId zone = ZoneId.of("Europe/London");
+      IncrementalZoneConverter mine = IncrementalZoneConverter.forCurrentThread(zone);
+      assertSame(mine, IncrementalZoneConverter.forCurrentThread(zone));
+      AtomicReference<IncrementalZoneConverter> theirs = new AtomicReference<>();
+      Thread thread = new Thread(() -> theirs.set(IncrementalZoneConverter.forCurrentThread(zone)));
+      thread.start();
+      thread.join();
+      assertNotSame(mine, theirs.get());
+    }
+
+    @Test
+    @DisplayName("A null zone is rejected")
+    public void nullZone() {
+      assertThrows(IllegalArgumentException.class, () -> new IncrementalZoneConverter(null));
+    }
+
+  }
+
+}
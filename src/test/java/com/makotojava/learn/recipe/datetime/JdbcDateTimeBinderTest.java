@@ -0,0 +1,194 @@
+/*
+ * Copyright 2017 Makoto Consulting Group, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.makotojava.learn.recipe.datetime;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.platform.runner.JUnitPlatform;
+import org.junit.runner.RunWith;
+
+/**
+ * Unit test for JdbcDateTimeBinder, against an in-memory H2 database.
+ */
+@RunWith(JUnitPlatform.class)
+@DisplayName("Testing JdbcDateTimeBinder")
+public class JdbcDateTimeBinderTest {
+
+  private static final ZoneId CHICAGO = ZoneId.of("America/Chicago");
+
+  private static final String INSERT = "INSERT INTO EVENTS (ID, AT) VALUES (?, ?)";
+
+  private static final String SELECT = "SELECT AT FROM EVENTS ORDER BY ID";
+
+  private Connection connection;
+
+  @BeforeEach
+  public void createTable() throws SQLException {
+    connection = DriverManager.getConnection("jdbc:h2:mem:");
+    try (Statement statement = connection.createStatement()) {
+      statement.execute("CREATE TABLE EVENTS (ID BIGINT PRIMARY KEY, AT TIMESTAMP)");
+    }
+  }
+
+  @AfterEach
+  public void close() throws SQLException {
+    connection.close();
+  }
+
+  /**
+   * Epoch millis every 37 minutes and 1 ms from 2017-03-01, across the DST
+   * change, with a NULL every 100 rows.
+   */
+  private static long[] epochMillis(int count) {
+    long start = ZonedDateTime.of(2017, 3, 1, 0, 0, 0, 0, CHICAGO).toInstant().toEpochMilli();
+    long[] ret = new long[count];
+    for (int i = 0; i < count; i++) {
+      ret[i] = i % 100 == 99 ? JdbcDateTimeBinder.NULL_MILLIS : start + i * (37 * 60_000L + 1);
+    }
+    return ret;
+  }
+
+  private static long[] ids(int count) {
+    long[] ret = new long[count];
+    for (int i = 0; i < count; i++) {
+      ret[i] = i;
+    }
+    return ret;
+  }
+
+  private int[] insert(JdbcDateTimeBinder binder, int rows, JdbcDateTimeBinder.Column column) throws SQLException {
+    try (PreparedStatement statement = connection.prepareStatement(INSERT)) {
+      return binder.executeBatch(statement, rows, JdbcDateTimeBinder.longs(ids(rows)), column);
+    }
+  }
+
+  private long[] select(JdbcDateTimeBinder binder) throws SQLException {
+    try (Statement statement = connection.createStatement(); ResultSet resultSet = statement.executeQuery(SELECT)) {
+      return binder.readEpochMillis(resultSet, 1)[0];
+    }
+  }
+
+  private void deleteAll() throws SQLException {
+    try (Statement statement = connection.createStatement()) {
+      statement.execute("DELETE FROM EVENTS");
+    }
+  }
+
+  @Nested
+  @DisplayName("Round trips")
+  public class RoundTrips {
+
+    @Test
+    @DisplayName("Epoch millis round trip in batches, NULLs included")
+    public void epochMillisRoundTrip() throws SQLException {
+      JdbcDateTimeBinder binder = new JdbcDateTimeBinder(CHICAGO, 128, false);
+      long[] millis = epochMillis(1000);
+      int[] counts = insert(binder, millis.length, binder.epochMillis(millis));
+      assertEquals(1000, counts.length);
+      assertEquals(1000, Arrays.stream(counts).sum());
+      assertArrayEquals(millis, select(binder));
+      // Local date/times in the binder's zone are stored
+      try (Statement statement = connection.createStatement();
+          ResultSet resultSet = statement.executeQuery(SELECT)) {
+        resultSet.next();
+        assertEquals(LocalDateTime.of(2017, 3, 1, 0, 0), resultSet.getTimestamp(1).toLocalDateTime());
+      }
+    }
+
+    @Test
+    @DisplayName("Instants, ZonedDateTimes and LocalDateTimes are stored in the binder's zone")
+    public void objectColumns() throws SQLException {
+      JdbcDateTimeBinder binder = new JdbcDateTimeBinder(CHICAGO);
+      long[] millis = epochMillis(300);
+      Instant[] instants = new Instant[millis.length];
+      ZonedDateTime[] zonedDateTimes = new ZonedDateTime[millis.length];
+      LocalDateTime[] localDateTimes = new LocalDateTime[millis.length];
+      for (int i = 0; i < millis.length; i++) {
+        if (millis[i] != JdbcDateTimeBinder.NULL_MILLIS) {
+          instants[i] = Instant.ofEpochMilli(millis[i]);
+          zonedDateTimes[i] = instants[i].atZone(i % 2 == 0 ? CHICAGO : ZoneId.of("Asia/Tokyo"));
+          localDateTimes[i] = LocalDateTime.ofInstant(instants[i], CHICAGO);
+        }
+      }
+      insert(binder, millis.length, binder.instants(instants));
+      assertArrayEquals(millis, select(binder));
+      deleteAll();
+      insert(binder, millis.length, binder.zonedDateTimes(zonedDateTimes));
+      assertArrayEquals(millis, select(binder));
+      deleteAll();
+      insert(binder, millis.length, binder.localDateTimes(localDateTimes));
+      assertArrayEquals(millis, select(binder));
+    }
+
+    @Test
+    @DisplayName("A reused Timestamp binds like fresh LocalDateTimes in the default zone")
+    public void reusedTimestamps() throws SQLException {
+      JdbcDateTimeBinder reusing = new JdbcDateTimeBinder(ZoneId.systemDefault(), 100, true);
+      long[] millis = epochMillis(500);
+      insert(reusing, millis.length, reusing.epochMillis(millis));
+      long[] expected = select(new JdbcDateTimeBinder(ZoneId.systemDefault()));
+      deleteAll();
+      JdbcDateTimeBinder fresh = new JdbcDateTimeBinder(ZoneId.systemDefault());
+      insert(fresh, millis.length, fresh.epochMillis(millis));
+      assertArrayEquals(expected, select(fresh));
+    }
+
+  }
+
+  @Nested
+  @DisplayName("Arguments")
+  public class Arguments {
+
+    @Test
+    @DisplayName("Bad constructor arguments are rejected")
+    public void badArguments() {
+      assertThrows(IllegalArgumentException.class, () -> new JdbcDateTimeBinder(null));
+      assertThrows(IllegalArgumentException.class, () -> new JdbcDateTimeBinder(CHICAGO, 0, false));
+    }
+
+    @Test
+    @DisplayName("An empty batch executes nothing, an empty ResultSet reads empty arrays, and no columns is rejected")
+    public void empty() throws SQLException {
+      JdbcDateTimeBinder binder = new JdbcDateTimeBinder(CHICAGO);
+      assertEquals(0, insert(binder, 0, binder.epochMillis(new long[0])).length);
+      assertEquals(0, select(binder).length);
+      try (Statement statement = connection.createStatement(); ResultSet resultSet = statement.executeQuery(SELECT)) {
+        assertThrows(IllegalArgumentException.class, () -> binder.readEpochMillis(resultSet));
+      }
+    }
+
+  }
+
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright 2017 Makoto Consulting Group, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.makotojava.learn.recipe.datetime;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Random;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.joda.time.chrono.BuddhistChronology;
+import org.joda.time.format.ISODateTimeFormat;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.platform.runner.JUnitPlatform;
+import org.junit.runner.RunWith;
+
+/**
+ * Unit test for JodaBridge.
+ */
+@RunWith(JUnitPlatform.class)
+@DisplayName("Testing JodaBridge")
+public class JodaBridgeTest {
+
+  private static final String[] ZONES = { "UTC", "America/Chicago", "Europe/London", "Asia/Kolkata",
+      "Australia/Lord_Howe", "+05:30", "-03:00" };
+
+  private long randomMillis(Random random) {
+    // 1900 to 2100
+    return (long) ((random.nextDouble() * 200 - 70) * 365.25 * 86_400_000);
+  }
+
+  @Nested
+  @DisplayName("Zones")
+  public class Zones {
+
+    @Test
+    @DisplayName("Zones map to the same ID and offset")
+    public void zones() {
+      assertSame(ZoneOffset.UTC, JodaBridge.toZoneId(DateTimeZone.UTC));
+      assertSame(DateTimeZone.UTC, JodaBridge.toDateTimeZone(ZoneOffset.UTC));
+      assertSame(DateTimeZone.UTC, JodaBridge.toDateTimeZone(ZoneId.of("UTC")));
+      assertEquals(ZoneOffset.ofHoursMinutes(5, 30), JodaBridge.toZoneId(DateTimeZone.forOffsetHoursMinutes(5, 30)));
+      assertEquals(DateTimeZone.forOffsetHoursMinutes(-3, -30),
+          JodaBridge.toDateTimeZone(ZoneOffset.ofHoursMinutes(-3, -30)));
+      assertEquals(ZoneId.of("America/Chicago"), JodaBridge.toZoneId(DateTimeZone.forID("America/Chicago")));
+      assertSame(JodaBridge.toDateTimeZone(ZoneId.of("America/Chicago")),
+          JodaBridge.toDateTimeZone(ZoneId.of("America/Chicago")));
+      assertThrows(IllegalArgumentException.class, () -> JodaBridge.toZoneId(null));
+      assertThrows(IllegalArgumentException.class, () -> JodaBridge.toDateTimeZone(null));
+    }
+
+  }
+
+  @Nested
+  @DisplayName("Single values")
+  public class SingleValues {
+
+    @Test
+    @DisplayName("Zoned values match the string round trip")
+    public void zoned() {
+      Random random = new Random(38);
+      for (int i = 0; i < 5000; i++) {
+        DateTime dateTime = new DateTime(randomMillis(random), DateTimeZone.forID(ZONES[i % ZONES.length]));
+        ZonedDateTime expected = ZonedDateTime.parse(ISODateTimeFormat.dateTime().print(dateTime),
+            DateTimeFormatter.ISO_OFFSET_DATE_TIME).withZoneSameInstant(JodaBridge.toZoneId(dateTime.getZone()));
+        ZonedDateTime actual = JodaBridge.toZonedDateTime(dateTime);
+        assertEquals(expected, actual);
+        assertEquals(dateTime, JodaBridge.toDateTime(actual));
+        assertEquals(actual.toInstant(), JodaBridge.toInstant(dateTime));
+        assertEquals(dateTime.toInstant(), JodaBridge.toJodaInstant(actual.toInstant()));
+      }
+      // Sub-millisecond fractions are truncated, also before 1970
+      assertEquals(-1L, JodaBridge.toDateTime(ZonedDateTime.ofInstant(Instant.ofEpochSecond(-1, 999_999_999),
+          ZoneOffset.UTC)).getMillis());
+    }
+
+    @Test
+    @DisplayName("Local values convert field by field")
+    public void local() {
+      Random random = new Random(38);
+      for (int i = 0; i < 5000; i++) {
+        org.joda.time.LocalDateTime joda = new org.joda.time.LocalDateTime(randomMillis(random), DateTimeZone.UTC);
+        LocalDateTime expected = LocalDateTime.parse(joda.toString());
+        assertEquals(expected, JodaBridge.toLocalDateTime(joda));
+        assertEquals(joda, JodaBridge.toJodaLocalDateTime(expected));
+        assertEquals(expected.toLocalDate(), JodaBridge.toLocalDate(joda.toLocalDate()));
+        assertEquals(joda.toLocalDate(), JodaBridge.toJodaLocalDate(expected.toLocalDate()));
+      }
+      assertSame(DateTimeFlyweights.localDate(2017, 7, 4),
+          JodaBridge.toLocalDate(new org.joda.time.LocalDate(2017, 7, 4)));
+      assertEquals(Duration.ofMillis(12_345), JodaBridge.toDuration(org.joda.time.Duration.millis(12_345)));
+      assertEquals(org.joda.time.Duration.millis(12_345), JodaBridge.toJodaDuration(Duration.ofMillis(12_345)));
+      assertThrows(IllegalArgumentException.class, () -> JodaBridge.toLocalDate(
+          new org.joda.time.LocalDate(2560, 1, 1, BuddhistChronology.getInstanceUTC())));
+    }
+
+  }
+
+  @Nested
+  @DisplayName("Batch values")
+  public class BatchValues {
+
+    @Test
+    @DisplayName("Arrays convert element by element, nulls included")
+    public void arrays() {
+      Random random = new Random(38);
+      DateTime[] dateTimes = new DateTime[1000];
+      org.joda.time.LocalDateTime[] localDateTimes = new org.joda.time.LocalDateTime[dateTimes.length];
+      for (int i = 0; i < dateTimes.length; i++) {
+        dateTimes[i] = new DateTime(randomMillis(random), DateTimeZone.forID(ZONES[i / 100 % ZONES.length]));
+        localDateTimes[i] = dateTimes[i].toLocalDateTime();
+      }
+      ZonedDateTime[] zonedDateTimes = JodaBridge.toZonedDateTimes(dateTimes);
+      Instant[] instants = JodaBridge.toInstants(dateTimes);
+      long[] millis = JodaBridge.toEpochMillis(dateTimes);
+      LocalDateTime[] javaLocalDateTimes = JodaBridge.toLocalDateTimes(localDateTimes);
+      for (int i = 0; i < dateTimes.length; i++) {
+        assertEquals(JodaBridge.toZonedDateTime(dateTimes[i]), zonedDateTimes[i]);
+        assertEquals(zonedDateTimes[i].toInstant(), instants[i]);
+        assertEquals(dateTimes[i].getMillis(), millis[i]);
+        // Not zonedDateTimes[i].toLocalDateTime(): Joda and the JDK may ship different tzdb versions
+        assertEquals(JodaBridge.toLocalDateTime(localDateTimes[i]), javaLocalDateTimes[i]);
+      }
+      assertArrayEquals(dateTimes, JodaBridge.toDateTimes(zonedDateTimes));
+      assertArrayEquals(localDateTimes, JodaBridge.toJodaLocalDateTimes(javaLocalDateTimes));
+
+      assertNull(JodaBridge.toZonedDateTimes(new DateTime[1])[0]);
+      assertNull(JodaBridge.toDateTimes(new ZonedDateTime[1])[0]);
+      assertNull(JodaBridge.toInstants(new DateTime[1])[0]);
+      // A primitive result cannot hold null
+      assertThrows(IllegalArgumentException.class, () -> JodaBridge.toEpochMillis(new DateTime[1]));
+    }
+
+  }
+
+}
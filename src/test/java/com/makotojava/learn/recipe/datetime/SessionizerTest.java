@@ -0,0 +1,229 @@
+/*
+ * Copyright 2017 Makoto Consulting Group, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.makotojava.learn.recipe.datetime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.platform.runner.JUnitPlatform;
+import org.junit.runner.RunWith;
+
+/**
+ * Unit test for Sessionizer.
+ */
+@RunWith(JUnitPlatform.class)
+@DisplayName("Testing Sessionizer")
+public class SessionizerTest {
+
+  private static final long MINUTE = 60_000L;
+
+  private static final ZoneId CHICAGO = ZoneId.of("America/Chicago");
+
+  private DateTimeUtils dateTimeUtils = new DateTimeUtils();
+
+  private List<String> sessions = new ArrayList<>();
+
+  private Sessionizer.SessionListener recorder = (key, start, end, count) -> sessions
+      .add(key + ":" + start + "-" + end + "x" + count);
+
+  private long chicago(int hour, int minute) {
+    return dateTimeUtils.toInstant(LocalDateTime.of(2017, 5, 15, hour, minute), CHICAGO).toEpochMilli();
+  }
+
+  @Nested
+  @DisplayName("Session boundaries")
+  public class Boundaries {
+
+    @Test
+    @DisplayName("Sessions end after the gap")
+    public void gap() {
+      Sessionizer classUnderTest = new Sessionizer(Duration.ofMinutes(30), Duration.ZERO, ZoneOffset.UTC, recorder);
+      classUnderTest.accept(1, 0);
+      classUnderTest.accept(1, 10 * MINUTE);
+      classUnderTest.accept(1, 40 * MINUTE);
+      classUnderTest.accept(2, 41 * MINUTE);
+      classUnderTest.accept(1, 71 * MINUTE);
+      assertEquals(Collections.singletonList("1:0-2400000x3"), sessions);
+      classUnderTest.flush();
+      assertEquals(3, sessions.size());
+      assertTrue(sessions.contains("1:4260000-4260000x1"));
+      assertTrue(sessions.contains("2:2460000-2460000x1"));
+      assertEquals(0, classUnderTest.getOpenSessionCount());
+    }
+
+    @Test
+    @DisplayName("Sessions end at local midnight in the key's zone")
+    public void midnight() {
+      Sessionizer classUnderTest = new Sessionizer(Duration.ofHours(1), Duration.ZERO,
+          key -> key == 1 ? CHICAGO : ZoneOffset.UTC, recorder);
+      long beforeMidnight = chicago(23, 50);
+      long afterMidnight = chicago(23, 59) + 6 * MINUTE;
+      classUnderTest.accept(1, beforeMidnight);
+      classUnderTest.accept(2, beforeMidnight);
+      classUnderTest.accept(1, afterMidnight);
+      classUnderTest.accept(2, afterMidnight);
+      assertEquals(Collections.singletonList("1:" + beforeMidnight + "-" + beforeMidnight + "x1"), sessions);
+      classUnderTest.flush();
+      assertTrue(sessions.contains("2:" + beforeMidnight + "-" + afterMidnight + "x2"));
+    }
+
+    @Test
+    @DisplayName("Out-of-order events within the lateness bound are merged, older ones are dropped")
+    public void lateness() {
+      Sessionizer classUnderTest = new Sessionizer(Duration.ofMinutes(30), Duration.ofMinutes(5), ZoneOffset.UTC,
+          recorder);
+      classUnderTest.accept(1, 100 * MINUTE);
+      classUnderTest.accept(1, 97 * MINUTE);
+      classUnderTest.accept(1, 104 * MINUTE);
+      classUnderTest.accept(1, 90 * MINUTE);
+      assertEquals(1, classUnderTest.getDroppedLateEvents());
+      classUnderTest.flush();
+      assertEquals(Collections.singletonList("1:" + 97 * MINUTE + "-" + 104 * MINUTE + "x3"), sessions);
+    }
+
+    @Test
+    @DisplayName("A late event bridges two open sessions of its key into one")
+    public void bridging() {
+      Sessionizer classUnderTest = new Sessionizer(Duration.ofMinutes(10), Duration.ofMinutes(15), ZoneOffset.UTC,
+          recorder);
+      classUnderTest.accept(1, 0);
+      classUnderTest.accept(1, 5 * MINUTE);
+      classUnderTest.accept(1, 10 * MINUTE);
+      // More than the gap after the last event: a second session, while the first stays open
+      classUnderTest.accept(1, 21 * MINUTE);
+      classUnderTest.accept(1, 31 * MINUTE);
+      assertEquals(2, classUnderTest.getOpenSessionCount());
+      classUnderTest.accept(1, 18 * MINUTE);
+      assertEquals(1, classUnderTest.getOpenSessionCount());
+      assertEquals(0, classUnderTest.getDroppedLateEvents());
+      classUnderTest.advanceWatermark(60 * MINUTE);
+      assertEquals(Collections.singletonList("1:0-" + 31 * MINUTE + "x6"), sessions);
+    }
+
+    @Test
+    @DisplayName("A late event joins a previous session of its key, across the gap or local midnight")
+    public void previousSession() {
+      Sessionizer classUnderTest = new Sessionizer(Duration.ofMinutes(10), Duration.ofMinutes(30), CHICAGO, recorder);
+      long start = chicago(12, 0);
+      classUnderTest.accept(1, start);
+      classUnderTest.accept(1, start + 5 * MINUTE);
+      classUnderTest.accept(1, start + 30 * MINUTE);
+      classUnderTest.accept(1, start + 35 * MINUTE);
+      // Above the watermark, and within the gap of the first session only
+      classUnderTest.accept(1, start + 8 * MINUTE);
+      classUnderTest.advanceWatermark(start + 50 * MINUTE);
+      assertEquals(Collections.singletonList("1:" + start + "-" + (start + 8 * MINUTE) + "x3"), sessions);
+      long beforeMidnight = chicago(23, 50);
+      long afterMidnight = chicago(23, 59) + 6 * MINUTE;
+      classUnderTest.accept(2, beforeMidnight);
+      classUnderTest.accept(2, afterMidnight);
+      // Late, on the previous local day
+      classUnderTest.accept(2, beforeMidnight + 3 * MINUTE);
+      classUnderTest.flush();
+      assertEquals(0, classUnderTest.getDroppedLateEvents());
+      assertTrue(sessions.contains("1:" + (start + 30 * MINUTE) + "-" + (start + 35 * MINUTE) + "x2"));
+      assertTrue(sessions.contains("2:" + beforeMidnight + "-" + (beforeMidnight + 3 * MINUTE) + "x2"));
+      assertTrue(sessions.contains("2:" + afterMidnight + "-" + afterMidnight + "x1"));
+      assertEquals(4, sessions.size());
+    }
+
+    @Test
+    @DisplayName("Bad arguments are rejected")
+    public void badArguments() {
+      assertThrows(IllegalArgumentException.class,
+          () -> new Sessionizer(Duration.ZERO, Duration.ZERO, ZoneOffset.UTC, recorder));
+      assertThrows(IllegalArgumentException.class,
+          () -> new Sessionizer(Duration.ofMinutes(1), Duration.ofMinutes(-1), ZoneOffset.UTC, recorder));
+      assertThrows(IllegalArgumentException.class,
+          () -> new Sessionizer(Duration.ofMinutes(1), Duration.ZERO, (ZoneId) null, recorder));
+    }
+
+  }
+
+  @Nested
+  @DisplayName("Key state")
+  public class KeyState {
+
+    @Test
+    @DisplayName("Random ordered streams give the same sessions as a simple reference")
+    public void sameAsReference() {
+      Random random = new Random(35);
+      long gap = 20 * MINUTE;
+      Sessionizer classUnderTest = new Sessionizer(Duration.ofMillis(gap), Duration.ZERO, CHICAGO, recorder);
+      Map<Long, long[]> open = new HashMap<>();
+      List<String> expected = new ArrayList<>();
+      long time = chicago(20, 0);
+      for (int i = 0; i < 200_000; i++) {
+        time += random.nextInt(3_000);
+        long key = random.nextInt(5_000) * 0x9E3779B97F4A7C15L;
+        classUnderTest.accept(key, time);
+        long[] session = open.get(key);
+        if (session != null && (time - session[1] > gap || !dateTimeUtils.toLocalDateTime(time, CHICAGO)
+            .toLocalDate().equals(dateTimeUtils.toLocalDateTime(session[0], CHICAGO).toLocalDate()))) {
+          expected.add(key + ":" + session[0] + "-" + session[1] + "x" + session[2]);
+          session = null;
+        }
+        if (session == null) {
+          open.put(key, new long[] { time, time, 1 });
+        } else {
+          session[1] = time;
+          session[2]++;
+        }
+      }
+      classUnderTest.flush();
+      for (Map.Entry<Long, long[]> entry : open.entrySet()) {
+        long[] session = entry.getValue();
+        expected.add(entry.getKey() + ":" + session[0] + "-" + session[1] + "x" + session[2]);
+      }
+      Collections.sort(expected);
+      Collections.sort(sessions);
+      assertEquals(expected, sessions);
+    }
+
+    @Test
+    @DisplayName("Idle keys are evicted as the stream moves on")
+    public void eviction() {
+      Sessionizer classUnderTest = new Sessionizer(Duration.ofSeconds(10), Duration.ZERO, ZoneOffset.UTC, recorder);
+      int maxOpen = 0;
+      for (int i = 0; i < 1_000_000; i++) {
+        // Every key is seen once, 10ms apart, so about 1000 keys are active at a time
+        classUnderTest.accept(i, i * 10L);
+        maxOpen = Math.max(maxOpen, classUnderTest.getOpenSessionCount());
+      }
+      assertTrue(maxOpen < 10_000, "max open sessions: " + maxOpen);
+      classUnderTest.advanceWatermark(20_000_000L);
+      assertEquals(0, classUnderTest.getOpenSessionCount());
+      assertEquals(1_000_000, sessions.size());
+    }
+
+  }
+
+}
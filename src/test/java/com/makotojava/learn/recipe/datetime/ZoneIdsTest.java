@@ -0,0 +1,118 @@
+/*
+ * Copyright 2017 Makoto Consulting Group, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.makotojava.learn.recipe.datetime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.zone.ZoneRulesException;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.platform.runner.JUnitPlatform;
+import org.junit.runner.RunWith;
+
+/**
+ * Unit test for ZoneIds.
+ */
+@RunWith(JUnitPlatform.class)
+@DisplayName("Testing ZoneIds")
+public class ZoneIdsTest {
+
+  private static final List<String> ZONES = Arrays.asList("America/Chicago", "Europe/London", "Asia/Kolkata", "UTC",
+      "Z", "+05:30", "GMT+2");
+
+  @Nested
+  @DisplayName("Resolution")
+  public class Resolution {
+
+    @Test
+    @DisplayName("IDs resolve exactly like ZoneId.of and are cached")
+    public void sameAsZoneIdOf() {
+      for (String zone : ZONES) {
+        assertEquals(ZoneId.of(zone), ZoneIds.of(zone));
+        assertSame(ZoneIds.of(zone), ZoneIds.of(zone));
+      }
+      assertTrue(ZoneIds.cachedZoneIds().containsAll(ZONES));
+    }
+
+    @Test
+    @DisplayName("Bad IDs throw the same exceptions as ZoneId.of")
+    public void badIds() {
+      assertThrows(ZoneRulesException.class, () -> ZoneIds.of("Mars/Olympus_Mons"));
+      assertThrows(DateTimeException.class, () -> ZoneIds.of("+25:00"));
+      assertThrows(NullPointerException.class, () -> ZoneIds.of(null));
+    }
+
+    @Test
+    @DisplayName("DateTimeUtils String overloads match the ZoneId overloads")
+    public void dateTimeUtils() {
+      DateTimeUtils classUnderTest = new DateTimeUtils();
+      LocalDateTime ldt = LocalDateTime.of(2017, 3, 12, 2, 30);
+      Instant instant = Instant.ofEpochMilli(1_500_000_000_000L);
+      for (String zone : ZONES) {
+        ZoneId zoneId = ZoneId.of(zone);
+        assertEquals(classUnderTest.toZonedDateTime(ldt, zoneId), classUnderTest.toZonedDateTime(ldt, zone));
+        assertEquals(classUnderTest.toInstant(ldt, zoneId), classUnderTest.toInstant(ldt, zone));
+        assertEquals(classUnderTest.toLocalDateTime(instant, zoneId), classUnderTest.toLocalDateTime(instant, zone));
+        assertEquals(classUnderTest.toString(ldt, zoneId, "yyyy-MM-dd HH:mm"),
+            classUnderTest.toString(ldt, zone, "yyyy-MM-dd HH:mm"));
+      }
+    }
+
+  }
+
+  @Nested
+  @DisplayName("Warm-up")
+  public class WarmUp {
+
+    @Test
+    @DisplayName("A snapshot round-trips and warms up its zones")
+    public void snapshot() throws IOException {
+      assertEquals(ZONES.size(), ZoneIds.warmUp(ZONES));
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      ZoneIds.writeSnapshot(ZONES, out);
+      List<String> read = ZoneIds.readSnapshot(new ByteArrayInputStream(out.toByteArray()));
+      assertEquals(ZONES, read);
+      assertEquals(ZONES.size(), ZoneIds.warmUp(read));
+
+      out.reset();
+      ZoneIds.writeSnapshot(out);
+      assertTrue(ZoneIds.readSnapshot(new ByteArrayInputStream(out.toByteArray())).containsAll(ZONES));
+    }
+
+    @Test
+    @DisplayName("Something that is not a snapshot is rejected")
+    public void notASnapshot() {
+      assertThrows(IOException.class, () -> ZoneIds.readSnapshot(new ByteArrayInputStream(new byte[] { 1, 2, 3, 4,
+          5, 6 })));
+    }
+
+  }
+
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2017 Makoto Consulting Group, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.makotojava.learn.recipe.datetime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.text.ParsePosition;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.TemporalQueries;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.platform.runner.JUnitPlatform;
+import org.junit.runner.RunWith;
+
+/**
+ * Unit test for ZoneTextMatcher.
+ */
+@RunWith(JUnitPlatform.class)
+@DisplayName("Testing ZoneTextMatcher")
+public class ZoneTextMatcherTest {
+
+  @Nested
+  @DisplayName("Region IDs")
+  public class RegionIds {
+
+    @Test
+    @DisplayName("Every region ID matches, as a cached ZoneId")
+    public void everyId() {
+      ZoneTextMatcher classUnderTest = ZoneTextMatcher.regionIds();
+      assertEquals(ZoneId.getAvailableZoneIds().size(), classUnderTest.size());
+      for (String id : ZoneId.getAvailableZoneIds()) {
+        ParsePosition pos = new ParsePosition(1);
+        ZoneId zone = classUnderTest.match("[" + id + "]", pos);
+        assertSame(ZoneIds.of(id), zone);
+        assertEquals(id.length() + 1, pos.getIndex());
+      }
+    }
+
+    @Test
+    @DisplayName("The longest ID wins, and failures set the error index")
+    public void longestMatch() {
+      ZoneTextMatcher classUnderTest = ZoneTextMatcher.regionIds();
+      ParsePosition pos = new ParsePosition(0);
+      // America/Indiana/Indianapolis, not America/Indiana...
+      assertEquals(ZoneId.of("America/Indiana/Indianapolis"),
+          classUnderTest.match("America/Indiana/Indianapolis 12:00", pos));
+      assertEquals("America/Indiana/Indianapolis".length(), pos.getIndex());
+      // ...but Etc/GMT+1 when the text goes on with a digit that makes no ID
+      pos = new ParsePosition(0);
+      assertEquals(ZoneId.of("Etc/GMT+1"), classUnderTest.match("Etc/GMT+19", pos));
+      assertEquals(9, pos.getIndex());
+      pos = new ParsePosition(3);
+      assertNull(classUnderTest.match("at Mars/Olympus", pos));
+      assertEquals(3, pos.getIndex());
+      assertEquals(3, pos.getErrorIndex());
+    }
+
+  }
+
+  @Nested
+  @DisplayName("Names")
+  public class Names {
+
+    @Test
+    @DisplayName("Localized names match the zones DateTimeFormatter parses them to")
+    public void zoneNames() {
+      ZoneTextMatcher classUnderTest = ZoneTextMatcher.zoneNames(Locale.US);
+      assertSame(classUnderTest, ZoneTextMatcher.zoneNames(Locale.US));
+      for (String name : new String[] { "Central Standard Time", "Pacific Daylight Time", "CST", "PDT",
+          "Europe/Paris" }) {
+        ZoneId expected = DateTimeFormatter.ofPattern(name.length() > 3 ? "zzzz" : "z", Locale.US)
+            .parse(name).query(TemporalQueries.zoneId());
+        assertEquals(expected, classUnderTest.match(name, new ParsePosition(0)), name);
+      }
+    }
+
+    @Test
+    @DisplayName("Custom texts match their ZoneIds")
+    public void custom() {
+      Map<String, ZoneId> texts = new LinkedHashMap<>();
+      texts.put("ET", ZoneId.of("America/New_York"));
+      texts.put("ETX", ZoneId.of("America/Chicago"));
+      texts.put("IST", ZoneId.of("Asia/Kolkata"));
+      texts.put("Z", ZoneOffset.UTC);
+      ZoneTextMatcher classUnderTest = ZoneTextMatcher.of(texts);
+      assertEquals(ZoneId.of("America/Chicago"), classUnderTest.match("ETX", new ParsePosition(0)));
+      assertEquals(ZoneId.of("America/New_York"), classUnderTest.match("ETA", new ParsePosition(0)));
+      assertSame(ZoneOffset.UTC, classUnderTest.match("12:00Z", new ParsePosition(5)));
+      assertThrows(IllegalArgumentException.class,
+          () -> ZoneTextMatcher.of(Collections.singletonMap("", ZoneOffset.UTC)));
+      assertThrows(IllegalArgumentException.class, () -> ZoneTextMatcher.zoneNames(null));
+    }
+
+  }
+
+}
@@ -0,0 +1,250 @@
+/*
+ * Copyright 2017 Makoto Consulting Group, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.makotojava.learn.recipe.datetime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.platform.runner.JUnitPlatform;
+import org.junit.runner.RunWith;
+
+/**
+ * Unit test for ConversionProcessor and BlockingSourcePublisher.
+ */
+@RunWith(JUnitPlatform.class)
+@DisplayName("Testing ConversionProcessor")
+public class ConversionProcessorTest {
+
+  private static final ZoneId CHICAGO = ZoneId.of("America/Chicago");
+
+  private static final BatchConverter<String, String> REZONE = BatchConverter.rezone("yyyy-MM-dd'T'HH:mmXXX",
+      CHICAGO, "MM/dd/yyyy HH:mm VV");
+
+  /**
+   * Source of count timestamps that counts its reads and whether it was
+   * closed.
+   */
+  private static class CountingSource implements BlockingSource<String> {
+    private final int count;
+    private final AtomicInteger reads = new AtomicInteger();
+    private final CountDownLatch closed = new CountDownLatch(1);
+
+    CountingSource(int count) {
+      this.count = count;
+    }
+
+    @Override
+    public String read() {
+      int i = reads.getAndIncrement();
+      return i < count ? timestamp(i) : null;
+    }
+
+    @Override
+    public void close() {
+      closed.countDown();
+    }
+  }
+
+  /**
+   * Subscriber that requests chunk elements whenever it has received the
+   * previous chunk, up to limit elements in all.
+   */
+  private static class CollectingSubscriber implements Flow.Subscriber<String> {
+    private final long chunk;
+    private final long limit;
+    private final List<String> received = Collections.synchronizedList(new ArrayList<>());
+    private final CountDownLatch finished = new CountDownLatch(1);
+    private volatile Flow.Subscription subscription;
+    private volatile Throwable error;
+    private volatile boolean completed;
+
+    CollectingSubscriber(long chunk, long limit) {
+      this.chunk = chunk;
+      this.limit = limit;
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+      this.subscription = subscription;
+      subscription.request(chunk);
+    }
+
+    @Override
+    public void onNext(String item) {
+      received.add(item);
+      if (received.size() == limit) {
+        finished.countDown();
+      } else if (received.size() % chunk == 0) {
+        subscription.request(chunk);
+      }
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+      error = throwable;
+      finished.countDown();
+    }
+
+    @Override
+    public void onComplete() {
+      completed = true;
+      finished.countDown();
+    }
+
+    void await() throws InterruptedException {
+      assertTrue(finished.await(10, TimeUnit.SECONDS), "timed out");
+    }
+  }
+
+  private static String timestamp(int i) {
+    return DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mmXXX")
+        .format(ZonedDateTime.of(2017, 1, 1, 0, 0, 0, 0, ZoneOffset.UTC).plusMinutes(97L * i));
+  }
+
+  private CollectingSubscriber run(CountingSource source, int batchSize, long chunk, long limit) {
+    ConversionProcessor<String, String> processor = new ConversionProcessor<>(REZONE, batchSize,
+        ForkJoinPool.commonPool());
+    CollectingSubscriber subscriber = new CollectingSubscriber(chunk, limit);
+    processor.subscribe(subscriber);
+    new BlockingSourcePublisher<>(source).subscribe(processor);
+    return subscriber;
+  }
+
+  @Nested
+  @DisplayName("Flow")
+  public class FlowTests {
+
+    @Test
+    @DisplayName("Every element is converted, in order, and the source is closed")
+    public void endToEnd() throws Exception {
+      CountingSource source = new CountingSource(20_000);
+      CollectingSubscriber subscriber = run(source, 64, 100, Long.MAX_VALUE);
+      subscriber.await();
+      assertNull(subscriber.error);
+      assertTrue(subscriber.completed);
+      assertEquals(20_000, subscriber.received.size());
+      for (int i = 0; i < 20_000; i++) {
+        assertEquals(REZONE.convert(timestamp(i)), subscriber.received.get(i));
+      }
+      assertTrue(source.closed.await(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    @DisplayName("The source is read no further ahead than the demand allows")
+    public void backpressure() throws Exception {
+      CountingSource source = new CountingSource(100_000);
+      CollectingSubscriber subscriber = run(source, 16, 5, 5);
+      subscriber.await();
+      Thread.sleep(200);
+      assertEquals(5, subscriber.received.size());
+      // 2 batches requested ahead, plus the batch converted for the 5 elements
+      assertTrue(source.reads.get() <= 3 * 16, "reads: " + source.reads.get());
+      subscriber.subscription.cancel();
+      assertTrue(source.closed.await(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    @DisplayName("A failed conversion fails the stream and cancels the source")
+    public void conversionError() throws Exception {
+      BlockingSource<String> source = BlockingSource.of(List.of(timestamp(0), "Not a timestamp", timestamp(2))
+          .iterator());
+      CountDownLatch closed = new CountDownLatch(1);
+      BlockingSource<String> closing = new BlockingSource<>() {
+        @Override
+        public String read() throws IOException {
+          return source.read();
+        }
+
+        @Override
+        public void close() {
+          closed.countDown();
+        }
+      };
+      ConversionProcessor<String, String> processor = new ConversionProcessor<>(REZONE, 1,
+          ForkJoinPool.commonPool());
+      CollectingSubscriber subscriber = new CollectingSubscriber(10, 10);
+      processor.subscribe(subscriber);
+      new BlockingSourcePublisher<>(closing).subscribe(processor);
+      subscriber.await();
+      assertEquals(1, subscriber.received.size());
+      assertTrue(subscriber.error instanceof DateTimeParseException);
+      assertTrue(closed.await(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    @DisplayName("An Error thrown by the conversion fails the stream too")
+    public void conversionThrowsError() throws Exception {
+      BatchConverter<String, String> failing = BatchConverter.of(text -> {
+        throw new AssertionError("Conversion bug");
+      });
+      CountingSource source = new CountingSource(10);
+      ConversionProcessor<String, String> processor = new ConversionProcessor<>(failing, 4,
+          ForkJoinPool.commonPool());
+      CollectingSubscriber subscriber = new CollectingSubscriber(10, 10);
+      processor.subscribe(subscriber);
+      new BlockingSourcePublisher<>(source).subscribe(processor);
+      subscriber.await();
+      assertTrue(subscriber.error instanceof AssertionError);
+      assertEquals(0, subscriber.received.size());
+      assertTrue(source.closed.await(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    @DisplayName("Second subscribers and bad requests are rejected with onError")
+    public void protocolErrors() throws Exception {
+      ConversionProcessor<String, String> processor = new ConversionProcessor<>(REZONE);
+      processor.subscribe(new CollectingSubscriber(1, 1));
+      CollectingSubscriber second = new CollectingSubscriber(1, 1);
+      processor.subscribe(second);
+      second.await();
+      assertTrue(second.error instanceof IllegalStateException);
+
+      CountingSource source = new CountingSource(10);
+      CollectingSubscriber bad = new CollectingSubscriber(0, 1);
+      new BlockingSourcePublisher<>(source).subscribe(bad);
+      bad.await();
+      assertTrue(bad.error instanceof IllegalArgumentException);
+      assertTrue(source.closed.await(10, TimeUnit.SECONDS));
+
+      source = new CountingSource(10);
+      bad = run(source, 4, 0, 1);
+      bad.await();
+      assertTrue(bad.error instanceof IllegalArgumentException);
+      assertTrue(source.closed.await(10, TimeUnit.SECONDS));
+    }
+
+  }
+
+}